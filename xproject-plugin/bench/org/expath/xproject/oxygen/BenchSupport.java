@@ -0,0 +1,119 @@
+/****************************************************************************/
+/*  File:       BenchSupport.java                                           */
+/*  Author:     F. Georges - H2O Consulting                                 */
+/*  Date:       2026-10-18                                                  */
+/*  Tags:                                                                   */
+/*      Copyright (c) 2026 Florent Georges (see end of file.)               */
+/* ------------------------------------------------------------------------ */
+
+
+package org.expath.xproject.oxygen;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import org.apache.log4j.Level;
+import org.apache.log4j.Logger;
+import org.apache.log4j.varia.NullAppender;
+
+
+/**
+ * Helpers for the benchmarks: synthetic trees, and quiet logging.
+ *
+ * @author Florent Georges
+ * @date   2026-10-18
+ */
+public class BenchSupport
+{
+    /**
+     * Return a logger, after making log4j quiet (so the logging is not measured).
+     */
+    public static Logger quietLogger()
+    {
+        Logger root = Logger.getRootLogger();
+        if ( ! root.getAllAppenders().hasMoreElements() ) {
+            root.addAppender(new NullAppender());
+        }
+        root.setLevel(Level.WARN);
+        return Logger.getLogger("xproject-bench");
+    }
+
+    /**
+     * Create a new empty temporary dir.
+     */
+    public static File createTempDir(String prefix)
+            throws IOException
+    {
+        File dir = File.createTempFile(prefix, "");
+        if ( ! dir.delete() || ! dir.mkdir() ) {
+            throw new IOException("Impossible to create the temporary dir: " + dir);
+        }
+        return dir;
+    }
+
+    /**
+     * Create a dir, with its parents.
+     */
+    public static File mkdirs(File parent, String path)
+            throws IOException
+    {
+        File dir = new File(parent, path);
+        if ( ! dir.isDirectory() && ! dir.mkdirs() ) {
+            throw new IOException("Impossible to create the dir: " + dir);
+        }
+        return dir;
+    }
+
+    /**
+     * Create a file with the given content, with its parent dirs.
+     */
+    public static File write(File parent, String path, String content)
+            throws IOException
+    {
+        File file = new File(parent, path);
+        mkdirs(file.getParentFile(), ".");
+        FileOutputStream out = new FileOutputStream(file);
+        try {
+            out.write(content.getBytes("UTF-8"));
+        }
+        finally {
+            out.close();
+        }
+        return file;
+    }
+
+    /**
+     * Delete a file, or a dir recursively.
+     */
+    public static void delete(File file)
+    {
+        File[] children = file.listFiles();
+        if ( children != null ) {
+            for ( File c : children ) {
+                delete(c);
+            }
+        }
+        file.delete();
+    }
+}
+
+
+/* ------------------------------------------------------------------------ */
+/*  DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS COMMENT.               */
+/*                                                                          */
+/*  The contents of this file are subject to the Mozilla Public License     */
+/*  Version 1.0 (the "License"); you may not use this file except in        */
+/*  compliance with the License. You may obtain a copy of the License at    */
+/*  http://www.mozilla.org/MPL/.                                            */
+/*                                                                          */
+/*  Software distributed under the License is distributed on an "AS IS"     */
+/*  basis, WITHOUT WARRANTY OF ANY KIND, either express or implied.  See    */
+/*  the License for the specific language governing rights and limitations  */
+/*  under the License.                                                      */
+/*                                                                          */
+/*  The Original Code is: all this file.                                    */
+/*                                                                          */
+/*  The Initial Developer of the Original Code is Florent Georges.          */
+/*                                                                          */
+/*  Contributor(s): none.                                                   */
+/* ------------------------------------------------------------------------ */
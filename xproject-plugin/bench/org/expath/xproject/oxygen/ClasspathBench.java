@@ -0,0 +1,105 @@
+/****************************************************************************/
+/*  File:       ClasspathBench.java                                         */
+/*  Author:     F. Georges - H2O Consulting                                 */
+/*  Date:       2026-10-18                                                  */
+/*  Tags:                                                                   */
+/*      Copyright (c) 2026 Florent Georges (see end of file.)               */
+/* ------------------------------------------------------------------------ */
+
+
+package org.expath.xproject.oxygen;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+
+/**
+ * Benchmark the scan of lib/ and the class path assembly, as done by initJavaProcess().
+ *
+ * "scan" only lists and sorts the JARs (XProject.getClasspath()), "assemble"
+ * also adds them to a new Java process, with the system properties.
+ *
+ * @author Florent Georges
+ * @date   2026-10-18
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class ClasspathBench
+{
+    @Param({ "13", "100" })
+    public int jars;
+
+    @Setup
+    public void setup()
+            throws IOException
+    {
+        myRoot = BenchSupport.createTempDir("xproject-bench-lib");
+        myLib = BenchSupport.mkdirs(myRoot, "lib");
+        for ( int i = 0; i < jars; ++i ) {
+            BenchSupport.write(myLib, "lib-" + (jars - i) + ".jar", "");
+        }
+        UserMessages messages = new UserMessages(null, BenchSupport.quietLogger()).quiet();
+        myFactory = new JavaProcessFactory(null, messages);
+    }
+
+    @TearDown
+    public void tearDown()
+    {
+        BenchSupport.delete(myRoot);
+    }
+
+    @Benchmark
+    public List<String> scan()
+    {
+        return XProject.getClasspath(myLib);
+    }
+
+    @Benchmark
+    public JavaProcess assemble()
+    {
+        JavaProcess proc = myFactory.initNewProcess();
+        for ( String path : XProject.getClasspath(myLib) ) {
+            proc.addClasspathItem(path);
+        }
+        proc.addSystemProperty("org.expath.pkg.saxon.repo", myRoot.getAbsolutePath());
+        proc.addSystemProperty("org.expath.pkg.calabash.repo", myRoot.getAbsolutePath());
+        return proc;
+    }
+
+    private File myRoot;
+    private File myLib;
+    private JavaProcessFactory myFactory;
+}
+
+
+/* ------------------------------------------------------------------------ */
+/*  DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS COMMENT.               */
+/*                                                                          */
+/*  The contents of this file are subject to the Mozilla Public License     */
+/*  Version 1.0 (the "License"); you may not use this file except in        */
+/*  compliance with the License. You may obtain a copy of the License at    */
+/*  http://www.mozilla.org/MPL/.                                            */
+/*                                                                          */
+/*  Software distributed under the License is distributed on an "AS IS"     */
+/*  basis, WITHOUT WARRANTY OF ANY KIND, either express or implied.  See    */
+/*  the License for the specific language governing rights and limitations  */
+/*  under the License.                                                      */
+/*                                                                          */
+/*  The Original Code is: all this file.                                    */
+/*                                                                          */
+/*  The Initial Developer of the Original Code is Florent Georges.          */
+/*                                                                          */
+/*  Contributor(s): none.                                                   */
+/* ------------------------------------------------------------------------ */
@@ -0,0 +1,113 @@
+/****************************************************************************/
+/*  File:       GetHrefBench.java                                           */
+/*  Author:     F. Georges - H2O Consulting                                 */
+/*  Date:       2026-10-18                                                  */
+/*  Tags:                                                                   */
+/*      Copyright (c) 2026 Florent Georges (see end of file.)               */
+/* ------------------------------------------------------------------------ */
+
+
+package org.expath.xproject.oxygen;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+
+/**
+ * Benchmark the resolution of the pipelines (XProject.getHref()).
+ *
+ * "override" is a project overriding the builder pipeline, "standard" is a
+ * project using the standard one, resolved in the package repository of the
+ * plugin (a synthetic package, and the repository index is warm).
+ *
+ * @author Florent Georges
+ * @date   2026-10-18
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class GetHrefBench
+{
+    @Setup
+    public void setup()
+            throws IOException
+    {
+        myRoot = BenchSupport.createTempDir("xproject-bench-href");
+        // the plugin dir, with a repository containing the XProject package
+        File plugin = BenchSupport.mkdirs(myRoot, "plugin");
+        BenchSupport.mkdirs(plugin, "lib");
+        BenchSupport.write(plugin, "repo/xproject/expath-pkg.xml",
+                "<package xmlns='http://expath.org/ns/pkg' name='http://expath.org/ns/project'"
+                + " abbrev='xproject' version='0.5.0' spec='1.0'>\n"
+                + "   <xproc>\n"
+                + "      <import-uri>" + XProjectConstants.BUILDER_STD + "</import-uri>\n"
+                + "      <file>build.xproc</file>\n"
+                + "   </xproc>\n"
+                + "</package>\n");
+        BenchSupport.write(plugin, "repo/xproject/content/build.xproc", "<p:declare-step/>");
+        // the projects
+        File std = BenchSupport.mkdirs(myRoot, "standard");
+        BenchSupport.write(std, XProjectConstants.PRIVATE_DIR + "/" + XProjectConstants.DESCRIPTOR, "<project/>");
+        File over = BenchSupport.mkdirs(myRoot, "override");
+        BenchSupport.write(over, XProjectConstants.PRIVATE_DIR + "/" + XProjectConstants.DESCRIPTOR, "<project/>");
+        BenchSupport.write(over, XProjectConstants.PRIVATE_DIR + "/" + XProjectConstants.BUILDER_OVERRIDE, "<p:declare-step/>");
+        UserMessages messages = new UserMessages(null, BenchSupport.quietLogger()).quiet();
+        JavaProcessFactory factory = new JavaProcessFactory(null, messages);
+        myStandard = new XProject(std, messages, factory, plugin);
+        myOverride = new XProject(over, messages, factory, plugin);
+    }
+
+    @TearDown
+    public void tearDown()
+    {
+        BenchSupport.delete(myRoot);
+    }
+
+    @Benchmark
+    public String standard()
+            throws XProjectException
+    {
+        return myStandard.getHref(XProjectConstants.BUILDER_STD, XProjectConstants.BUILDER_OVERRIDE, "builder");
+    }
+
+    @Benchmark
+    public String override()
+            throws XProjectException
+    {
+        return myOverride.getHref(XProjectConstants.BUILDER_STD, XProjectConstants.BUILDER_OVERRIDE, "builder");
+    }
+
+    private File myRoot;
+    private XProject myStandard;
+    private XProject myOverride;
+}
+
+
+/* ------------------------------------------------------------------------ */
+/*  DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS COMMENT.               */
+/*                                                                          */
+/*  The contents of this file are subject to the Mozilla Public License     */
+/*  Version 1.0 (the "License"); you may not use this file except in        */
+/*  compliance with the License. You may obtain a copy of the License at    */
+/*  http://www.mozilla.org/MPL/.                                            */
+/*                                                                          */
+/*  Software distributed under the License is distributed on an "AS IS"     */
+/*  basis, WITHOUT WARRANTY OF ANY KIND, either express or implied.  See    */
+/*  the License for the specific language governing rights and limitations  */
+/*  under the License.                                                      */
+/*                                                                          */
+/*  The Original Code is: all this file.                                    */
+/*                                                                          */
+/*  The Initial Developer of the Original Code is Florent Georges.          */
+/*                                                                          */
+/*  Contributor(s): none.                                                   */
+/* ------------------------------------------------------------------------ */
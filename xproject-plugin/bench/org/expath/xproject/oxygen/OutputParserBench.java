@@ -0,0 +1,98 @@
+/****************************************************************************/
+/*  File:       OutputParserBench.java                                      */
+/*  Author:     F. Georges - H2O Consulting                                 */
+/*  Date:       2026-10-18                                                  */
+/*  Tags:                                                                   */
+/*      Copyright (c) 2026 Florent Georges (see end of file.)               */
+/* ------------------------------------------------------------------------ */
+
+
+package org.expath.xproject.oxygen;
+
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+
+/**
+ * Benchmark the parsing of the Calabash output (OutputParser).
+ *
+ * The lines are a mix of the Calabash log lines, step traces, errors,
+ * stacktraces and XSpec messages, most of them not recognized, like in a
+ * typical test run.
+ *
+ * @author Florent Georges
+ * @date   2026-10-18
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class OutputParserBench
+{
+    @Setup
+    public void setup()
+    {
+        myParser = new OutputParser(new OutputParser.Listener() {
+            public void event(OutputParser.Type type, String text) {
+                myLength += text.length();
+            }
+        });
+    }
+
+    @Benchmark
+    public int parse()
+    {
+        String line = LINES[myIndex];
+        myIndex = (myIndex + 1) % LINES.length;
+        // the XML result on stdout, the rest on stderr
+        myParser.parse(line, line.charAt(0) != '<');
+        return myLength;
+    }
+
+    /** Typical lines of Calabash output. */
+    private static final String[] LINES = {
+        "Oct 18, 2026 10:42:13 AM com.xmlcalabash.util.DefaultXProcMessageListener info",
+        "INFO: file:/home/user/projects/lib/xproject/build.xproc:42:13:Storing dist/lib-1.0.0.xar",
+        "Running p:xslt compile",
+        "<x:report xmlns:x=\"http://www.jenitennison.com/xslt/xspec\" date=\"2026-10-18\">",
+        "Testing with SAXON HE 9.4.0.6",
+        "the function lib:hello()",
+        "..with a name",
+        "      FAILED",
+        "passed: 41 / pending: 1 / failed: 1 / total: 43",
+        "SEVERE: err:XC0030: Cannot store the result",
+        "\tat com.xmlcalabash.library.Store.run(Store.java:112)",
+        "Pipeline failed: err:XC0030"
+    };
+
+    private OutputParser myParser;
+    private int myIndex;
+    /** The total length of the events text, so they are not optimized away. */
+    private int myLength;
+}
+
+
+/* ------------------------------------------------------------------------ */
+/*  DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS COMMENT.               */
+/*                                                                          */
+/*  The contents of this file are subject to the Mozilla Public License     */
+/*  Version 1.0 (the "License"); you may not use this file except in        */
+/*  compliance with the License. You may obtain a copy of the License at    */
+/*  http://www.mozilla.org/MPL/.                                            */
+/*                                                                          */
+/*  Software distributed under the License is distributed on an "AS IS"     */
+/*  basis, WITHOUT WARRANTY OF ANY KIND, either express or implied.  See    */
+/*  the License for the specific language governing rights and limitations  */
+/*  under the License.                                                      */
+/*                                                                          */
+/*  The Original Code is: all this file.                                    */
+/*                                                                          */
+/*  The Initial Developer of the Original Code is Florent Georges.          */
+/*                                                                          */
+/*  Contributor(s): none.                                                   */
+/* ------------------------------------------------------------------------ */
@@ -0,0 +1,108 @@
+/****************************************************************************/
+/*  File:       ProcListenerBench.java                                      */
+/*  Author:     F. Georges - H2O Consulting                                 */
+/*  Date:       2026-10-18                                                  */
+/*  Tags:                                                                   */
+/*      Copyright (c) 2026 Florent Georges (see end of file.)               */
+/* ------------------------------------------------------------------------ */
+
+
+package org.expath.xproject.oxygen;
+
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Group;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+
+/**
+ * Benchmark the capture of the output of a process (XProjectProcListener).
+ *
+ * A new listener is created for each iteration, so most of the lines are
+ * beyond "output.max-lines" and the capture budget, like with a verbose
+ * pipeline.  "spill" is whether the output is also written to a temporary
+ * file (option "output.spill").  The "mixed" group sends lines to stdout
+ * and stderr from two threads, like oXygen does.
+ *
+ * @author Florent Georges
+ * @date   2026-10-18
+ */
+@State(Scope.Group)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class ProcListenerBench
+{
+    @Param({ "true", "false" })
+    public boolean spill;
+
+    @Setup(Level.Iteration)
+    public void setup()
+    {
+        System.setProperty(XProjectOptions.PREFIX + "output.spill", String.valueOf(spill));
+        UserMessages messages = new UserMessages(null, BenchSupport.quietLogger()).quiet();
+        myListener = new XProject.XProjectProcListener(messages, "bench", null, null, null);
+    }
+
+    @TearDown(Level.Iteration)
+    public void tearDown()
+    {
+        // like the end of the process, to close the spill file
+        myListener.processEnded(0);
+    }
+
+    @Benchmark
+    @Group("stdout")
+    public void stdout()
+    {
+        myListener.newOutputLine(LINE);
+    }
+
+    @Benchmark
+    @Group("mixed")
+    public void mixedOut()
+    {
+        myListener.newOutputLine(LINE);
+    }
+
+    @Benchmark
+    @Group("mixed")
+    public void mixedErr()
+    {
+        myListener.newErrorLine(LINE);
+    }
+
+    /** A typical line of Calabash output. */
+    private static final String LINE
+            = "INFO: file:/home/user/projects/lib/xproject/build.xproc:42:13:Storing dist/lib-1.0.0.xar";
+
+    private XProject.XProjectProcListener myListener;
+}
+
+
+/* ------------------------------------------------------------------------ */
+/*  DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS COMMENT.               */
+/*                                                                          */
+/*  The contents of this file are subject to the Mozilla Public License     */
+/*  Version 1.0 (the "License"); you may not use this file except in        */
+/*  compliance with the License. You may obtain a copy of the License at    */
+/*  http://www.mozilla.org/MPL/.                                            */
+/*                                                                          */
+/*  Software distributed under the License is distributed on an "AS IS"     */
+/*  basis, WITHOUT WARRANTY OF ANY KIND, either express or implied.  See    */
+/*  the License for the specific language governing rights and limitations  */
+/*  under the License.                                                      */
+/*                                                                          */
+/*  The Original Code is: all this file.                                    */
+/*                                                                          */
+/*  The Initial Developer of the Original Code is Florent Georges.          */
+/*                                                                          */
+/*  Contributor(s): none.                                                   */
+/* ------------------------------------------------------------------------ */
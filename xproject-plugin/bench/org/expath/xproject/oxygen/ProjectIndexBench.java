@@ -0,0 +1,113 @@
+/****************************************************************************/
+/*  File:       ProjectIndexBench.java                                      */
+/*  Author:     F. Georges - H2O Consulting                                 */
+/*  Date:       2026-10-18                                                  */
+/*  Tags:                                                                   */
+/*      Copyright (c) 2026 Florent Georges (see end of file.)               */
+/* ------------------------------------------------------------------------ */
+
+
+package org.expath.xproject.oxygen;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+
+/**
+ * Benchmark the lookup of the project of a dir (XProjectExtension.getProjectDir()).
+ *
+ * The tree is a project dir with a chain of "depth" subdirs, the lookup is
+ * for the deepest one.  "cached" reuses the same index (the usual case,
+ * when the user edits files in the same project), "cold" walks the tree up
+ * every time (the first lookup, or when the index is stale), and "outside"
+ * walks up a tree which is not in any project, up to the root.
+ *
+ * @author Florent Georges
+ * @date   2026-10-18
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class ProjectIndexBench
+{
+    @Param({ "5", "20", "50" })
+    public int depth;
+
+    @Setup
+    public void setup()
+            throws IOException
+    {
+        myRoot = BenchSupport.createTempDir("xproject-bench-index");
+        File project = BenchSupport.mkdirs(myRoot, "project");
+        BenchSupport.write(project, XProjectConstants.PRIVATE_DIR + "/" + XProjectConstants.DESCRIPTOR, "<project/>");
+        StringBuilder path = new StringBuilder();
+        for ( int i = 0; i < depth; ++i ) {
+            path.append("dir-").append(i).append('/');
+            // some siblings, so each dir has several entries
+            BenchSupport.write(project, path + "file.xq", "()");
+        }
+        myDeepest = BenchSupport.mkdirs(project, path.toString());
+        myOutside = BenchSupport.mkdirs(myRoot, "outside/" + path);
+        myIndex = new ProjectIndex();
+    }
+
+    @TearDown
+    public void tearDown()
+    {
+        BenchSupport.delete(myRoot);
+    }
+
+    @Benchmark
+    public File cached()
+    {
+        return myIndex.getProjectDir(myDeepest);
+    }
+
+    @Benchmark
+    public File cold()
+    {
+        return new ProjectIndex().getProjectDir(myDeepest);
+    }
+
+    @Benchmark
+    public File outside()
+    {
+        return new ProjectIndex().getProjectDir(myOutside);
+    }
+
+    private File myRoot;
+    private File myDeepest;
+    private File myOutside;
+    private ProjectIndex myIndex;
+}
+
+
+/* ------------------------------------------------------------------------ */
+/*  DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS COMMENT.               */
+/*                                                                          */
+/*  The contents of this file are subject to the Mozilla Public License     */
+/*  Version 1.0 (the "License"); you may not use this file except in        */
+/*  compliance with the License. You may obtain a copy of the License at    */
+/*  http://www.mozilla.org/MPL/.                                            */
+/*                                                                          */
+/*  Software distributed under the License is distributed on an "AS IS"     */
+/*  basis, WITHOUT WARRANTY OF ANY KIND, either express or implied.  See    */
+/*  the License for the specific language governing rights and limitations  */
+/*  under the License.                                                      */
+/*                                                                          */
+/*  The Original Code is: all this file.                                    */
+/*                                                                          */
+/*  The Initial Developer of the Original Code is Florent Georges.          */
+/*                                                                          */
+/*  Contributor(s): none.                                                   */
+/* ------------------------------------------------------------------------ */
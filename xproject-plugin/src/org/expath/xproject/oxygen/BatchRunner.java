@@ -0,0 +1,224 @@
+/****************************************************************************/
+/*  File:       BatchRunner.java                                            */
+/*  Author:     F. Georges - H2O Consulting                                 */
+/*  Date:       2026-10-18                                                  */
+/*  Tags:                                                                   */
+/*      Copyright (c) 2026 Florent Georges (see end of file.)               */
+/* ------------------------------------------------------------------------ */
+
+
+package org.expath.xproject.oxygen;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Semaphore;
+import org.apache.log4j.Logger;
+import org.expath.xproject.oxygen.XProjectConstants.ProjectPhase;
+
+
+/**
+ * Run a phase on all the projects found under a root directory.
+ *
+ * A project is a dir with an xproject/ subdir (the dirs within a project
+ * are not searched further).  The phase is run by several processes at the
+ * same time, at most as many as there are processors, and as fit in the
+ * free physical memory (each process being supposed to use
+ * "batch.process-memory" MB, 512 by default).  These slots are shared by
+ * the projects run at the same time and their test shards or doc groups:
+ * as many projects as slots (or "batch.concurrency" if set), and the slots
+ * left for the shards or groups of each (see XProject.setConcurrency()).
+ *
+ * The projects are run without dialog boxes, and one summary is shown at
+ * the end, with the failed projects and the throughput (in projects per
+ * minute).  The runs are started from a background thread, and queued on
+ * their project (see ProjectQueue.enqueue()), so they do not run at the
+ * same time as the same phase started from another action on the same
+ * project, and do not cancel it either.
+ *
+ * @author Florent Georges
+ * @date   2026-10-18
+ */
+public class BatchRunner
+        implements Runnable
+{
+    public BatchRunner(File root, ProjectPhase phase, UserMessages messages, JavaProcessFactory factory, File plugin_dir)
+    {
+        myRoot = root;
+        myPhase = phase;
+        myMsg = messages;
+        myQuiet = messages.quiet();
+        myFactory = factory;
+        myPluginDir = plugin_dir;
+        myFailed = new ArrayList<String>();
+    }
+
+    /**
+     * Start the batch, on a new background thread.
+     */
+    public void start()
+    {
+        Thread t = new Thread(this, "xproject-batch");
+        t.setDaemon(true);
+        t.start();
+    }
+
+    public void run()
+    {
+        List<File> projects = new ArrayList<File>();
+        findProjects(myRoot, projects);
+        if ( projects.isEmpty() ) {
+            myMsg.error("No project found in " + myRoot);
+            return;
+        }
+        int slots = getSlots();
+        int concurrency = XProjectOptions.getInt("batch.concurrency", 0);
+        if ( concurrency <= 0 ) {
+            concurrency = Math.min(slots, projects.size());
+        }
+        // each project gets its share of the slots, for its test shards or doc groups
+        int children = Math.max(1, slots / concurrency);
+        myMsg.debug("Batch " + myPhase + " on " + projects.size() + " projects in " + myRoot + ", " + concurrency
+                + " at a time, at most " + children + " processes each");
+        Semaphore permits = new Semaphore(concurrency);
+        long start = System.currentTimeMillis();
+        try {
+            for ( File p : projects ) {
+                permits.acquire();
+                runProject(p, permits, concurrency, children);
+            }
+            // wait for the last ones
+            permits.acquire(concurrency);
+        }
+        catch ( InterruptedException ex ) {
+            myMsg.error("Batch interrupted, in " + myRoot);
+            return;
+        }
+        long time = System.currentTimeMillis() - start;
+        report(projects.size(), time);
+    }
+
+    /**
+     * Start the phase on a project, release the permit when it ended.
+     */
+    private void runProject(final File project, final Semaphore permits, int concurrency, int children)
+    {
+        final long start = System.currentTimeMillis();
+        PhaseListener done = new PhaseListener() {
+            public void phaseEnded(boolean success) {
+                long time = System.currentTimeMillis() - start;
+                myMsg.debug("Batch " + myPhase + " " + (success ? "succeeded" : "failed") + " in " + time + " ms: " + project);
+                if ( ! success ) {
+                    failed(project);
+                }
+                permits.release();
+            }
+        };
+        try {
+            XProject prj = new XProject(project, myQuiet, myFactory, myPluginDir);
+            prj.setConcurrency(concurrency, children);
+            ProjectQueue.getInstance(project).enqueue(prj, myPhase, myQuiet, done);
+        }
+        catch ( RuntimeException ex ) {
+            myQuiet.error("Error running " + myPhase + " on " + project + ": " + ex, ex);
+            done.phaseEnded(false);
+        }
+    }
+
+    private synchronized void failed(File project)
+    {
+        myFailed.add(project.getPath());
+    }
+
+    private synchronized void report(int count, long time)
+    {
+        double minutes = Math.max(time, 1) / 60000.0;
+        String throughput = String.format("%.1f", count / minutes);
+        String msg = "Batch " + myPhase + " on " + count + " projects in " + time + " ms ("
+                + throughput + " projects/min), " + myFailed.size() + " failed";
+        if ( myFailed.isEmpty() ) {
+            myMsg.info(msg);
+        }
+        else {
+            StringBuilder failed = new StringBuilder(msg).append(":");
+            for ( String f : myFailed ) {
+                failed.append("\n- ").append(f);
+            }
+            myMsg.error(failed.toString());
+        }
+    }
+
+    /**
+     * Add the projects in the dir (the dir itself, or its descendants).
+     */
+    private void findProjects(File dir, List<File> projects)
+    {
+        if ( new File(dir, XProjectConstants.PRIVATE_DIR).isDirectory() ) {
+            projects.add(dir);
+            return;
+        }
+        File[] children = dir.listFiles();
+        if ( children == null ) {
+            return;
+        }
+        for ( File c : children ) {
+            if ( c.isDirectory() && ! c.getName().startsWith(".") ) {
+                findProjects(c, projects);
+            }
+        }
+    }
+
+    /**
+     * The max number of processes run at the same time, by all the projects.
+     */
+    private int getSlots()
+    {
+        int cpus = Runtime.getRuntime().availableProcessors();
+        long free = MiscUtils.getFreePhysicalMemory();
+        if ( free <= 0 ) {
+            return cpus;
+        }
+        long per_process = XProjectOptions.getLong("batch.process-memory", 512) * 1024 * 1024;
+        int fit = (int) Math.max(1, free / per_process);
+        return Math.min(cpus, fit);
+    }
+
+    /** The root dir. */
+    private final File myRoot;
+    /** The phase to run on each project. */
+    private final ProjectPhase myPhase;
+    /** The messages, for the summary. */
+    private final UserMessages myMsg;
+    /** The messages without dialogs, for the projects. */
+    private final UserMessages myQuiet;
+    /** The java process factory. */
+    private final JavaProcessFactory myFactory;
+    /** The plugin dir. */
+    private final File myPluginDir;
+    /** The projects which failed. */
+    private final List<String> myFailed;
+
+    /** The logger for this class. */
+    private static final Logger LOG = Logger.getLogger(BatchRunner.class);
+}
+
+
+/* ------------------------------------------------------------------------ */
+/*  DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS COMMENT.               */
+/*                                                                          */
+/*  The contents of this file are subject to the Mozilla Public License     */
+/*  Version 1.0 (the "License"); you may not use this file except in        */
+/*  compliance with the License. You may obtain a copy of the License at    */
+/*  http://www.mozilla.org/MPL/.                                            */
+/*                                                                          */
+/*  Software distributed under the License is distributed on an "AS IS"     */
+/*  basis, WITHOUT WARRANTY OF ANY KIND, either express or implied.  See    */
+/*  the License for the specific language governing rights and limitations  */
+/*  under the License.                                                      */
+/*                                                                          */
+/*  The Original Code is: all this file.                                    */
+/*                                                                          */
+/*  The Initial Developer of the Original Code is Florent Georges.          */
+/*                                                                          */
+/*  Contributor(s): none.                                                   */
+/* ------------------------------------------------------------------------ */
@@ -0,0 +1,306 @@
+/****************************************************************************/
+/*  File:       BuildCache.java                                             */
+/*  Author:     F. Georges - H2O Consulting                                 */
+/*  Date:       2026-10-18                                                  */
+/*  Tags:                                                                   */
+/*      Copyright (c) 2026 Florent Georges (see end of file.)               */
+/* ------------------------------------------------------------------------ */
+
+
+package org.expath.xproject.oxygen;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import org.apache.log4j.Logger;
+
+
+/**
+ * A local cache of the built XAR files, keyed by the content of their inputs.
+ *
+ * The key is a digest of the build inputs (see BuildManifest.getDigest()),
+ * of the builder pipeline and of the versions of the packages in the
+ * repository.  Each entry is a dir in ~/.xproject/cache/, named after the
+ * key, containing the XAR files of the build.  When a build has the same
+ * key as an entry, the XAR files are copied back to dist/ instead of
+ * running the builder (e.g. after switching back to a branch).
+ *
+ * The total size of the cache is bounded by the option "cache.max-size",
+ * in MB (default 512).  Beyond that, the least recently used entries are
+ * removed.  The hits and misses are counted in the file "stats" in the
+ * cache dir, across runs.
+ *
+ * @author Florent Georges
+ * @date   2026-10-18
+ */
+public class BuildCache
+{
+    public BuildCache(File dir)
+    {
+        myDir = dir;
+        myMaxSize = XProjectOptions.getLong("cache.max-size", 512) * 1024 * 1024;
+    }
+
+    /**
+     * Whether the build cache is enabled, by the option "cache" (default true).
+     */
+    public static boolean isEnabled()
+    {
+        return XProjectOptions.getBoolean("cache", true);
+    }
+
+    /**
+     * Return the key for a build, from its inputs digest, its pipeline and the repository packages.
+     */
+    public static String getKey(String digest, String pipeline, List<String> packages)
+    {
+        List<String> sorted = new ArrayList<String>(packages);
+        Collections.sort(sorted);
+        StringBuilder content = new StringBuilder(digest);
+        content.append('\n').append(pipeline);
+        for ( String p : sorted ) {
+            content.append('\n').append(p);
+        }
+        return BuildManifest.hash(content.toString());
+    }
+
+    /**
+     * Copy the XAR files of the entry to the dist dir, return false if no entry.
+     */
+    public boolean restore(String key, File dist)
+    {
+        File entry = new File(myDir, key);
+        File[] xars = entry.listFiles();
+        if ( xars == null || xars.length == 0 ) {
+            count(false);
+            return false;
+        }
+        try {
+            for ( File x : xars ) {
+                MiscUtils.copyFile(x, new File(dist, x.getName()));
+            }
+        }
+        catch ( IOException ex ) {
+            LOG.warn("Error restoring the build cache entry " + entry + ", ignore it", ex);
+            count(false);
+            return false;
+        }
+        // the last use, for the eviction
+        entry.setLastModified(System.currentTimeMillis());
+        count(true);
+        return true;
+    }
+
+    /**
+     * Add the XAR files of the dist dir modified since the given time, as the entry for the key.
+     */
+    public void store(String key, File dist, long since)
+    {
+        File[] files = dist.listFiles();
+        if ( files == null ) {
+            return;
+        }
+        File entry = new File(myDir, key);
+        File tmp = new File(myDir, ".tmp-" + key + "-" + System.nanoTime());
+        try {
+            int count = 0;
+            for ( File f : files ) {
+                // modification times can have a precision of 1 sec
+                if ( f.getName().endsWith(".xar") && f.lastModified() >= since - 1000 ) {
+                    MiscUtils.copyFile(f, new File(tmp, f.getName()));
+                    ++count;
+                }
+            }
+            if ( count == 0 ) {
+                LOG.debug("No XAR built, nothing to add to the build cache");
+                return;
+            }
+            // another process may have stored the same entry meanwhile
+            if ( ! entry.exists() && ! tmp.renameTo(entry) ) {
+                LOG.warn("Error adding the build cache entry " + entry);
+            }
+        }
+        catch ( IOException ex ) {
+            LOG.warn("Error adding the build cache entry " + entry, ex);
+        }
+        finally {
+            delete(tmp);
+        }
+        evict();
+    }
+
+    /**
+     * Return the statistics of the cache, to be logged.
+     */
+    public String getStats()
+    {
+        synchronized ( BuildCache.class ) {
+            long[] stats = loadStats();
+            long total = stats[0] + stats[1];
+            long rate = total == 0 ? 0 : stats[0] * 100 / total;
+            return "hits: " + stats[0] + ", misses: " + stats[1] + ", hit rate: " + rate + "%";
+        }
+    }
+
+    /**
+     * Remove the least recently used entries, until the cache is within its max size.
+     */
+    private void evict()
+    {
+        File[] entries = myDir.listFiles();
+        if ( entries == null ) {
+            return;
+        }
+        List<File> sorted = new ArrayList<File>();
+        long total = 0;
+        for ( File e : entries ) {
+            if ( e.isDirectory() && ! e.getName().startsWith(".") ) {
+                sorted.add(e);
+                total += getSize(e);
+            }
+        }
+        Collections.sort(sorted, new Comparator<File>() {
+            public int compare(File f1, File f2) {
+                long m1 = f1.lastModified();
+                long m2 = f2.lastModified();
+                return m1 < m2 ? -1 : m1 > m2 ? 1 : 0;
+            }
+        });
+        for ( File e : sorted ) {
+            if ( total <= myMaxSize ) {
+                break;
+            }
+            long size = getSize(e);
+            delete(e);
+            total -= size;
+            LOG.debug("Build cache entry evicted: " + e.getName() + " (" + size + " bytes)");
+        }
+    }
+
+    /**
+     * Count a hit or a miss, in the stats file.
+     */
+    private void count(boolean hit)
+    {
+        synchronized ( BuildCache.class ) {
+            long[] stats = loadStats();
+            ++stats[hit ? 0 : 1];
+            if ( ! myDir.isDirectory() && ! myDir.mkdirs() ) {
+                LOG.warn("Impossible to create the build cache dir: " + myDir);
+                return;
+            }
+            File file = new File(myDir, STATS);
+            try {
+                Writer out = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(file), "UTF-8"));
+                try {
+                    out.write(stats[0] + "\t" + stats[1] + "\n");
+                }
+                finally {
+                    out.close();
+                }
+            }
+            catch ( IOException ex ) {
+                LOG.warn("Error writing the build cache stats: " + file, ex);
+            }
+        }
+    }
+
+    /**
+     * Return the hits and the misses.
+     */
+    private long[] loadStats()
+    {
+        long[] stats = new long[2];
+        File file = new File(myDir, STATS);
+        if ( ! file.isFile() ) {
+            return stats;
+        }
+        try {
+            BufferedReader in = new BufferedReader(new InputStreamReader(new FileInputStream(file), "UTF-8"));
+            try {
+                String[] fields = String.valueOf(in.readLine()).split("\t");
+                if ( fields.length == 2 ) {
+                    stats[0] = Long.parseLong(fields[0]);
+                    stats[1] = Long.parseLong(fields[1]);
+                }
+            }
+            finally {
+                in.close();
+            }
+        }
+        catch ( IOException ex ) {
+            LOG.warn("Error reading the build cache stats, reset them: " + file, ex);
+        }
+        catch ( NumberFormatException ex ) {
+            LOG.warn("Invalid build cache stats, reset them: " + file, ex);
+            Arrays.fill(stats, 0);
+        }
+        return stats;
+    }
+
+    private static long getSize(File dir)
+    {
+        long size = 0;
+        File[] files = dir.listFiles();
+        if ( files != null ) {
+            for ( File f : files ) {
+                size += f.length();
+            }
+        }
+        return size;
+    }
+
+    private static void delete(File dir)
+    {
+        File[] files = dir.listFiles();
+        if ( files != null ) {
+            for ( File f : files ) {
+                f.delete();
+            }
+        }
+        dir.delete();
+    }
+
+    /** The name of the stats file, in the cache dir. */
+    private static final String STATS = "stats";
+
+    /** The cache dir. */
+    private final File myDir;
+    /** The max total size of the entries, in bytes. */
+    private final long myMaxSize;
+
+    /** The logger for this class. */
+    private static final Logger LOG = Logger.getLogger(BuildCache.class);
+}
+
+
+/* ------------------------------------------------------------------------ */
+/*  DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS COMMENT.               */
+/*                                                                          */
+/*  The contents of this file are subject to the Mozilla Public License     */
+/*  Version 1.0 (the "License"); you may not use this file except in        */
+/*  compliance with the License. You may obtain a copy of the License at    */
+/*  http://www.mozilla.org/MPL/.                                            */
+/*                                                                          */
+/*  Software distributed under the License is distributed on an "AS IS"     */
+/*  basis, WITHOUT WARRANTY OF ANY KIND, either express or implied.  See    */
+/*  the License for the specific language governing rights and limitations  */
+/*  under the License.                                                      */
+/*                                                                          */
+/*  The Original Code is: all this file.                                    */
+/*                                                                          */
+/*  The Initial Developer of the Original Code is Florent Georges.          */
+/*                                                                          */
+/*  Contributor(s): none.                                                   */
+/* ------------------------------------------------------------------------ */
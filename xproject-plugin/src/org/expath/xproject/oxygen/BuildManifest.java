@@ -0,0 +1,411 @@
+/****************************************************************************/
+/*  File:       BuildManifest.java                                          */
+/*  Author:     F. Georges - H2O Consulting                                 */
+/*  Date:       2026-10-18                                                  */
+/*  Tags:                                                                   */
+/*      Copyright (c) 2026 Florent Georges (see end of file.)               */
+/* ------------------------------------------------------------------------ */
+
+
+package org.expath.xproject.oxygen;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.UnsupportedEncodingException;
+import java.io.Writer;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import org.apache.log4j.Logger;
+
+
+/**
+ * The content hashes of the inputs of a build, to skip it when nothing changed.
+ *
+ * The inputs are the project descriptor, the files in src/ and the override
+ * pipelines and stylesheets in xproject/, as well as a free stamp (e.g. the
+ * stamp of the package providing the standard builder).  The manifest of the
+ * last successful build is stored in xproject/.build-manifest.
+ *
+ * Only the files the modification time or size of which changed since the
+ * last manifest are read again, in parallel.  The others reuse their hash
+ * from the last manifest.
+ *
+ * @author Florent Georges
+ * @date   2026-10-18
+ */
+public class BuildManifest
+{
+    /**
+     * Compute the manifest of the project, using the last one for unchanged files.
+     */
+    public BuildManifest(File project, String stamp)
+            throws XProjectException
+    {
+        myProject = project;
+        myFile = new File(project, XProjectConstants.PRIVATE_DIR + "/" + FILE_NAME);
+        myStamp = stamp;
+        myPrevious = load();
+        myEntries = compute();
+    }
+
+    /**
+     * Whether the manifest is the same as the last one, and the dist/ dir has a XAR.
+     */
+    public boolean isUpToDate()
+    {
+        if ( myPrevious == null || ! myStamp.equals(myPreviousStamp) ) {
+            return false;
+        }
+        if ( ! myEntries.equals(myPrevious) ) {
+            return false;
+        }
+        File[] dist = new File(myProject, "dist/").listFiles();
+        if ( dist != null ) {
+            for ( File f : dist ) {
+                if ( f.getName().endsWith(".xar") ) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    /**
+     * The digest of the inputs: the stamp, and the paths and hashes of the files.
+     *
+     * Unlike the manifest, it does not depend on the modification times, so
+     * it is the same for the same content (e.g. after switching branches).
+     */
+    public String getDigest()
+    {
+        StringBuilder content = new StringBuilder(myStamp);
+        for ( Map.Entry<String, Entry> e : myEntries.entrySet() ) {
+            content.append('\n').append(e.getKey()).append('\t').append(e.getValue().hash);
+        }
+        return hash(content.toString());
+    }
+
+    /**
+     * The number of files read, i.e. the files which changed since the last manifest.
+     */
+    public int getHashed()
+    {
+        return myHashed;
+    }
+
+    /**
+     * The number of files in the manifest.
+     */
+    public int getSize()
+    {
+        return myEntries.size();
+    }
+
+    /**
+     * Save the manifest, to be used by the next build.
+     */
+    public void save()
+            throws XProjectException
+    {
+        try {
+            Writer out = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(myFile), "UTF-8"));
+            try {
+                out.write(STAMP_LINE + myStamp + "\n");
+                for ( Map.Entry<String, Entry> e : myEntries.entrySet() ) {
+                    Entry entry = e.getValue();
+                    out.write(entry.mtime + "\t" + entry.size + "\t" + entry.hash + "\t" + e.getKey() + "\n");
+                }
+            }
+            finally {
+                out.close();
+            }
+        }
+        catch ( IOException ex ) {
+            throw new XProjectException("Error saving the build manifest: " + myFile, ex);
+        }
+    }
+
+    /**
+     * Load the last manifest, return null if there is none (or it is not readable).
+     */
+    private Map<String, Entry> load()
+    {
+        if ( ! myFile.isFile() ) {
+            return null;
+        }
+        Map<String, Entry> entries = new TreeMap<String, Entry>();
+        try {
+            BufferedReader in = new BufferedReader(new InputStreamReader(new FileInputStream(myFile), "UTF-8"));
+            try {
+                String line;
+                while ( (line = in.readLine()) != null ) {
+                    if ( line.startsWith(STAMP_LINE) ) {
+                        myPreviousStamp = line.substring(STAMP_LINE.length());
+                        continue;
+                    }
+                    String[] fields = line.split("\t", 4);
+                    if ( fields.length != 4 ) {
+                        LOG.warn("Invalid line in the build manifest, ignore it: " + myFile);
+                        return null;
+                    }
+                    Entry entry = new Entry(Long.parseLong(fields[0]), Long.parseLong(fields[1]), fields[2]);
+                    entries.put(fields[3], entry);
+                }
+            }
+            finally {
+                in.close();
+            }
+        }
+        catch ( IOException ex ) {
+            LOG.warn("Error reading the build manifest, ignore it: " + myFile, ex);
+            return null;
+        }
+        catch ( NumberFormatException ex ) {
+            LOG.warn("Invalid build manifest, ignore it: " + myFile, ex);
+            return null;
+        }
+        return entries;
+    }
+
+    /**
+     * Compute the entries, reusing the hash of the files which did not change.
+     */
+    private Map<String, Entry> compute()
+            throws XProjectException
+    {
+        // the input files, keyed by their path relative to the project dir
+        Map<String, File> files = new TreeMap<String, File>();
+        String priv = XProjectConstants.PRIVATE_DIR + "/";
+        addFile(files, priv + XProjectConstants.DESCRIPTOR);
+        addFile(files, priv + XProjectConstants.BUILDER_OVERRIDE);
+        addFile(files, priv + XProjectConstants.TESTER_OVERRIDE);
+        addFile(files, priv + XProjectConstants.DOCER_OVERRIDE);
+        addFile(files, priv + XProjectConstants.RELEASER_OVERRIDE);
+        addDir(files, "src/", new File(myProject, "src"));
+        // reuse or compute the hashes
+        Map<String, Entry> entries = new TreeMap<String, Entry>();
+        Map<String, Future<String>> hashes = new HashMap<String, Future<String>>();
+        ExecutorService pool = null;
+        for ( Map.Entry<String, File> f : files.entrySet() ) {
+            File file = f.getValue();
+            long mtime = file.lastModified();
+            long size = file.length();
+            Entry last = myPrevious == null ? null : myPrevious.get(f.getKey());
+            if ( last != null && last.mtime == mtime && last.size == size ) {
+                entries.put(f.getKey(), last);
+            }
+            else {
+                if ( pool == null ) {
+                    pool = Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors());
+                }
+                hashes.put(f.getKey(), pool.submit(new Hasher(file)));
+                entries.put(f.getKey(), new Entry(mtime, size, null));
+            }
+        }
+        myHashed = hashes.size();
+        if ( pool == null ) {
+            return entries;
+        }
+        try {
+            for ( Map.Entry<String, Future<String>> h : hashes.entrySet() ) {
+                entries.get(h.getKey()).hash = h.getValue().get();
+            }
+        }
+        catch ( InterruptedException ex ) {
+            Thread.currentThread().interrupt();
+            throw new XProjectException("Interrupted while hashing the project files", ex);
+        }
+        catch ( ExecutionException ex ) {
+            throw new XProjectException("Error hashing the project files", ex.getCause());
+        }
+        finally {
+            pool.shutdownNow();
+        }
+        return entries;
+    }
+
+    private void addFile(Map<String, File> files, String path)
+    {
+        File f = new File(myProject, path);
+        if ( f.isFile() ) {
+            files.put(path, f);
+        }
+    }
+
+    private void addDir(Map<String, File> files, String path, File dir)
+    {
+        File[] children = dir.listFiles();
+        if ( children == null ) {
+            return;
+        }
+        for ( File c : children ) {
+            if ( c.isDirectory() ) {
+                addDir(files, path + c.getName() + "/", c);
+            }
+            else {
+                files.put(path + c.getName(), c);
+            }
+        }
+    }
+
+    /**
+     * The SHA-1 of a file, as an hexadecimal string.
+     */
+    static String hash(File file)
+            throws IOException
+    {
+        MessageDigest digest = newDigest();
+        InputStream in = new FileInputStream(file);
+        try {
+            byte[] buf = new byte[8192];
+            int read;
+            while ( (read = in.read(buf)) > 0 ) {
+                digest.update(buf, 0, read);
+            }
+        }
+        finally {
+            in.close();
+        }
+        return toHex(digest);
+    }
+
+    /**
+     * The SHA-1 of a string (encoded in UTF-8), as an hexadecimal string.
+     */
+    static String hash(String value)
+    {
+        MessageDigest digest = newDigest();
+        try {
+            digest.update(value.getBytes("UTF-8"));
+        }
+        catch ( UnsupportedEncodingException ex ) {
+            throw new IllegalStateException("UTF-8 is not supported", ex);
+        }
+        return toHex(digest);
+    }
+
+    private static MessageDigest newDigest()
+    {
+        try {
+            return MessageDigest.getInstance("SHA-1");
+        }
+        catch ( NoSuchAlgorithmException ex ) {
+            throw new IllegalStateException("SHA-1 is not supported", ex);
+        }
+    }
+
+    private static String toHex(MessageDigest digest)
+    {
+        StringBuilder hex = new StringBuilder();
+        for ( byte b : digest.digest() ) {
+            hex.append(Character.forDigit((b >> 4) & 0xF, 16));
+            hex.append(Character.forDigit(b & 0xF, 16));
+        }
+        return hex.toString();
+    }
+
+    /**
+     * Compute the hash of a file, on a thread of the pool.
+     */
+    private static class Hasher
+            implements Callable<String>
+    {
+        public Hasher(File file) {
+            myFile = file;
+        }
+
+        public String call() throws IOException {
+            return hash(myFile);
+        }
+
+        private final File myFile;
+    }
+
+    /**
+     * The modification time, size and hash of a file.
+     */
+    private static class Entry
+    {
+        public Entry(long mtime, long size, String hash) {
+            this.mtime = mtime;
+            this.size = size;
+            this.hash = hash;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if ( ! (o instanceof Entry) ) {
+                return false;
+            }
+            return hash.equals(((Entry) o).hash);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash.hashCode();
+        }
+
+        public final long mtime;
+        public final long size;
+        public String hash;
+    }
+
+    /** The name of the manifest file, in xproject/. */
+    private static final String FILE_NAME = ".build-manifest";
+    /** The prefix of the line containing the stamp, in the manifest file. */
+    private static final String STAMP_LINE = "#stamp: ";
+
+    /** The project dir. */
+    private final File myProject;
+    /** The manifest file. */
+    private final File myFile;
+    /** The free stamp. */
+    private final String myStamp;
+    /** The stamp of the last manifest. */
+    private String myPreviousStamp;
+    /** The entries of the last manifest, or null. */
+    private final Map<String, Entry> myPrevious;
+    /** The entries, keyed by path relative to the project dir. */
+    private final Map<String, Entry> myEntries;
+    /** The number of files read. */
+    private int myHashed;
+
+    /** The logger for this class. */
+    private static final Logger LOG = Logger.getLogger(BuildManifest.class);
+}
+
+
+/* ------------------------------------------------------------------------ */
+/*  DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS COMMENT.               */
+/*                                                                          */
+/*  The contents of this file are subject to the Mozilla Public License     */
+/*  Version 1.0 (the "License"); you may not use this file except in        */
+/*  compliance with the License. You may obtain a copy of the License at    */
+/*  http://www.mozilla.org/MPL/.                                            */
+/*                                                                          */
+/*  Software distributed under the License is distributed on an "AS IS"     */
+/*  basis, WITHOUT WARRANTY OF ANY KIND, either express or implied.  See    */
+/*  the License for the specific language governing rights and limitations  */
+/*  under the License.                                                      */
+/*                                                                          */
+/*  The Original Code is: all this file.                                    */
+/*                                                                          */
+/*  The Initial Developer of the Original Code is Florent Georges.          */
+/*                                                                          */
+/*  Contributor(s): none.                                                   */
+/* ------------------------------------------------------------------------ */
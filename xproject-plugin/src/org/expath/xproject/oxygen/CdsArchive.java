@@ -0,0 +1,307 @@
+/****************************************************************************/
+/*  File:       CdsArchive.java                                             */
+/*  Author:     F. Georges - H2O Consulting                                 */
+/*  Date:       2026-10-18                                                  */
+/*  Tags:                                                                   */
+/*      Copyright (c) 2026 Florent Georges (see end of file.)               */
+/* ------------------------------------------------------------------------ */
+
+
+package org.expath.xproject.oxygen;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.UnsupportedEncodingException;
+import java.io.Writer;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import org.apache.log4j.Logger;
+
+
+/**
+ * The class-data-sharing archives for the child JVMs.
+ *
+ * Most of the startup time of a child JVM is spent loading the classes of
+ * Calabash, Saxon and the EXPath Packaging, from the JARs in lib/.  An
+ * AppCDS archive is generated for each class path (the name of the archive
+ * is a hash of the Java version and of the path, modification time and size
+ * of each JAR, so a change in lib/ means a new archive).  It is stored in
+ * ~/.xproject/cds/.
+ *
+ * The archive is generated in the background the first time, by running a
+ * small training pipeline with -XX:ArchiveClassesAtExit (so it requires
+ * Java 13 or later).  The processes started in the meantime do not use an
+ * archive.  The training pipeline is then run again with and without the
+ * archive, to log the startup time in both cases.
+ *
+ * As the training pipeline is trivial, the archive only contains the
+ * classes to start Calabash and Saxon, not the ones of the XProject
+ * pipelines, and no gain has been measured on the phases yet (see the
+ * README).  So it is disabled by default.
+ *
+ * @author Florent Georges
+ * @date   2026-10-18
+ */
+public class CdsArchive
+{
+    /**
+     * Package-visibility, intended to be used only by JavaProcessFactory.
+     */
+    CdsArchive(File dir, UserMessages messages)
+    {
+        myDir = dir;
+        myMessages = messages;
+        myPending = new HashSet<String>();
+    }
+
+    /**
+     * Whether class-data-sharing archives are enabled and supported.
+     *
+     * They are enabled by the option "cds" (default false), and the child
+     * JVMs are run by the same Java as oXygen, which must be 13 or later.
+     */
+    public static boolean isEnabled()
+    {
+        return XProjectOptions.getBoolean("cds", false) && MiscUtils.getJavaVersion() >= 13;
+    }
+
+    /**
+     * Return the Java argument to use the archive for the class path, or null.
+     *
+     * If the archive does not exist yet, its generation is started in the
+     * background, and null is returned.  The training runs only use the
+     * system properties of the given Java arguments (e.g. for the
+     * repository), not the heap, GC or GC log arguments of a phase.
+     */
+    public synchronized String getJavaArgument(List<String> classpath, List<String> java_args)
+    {
+        String key = getKey(classpath);
+        File archive = new File(myDir, key + ".jsa");
+        if ( archive.isFile() ) {
+            return "-XX:SharedArchiveFile=" + archive.getAbsolutePath();
+        }
+        if ( myPending.add(key) ) {
+            Thread t = new Thread(new Generator(archive, classpath, java_args), "xproject-cds");
+            t.setDaemon(true);
+            t.start();
+        }
+        return null;
+    }
+
+    /**
+     * The key of a class path, a hash of the Java version and of its files.
+     */
+    private String getKey(List<String> classpath)
+    {
+        StringBuilder key = new StringBuilder();
+        key.append(System.getProperty("java.home")).append('|');
+        key.append(System.getProperty("java.vm.version")).append('|');
+        for ( String item : classpath ) {
+            key.append(item).append('@').append(MiscUtils.getStamp(new File(item))).append('|');
+        }
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-1");
+            StringBuilder hex = new StringBuilder();
+            for ( byte b : digest.digest(key.toString().getBytes("UTF-8")) ) {
+                hex.append(Character.forDigit((b >> 4) & 0xF, 16));
+                hex.append(Character.forDigit(b & 0xF, 16));
+            }
+            return hex.toString();
+        }
+        catch ( NoSuchAlgorithmException ex ) {
+            throw new IllegalStateException("SHA-1 is not supported", ex);
+        }
+        catch ( UnsupportedEncodingException ex ) {
+            throw new IllegalStateException("UTF-8 is not supported", ex);
+        }
+    }
+
+    /**
+     * Generate an archive, then compare the startup time with and without it.
+     */
+    private class Generator
+            implements Runnable
+    {
+        public Generator(File archive, List<String> classpath, List<String> java_args) {
+            myArchive = archive;
+            myClasspath = new ArrayList<String>(classpath);
+            myJavaArgs = new ArrayList<String>();
+            for ( String arg : java_args ) {
+                if ( arg.startsWith("-D") ) {
+                    myJavaArgs.add(arg);
+                }
+            }
+        }
+
+        public void run() {
+            try {
+                if ( ! myDir.isDirectory() && ! myDir.mkdirs() ) {
+                    throw new IOException("Impossible to create the CDS dir: " + myDir);
+                }
+                File training = getTrainingPipeline();
+                File tmp = new File(myDir, myArchive.getName() + ".tmp");
+                long time = runTraining(training, "-XX:ArchiveClassesAtExit=" + tmp.getAbsolutePath());
+                if ( time < 0 || ! tmp.isFile() ) {
+                    LOG.warn("The CDS archive has not been generated: " + myArchive);
+                    return;
+                }
+                if ( ! tmp.renameTo(myArchive) ) {
+                    LOG.warn("Impossible to rename the CDS archive: " + tmp);
+                    return;
+                }
+                long without = runTraining(training, "-Xshare:auto");
+                long with = runTraining(training, "-XX:SharedArchiveFile=" + myArchive.getAbsolutePath());
+                myMessages.debug("CDS archive generated in " + time + " ms: " + myArchive);
+                myMessages.debug("Child JVM startup without the CDS archive: " + without + " ms, with it: " + with + " ms");
+            }
+            catch ( IOException ex ) {
+                LOG.warn("Error generating the CDS archive: " + myArchive, ex);
+            }
+            catch ( InterruptedException ex ) {
+                LOG.warn("Interrupted while generating the CDS archive: " + myArchive);
+            }
+        }
+
+        /**
+         * Run the training pipeline with the Java argument, return the time or -1 if it failed.
+         */
+        private long runTraining(File training, String cds_arg)
+                throws IOException, InterruptedException
+        {
+            List<String> command = new ArrayList<String>();
+            File java = new File(System.getProperty("java.home"), "bin/java");
+            command.add(java.getAbsolutePath());
+            command.add(cds_arg);
+            command.addAll(myJavaArgs);
+            command.add("-cp");
+            StringBuilder cp = new StringBuilder();
+            for ( String item : myClasspath ) {
+                if ( cp.length() > 0 ) {
+                    cp.append(File.pathSeparator);
+                }
+                cp.append(item);
+            }
+            command.add(cp.toString());
+            command.add("com.xmlcalabash.drivers.Main");
+            command.add(training.getAbsolutePath());
+            long start = System.currentTimeMillis();
+            ProcessBuilder builder = new ProcessBuilder(command);
+            builder.redirectErrorStream(true);
+            Process proc = builder.start();
+            proc.getOutputStream().close();
+            BufferedReader out = new BufferedReader(new InputStreamReader(proc.getInputStream()));
+            String line;
+            while ( (line = out.readLine()) != null ) {
+                LOG.debug("CDS training: " + line);
+            }
+            int code = proc.waitFor();
+            long time = System.currentTimeMillis() - start;
+            if ( code != 0 ) {
+                LOG.warn("The CDS training pipeline failed (" + code + "), with " + cds_arg);
+                return -1;
+            }
+            return time;
+        }
+
+        /**
+         * Write the training pipeline in the CDS dir, if not there yet.
+         *
+         * It compiles and runs a stylesheet, to load the classes used by
+         * most of the XProject pipelines.  It is written to a temporary file
+         * then renamed, as several generators (for several class paths, or
+         * in several oXygen instances) can write it at the same time.
+         */
+        private File getTrainingPipeline()
+                throws IOException
+        {
+            File training = new File(myDir, "training.xproc");
+            if ( training.isFile() ) {
+                return training;
+            }
+            File tmp = File.createTempFile("training-", ".tmp", myDir);
+            try {
+                Writer out = new OutputStreamWriter(new FileOutputStream(tmp), "UTF-8");
+                try {
+                    out.write(TRAINING);
+                }
+                finally {
+                    out.close();
+                }
+                // if it fails, another generator renamed its own in the meantime
+                if ( ! tmp.renameTo(training) && ! training.isFile() ) {
+                    throw new IOException("Impossible to rename the training pipeline: " + tmp);
+                }
+            }
+            finally {
+                tmp.delete();
+            }
+            return training;
+        }
+
+        private final File myArchive;
+        private final List<String> myClasspath;
+        private final List<String> myJavaArgs;
+    }
+
+    /** The training pipeline. */
+    private static final String TRAINING =
+          "<p:declare-step xmlns:p=\"http://www.w3.org/ns/xproc\" version=\"1.0\">\n"
+        + "   <p:input port=\"source\">\n"
+        + "      <p:inline><doc><elem>training</elem></doc></p:inline>\n"
+        + "   </p:input>\n"
+        + "   <p:output port=\"result\"/>\n"
+        + "   <p:xslt>\n"
+        + "      <p:input port=\"stylesheet\">\n"
+        + "         <p:inline>\n"
+        + "            <xsl:stylesheet xmlns:xsl=\"http://www.w3.org/1999/XSL/Transform\" version=\"2.0\">\n"
+        + "               <xsl:template match=\"/\">\n"
+        + "                  <result count=\"{ count(//*) }\"/>\n"
+        + "               </xsl:template>\n"
+        + "            </xsl:stylesheet>\n"
+        + "         </p:inline>\n"
+        + "      </p:input>\n"
+        + "      <p:input port=\"parameters\">\n"
+        + "         <p:empty/>\n"
+        + "      </p:input>\n"
+        + "   </p:xslt>\n"
+        + "</p:declare-step>\n";
+
+    /** The dir where to store the archives. */
+    private final File myDir;
+    /** The way to report the startup times. */
+    private final UserMessages myMessages;
+    /** The keys of the archives being generated. */
+    private final Set<String> myPending;
+
+    /** The logger for this class. */
+    private static final Logger LOG = Logger.getLogger(CdsArchive.class);
+}
+
+
+/* ------------------------------------------------------------------------ */
+/*  DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS COMMENT.               */
+/*                                                                          */
+/*  The contents of this file are subject to the Mozilla Public License     */
+/*  Version 1.0 (the "License"); you may not use this file except in        */
+/*  compliance with the License. You may obtain a copy of the License at    */
+/*  http://www.mozilla.org/MPL/.                                            */
+/*                                                                          */
+/*  Software distributed under the License is distributed on an "AS IS"     */
+/*  basis, WITHOUT WARRANTY OF ANY KIND, either express or implied.  See    */
+/*  the License for the specific language governing rights and limitations  */
+/*  under the License.                                                      */
+/*                                                                          */
+/*  The Original Code is: all this file.                                    */
+/*                                                                          */
+/*  The Initial Developer of the Original Code is Florent Georges.          */
+/*                                                                          */
+/*  Contributor(s): none.                                                   */
+/* ------------------------------------------------------------------------ */
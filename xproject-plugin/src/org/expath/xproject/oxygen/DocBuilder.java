@@ -0,0 +1,780 @@
+/****************************************************************************/
+/*  File:       DocBuilder.java                                             */
+/*  Author:     F. Georges - H2O Consulting                                 */
+/*  Date:       2026-10-18                                                  */
+/*  Tags:                                                                   */
+/*      Copyright (c) 2026 Florent Georges (see end of file.)               */
+/* ------------------------------------------------------------------------ */
+
+
+package org.expath.xproject.oxygen;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.StringReader;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import javax.xml.parsers.DocumentBuilder;
+import javax.xml.parsers.DocumentBuilderFactory;
+import javax.xml.parsers.ParserConfigurationException;
+import javax.xml.transform.OutputKeys;
+import javax.xml.transform.Transformer;
+import javax.xml.transform.TransformerException;
+import javax.xml.transform.TransformerFactory;
+import javax.xml.transform.dom.DOMSource;
+import javax.xml.transform.stream.StreamResult;
+import org.apache.log4j.Logger;
+import org.w3c.dom.Document;
+import org.w3c.dom.DocumentType;
+import org.w3c.dom.Element;
+import org.w3c.dom.Node;
+import org.w3c.dom.NodeList;
+import org.xml.sax.EntityResolver;
+import org.xml.sax.InputSource;
+import org.xml.sax.SAXException;
+
+
+/**
+ * Generate the xqdoc documentation of the modules which changed only.
+ *
+ * A module is documented again if its source changed, or if the signature
+ * (the namespace and the function and variable declarations) of a module
+ * it imports changed.  The dependencies are given by the dependency graph
+ * of the project, see TestImpact.
+ *
+ * The modules to document are split in groups, each one copied in its own
+ * dir in xproject/.doc-stage/, and documented by the pipeline
+ * doc-modules.xproc (the groups can run in parallel).  When all the groups
+ * ended, merge() copies the generated files to dist/xqdoc/, removes the
+ * files of the modules which do not exist anymore, and patches the index
+ * generated by the pipeline: the entry of each module (the list item or
+ * table row linking to its files) is taken from the index of its group if
+ * it was documented again, or from the previous index otherwise, in the
+ * order of the manifest (xproject/.doc-manifest).  No module is parsed.
+ *
+ * @author Florent Georges
+ * @date   2026-10-18
+ */
+public class DocBuilder
+{
+    public DocBuilder(File project, File desc)
+    {
+        myProject = project;
+        myDesc = desc;
+        File priv = new File(project, XProjectConstants.PRIVATE_DIR);
+        myDir = new File(priv, ".doc-stage");
+        myManifestFile = new File(priv, ".doc-manifest");
+        myDist = new File(project, "dist/xqdoc");
+        myGroups = new ArrayList<Group>();
+        myRemoved = new ArrayList<Entry>();
+    }
+
+    /**
+     * Find the modules to document, and write the group documents (returned).
+     *
+     * At most max groups.  Return an empty list if there is no module to
+     * document (either everything is up to date, or modules were removed
+     * only, see isUpToDate()).
+     */
+    public List<File> plan(int max)
+            throws XProjectException
+    {
+        TestImpact graph = new TestImpact(myProject, myDesc);
+        graph.update(Collections.<File>emptyList());
+        Map<String, List<String>> deps = graph.getDependencies();
+        Map<String, Entry> previous = loadManifest();
+        if ( ! new File(myDist, "index.html").isFile() ) {
+            // the entries of the index come from the previous one
+            previous.clear();
+        }
+        myEntries = new TreeMap<String, Entry>();
+        Set<String> redo = new HashSet<String>();
+        Set<String> signatures = new HashSet<String>();
+        for ( String path : deps.keySet() ) {
+            if ( ! path.startsWith("src/") || ! XQUERY.matcher(path).matches() ) {
+                continue;
+            }
+            File f = new File(myProject, path);
+            String stamp = MiscUtils.getStamp(f);
+            Entry old = previous.get(path);
+            if ( old != null && old.stamp.equals(stamp) ) {
+                myEntries.put(path, old);
+                continue;
+            }
+            Entry e = scan(f, path, stamp);
+            if ( old != null ) {
+                e.outputs.addAll(old.outputs);
+            }
+            if ( old == null || ! old.signature.equals(e.signature) ) {
+                signatures.add(path);
+            }
+            myEntries.put(path, e);
+            redo.add(path);
+        }
+        // the modules importing a module whose signature changed
+        for ( String path : myEntries.keySet() ) {
+            for ( String d : deps.get(path) ) {
+                if ( signatures.contains(d) ) {
+                    redo.add(path);
+                }
+            }
+        }
+        for ( Entry old : previous.values() ) {
+            if ( ! myEntries.containsKey(old.path) ) {
+                myRemoved.add(old);
+            }
+        }
+        LOG.debug("Modules to document: " + redo.size() + " out of " + myEntries.size() + ", removed: " + myRemoved.size());
+        myUpToDate = redo.isEmpty() && myRemoved.isEmpty() && new File(myDist, "index.html").isFile();
+        if ( redo.isEmpty() ) {
+            return new ArrayList<File>();
+        }
+        return writeGroups(redo, Math.max(1, Math.min(max, redo.size())));
+    }
+
+    /**
+     * Whether the documentation is up to date (only valid after plan()).
+     */
+    public boolean isUpToDate()
+    {
+        return myUpToDate;
+    }
+
+    /**
+     * Return the group pipeline, written in the stage dir by plan().
+     */
+    public String getPipeline()
+    {
+        return MiscUtils.getUri(new File(myDir, PIPELINE));
+    }
+
+    /**
+     * Copy the generated files to dist/xqdoc/, save the manifest and write the index.
+     *
+     * Return false if a group failed (its modules will be documented again
+     * next time).
+     */
+    public boolean merge()
+            throws XProjectException
+    {
+        boolean success = true;
+        Document fresh = null;
+        Map<Entry, Element> nodes = new HashMap<Entry, Element>();
+        for ( Group g : myGroups ) {
+            if ( ! g.index.isFile() ) {
+                LOG.debug("No index for the doc group " + g.dir + ", it failed");
+                for ( Entry e : g.modules ) {
+                    e.stamp = "none";
+                }
+                success = false;
+                continue;
+            }
+            List<String> files = new ArrayList<String>();
+            listFiles(g.out, "", files);
+            Map<Entry, List<String>> outputs = new HashMap<Entry, List<String>>();
+            for ( Entry e : g.modules ) {
+                outputs.put(e, new ArrayList<String>());
+            }
+            for ( String f : files ) {
+                if ( f.equals("index.html") ) {
+                    continue;
+                }
+                copy(new File(g.out, f), new File(myDist, f));
+                Entry owner = getOwner(g.modules, f);
+                if ( owner != null ) {
+                    outputs.get(owner).add(f);
+                }
+            }
+            for ( Entry e : g.modules ) {
+                List<String> generated = outputs.get(e);
+                for ( String old : e.outputs ) {
+                    if ( ! generated.contains(old) ) {
+                        new File(myDist, old).delete();
+                    }
+                }
+                e.outputs.clear();
+                e.outputs.addAll(generated);
+            }
+            Document index = parseIndex(g.index);
+            nodes.putAll(findEntries(index, g.modules, MiscUtils.getUri(g.out)));
+            if ( fresh == null ) {
+                fresh = index;
+            }
+        }
+        for ( Entry e : myRemoved ) {
+            for ( String old : e.outputs ) {
+                new File(myDist, old).delete();
+            }
+        }
+        writeIndex(fresh, nodes);
+        saveManifest();
+        return success;
+    }
+
+    /**
+     * Scan a module for its namespace and its signature.
+     */
+    private Entry scan(File f, String path, String stamp)
+            throws XProjectException
+    {
+        Entry e = new Entry(path, stamp);
+        String text;
+        try {
+            text = read(f);
+        }
+        catch ( IOException ex ) {
+            throw new XProjectException("Error reading the module " + f, ex);
+        }
+        text = TestImpact.COMMENT.matcher(text).replaceAll(" ");
+        StringBuilder signature = new StringBuilder();
+        Matcher module = TestImpact.MODULE.matcher(text);
+        if ( module.find() ) {
+            e.namespace = module.group(1);
+            signature.append(e.namespace);
+        }
+        Matcher decl = DECLARATION.matcher(text);
+        while ( decl.find() ) {
+            signature.append('\n').append(decl.group().trim().replaceAll("\\s+", " "));
+        }
+        e.signature = BuildManifest.hash(signature.toString());
+        return e;
+    }
+
+    /**
+     * Write the group dirs and documents, as well as the pipeline.
+     */
+    private List<File> writeGroups(Set<String> redo, int count)
+            throws XProjectException
+    {
+        delete(myDir);
+        if ( ! myDir.mkdirs() ) {
+            throw new XProjectException("Impossible to create the doc stage dir: " + myDir);
+        }
+        MiscUtils.copyResource(PIPELINE, new File(myDir, PIPELINE));
+        // the biggest first, each one to the least loaded group
+        List<Entry> sorted = new ArrayList<Entry>();
+        for ( String path : redo ) {
+            sorted.add(myEntries.get(path));
+        }
+        Collections.sort(sorted, new Comparator<Entry>() {
+            public int compare(Entry e1, Entry e2) {
+                long l1 = new File(myProject, e1.path).length();
+                long l2 = new File(myProject, e2.path).length();
+                return l1 > l2 ? -1 : l1 < l2 ? 1 : e1.path.compareTo(e2.path);
+            }
+        });
+        long[] loads = new long[count];
+        for ( int i = 0; i < count; ++i ) {
+            File dir = new File(myDir, "group-" + (i + 1));
+            myGroups.add(new Group(dir));
+        }
+        for ( Entry e : sorted ) {
+            int min = 0;
+            for ( int i = 1; i < count; ++i ) {
+                if ( loads[i] < loads[min] ) {
+                    min = i;
+                }
+            }
+            File module = new File(myProject, e.path);
+            copy(module, new File(myGroups.get(min).src, e.path.substring("src/".length())));
+            myGroups.get(min).modules.add(e);
+            loads[min] += module.length();
+        }
+        List<File> files = new ArrayList<File>();
+        for ( Group g : myGroups ) {
+            File doc = new File(myDir, g.dir.getName() + ".xml");
+            write(doc, "<docs src=\"" + escape(getPath(g.src)) + "\" output=\"" + escape(getPath(g.out))
+                    + "\" index=\"" + escape(MiscUtils.getUri(g.index)) + "\"/>\n");
+            LOG.debug("Doc group " + g.dir.getName() + ": " + g.modules.size() + " modules");
+            files.add(doc);
+        }
+        return files;
+    }
+
+    /**
+     * Write the index, patching the one of a group (or the previous one if no group ran).
+     *
+     * The fresh entries are the ones found in the group indexes.  The other
+     * modules keep their entry in the previous index.  A module without any
+     * entry (or with an entry of another kind, e.g. if the pipeline changed)
+     * is documented again next time.
+     */
+    private void writeIndex(Document fresh, Map<Entry, Element> nodes)
+            throws XProjectException
+    {
+        File file = new File(myDist, "index.html");
+        Document old = null;
+        Map<Entry, Element> olds = new HashMap<Entry, Element>();
+        if ( file.isFile() ) {
+            try {
+                old = parseIndex(file);
+                List<Entry> all = new ArrayList<Entry>(myEntries.values());
+                all.addAll(myRemoved);
+                olds = findEntries(old, all, null);
+            }
+            catch ( XProjectException ex ) {
+                LOG.warn("Error parsing the previous doc index, ignore it: " + ex.getMessage());
+            }
+        }
+        Document base = fresh == null ? old : fresh;
+        if ( base == null ) {
+            LOG.debug("No doc index to write (no group succeeded, and no previous index)");
+            return;
+        }
+        // the entries already in the base, to be replaced
+        Set<Node> replaced = new HashSet<Node>();
+        for ( Element n : nodes.values() ) {
+            if ( n.getOwnerDocument() == base ) {
+                replaced.add(n);
+            }
+        }
+        for ( Element n : olds.values() ) {
+            if ( n.getOwnerDocument() == base ) {
+                replaced.add(n);
+            }
+        }
+        if ( replaced.isEmpty() ) {
+            LOG.warn("No module entry found in the doc index, write it as is: " + file);
+            serialize(base, file);
+            return;
+        }
+        // the new entries take the place of the first one
+        Node first = findFirst(base.getDocumentElement(), replaced);
+        Node container = first.getParentNode();
+        String kind = first.getLocalName();
+        Node marker = base.createComment("modules");
+        container.insertBefore(marker, first);
+        for ( Node n : replaced ) {
+            n.getParentNode().removeChild(n);
+        }
+        for ( Entry e : myEntries.values() ) {
+            Element n = nodes.get(e);
+            if ( n == null ) {
+                n = olds.get(e);
+            }
+            if ( n == null || ! kind.equals(n.getLocalName()) ) {
+                LOG.debug("No entry in the doc index for " + e.path + ", document it again next time");
+                e.stamp = "none";
+                continue;
+            }
+            container.insertBefore(n.getOwnerDocument() == base ? n : base.importNode(n, true), marker);
+        }
+        container.removeChild(marker);
+        serialize(base, file);
+    }
+
+    /**
+     * The first node of a set, in document order, in a subtree (or null).
+     */
+    private static Node findFirst(Node node, Set<Node> set)
+    {
+        if ( set.contains(node) ) {
+            return node;
+        }
+        for ( Node n = node.getFirstChild(); n != null; n = n.getNextSibling() ) {
+            Node found = findFirst(n, set);
+            if ( found != null ) {
+                return found;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Find the entry of each module in an index, by the links to its files.
+     *
+     * The entry is the nearest list item or table row containing a link to
+     * one of the files of the module, or else the largest element containing
+     * it with no link to another module.  The links starting with the URI
+     * "out" (if not null) are made relative to it.
+     */
+    private Map<Entry, Element> findEntries(Document index, Collection<Entry> modules, String out)
+    {
+        Map<String, Entry> owners = new HashMap<String, Entry>();
+        for ( Entry e : modules ) {
+            for ( String o : e.outputs ) {
+                owners.put(o, e);
+            }
+        }
+        Map<Entry, Element> entries = new HashMap<Entry, Element>();
+        NodeList links = index.getElementsByTagNameNS("*", "a");
+        for ( int i = 0; i < links.getLength(); ++i ) {
+            Element a = (Element) links.item(i);
+            Entry e = owners.get(getTarget(a, out));
+            if ( e == null || entries.containsKey(e) ) {
+                continue;
+            }
+            Element node = a;
+            while ( ! ITEMS.contains(node.getLocalName()) && node.getParentNode() instanceof Element ) {
+                Element parent = (Element) node.getParentNode();
+                if ( "body".equals(parent.getLocalName()) || ! linksTo(parent, e, owners, out) ) {
+                    break;
+                }
+                node = parent;
+            }
+            entries.put(e, node);
+        }
+        return entries;
+    }
+
+    /**
+     * Whether all the links to a module in an element are to the given one.
+     */
+    private boolean linksTo(Element elem, Entry module, Map<String, Entry> owners, String out)
+    {
+        NodeList links = elem.getElementsByTagNameNS("*", "a");
+        for ( int i = 0; i < links.getLength(); ++i ) {
+            Entry e = owners.get(getTarget((Element) links.item(i), out));
+            if ( e != null && e != module ) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * The file a link points to, relative to the doc dir (without fragment).
+     */
+    private String getTarget(Element link, String out)
+    {
+        String href = link.getAttribute("href");
+        if ( out != null && href.startsWith(out) ) {
+            href = href.substring(out.length());
+            link.setAttribute("href", href);
+        }
+        int hash = href.indexOf('#');
+        if ( hash >= 0 ) {
+            href = href.substring(0, hash);
+        }
+        while ( href.startsWith("./") ) {
+            href = href.substring(2);
+        }
+        return href;
+    }
+
+    /**
+     * The module a generated file belongs to, by relative path, or null (e.g. for a CSS file).
+     *
+     * The files "a/util.html" and "a/util.xqm.html" belong to the module
+     * "src/a/util.xqm" (and not to "src/b/util.xqm").
+     */
+    private Entry getOwner(List<Entry> modules, String file)
+    {
+        String name = stripExtension(file);
+        for ( Entry e : modules ) {
+            String path = e.path.substring("src/".length());
+            if ( name.equals(path) || name.equals(stripExtension(path)) ) {
+                return e;
+            }
+        }
+        return null;
+    }
+
+    private static String stripExtension(String path)
+    {
+        int dot = path.lastIndexOf('.');
+        return dot > path.lastIndexOf('/') ? path.substring(0, dot) : path;
+    }
+
+    /**
+     * Parse an index (stored by p:store, so well-formed XML), without loading any DTD.
+     */
+    private static Document parseIndex(File file)
+            throws XProjectException
+    {
+        try {
+            DocumentBuilderFactory factory = DocumentBuilderFactory.newInstance();
+            factory.setNamespaceAware(true);
+            DocumentBuilder builder = factory.newDocumentBuilder();
+            builder.setEntityResolver(new EntityResolver() {
+                public InputSource resolveEntity(String pub, String sys) {
+                    return new InputSource(new StringReader(""));
+                }
+            });
+            return builder.parse(file);
+        }
+        catch ( ParserConfigurationException ex ) {
+            throw new XProjectException("Error creating a document builder", ex);
+        }
+        catch ( SAXException ex ) {
+            throw new XProjectException("Error parsing the doc index " + file, ex);
+        }
+        catch ( IOException ex ) {
+            throw new XProjectException("Error reading the doc index " + file, ex);
+        }
+    }
+
+    /**
+     * Serialize an index, as XML like p:store does (keeping its doctype, if any).
+     */
+    private static void serialize(Document doc, File file)
+            throws XProjectException
+    {
+        try {
+            Transformer t = TransformerFactory.newInstance().newTransformer();
+            t.setOutputProperty(OutputKeys.METHOD, "xml");
+            DocumentType type = doc.getDoctype();
+            if ( type != null && type.getSystemId() != null ) {
+                if ( type.getPublicId() != null ) {
+                    t.setOutputProperty(OutputKeys.DOCTYPE_PUBLIC, type.getPublicId());
+                }
+                t.setOutputProperty(OutputKeys.DOCTYPE_SYSTEM, type.getSystemId());
+            }
+            t.transform(new DOMSource(doc), new StreamResult(file));
+        }
+        catch ( TransformerException ex ) {
+            throw new XProjectException("Error writing the doc index " + file, ex);
+        }
+    }
+
+    private Map<String, Entry> loadManifest()
+    {
+        Map<String, Entry> entries = new TreeMap<String, Entry>();
+        if ( ! myManifestFile.isFile() ) {
+            return entries;
+        }
+        try {
+            BufferedReader in = new BufferedReader(new InputStreamReader(new FileInputStream(myManifestFile), "UTF-8"));
+            try {
+                String line;
+                while ( (line = in.readLine()) != null ) {
+                    String[] fields = line.split("\t", -1);
+                    if ( fields.length < 4 ) {
+                        continue;
+                    }
+                    Entry e = new Entry(fields[0], fields[1]);
+                    e.signature = fields[2];
+                    e.namespace = fields[3].length() == 0 ? null : fields[3];
+                    for ( int i = 4; i < fields.length; ++i ) {
+                        e.outputs.add(fields[i]);
+                    }
+                    entries.put(e.path, e);
+                }
+            }
+            finally {
+                in.close();
+            }
+        }
+        catch ( IOException ex ) {
+            LOG.warn("Error reading the doc manifest, document all the modules: " + myManifestFile, ex);
+            entries.clear();
+        }
+        return entries;
+    }
+
+    private void saveManifest()
+            throws XProjectException
+    {
+        StringBuilder content = new StringBuilder();
+        for ( Entry e : myEntries.values() ) {
+            content.append(e.path).append('\t').append(e.stamp).append('\t').append(e.signature);
+            content.append('\t').append(e.namespace == null ? "" : e.namespace);
+            for ( String o : e.outputs ) {
+                content.append('\t').append(o);
+            }
+            content.append('\n');
+        }
+        write(myManifestFile, content.toString());
+    }
+
+    private void listFiles(File dir, String prefix, List<String> files)
+    {
+        File[] children = dir.listFiles();
+        if ( children == null ) {
+            return;
+        }
+        for ( File c : children ) {
+            if ( c.isDirectory() ) {
+                listFiles(c, prefix + c.getName() + "/", files);
+            }
+            else {
+                files.add(prefix + c.getName());
+            }
+        }
+    }
+
+    private static void delete(File file)
+    {
+        File[] children = file.listFiles();
+        if ( children != null ) {
+            for ( File c : children ) {
+                delete(c);
+            }
+        }
+        file.delete();
+    }
+
+    private static void copy(File src, File dest)
+            throws XProjectException
+    {
+        try {
+            MiscUtils.copyFile(src, dest);
+        }
+        catch ( IOException ex ) {
+            throw new XProjectException("Error copying " + src + " to " + dest, ex);
+        }
+    }
+
+    private static String read(File file)
+            throws IOException
+    {
+        StringBuilder content = new StringBuilder();
+        BufferedReader in = new BufferedReader(new InputStreamReader(new FileInputStream(file), "UTF-8"));
+        try {
+            char[] buf = new char[8192];
+            int read;
+            while ( (read = in.read(buf)) > 0 ) {
+                content.append(buf, 0, read);
+            }
+        }
+        finally {
+            in.close();
+        }
+        return content.toString();
+    }
+
+    private static void write(File file, String content)
+            throws XProjectException
+    {
+        File parent = file.getParentFile();
+        if ( ! parent.isDirectory() && ! parent.mkdirs() ) {
+            throw new XProjectException("Impossible to create the dir: " + parent);
+        }
+        try {
+            Writer out = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(file), "UTF-8"));
+            try {
+                out.write(content);
+            }
+            finally {
+                out.close();
+            }
+        }
+        catch ( IOException ex ) {
+            throw new XProjectException("Error writing " + file, ex);
+        }
+    }
+
+    /**
+     * A dir path, with slashes and a trailing slash (like in the doc pipeline).
+     */
+    private static String getPath(File dir)
+    {
+        return dir.getAbsolutePath().replace(File.separatorChar, '/') + "/";
+    }
+
+    private static String escape(String value)
+    {
+        return value.replace("&", "&amp;").replace("<", "&lt;").replace("\"", "&quot;");
+    }
+
+    /**
+     * A module, in the manifest.
+     */
+    private static class Entry
+    {
+        public Entry(String path, String stamp) {
+            this.path = path;
+            this.stamp = stamp;
+            this.outputs = new ArrayList<String>();
+        }
+
+        public final String path;
+        public String stamp;
+        public String signature;
+        public String namespace;
+        /** The generated files, relative to dist/xqdoc/. */
+        public final List<String> outputs;
+    }
+
+    /**
+     * A group of modules, documented by one pipeline run.
+     */
+    private static class Group
+    {
+        public Group(File dir) {
+            this.dir = dir;
+            this.src = new File(dir, "src");
+            this.out = new File(dir, "out");
+            this.index = new File(out, "index.html");
+            this.modules = new ArrayList<Entry>();
+        }
+
+        public final File dir;
+        public final File src;
+        public final File out;
+        public final File index;
+        public final List<Entry> modules;
+    }
+
+    /** The elements of an index which are an entry by themselves (list items and table rows). */
+    private static final Set<String> ITEMS = new HashSet<String>(Arrays.asList("li", "tr"));
+    /** The group pipeline, a resource in this package. */
+    private static final String PIPELINE = "doc-modules.xproc";
+    /** The XQuery modules. */
+    private static final Pattern XQUERY = Pattern.compile(".*\\.(xq|xql|xqm|xqy|xquery)");
+    /** A function or variable declaration, without its body or value. */
+    private static final Pattern DECLARATION = Pattern.compile(
+            "\\bdeclare\\s+(?:%\\S+\\s+)*(?:function|variable)\\s.*?(?=\\{|:=|\\bexternal\\b|;)",
+            Pattern.DOTALL);
+
+    /** The project dir. */
+    private final File myProject;
+    /** The project descriptor. */
+    private final File myDesc;
+    /** The stage dir. */
+    private final File myDir;
+    /** The manifest file. */
+    private final File myManifestFile;
+    /** The documentation dir, dist/xqdoc/. */
+    private final File myDist;
+    /** The modules, keyed by path (set by plan()). */
+    private Map<String, Entry> myEntries;
+    /** The groups to document (set by plan()). */
+    private final List<Group> myGroups;
+    /** The modules which do not exist anymore. */
+    private final List<Entry> myRemoved;
+    /** Whether the documentation is up to date. */
+    private boolean myUpToDate;
+
+    /** The logger for this class. */
+    private static final Logger LOG = Logger.getLogger(DocBuilder.class);
+}
+
+
+/* ------------------------------------------------------------------------ */
+/*  DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS COMMENT.               */
+/*                                                                          */
+/*  The contents of this file are subject to the Mozilla Public License     */
+/*  Version 1.0 (the "License"); you may not use this file except in        */
+/*  compliance with the License. You may obtain a copy of the License at    */
+/*  http://www.mozilla.org/MPL/.                                            */
+/*                                                                          */
+/*  Software distributed under the License is distributed on an "AS IS"     */
+/*  basis, WITHOUT WARRANTY OF ANY KIND, either express or implied.  See    */
+/*  the License for the specific language governing rights and limitations  */
+/*  under the License.                                                      */
+/*                                                                          */
+/*  The Original Code is: all this file.                                    */
+/*                                                                          */
+/*  The Initial Developer of the Original Code is Florent Georges.          */
+/*                                                                          */
+/*  Contributor(s): none.                                                   */
+/* ------------------------------------------------------------------------ */
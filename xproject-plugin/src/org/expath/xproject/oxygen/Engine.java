@@ -0,0 +1,67 @@
+/****************************************************************************/
+/*  File:       Engine.java                                                 */
+/*  Author:     F. Georges - H2O Consulting                                 */
+/*  Date:       2026-10-18                                                  */
+/*  Tags:                                                                   */
+/*      Copyright (c) 2026 Florent Georges (see end of file.)               */
+/* ------------------------------------------------------------------------ */
+
+
+package org.expath.xproject.oxygen;
+
+import java.io.File;
+import java.util.Map;
+import ro.sync.exml.workspace.api.process.ProcessListener;
+
+/**
+ * An in-process Saxon and Calabash engine.
+ * 
+ * The implementation lives in an isolated class loader (see EngineLoader), so
+ * this interface only uses types shared with oXygen.  Each method is the
+ * equivalent of a Java process running Calabash or Saxon: the outputs are
+ * sent to the listener, and the return value is the exit code (0 for
+ * success).  The listener "processStarted()" and "processEnded()" are not
+ * called by the engine, that is the responsibility of the caller.
+ *
+ * @author Florent Georges
+ * @date   2026-10-18
+ */
+public interface Engine
+{
+    /**
+     * calabash -i source=[source] [pipe] [options...]
+     * 
+     * The source can be null, in which case nothing is connected to the port
+     * "source".  The options are keyed by their name in Clark notation.
+     */
+    public int applyPipeline(String pipe, File source, Map<String, String> options, ProcessListener listener);
+
+    /**
+     * saxon -xsl:[style] -s:[source] [params...]
+     * 
+     * The params are keyed by their name in Clark notation.  The result of the
+     * transform is ignored (only the side-effects and messages matter).
+     */
+    public int applyStylesheet(String style, File source, Map<String, String> params, ProcessListener listener);
+}
+
+
+/* ------------------------------------------------------------------------ */
+/*  DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS COMMENT.               */
+/*                                                                          */
+/*  The contents of this file are subject to the Mozilla Public License     */
+/*  Version 1.0 (the "License"); you may not use this file except in        */
+/*  compliance with the License. You may obtain a copy of the License at    */
+/*  http://www.mozilla.org/MPL/.                                            */
+/*                                                                          */
+/*  Software distributed under the License is distributed on an "AS IS"     */
+/*  basis, WITHOUT WARRANTY OF ANY KIND, either express or implied.  See    */
+/*  the License for the specific language governing rights and limitations  */
+/*  under the License.                                                      */
+/*                                                                          */
+/*  The Original Code is: all this file.                                    */
+/*                                                                          */
+/*  The Initial Developer of the Original Code is Florent Georges.          */
+/*                                                                          */
+/*  Contributor(s): none.                                                   */
+/* ------------------------------------------------------------------------ */
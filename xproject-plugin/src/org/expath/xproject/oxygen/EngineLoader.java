@@ -0,0 +1,239 @@
+/****************************************************************************/
+/*  File:       EngineLoader.java                                           */
+/*  Author:     F. Georges - H2O Consulting                                 */
+/*  Date:       2026-10-18                                                  */
+/*  Tags:                                                                   */
+/*      Copyright (c) 2026 Florent Georges (see end of file.)               */
+/* ------------------------------------------------------------------------ */
+
+
+package org.expath.xproject.oxygen;
+
+import java.io.File;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.InvocationTargetException;
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import org.apache.log4j.Logger;
+
+/**
+ * Load and cache the in-process engines.
+ * 
+ * oXygen comes with its own version of Saxon, which is not the one Calabash
+ * and the EXPath Packaging need.  So the engine is loaded in an isolated class
+ * loader, built from the JAR files in the plugin's subdir lib/ (the same JAR
+ * files as the class path of the forked processes).  The plugin's own engine
+ * classes are loaded in that same loader, all the other plugin classes and
+ * oXygen classes are shared with the parent loader.
+ * 
+ * There is one engine per lib/ and repo/ dirs, created the first time it is
+ * needed and then kept warm for the rest of the oXygen session.
+ *
+ * @author Florent Georges
+ * @date   2026-10-18
+ */
+public class EngineLoader
+{
+    /**
+     * Return the engine for the lib/ and repo/ dirs, load it if necessary.
+     * 
+     * Loading the engine is expensive (a few seconds, the same as starting a
+     * new process), so avoid calling this method on the event dispatch thread.
+     */
+    public static synchronized Engine getEngine(File lib, File repo)
+            throws XProjectException
+    {
+        String key = MiscUtils.getPath(lib) + File.pathSeparator + MiscUtils.getPath(repo);
+        Engine engine = ourEngines.get(key);
+        if ( engine == null ) {
+            long start = System.currentTimeMillis();
+            engine = loadEngine(lib, repo);
+            long time = System.currentTimeMillis() - start;
+            LOG.debug("In-process engine loaded in " + time + " ms (lib: " + lib + ", repo: " + repo + ")");
+            ourEngines.put(key, engine);
+        }
+        return engine;
+    }
+
+    /**
+     * Drop the engine for the lib/ and repo/ dirs, the next run loads a new one.
+     * 
+     * For an engine still locked by an abandoned run (see EngineRun).  Its
+     * class loader is released when the run ends.
+     */
+    public static synchronized void discardEngine(File lib, File repo)
+    {
+        String key = MiscUtils.getPath(lib) + File.pathSeparator + MiscUtils.getPath(repo);
+        if ( ourEngines.remove(key) != null ) {
+            LOG.debug("In-process engine discarded (lib: " + lib + ", repo: " + repo + ")");
+        }
+    }
+
+    private static Engine loadEngine(File lib, File repo)
+            throws XProjectException
+    {
+        ClassLoader loader = new IsolatedClassLoader(getUrls(lib), Engine.class.getClassLoader());
+        // Saxon and the EXPath Packaging look for services using the context
+        // class loader
+        Thread current = Thread.currentThread();
+        ClassLoader context = current.getContextClassLoader();
+        current.setContextClassLoader(loader);
+        try {
+            Class<?> clazz = loader.loadClass(ENGINE_CLASS);
+            Constructor<?> ctor = clazz.getConstructor(File.class);
+            return (Engine) ctor.newInstance(repo);
+        }
+        catch ( ClassNotFoundException ex ) {
+            throw new XProjectException("The engine class is not found: " + ENGINE_CLASS, ex);
+        }
+        catch ( NoSuchMethodException ex ) {
+            throw new XProjectException("The engine class has no constructor accepting a File: " + ENGINE_CLASS, ex);
+        }
+        catch ( InstantiationException ex ) {
+            throw new XProjectException("Error instantiating the engine: " + ENGINE_CLASS, ex);
+        }
+        catch ( IllegalAccessException ex ) {
+            throw new XProjectException("Error instantiating the engine: " + ENGINE_CLASS, ex);
+        }
+        catch ( InvocationTargetException ex ) {
+            throw new XProjectException("Error initializing the engine (repo: " + repo + ")", ex.getCause());
+        }
+        finally {
+            current.setContextClassLoader(context);
+        }
+    }
+
+    /**
+     * The URLs of the JAR files in lib/, plus the location of the plugin classes.
+     */
+    private static URL[] getUrls(File lib)
+            throws XProjectException
+    {
+        List<URL> urls = new ArrayList<URL>();
+        try {
+            for ( File jar : lib.listFiles() ) {
+                if ( jar.getName().endsWith(".jar") ) {
+                    urls.add(jar.toURI().toURL());
+                }
+            }
+            urls.add(MiscUtils.getPluginLocation().toURI().toURL());
+        }
+        catch ( MalformedURLException ex ) {
+            throw new XProjectException("Error building the engine class path from: " + lib, ex);
+        }
+        return urls.toArray(new URL[]{});
+    }
+
+    /**
+     * Child-first class loader, except for classes shared with oXygen.
+     * 
+     * The JDK, oXygen, Log4J and the plugin classes are loaded by the parent
+     * (so the interface Engine is the same in both worlds), except the engine
+     * implementation, which must see the Saxon version from lib/.
+     */
+    private static class IsolatedClassLoader
+            extends URLClassLoader
+    {
+        public IsolatedClassLoader(URL[] urls, ClassLoader parent)
+        {
+            super(urls, parent);
+        }
+
+        @Override
+        protected synchronized Class<?> loadClass(String name, boolean resolve)
+                throws ClassNotFoundException
+        {
+            if ( isShared(name) ) {
+                return super.loadClass(name, resolve);
+            }
+            Class<?> clazz = findLoadedClass(name);
+            if ( clazz == null ) {
+                try {
+                    clazz = findClass(name);
+                }
+                catch ( ClassNotFoundException ex ) {
+                    clazz = getParent().loadClass(name);
+                }
+            }
+            if ( resolve ) {
+                resolveClass(clazz);
+            }
+            return clazz;
+        }
+
+        @Override
+        public URL getResource(String name)
+        {
+            URL url = findResource(name);
+            if ( url == null ) {
+                url = super.getResource(name);
+            }
+            return url;
+        }
+
+        private boolean isShared(String name)
+        {
+            for ( String prefix : ISOLATED ) {
+                if ( name.startsWith(prefix) ) {
+                    return false;
+                }
+            }
+            for ( String prefix : SHARED ) {
+                if ( name.startsWith(prefix) ) {
+                    return true;
+                }
+            }
+            return false;
+        }
+    }
+
+    /** The engine implementation class. */
+    private static final String ENGINE_CLASS = "org.expath.xproject.oxygen.engine.CalabashEngine";
+    /** The packages always loaded by the parent loader. */
+    private static final String[] SHARED = {
+        "java.",
+        "javax.",
+        "org.w3c.",
+        "org.xml.",
+        "sun.",
+        "com.sun.",
+        "ro.sync.",
+        "org.apache.log4j.",
+        "org.expath.xproject.oxygen."
+    };
+    /** The plugin classes loaded in the isolated loader (they use Saxon). */
+    private static final String[] ISOLATED = {
+        "org.expath.xproject.oxygen.engine.",
+        "org.expath.xproject.oxygen.EmptyDestination"
+    };
+    /** The engines, keyed by their lib/ and repo/ dirs. */
+    private static final Map<String, Engine> ourEngines = new HashMap<String, Engine>();
+    /** The logger for this class. */
+    private static final Logger LOG = Logger.getLogger(EngineLoader.class);
+}
+
+
+/* ------------------------------------------------------------------------ */
+/*  DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS COMMENT.               */
+/*                                                                          */
+/*  The contents of this file are subject to the Mozilla Public License     */
+/*  Version 1.0 (the "License"); you may not use this file except in        */
+/*  compliance with the License. You may obtain a copy of the License at    */
+/*  http://www.mozilla.org/MPL/.                                            */
+/*                                                                          */
+/*  Software distributed under the License is distributed on an "AS IS"     */
+/*  basis, WITHOUT WARRANTY OF ANY KIND, either express or implied.  See    */
+/*  the License for the specific language governing rights and limitations  */
+/*  under the License.                                                      */
+/*                                                                          */
+/*  The Original Code is: all this file.                                    */
+/*                                                                          */
+/*  The Initial Developer of the Original Code is Florent Georges.          */
+/*                                                                          */
+/*  Contributor(s): none.                                                   */
+/* ------------------------------------------------------------------------ */
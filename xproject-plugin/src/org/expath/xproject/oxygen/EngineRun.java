@@ -0,0 +1,282 @@
+/****************************************************************************/
+/*  File:       EngineRun.java                                              */
+/*  Author:     F. Georges - H2O Consulting                                 */
+/*  Date:       2026-10-18                                                  */
+/*  Tags:                                                                   */
+/*      Copyright (c) 2026 Florent Georges (see end of file.)               */
+/* ------------------------------------------------------------------------ */
+
+
+package org.expath.xproject.oxygen;
+
+import java.io.File;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import org.apache.log4j.Logger;
+import ro.sync.exml.workspace.api.process.ProcessListener;
+
+/**
+ * Represent a run of the in-process engine, the counterpart of JavaProcess.
+ * 
+ * Either a pipeline or a stylesheet must be set.  The run is executed on a
+ * background thread, and reported to the process listener the same way as
+ * a Java process is reported by oXygen.
+ * 
+ * A run cannot be killed.  When its execution is cancelled (e.g. it timed
+ * out), the run is abandoned instead: the engine thread is interrupted and
+ * replaced, and the engine is discarded (the run keeps its lock), so the
+ * next runs do not wait for it (see abandon()).
+ *
+ * @author Florent Georges
+ * @date   2026-10-18
+ */
+public class EngineRun
+        implements Runnable
+{
+    /**
+     * The lib/ and repo/ dirs are used to get the engine from EngineLoader.
+     */
+    public EngineRun(File lib, File repo, ProcessListener listener)
+    {
+        myLib = lib;
+        myRepo = repo;
+        myListener = listener;
+    }
+
+    /**
+     * Set the pipeline to run (as its href).
+     */
+    public void setPipeline(String pipe)
+    {
+        myPipe = pipe;
+    }
+
+    /**
+     * Set the stylesheet to apply (as its href).
+     */
+    public void setStylesheet(String style)
+    {
+        myStyle = style;
+    }
+
+    /**
+     * Set the source document (the port "source" for pipelines).
+     */
+    public void setSource(File source)
+    {
+        mySource = source;
+    }
+
+    /**
+     * Add a pipeline option, or a stylesheet parameter (its name in Clark notation).
+     */
+    public void addOption(String name, String value)
+    {
+        myOptions.put(name, value);
+    }
+
+    /**
+     * Set the execution the run is part of, if any (see ProjectQueue).
+     * 
+     * The run does not start if the execution has been cancelled.  Once
+     * started, it cannot be killed, only abandoned.
+     */
+    public void setExecution(Execution exec)
+    {
+        myExecution = exec;
+    }
+
+    /**
+     * Start the run, on the engine thread.
+     */
+    public void start()
+    {
+        if ( myPipe == null && myStyle == null ) {
+            throw new IllegalStateException("Neither a pipeline nor a stylesheet has been set.");
+        }
+        if ( myExecution != null && ! myExecution.processStarting() ) {
+            myListener.processCouldNotStart("The execution has been cancelled");
+            return;
+        }
+        getExecutor().execute(this);
+    }
+
+    /**
+     * Abandon the run, when its execution is cancelled.
+     * 
+     * The engine thread is interrupted (the engine might stop then), and
+     * replaced for the next runs (the pending ones included), and the engine
+     * is discarded, as the run keeps it locked until it ends.  The run is
+     * reported as failed right away, and not reported anymore after that.
+     */
+    void abandon()
+    {
+        synchronized ( this ) {
+            if ( myFinished ) {
+                return;
+            }
+            myFinished = true;
+        }
+        List<Runnable> pending = null;
+        synchronized ( EngineRun.class ) {
+            if ( myExecutor != null && myExecutor == ourExecutor ) {
+                ourExecutor = null;
+                pending = myExecutor.shutdownNow();
+            }
+        }
+        if ( pending != null ) {
+            LOG.info("In-process run abandoned, replace the engine thread (" + pending.size() + " pending runs)");
+            for ( Runnable r : pending ) {
+                getExecutor().execute(r);
+            }
+        }
+        EngineLoader.discardEngine(myLib, myRepo);
+        myListener.newErrorLine("The in-process run has been abandoned");
+        myListener.processEnded(1);
+    }
+
+    @Override
+    public void run()
+    {
+        synchronized ( EngineRun.class ) {
+            myExecutor = ourExecutor;
+        }
+        if ( myExecution != null && ! myExecution.add(this) ) {
+            finish("The execution has been cancelled", 0);
+            return;
+        }
+        myListener.processStarted("XProject in-process engine", getCommand());
+        int code;
+        try {
+            Engine engine = EngineLoader.getEngine(myLib, myRepo);
+            if ( myPipe != null ) {
+                code = engine.applyPipeline(myPipe, mySource, myOptions, myListener);
+            }
+            else {
+                code = engine.applyStylesheet(myStyle, mySource, myOptions, myListener);
+            }
+        }
+        catch ( XProjectException ex ) {
+            LOG.error("Error loading the in-process engine", ex);
+            finish(ex.getMessage(), 0);
+            return;
+        }
+        catch ( RuntimeException ex ) {
+            LOG.error("Unexpected error in the in-process engine", ex);
+            myListener.newErrorLine("Unexpected error: " + ex);
+            code = 1;
+        }
+        finally {
+            if ( myExecution != null ) {
+                myExecution.remove(this);
+            }
+        }
+        finish(null, code);
+    }
+
+    /**
+     * Report the end of the run (or that it could not start, if the message is not null).
+     * 
+     * Nothing is reported if the run has been abandoned.
+     */
+    private void finish(String could_not_start, int code)
+    {
+        synchronized ( this ) {
+            if ( myFinished ) {
+                return;
+            }
+            myFinished = true;
+        }
+        if ( could_not_start != null ) {
+            myListener.processCouldNotStart(could_not_start);
+        }
+        else {
+            myListener.processEnded(code);
+        }
+    }
+
+    /**
+     * The engine thread, created the first time, and when a run is abandoned.
+     */
+    private static synchronized ExecutorService getExecutor()
+    {
+        if ( ourExecutor == null ) {
+            ourExecutor = Executors.newSingleThreadExecutor(new ThreadFactory() {
+                public Thread newThread(Runnable r) {
+                    Thread t = new Thread(r, "xproject-engine");
+                    t.setDaemon(true);
+                    return t;
+                }
+            });
+        }
+        return ourExecutor;
+    }
+
+    /**
+     * The equivalent command line, for logging purposes.
+     */
+    private String getCommand()
+    {
+        StringBuilder cmd = new StringBuilder();
+        if ( myPipe != null ) {
+            cmd.append("calabash");
+            if ( mySource != null ) {
+                cmd.append(" -i source=").append(MiscUtils.getUri(mySource));
+            }
+            cmd.append(" ").append(myPipe);
+        }
+        else {
+            cmd.append("saxon -xsl:").append(myStyle);
+            if ( mySource != null ) {
+                cmd.append(" -s:").append(MiscUtils.getUri(mySource));
+            }
+        }
+        for ( Map.Entry<String, String> o : myOptions.entrySet() ) {
+            cmd.append(" ").append(o.getKey()).append("=").append(o.getValue());
+        }
+        return cmd.toString();
+    }
+
+    private File myLib;
+    private File myRepo;
+    private ProcessListener myListener;
+    private String myPipe;
+    private String myStyle;
+    private File mySource;
+    private Map<String, String> myOptions = new LinkedHashMap<String, String>();
+    private Execution myExecution;
+    /** The engine thread the run runs on, once started. */
+    private ExecutorService myExecutor;
+    /** Whether the end of the run has been reported (or it has been abandoned). */
+    private boolean myFinished = false;
+
+    /** The single engine thread (the engine serializes runs anyway), see getExecutor(). */
+    private static ExecutorService ourExecutor;
+    /** The logger for this class. */
+    private static final Logger LOG = Logger.getLogger(EngineRun.class);
+}
+
+
+/* ------------------------------------------------------------------------ */
+/*  DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS COMMENT.               */
+/*                                                                          */
+/*  The contents of this file are subject to the Mozilla Public License     */
+/*  Version 1.0 (the "License"); you may not use this file except in        */
+/*  compliance with the License. You may obtain a copy of the License at    */
+/*  http://www.mozilla.org/MPL/.                                            */
+/*                                                                          */
+/*  Software distributed under the License is distributed on an "AS IS"     */
+/*  basis, WITHOUT WARRANTY OF ANY KIND, either express or implied.  See    */
+/*  the License for the specific language governing rights and limitations  */
+/*  under the License.                                                      */
+/*                                                                          */
+/*  The Original Code is: all this file.                                    */
+/*                                                                          */
+/*  The Initial Developer of the Original Code is Florent Georges.          */
+/*                                                                          */
+/*  Contributor(s): none.                                                   */
+/* ------------------------------------------------------------------------ */
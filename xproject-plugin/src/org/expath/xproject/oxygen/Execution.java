@@ -0,0 +1,384 @@
+/****************************************************************************/
+/*  File:       Execution.java                                              */
+/*  Author:     F. Georges - H2O Consulting                                 */
+/*  Date:       2026-10-18                                                  */
+/*  Tags:                                                                   */
+/*      Copyright (c) 2026 Florent Georges (see end of file.)               */
+/* ------------------------------------------------------------------------ */
+
+
+package org.expath.xproject.oxygen;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ScheduledFuture;
+import org.expath.xproject.oxygen.XProjectConstants.ProjectPhase;
+import ro.sync.exml.workspace.api.process.ProcessController;
+
+
+/**
+ * The execution of a phase on a project, as queued by ProjectQueue.
+ *
+ * It keeps the controllers of the processes (and the pooled workers) the
+ * phase started, so it can be cancelled.  It ends when the phase has been
+ * prepared (XProject.run() returned) and all its processes ended.
+ *
+ * The phase listeners of the execution (see ProjectQueue.submit()) are
+ * notified once, when the project reports the end of the phase, or with
+ * false when the execution ends without it (cancelled, timed out, error
+ * while preparing it).
+ *
+ * Each phase has a timeout, in seconds, given by the option "timeout.[phase]"
+ * (e.g. "timeout.build", 0 for none).  When it expires, the execution is
+ * cancelled (its processes are killed) and considered ended, so the next
+ * one in the queue can start.  The in-process runs cannot be killed, they
+ * are abandoned (see EngineRun.abandon()).
+ *
+ * @author Florent Georges
+ * @date   2026-10-18
+ */
+public class Execution
+{
+    /**
+     * Notified when an execution ended (intended to be used by ProjectQueue).
+     */
+    static interface EndListener
+    {
+        public void ended(Execution exec);
+    }
+
+    /**
+     * Package-visibility, intended to be used only by ProjectQueue.
+     */
+    Execution(ProjectPhase phase, XProject project, UserMessages messages, EndListener ended)
+    {
+        myPhase = phase;
+        myProject = project;
+        myMsg = messages;
+        myEnded = ended;
+        myName = phase.name().toLowerCase();
+    }
+
+    public ProjectPhase getPhase()
+    {
+        return myPhase;
+    }
+
+    /**
+     * Add a listener notified when the phase ended (ignored if null).
+     */
+    synchronized void addListener(PhaseListener listener)
+    {
+        if ( listener != null ) {
+            myListeners.add(listener);
+        }
+    }
+
+    synchronized void addListeners(List<PhaseListener> listeners)
+    {
+        myListeners.addAll(listeners);
+    }
+
+    /**
+     * Remove the listeners and return them (when superseded, for the execution replacing it).
+     */
+    synchronized List<PhaseListener> takeListeners()
+    {
+        List<PhaseListener> listeners = new ArrayList<PhaseListener>(myListeners);
+        myListeners.clear();
+        return listeners;
+    }
+
+    /**
+     * Run the phase (its preparation, the processes run in the background), and start the watchdog.
+     *
+     * Called on a background thread, by ProjectQueue.
+     */
+    void launch()
+    {
+        long timeout = XProjectOptions.getLong("timeout." + myName, getDefaultTimeout(myPhase));
+        if ( timeout > 0 ) {
+            synchronized ( this ) {
+                myWatchdog = ProjectQueue.schedule(new Runnable() {
+                    public void run() {
+                        timedOut();
+                    }
+                }, timeout);
+            }
+        }
+        myProject.setExecution(this);
+        synchronized ( this ) {
+            // only with listeners, as the project does not show dialogs then
+            if ( ! myListeners.isEmpty() ) {
+                myProject.setPhaseListener(new PhaseListener() {
+                    public void phaseEnded(boolean success) {
+                        notifyListeners(success);
+                    }
+                });
+            }
+        }
+        try {
+            myProject.run(myPhase);
+        }
+        catch ( XProjectException ex ) {
+            myMsg.error(ex.getMessage(), ex);
+        }
+        catch ( RuntimeException ex ) {
+            myMsg.error("Unexpected runtime error: " + ex, ex);
+        }
+        finally {
+            boolean ended;
+            synchronized ( this ) {
+                myPrepared = true;
+                ended = myActive == 0;
+            }
+            if ( ended ) {
+                end();
+            }
+        }
+    }
+
+    /**
+     * A process is about to start, return false if the execution is cancelled.
+     *
+     * Must be balanced by a call to processEnded() (by the process listener,
+     * even if the process does not start).
+     */
+    public synchronized boolean processStarting()
+    {
+        ++myActive;
+        return ! myCancelled;
+    }
+
+    /**
+     * A process of the execution ended (or could not start).
+     */
+    public void processEnded()
+    {
+        boolean ended;
+        synchronized ( this ) {
+            --myActive;
+            ended = myPrepared && myActive == 0;
+        }
+        if ( ended ) {
+            end();
+        }
+    }
+
+    /**
+     * Start a process, unless the execution is cancelled (then return false).
+     */
+    public synchronized boolean start(ProcessController process)
+    {
+        if ( myCancelled ) {
+            return false;
+        }
+        myProcesses.add(process);
+        process.start();
+        return true;
+    }
+
+    /**
+     * Register a pooled worker while it runs, return false if the execution is cancelled.
+     */
+    public synchronized boolean add(Worker worker)
+    {
+        if ( myCancelled ) {
+            return false;
+        }
+        myWorkers.add(worker);
+        return true;
+    }
+
+    /**
+     * Unregister a pooled worker, when its run ended (it goes back to the pool).
+     */
+    public synchronized void remove(Worker worker)
+    {
+        myWorkers.remove(worker);
+    }
+
+    /**
+     * Register an in-process run while it runs, return false if the execution is cancelled.
+     */
+    public synchronized boolean add(EngineRun run)
+    {
+        if ( myCancelled ) {
+            return false;
+        }
+        myRuns.add(run);
+        return true;
+    }
+
+    /**
+     * Unregister an in-process run, when it ended.
+     */
+    public synchronized void remove(EngineRun run)
+    {
+        myRuns.remove(run);
+    }
+
+    public synchronized boolean isCancelled()
+    {
+        return myCancelled;
+    }
+
+    /**
+     * Cancel the execution: kill its processes, and prevent new ones to start.
+     */
+    public void cancel(String reason)
+    {
+        List<ProcessController> processes;
+        List<Worker> workers;
+        List<EngineRun> runs;
+        synchronized ( this ) {
+            if ( myCancelled || myDone ) {
+                return;
+            }
+            myCancelled = true;
+            processes = new ArrayList<ProcessController>(myProcesses);
+            workers = new ArrayList<Worker>(myWorkers);
+            runs = new ArrayList<EngineRun>(myRuns);
+        }
+        myMsg.debug("Cancel the " + myName + " (" + reason + "), " + processes.size() + " processes, " + workers.size() + " workers, " + runs.size() + " in-process runs");
+        Metrics.increment("execution.cancelled");
+        for ( ProcessController p : processes ) {
+            p.stop();
+        }
+        for ( Worker w : workers ) {
+            w.destroy();
+        }
+        for ( EngineRun r : runs ) {
+            r.abandon();
+        }
+    }
+
+    /**
+     * Drop an execution which has not been launched (e.g. a pending one, when all are cancelled).
+     */
+    void discard()
+    {
+        synchronized ( this ) {
+            myCancelled = true;
+            myDone = true;
+        }
+        notifyListeners(false);
+    }
+
+    /**
+     * Return whether the execution ended.
+     */
+    public synchronized boolean isDone()
+    {
+        return myDone;
+    }
+
+    private void timedOut()
+    {
+        long timeout = XProjectOptions.getLong("timeout." + myName, getDefaultTimeout(myPhase));
+        myMsg.error("The " + myName + " timed out after " + timeout + " s, its processes are killed");
+        Metrics.increment("execution.timeout");
+        cancel("timeout");
+        // do not wait for runs which cannot be killed
+        end();
+    }
+
+    private void end()
+    {
+        synchronized ( this ) {
+            if ( myDone ) {
+                return;
+            }
+            myDone = true;
+            myProcesses.clear();
+            myWorkers.clear();
+            myRuns.clear();
+            if ( myWatchdog != null ) {
+                myWatchdog.cancel(false);
+            }
+        }
+        // if the project did not report the end of the phase
+        notifyListeners(false);
+        myEnded.ended(this);
+    }
+
+    /**
+     * Notify the listeners, the first time only.
+     */
+    private void notifyListeners(boolean success)
+    {
+        List<PhaseListener> listeners;
+        synchronized ( this ) {
+            if ( myNotified ) {
+                return;
+            }
+            myNotified = true;
+            listeners = new ArrayList<PhaseListener>(myListeners);
+            myListeners.clear();
+        }
+        for ( PhaseListener l : listeners ) {
+            l.phaseEnded(success);
+        }
+    }
+
+    /**
+     * The default timeout of each phase, in seconds.
+     */
+    private static long getDefaultTimeout(ProjectPhase phase)
+    {
+        switch ( phase ) {
+            case TEST: return 30 * 60;
+            default:   return 10 * 60;
+        }
+    }
+
+    /** The phase. */
+    private final ProjectPhase myPhase;
+    /** The phase name, for the messages and the options. */
+    private final String myName;
+    /** The project. */
+    private final XProject myProject;
+    /** The user messages. */
+    private final UserMessages myMsg;
+    /** Called when the execution ended. */
+    private final EndListener myEnded;
+    /** The listeners notified when the phase ended. */
+    private final List<PhaseListener> myListeners = new ArrayList<PhaseListener>();
+    /** Whether the listeners have been notified. */
+    private boolean myNotified;
+    /** The controllers of the started processes. */
+    private final List<ProcessController> myProcesses = new ArrayList<ProcessController>();
+    /** The pooled workers currently running for this execution. */
+    private final List<Worker> myWorkers = new ArrayList<Worker>();
+    /** The in-process runs of the execution, while they run. */
+    private final List<EngineRun> myRuns = new ArrayList<EngineRun>();
+    /** The number of processes not ended yet. */
+    private int myActive;
+    /** Whether XProject.run() returned. */
+    private boolean myPrepared;
+    private boolean myCancelled;
+    private boolean myDone;
+    /** The timeout task, if any. */
+    private ScheduledFuture<?> myWatchdog;
+}
+
+
+/* ------------------------------------------------------------------------ */
+/*  DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS COMMENT.               */
+/*                                                                          */
+/*  The contents of this file are subject to the Mozilla Public License     */
+/*  Version 1.0 (the "License"); you may not use this file except in        */
+/*  compliance with the License. You may obtain a copy of the License at    */
+/*  http://www.mozilla.org/MPL/.                                            */
+/*                                                                          */
+/*  Software distributed under the License is distributed on an "AS IS"     */
+/*  basis, WITHOUT WARRANTY OF ANY KIND, either express or implied.  See    */
+/*  the License for the specific language governing rights and limitations  */
+/*  under the License.                                                      */
+/*                                                                          */
+/*  The Original Code is: all this file.                                    */
+/*                                                                          */
+/*  The Initial Developer of the Original Code is Florent Georges.          */
+/*                                                                          */
+/*  Contributor(s): none.                                                   */
+/* ------------------------------------------------------------------------ */
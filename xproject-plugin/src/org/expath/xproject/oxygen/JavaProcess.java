@@ -10,6 +10,7 @@
 package org.expath.xproject.oxygen;
 
 import java.io.File;
+import java.io.IOException;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
@@ -29,10 +30,11 @@ public class JavaProcess
     /**
      * Package-visibility, intended to be used only by JavaProcessFactory.
      */
-    JavaProcess(Workspace ws, UserMessages messages)
+    JavaProcess(Workspace ws, UserMessages messages, JavaProcessFactory factory)
     {
         myWorkspace = ws;
         myMessages = messages;
+        myFactory = factory;
     }
 
     /**
@@ -102,6 +104,71 @@ public class JavaProcess
         myListener = listener;
     }
 
+    /**
+     * Set the execution the process is registered on, if any (see ProjectQueue).
+     */
+    public void setExecution(Execution exec)
+    {
+        myExecution = exec;
+    }
+
+    /**
+     * Set the memory and GC settings of the process, if any (see JvmProfile).
+     */
+    public void setProfile(JvmProfile profile)
+    {
+        myProfile = profile;
+    }
+
+    public JvmProfile getProfile()
+    {
+        return myProfile;
+    }
+
+    /**
+     * Start the process again with a larger heap, after it ran out of memory.
+     * 
+     * The new run reports to the listener.  Return false if the heap cannot
+     * grow (no profile, already at the max, or no retry left, see JvmProfile).
+     */
+    public boolean retry(ProcessListener listener)
+            throws XProjectException
+    {
+        JvmProfile larger = myProfile == null ? null : myProfile.grow();
+        if ( larger == null ) {
+            return false;
+        }
+        myProfile = larger;
+        myListener = listener;
+        start();
+        return true;
+    }
+
+    /**
+     * Start a worker in the pool the process would run in, if none is idle.
+     * 
+     * So the next run does not pay for starting a JVM.  The worker is started
+     * on a background thread.  Only meaningful when the exec mode is "pool".
+     */
+    public void warmUp()
+            throws XProjectException
+    {
+        final WorkerPool pool = myFactory.getPool(getJavaArguments(true), getPoolKey(), myClasspath, myEnvVars);
+        myFactory.execute(new Runnable() {
+            public void run() {
+                try {
+                    pool.release(pool.acquire());
+                }
+                catch ( IOException ex ) {
+                    myMessages.debug("Error warming up a worker: " + ex.getMessage());
+                }
+                catch ( InterruptedException ex ) {
+                    myMessages.debug("Interrupted while warming up a worker");
+                }
+            }
+        });
+    }
+
     /**
      * Create the process.
      */
@@ -109,12 +176,136 @@ public class JavaProcess
     {
         String[] cp = myClasspath.toArray(new String[]{});
         String args = formatArgs(myArgs);
-        String java_args = formatArgs(myJavaArgs);
+        String java_args = formatArgs(getJavaArguments(false));
         debug(cp, args, java_args);
         return myWorkspace.createJavaProcess(java_args, cp, myMainClass, args, myEnvVars, myCwd, myListener);
     }
 
-    private String formatArgs(List<String> args)
+    /**
+     * Start the process.
+     * 
+     * When the exec mode is "pool", the main class is run in a worker JVM
+     * from the factory pools, instead of creating a new process.  In both
+     * cases, the process listener is notified the same way.  If there is a
+     * class-data-sharing archive for the class path, it is used, as well as
+     * the memory and GC settings of the profile, if any.  If the
+     * process is part of an execution, it is registered on it (so it can be
+     * killed), and it does not start if the execution has been cancelled.
+     */
+    public void start()
+            throws XProjectException
+    {
+        if ( myExecution != null && ! myExecution.processStarting() ) {
+            myListener.processCouldNotStart("The execution has been cancelled");
+            return;
+        }
+        if ( XProjectOptions.getExecMode() == XProjectOptions.ExecMode.POOL ) {
+            List<String> java_args = getJavaArguments(true);
+            String[] cp = myClasspath.toArray(new String[]{});
+            debug(cp, formatArgs(myArgs), formatArgs(java_args));
+            WorkerPool pool = myFactory.getPool(java_args, getPoolKey(), myClasspath, myEnvVars);
+            myFactory.execute(new PooledRun(pool));
+        }
+        else {
+            long start = System.currentTimeMillis();
+            ProcessController process = createJavaProcess();
+            if ( myExecution == null ) {
+                process.start();
+            }
+            else if ( ! myExecution.start(process) ) {
+                myListener.processCouldNotStart("The execution has been cancelled");
+                return;
+            }
+            Metrics.since("process.spawn", start);
+        }
+    }
+
+    /**
+     * Run the process in a pooled worker, and notify the listener.
+     */
+    private class PooledRun
+            implements Runnable
+    {
+        public PooledRun(WorkerPool pool) {
+            myPool = pool;
+        }
+
+        public void run() {
+            Worker worker;
+            long start = System.currentTimeMillis();
+            try {
+                worker = myPool.acquire();
+                Metrics.since("process.acquire", start);
+            }
+            catch ( IOException ex ) {
+                myListener.processCouldNotStart("Error starting a worker: " + ex.getMessage());
+                return;
+            }
+            catch ( InterruptedException ex ) {
+                myListener.processCouldNotStart("Interrupted while waiting for a worker");
+                return;
+            }
+            if ( myExecution != null && ! myExecution.add(worker) ) {
+                myPool.release(worker);
+                myListener.processCouldNotStart("The execution has been cancelled");
+                return;
+            }
+            myListener.processStarted("XProject worker", myMainClass + " " + formatArgs(myArgs));
+            int code;
+            try {
+                code = worker.run(myMainClass, myArgs, myListener);
+            }
+            catch ( IOException ex ) {
+                myListener.newErrorLine(ex.getMessage());
+                code = 1;
+            }
+            finally {
+                if ( myExecution != null ) {
+                    myExecution.remove(worker);
+                }
+                myPool.release(worker);
+            }
+            myListener.processEnded(code);
+        }
+
+        private final WorkerPool myPool;
+    }
+
+    /**
+     * The Java arguments: the ones added, the ones of the profile, and the one for CDS, if any.
+     * 
+     * The pooled workers run several times, see JvmProfile.getJavaArguments().
+     */
+    private List<String> getJavaArguments(boolean pooled)
+    {
+        List<String> java_args = new ArrayList<String>(myJavaArgs);
+        if ( myProfile != null ) {
+            java_args.addAll(myProfile.getJavaArguments(pooled));
+        }
+        // the archive is trained with the arguments added only (not with the heap, GC log, etc.)
+        String cds = myFactory.getCdsArgument(myClasspath, myJavaArgs);
+        if ( cds != null ) {
+            java_args.add(cds);
+        }
+        return java_args;
+    }
+
+    /**
+     * The key of the pool to run in: the arguments added, and the pool key of the profile.
+     * 
+     * Not the CDS argument, nor the GC log of the profile, which change from
+     * a run to another, while the workers would be the same.
+     */
+    private String getPoolKey()
+    {
+        String key = myJavaArgs.toString();
+        if ( myProfile != null ) {
+            key += " " + myProfile.getPoolKey();
+        }
+        return key;
+    }
+
+    static String formatArgs(List<String> args)
     {
         // TODO: Escape the individual args with double quotes?
         String s = null;
@@ -152,6 +343,7 @@ public class JavaProcess
 
     private Workspace myWorkspace;
     private UserMessages myMessages;
+    private JavaProcessFactory myFactory;
     private List<String> myJavaArgs = new ArrayList<String>();
     private List<String> myClasspath = new ArrayList<String>();
     private String myMainClass;
@@ -159,6 +351,8 @@ public class JavaProcess
     private Map<String, String> myEnvVars = new HashMap<String, String>();
     private File myCwd;
     private ProcessListener myListener;
+    private Execution myExecution;
+    private JvmProfile myProfile;
 }
 
 
@@ -9,10 +9,25 @@
 
 package org.expath.xproject.oxygen;
 
+import java.io.File;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
 import ro.sync.exml.workspace.api.Workspace;
 
 /**
  * Create Java process objects.
+ * 
+ * The factory also owns the pools of worker JVMs, used by the processes
+ * when the exec mode is "pool", so it must live as long as the plugin (and
+ * shutdown() must be called when oXygen closes).
  *
  * @author Florent Georges
  * @date   2012-02-19
@@ -26,17 +41,175 @@ public class JavaProcessFactory
     {
         myWorkspace = ws;
         myMessages = messages;
+        File cds = new File(System.getProperty("user.home"), ".xproject/cds/");
+        myCds = new CdsArchive(cds, messages);
     }
 
     public JavaProcess initNewProcess()
     {
-        return new JavaProcess(myWorkspace, myMessages);
+        return new JavaProcess(myWorkspace, myMessages, this);
+    }
+
+    /**
+     * Kill all the worker JVMs.
+     */
+    public synchronized void shutdown()
+    {
+        for ( WorkerPool pool : myPools.values() ) {
+            pool.shutdown();
+        }
+        myPools.clear();
+        if ( myEvictor != null ) {
+            myEvictor.shutdown();
+            myEvictor = null;
+        }
+        myLimit = null;
+    }
+
+    /**
+     * Return the pool of workers for the pool key, class path and env vars.
+     * 
+     * The pool is created the first time.  Its workers are started with the
+     * Java args (e.g. system properties), the class path (which contains the
+     * plugin classes, for WorkerMain) and the env vars.  The pool key must
+     * identify the Java args, but only their stable part (the system
+     * properties, the heap class and the GC, not the GC log file nor the CDS
+     * archive), so the same pool is used for all the runs in the same config.
+     * All the pools share the same max number of workers ("pool.size").
+     */
+    synchronized WorkerPool getPool(List<String> java_args, String pool_key, List<String> classpath, Map<String, String> env)
+            throws XProjectException
+    {
+        String key = pool_key + " " + classpath + " " + env;
+        WorkerPool pool = myPools.get(key);
+        if ( pool == null ) {
+            List<String> command = new ArrayList<String>();
+            File java = new File(System.getProperty("java.home"), "bin/java");
+            command.add(java.getAbsolutePath());
+            command.addAll(java_args);
+            // from Java 18, WorkerMain cannot trap System.exit() without it (and cannot at all from Java 24)
+            int version = MiscUtils.getJavaVersion();
+            if ( version >= 18 && version < 24 ) {
+                command.add("-Djava.security.manager=allow");
+            }
+            command.add("-cp");
+            StringBuilder cp = new StringBuilder();
+            for ( String item : classpath ) {
+                if ( cp.length() > 0 ) {
+                    cp.append(File.pathSeparator);
+                }
+                cp.append(item);
+            }
+            command.add(cp.toString());
+            command.add(WorkerMain.class.getName());
+            int  max_runs = XProjectOptions.getInt("pool.max-runs", 50);
+            long idle     = XProjectOptions.getLong("pool.idle-timeout", 10 * 60 * 1000);
+            long ping     = XProjectOptions.getLong("pool.ping-timeout", 5000);
+            if ( myLimit == null ) {
+                myLimit = new WorkerPool.Limit(XProjectOptions.getInt("pool.size", 2));
+                scheduleEviction(idle);
+            }
+            pool = new WorkerPool(command, new HashMap<String, String>(env), myLimit, max_runs, idle, ping);
+            myPools.put(key, pool);
+        }
+        return pool;
+    }
+
+    /**
+     * The number of pools, with or without workers.
+     */
+    synchronized int getPoolCount()
+    {
+        return myPools.size();
+    }
+
+    /**
+     * Evict the idle workers of all the pools, and drop the pools left without worker.
+     */
+    synchronized void evictIdle()
+    {
+        if ( myLimit == null ) {
+            return;
+        }
+        for ( WorkerPool pool : myLimit.getPools() ) {
+            pool.evictIdle();
+        }
+        Iterator<WorkerPool> it = myPools.values().iterator();
+        while ( it.hasNext() ) {
+            if ( it.next().isUnused() ) {
+                it.remove();
+            }
+        }
+    }
+
+    /**
+     * Return the Java argument to use a class-data-sharing archive, or null.
+     * 
+     * Null is returned if CDS is disabled or not supported, or if the archive
+     * for the class path is not generated yet (see CdsArchive).
+     */
+    String getCdsArgument(List<String> classpath, List<String> java_args)
+    {
+        if ( ! CdsArchive.isEnabled() ) {
+            return null;
+        }
+        return myCds.getJavaArgument(classpath, java_args);
+    }
+
+    /**
+     * Execute a pooled run, on a background thread.
+     */
+    void execute(Runnable run)
+    {
+        RUNNER.execute(run);
+    }
+
+    private void scheduleEviction(long idle)
+    {
+        if ( myEvictor == null ) {
+            myEvictor = Executors.newSingleThreadScheduledExecutor(new DaemonThreads("xproject-pool-evictor"));
+        }
+        long period = Math.max(1000, idle / 2);
+        myEvictor.scheduleAtFixedRate(new Runnable() {
+            public void run() {
+                evictIdle();
+            }
+        }, period, period, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Create daemon threads, so they do not prevent oXygen from exiting.
+     */
+    private static class DaemonThreads
+            implements ThreadFactory
+    {
+        public DaemonThreads(String name) {
+            myName = name;
+        }
+
+        public Thread newThread(Runnable r) {
+            Thread t = new Thread(r, myName);
+            t.setDaemon(true);
+            return t;
+        }
+
+        private final String myName;
     }
 
     private Workspace myWorkspace;
     private UserMessages myMessages;
-}
+    /** The class-data-sharing archives for the child JVMs. */
+    private CdsArchive myCds;
+    /** The pools of workers, keyed by their launch config. */
+    private Map<String, WorkerPool> myPools = new HashMap<String, WorkerPool>();
+    /** The max number of workers, shared by all the pools, created with the first pool. */
+    private WorkerPool.Limit myLimit;
+    /** The idle worker evictor, created with the first pool. */
+    private ScheduledExecutorService myEvictor;
 
+    /** The threads waiting for the pooled runs. */
+    private static final ExecutorService RUNNER = Executors.newCachedThreadPool(new DaemonThreads("xproject-pool-run"));
+}
 
 /* ------------------------------------------------------------------------ */
 /*  DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS COMMENT.               */
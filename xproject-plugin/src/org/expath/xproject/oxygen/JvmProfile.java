@@ -0,0 +1,498 @@
+/****************************************************************************/
+/*  File:       JvmProfile.java                                             */
+/*  Author:     F. Georges - H2O Consulting                                 */
+/*  Date:       2026-10-18                                                  */
+/*  Tags:                                                                   */
+/*      Copyright (c) 2026 Florent Georges (see end of file.)               */
+/* ------------------------------------------------------------------------ */
+
+
+package org.expath.xproject.oxygen;
+
+import java.io.File;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import javax.xml.parsers.DocumentBuilder;
+import javax.xml.parsers.DocumentBuilderFactory;
+import org.apache.log4j.Logger;
+import org.w3c.dom.Element;
+import org.w3c.dom.NodeList;
+
+
+/**
+ * The memory and GC settings of the child JVMs for a phase.
+ *
+ * The settings are, in this order of precedence:
+ * - in project.xml, the elements "jvm" in the namespace NS_OXYGEN, with
+ *   the attributes "heap" (in MB), "gc" and "args" (the ones with an
+ *   attribute "phase" only apply to that phase, e.g. "test")
+ * - the options "jvm.[phase].heap", ".gc" and ".args", then the options
+ *   "jvm.heap", "jvm.gc" and "jvm.args" for all the phases
+ * - by default, the heap is sized from the phase and the size of src/ (a
+ *   power of 2, at most "jvm.max-heap" MB, by default a quarter of the
+ *   physical memory, and at most 3/4 of the free memory, shared by the
+ *   children run at the same time), and the GC is
+ *   the serial GC up to 1 GB, the parallel GC beyond (no pause goal for
+ *   batch runs, only the throughput matters)
+ *
+ * When a process ran out of memory, it is run again with twice the heap
+ * (see grow()), at most "jvm.oom-retries" times (default 1).  The GC log
+ * of each run is written to xproject/.gc-logs/ (option "jvm.gc-log"), and
+ * deleted if the run succeeded; at most "jvm.gc-log.max" logs are kept
+ * there, the oldest ones are deleted first.  The pool workers are shared
+ * by the projects and the phases, so they use the heap class instead of
+ * the heap (the next power of 2, see getPoolKey()), and their GC logs are
+ * in a temporary dir, one per worker.  All
+ * this is disabled by setting "jvm.profiles" to false.
+ *
+ * @author Florent Georges
+ * @date   2026-10-18
+ */
+public class JvmProfile
+{
+    /**
+     * Return the profile of a run, by its name (e.g. "tester (shard 1/4)").
+     *
+     * The project and its descriptor can be null (e.g. for the setup).
+     * Return null if the profiles are disabled.
+     */
+    public static JvmProfile getProfile(String name, File project, File desc)
+    {
+        return getProfile(name, project, desc, 1);
+    }
+
+    /**
+     * Return the profile of a run, started with other ones at the same time.
+     *
+     * The free memory is shared by the "concurrent" children (this one
+     * included, e.g. the shards of a test run, times the projects of a
+     * batch), for the default heap.
+     */
+    public static JvmProfile getProfile(String name, File project, File desc, int concurrent)
+    {
+        if ( ! XProjectOptions.getBoolean("jvm.profiles", true) ) {
+            return null;
+        }
+        String phase = getPhase(name);
+        JvmProfile profile = new JvmProfile(phase, getMaxHeap());
+        profile.myGcLogDir = project == null
+                ? new File(System.getProperty("java.io.tmpdir"), "xproject-gc-logs")
+                : new File(new File(project, XProjectConstants.PRIVATE_DIR), ".gc-logs");
+        // the options
+        profile.set(XProjectOptions.getString("jvm.heap", null),
+                XProjectOptions.getString("jvm.gc", null),
+                XProjectOptions.getString("jvm.args", null));
+        profile.set(XProjectOptions.getString("jvm." + phase + ".heap", null),
+                XProjectOptions.getString("jvm." + phase + ".gc", null),
+                XProjectOptions.getString("jvm." + phase + ".args", null));
+        // the project
+        if ( desc != null && desc.isFile() ) {
+            profile.setFromDescriptor(desc);
+        }
+        // the defaults
+        if ( profile.myHeap <= 0 ) {
+            profile.myHeap = getDefaultHeap(phase, project, profile.myMaxHeap, Math.max(1, concurrent));
+        }
+        if ( profile.myGc == null ) {
+            profile.myGc = profile.myHeap <= 1024 ? "serial" : "parallel";
+        }
+        return profile;
+    }
+
+    private JvmProfile(String phase, int max_heap)
+    {
+        myPhase = phase;
+        myMaxHeap = max_heap;
+        myArgs = new ArrayList<String>();
+    }
+
+    /**
+     * Return the profile for a run after this one ran out of memory, or null.
+     *
+     * The new profile has twice the heap, at most the max heap.  Return null
+     * if the heap is already at the max, or if there is no retry left.
+     */
+    public JvmProfile grow()
+    {
+        if ( myRetries >= XProjectOptions.getInt("jvm.oom-retries", 1) || myHeap >= myMaxHeap ) {
+            return null;
+        }
+        JvmProfile larger = new JvmProfile(myPhase, myMaxHeap);
+        larger.myHeap = Math.min(myHeap * 2, myMaxHeap);
+        larger.myGc = myGc;
+        larger.myArgs.addAll(myArgs);
+        larger.myRetries = myRetries + 1;
+        larger.myGcLogDir = myGcLogDir;
+        return larger;
+    }
+
+    /**
+     * The Java arguments for the profile.
+     *
+     * If the GC log is enabled, a new log file is used for each call, for a
+     * forked run.  For the pool workers (which run several times), the heap
+     * is the heap class, and the file name is the same for all the calls with
+     * the same pool key, but contains the worker PID.
+     */
+    public List<String> getJavaArguments(boolean pooled)
+    {
+        List<String> args = new ArrayList<String>();
+        args.add("-Xmx" + (pooled ? getHeapClass() : myHeap) + "m");
+        String gc = getGcArgument(myGc);
+        if ( gc != null ) {
+            args.add(gc);
+        }
+        // fail fast (and report the error) instead of thrashing (from Java 8u92)
+        if ( MiscUtils.getJavaVersion() >= 9 ) {
+            args.add("-XX:+ExitOnOutOfMemoryError");
+        }
+        myGcLog = null;
+        if ( XProjectOptions.getBoolean("jvm.gc-log", true) ) {
+            myGcLog = getGcLog(pooled);
+            myGcLogPooled = pooled;
+            if ( myGcLog != null ) {
+                args.add(getGcLogArgument(myGcLog));
+            }
+        }
+        args.addAll(myArgs);
+        return args;
+    }
+
+    /**
+     * The key of the pool of workers for the profile.
+     * 
+     * Only the settings which change the worker JVM: the heap class, the GC
+     * and the extra args.  Not the phase nor the GC log, so the pool workers
+     * are shared by all the phases (and projects) with the same settings.
+     */
+    public String getPoolKey()
+    {
+        return "heap=" + getHeapClass() + "m gc=" + myGc + " args=" + myArgs;
+    }
+
+    /**
+     * The heap of the pool workers, in MB: the next power of 2, at most the max heap.
+     * 
+     * So the pools do not depend on the free memory at the time of the run.
+     * A heap set explicitly above the max heap is kept as is.
+     */
+    int getHeapClass()
+    {
+        if ( myHeap >= myMaxHeap ) {
+            return myHeap;
+        }
+        int heap = MIN_HEAP;
+        while ( heap < myHeap ) {
+            heap *= 2;
+        }
+        return Math.min(heap, myMaxHeap);
+    }
+
+    public String getPhase()
+    {
+        return myPhase;
+    }
+
+    /**
+     * The max heap, in MB.
+     */
+    public int getHeap()
+    {
+        return myHeap;
+    }
+
+    /**
+     * The GC log of the last run, or null.
+     */
+    public File getGcLog()
+    {
+        return myGcLog;
+    }
+
+    /**
+     * Delete the GC log of the last run if it succeeded (not for a pool worker, which runs again).
+     */
+    public void runEnded(boolean success)
+    {
+        if ( success && myGcLog != null && ! myGcLogPooled ) {
+            myGcLog.delete();
+            myGcLog = null;
+        }
+    }
+
+    /**
+     * Set the non-null values (the heap in MB, the GC name, the extra args separated by spaces).
+     */
+    private void set(String heap, String gc, String args)
+    {
+        if ( heap != null && heap.trim().length() > 0 ) {
+            try {
+                myHeap = Integer.parseInt(heap.trim());
+            }
+            catch ( NumberFormatException ex ) {
+                LOG.warn("Invalid heap size for the " + myPhase + ": " + heap);
+            }
+        }
+        if ( gc != null && gc.trim().length() > 0 ) {
+            myGc = gc.trim();
+        }
+        if ( args != null && args.trim().length() > 0 ) {
+            myArgs.clear();
+            for ( String a : args.trim().split("\\s+") ) {
+                myArgs.add(a);
+            }
+        }
+    }
+
+    /**
+     * Set the values from the elements "jvm" in project.xml (the general ones, then the ones for the phase).
+     */
+    private void setFromDescriptor(File desc)
+    {
+        NodeList jvms;
+        try {
+            DocumentBuilderFactory factory = DocumentBuilderFactory.newInstance();
+            factory.setNamespaceAware(true);
+            DocumentBuilder builder = factory.newDocumentBuilder();
+            jvms = builder.parse(desc).getElementsByTagNameNS(XProjectConstants.NS_OXYGEN, "jvm");
+        }
+        catch ( Exception ex ) {
+            LOG.warn("Error reading the JVM profiles in " + desc + ": " + ex);
+            return;
+        }
+        for ( int pass = 0; pass < 2; ++pass ) {
+            for ( int i = 0; i < jvms.getLength(); ++i ) {
+                Element jvm = (Element) jvms.item(i);
+                String phase = jvm.getAttribute("phase");
+                boolean general = phase.length() == 0;
+                if ( pass == 0 ? general : phase.equals(myPhase) ) {
+                    set(jvm.getAttribute("heap"), jvm.getAttribute("gc"), jvm.getAttribute("args"));
+                }
+            }
+        }
+    }
+
+    /**
+     * The phase of a run, from its name (e.g. "test" for "tester (shard 1/4)").
+     */
+    private static String getPhase(String name)
+    {
+        String run = name.split(" \\(")[0];
+        if ( "builder".equals(run) ) {
+            return "build";
+        }
+        else if ( "tester".equals(run) ) {
+            return "test";
+        }
+        else if ( "doc maker".equals(run) ) {
+            return "doc";
+        }
+        else if ( "releaser".equals(run) ) {
+            return "release";
+        }
+        else {
+            return run.replace(' ', '-');
+        }
+    }
+
+    /**
+     * The max heap for the auto-sized and grown heaps, in MB.
+     */
+    private static int getMaxHeap()
+    {
+        int max = XProjectOptions.getInt("jvm.max-heap", 0);
+        if ( max > 0 ) {
+            return max;
+        }
+        long total = MiscUtils.getTotalPhysicalMemory();
+        if ( total <= 0 ) {
+            return DEFAULT_MAX_HEAP;
+        }
+        return (int) Math.max(MIN_HEAP, total / 4 / MB);
+    }
+
+    /**
+     * The default heap: a base for the phase, plus a factor of the size of src/.
+     *
+     * At most the share of the free memory of one of the concurrent children.
+     */
+    private static int getDefaultHeap(String phase, File project, int max_heap, int concurrent)
+    {
+        int base;
+        int factor;
+        if ( "test".equals(phase) || "doc".equals(phase) ) {
+            base = 512;
+            factor = 32;
+        }
+        else if ( "build".equals(phase) || "release".equals(phase) ) {
+            base = 256;
+            factor = 8;
+        }
+        else {
+            base = MIN_HEAP;
+            factor = 0;
+        }
+        long src = project == null ? 0 : getSize(new File(project, "src"));
+        long wanted = base + factor * src / MB;
+        int heap = MIN_HEAP;
+        while ( heap < wanted ) {
+            heap *= 2;
+        }
+        long free = MiscUtils.getFreePhysicalMemory();
+        int limit = max_heap;
+        if ( free > 0 ) {
+            limit = (int) Math.min(limit, Math.max(MIN_HEAP, free * 3 / 4 / concurrent / MB));
+        }
+        return Math.min(heap, limit);
+    }
+
+    private static long getSize(File dir)
+    {
+        File[] children = dir.listFiles();
+        if ( children == null ) {
+            return 0;
+        }
+        long size = 0;
+        for ( File c : children ) {
+            size += c.isDirectory() ? getSize(c) : c.length();
+        }
+        return size;
+    }
+
+    /**
+     * The Java argument for a GC name ("serial", "parallel", "g1", or "default" for none).
+     *
+     * Any other value is used as is (e.g. "-XX:+UseZGC").
+     */
+    private static String getGcArgument(String gc)
+    {
+        if ( "serial".equals(gc) ) {
+            return "-XX:+UseSerialGC";
+        }
+        else if ( "parallel".equals(gc) ) {
+            return "-XX:+UseParallelGC";
+        }
+        else if ( "g1".equals(gc) ) {
+            return "-XX:+UseG1GC";
+        }
+        else if ( "default".equals(gc) ) {
+            return null;
+        }
+        else {
+            return gc;
+        }
+    }
+
+    /**
+     * The Java argument to log the GC in the file (the syntax changed in Java 9).
+     */
+    private static String getGcLogArgument(File log)
+    {
+        String path = log.getAbsolutePath();
+        if ( MiscUtils.getJavaVersion() < 9 ) {
+            return "-Xloggc:" + path;
+        }
+        // colons are separators in -Xlog, quote the path if needed (e.g. on Windows)
+        if ( path.indexOf(':') >= 0 ) {
+            path = "\"" + path + "\"";
+        }
+        return "-Xlog:gc*:file=" + path;
+    }
+
+    /**
+     * A new GC log file in the log dir (not created, the JVM does), after deleting the oldest ones.
+     */
+    private File getGcLog(boolean pooled)
+    {
+        File dir = pooled ? POOL_GC_LOG_DIR : myGcLogDir;
+        if ( ! dir.isDirectory() && ! dir.mkdirs() ) {
+            LOG.debug("Error creating the GC log dir: " + dir);
+            return null;
+        }
+        pruneGcLogs(dir, XProjectOptions.getInt("jvm.gc-log.max", 20) - 1);
+        if ( pooled ) {
+            return new File(dir, "gc-worker-" + myGc + "-" + getHeapClass() + "m-%p.log");
+        }
+        String stamp = new SimpleDateFormat("yyyyMMdd-HHmmss").format(new Date());
+        return new File(myGcLogDir, "gc-" + myPhase + "-" + stamp + "-" + GC_LOG_COUNTER.incrementAndGet() + ".log");
+    }
+
+    /**
+     * Delete the oldest logs in a dir, to keep at most max of them.
+     */
+    private static void pruneGcLogs(File dir, int max)
+    {
+        File[] logs = dir.listFiles();
+        if ( logs == null || logs.length <= max ) {
+            return;
+        }
+        Arrays.sort(logs, new Comparator<File>() {
+            public int compare(File f1, File f2) {
+                long m1 = f1.lastModified();
+                long m2 = f2.lastModified();
+                return m1 > m2 ? -1 : m1 < m2 ? 1 : 0;
+            }
+        });
+        for ( int i = Math.max(0, max); i < logs.length; ++i ) {
+            logs[i].delete();
+        }
+    }
+
+    /** The min heap, in MB. */
+    private static final int MIN_HEAP = 128;
+    /** The max heap when the physical memory is not known, in MB. */
+    private static final int DEFAULT_MAX_HEAP = 2048;
+    private static final long MB = 1024 * 1024;
+    /** The dir of the GC logs of the pool workers, shared by the projects. */
+    private static final File POOL_GC_LOG_DIR = new File(System.getProperty("java.io.tmpdir"), "xproject-pool-gc-logs");
+    /** To make the names of the GC logs unique, within the same second. */
+    private static final AtomicInteger GC_LOG_COUNTER = new AtomicInteger();
+
+    /** The phase (e.g. "test"). */
+    private final String myPhase;
+    /** The max for myHeap, in MB. */
+    private final int myMaxHeap;
+    /** The extra Java arguments. */
+    private final List<String> myArgs;
+    /** The heap, in MB. */
+    private int myHeap;
+    /** The GC name (or argument). */
+    private String myGc;
+    /** The number of times the heap grew. */
+    private int myRetries;
+    /** The dir of the GC logs (xproject/.gc-logs/, or a temporary dir without project). */
+    private File myGcLogDir;
+    /** The GC log of the last run, if any. */
+    private File myGcLog;
+    /** Whether the GC log of the last run is the one of a pool worker. */
+    private boolean myGcLogPooled;
+
+    /** The logger for this class. */
+    private static final Logger LOG = Logger.getLogger(JvmProfile.class);
+}
+
+
+/* ------------------------------------------------------------------------ */
+/*  DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS COMMENT.               */
+/*                                                                          */
+/*  The contents of this file are subject to the Mozilla Public License     */
+/*  Version 1.0 (the "License"); you may not use this file except in        */
+/*  compliance with the License. You may obtain a copy of the License at    */
+/*  http://www.mozilla.org/MPL/.                                            */
+/*                                                                          */
+/*  Software distributed under the License is distributed on an "AS IS"     */
+/*  basis, WITHOUT WARRANTY OF ANY KIND, either express or implied.  See    */
+/*  the License for the specific language governing rights and limitations  */
+/*  under the License.                                                      */
+/*                                                                          */
+/*  The Original Code is: all this file.                                    */
+/*                                                                          */
+/*  The Initial Developer of the Original Code is Florent Georges.          */
+/*                                                                          */
+/*  Contributor(s): none.                                                   */
+/* ------------------------------------------------------------------------ */
@@ -0,0 +1,462 @@
+/****************************************************************************/
+/*  File:       LogView.java                                                */
+/*  Author:     F. Georges - H2O Consulting                                 */
+/*  Date:       2026-10-18                                                  */
+/*  Tags:                                                                   */
+/*      Copyright (c) 2026 Florent Georges (see end of file.)               */
+/* ------------------------------------------------------------------------ */
+
+
+package org.expath.xproject.oxygen;
+
+import java.awt.BorderLayout;
+import java.awt.Color;
+import java.awt.Component;
+import java.awt.FlowLayout;
+import java.awt.Font;
+import java.awt.event.ActionEvent;
+import java.awt.event.ActionListener;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import javax.swing.AbstractListModel;
+import javax.swing.DefaultListCellRenderer;
+import javax.swing.JButton;
+import javax.swing.JComboBox;
+import javax.swing.JFileChooser;
+import javax.swing.JLabel;
+import javax.swing.JList;
+import javax.swing.JOptionPane;
+import javax.swing.JPanel;
+import javax.swing.JProgressBar;
+import javax.swing.JScrollBar;
+import javax.swing.JScrollPane;
+import javax.swing.Timer;
+import javax.swing.UIManager;
+import org.apache.log4j.Logger;
+
+
+/**
+ * The log component of the XProject view.
+ *
+ * The lines are displayed in a JList, which only renders the visible lines
+ * (all the lines have the same height).  Lines can be added from any thread:
+ * they are queued, and added to the list in one batch on the EDT, every 200
+ * ms.  Only the last "view.max-lines" lines are kept (default 100000).
+ *
+ * The lines can be filtered by level.  For each level, the lines of that
+ * level or above are kept in their own ring buffer (sharing the line
+ * objects), so changing the filter does not have to scan the history.
+ *
+ * The progress of the running actions is shown in a progress bar, next to
+ * the buttons.  Each action registers an object whose string value is its
+ * progress, which is only rendered by the same timer (so the actions can
+ * update their progress at any rate, it costs nothing to the EDT).
+ *
+ * @author Florent Georges
+ * @date   2026-10-18
+ */
+public class LogView
+        extends JPanel
+{
+    /**
+     * The level of a line.
+     */
+    public static enum Level
+    {
+        DEBUG,
+        INFO,
+        ERROR
+    }
+
+    /**
+     * Must be called on the EDT.
+     */
+    public LogView()
+    {
+        super(new BorderLayout());
+        myPending = new ConcurrentLinkedQueue<Line>();
+        int max = XProjectOptions.getInt("view.max-lines", 100000);
+        myRings = new Ring[Level.values().length];
+        for ( int i = 0; i < myRings.length; ++i ) {
+            myRings[i] = new Ring(max);
+        }
+        myShown = myRings[0];
+        myModel = new Model();
+        // the list
+        myList = new JList(myModel);
+        Font font = UIManager.getFont("TextArea.font");
+        int size = font == null ? 12 : font.getSize();
+        myList.setFont(new Font("Monospaced", Font.PLAIN, size));
+        myList.setPrototypeCellValue(new Line(Level.DEBUG, "XProject log"));
+        myCharWidth = myList.getFontMetrics(myList.getFont()).charWidth('m');
+        myList.setCellRenderer(new Renderer());
+        myScroll = new JScrollPane(myList);
+        add(myScroll, BorderLayout.CENTER);
+        // the filter and clear buttons
+        JPanel tools = new JPanel(new FlowLayout(FlowLayout.LEFT));
+        tools.add(new JLabel("Level:"));
+        final JComboBox filter = new JComboBox(Level.values());
+        filter.addActionListener(new ActionListener() {
+            public void actionPerformed(ActionEvent e) {
+                setFilter((Level) filter.getSelectedItem());
+            }
+        });
+        tools.add(filter);
+        JButton clear = new JButton("Clear");
+        clear.addActionListener(new ActionListener() {
+            public void actionPerformed(ActionEvent e) {
+                clear();
+            }
+        });
+        tools.add(clear);
+        JButton metrics = new JButton("Export metrics");
+        metrics.addActionListener(new ActionListener() {
+            public void actionPerformed(ActionEvent e) {
+                exportMetrics();
+            }
+        });
+        tools.add(metrics);
+        myProgressBar = new JProgressBar();
+        myProgressBar.setStringPainted(true);
+        myProgressBar.setVisible(false);
+        tools.add(myProgressBar);
+        add(tools, BorderLayout.NORTH);
+        // the batches
+        Timer timer = new Timer(200, new ActionListener() {
+            public void actionPerformed(ActionEvent e) {
+                flush();
+                showProgress();
+            }
+        });
+        timer.start();
+    }
+
+    /**
+     * Ask for a file, and save the metrics in it, as JSON (see Metrics).
+     */
+    private void exportMetrics()
+    {
+        JFileChooser chooser = new JFileChooser();
+        chooser.setSelectedFile(new File("xproject-metrics.json"));
+        if ( chooser.showSaveDialog(this) != JFileChooser.APPROVE_OPTION ) {
+            return;
+        }
+        File file = chooser.getSelectedFile();
+        try {
+            Writer out = new OutputStreamWriter(new FileOutputStream(file), "UTF-8");
+            try {
+                out.write(Metrics.toJson());
+            }
+            finally {
+                out.close();
+            }
+            add(Level.INFO, "Metrics exported to " + file);
+        }
+        catch ( IOException ex ) {
+            LOG.error("Error exporting the metrics to " + file, ex);
+            JOptionPane.showMessageDialog(this, "Error exporting the metrics: " + ex.getMessage(),
+                    "XProject", JOptionPane.ERROR_MESSAGE);
+        }
+    }
+
+    /**
+     * Add a (potentially multi-line) message, can be called from any thread.
+     */
+    public void add(Level level, String msg)
+    {
+        for ( String text : msg.split("\r?\n", -1) ) {
+            myPending.add(new Line(level, text));
+        }
+    }
+
+    /**
+     * Set the progress of an action, can be called from any thread.
+     *
+     * The string value of the progress object is shown while the action is
+     * running, until it is removed with the same name.
+     */
+    public void setProgress(String name, Object progress)
+    {
+        myProgress.put(name, progress);
+    }
+
+    /**
+     * Remove the progress of an action, can be called from any thread.
+     */
+    public void removeProgress(String name)
+    {
+        myProgress.remove(name);
+    }
+
+    /**
+     * Render the progress of the running actions, if any.
+     */
+    private void showProgress()
+    {
+        if ( myProgress.isEmpty() ) {
+            if ( myProgressBar.isVisible() ) {
+                myProgressBar.setIndeterminate(false);
+                myProgressBar.setVisible(false);
+            }
+            return;
+        }
+        StringBuilder text = new StringBuilder();
+        for ( Map.Entry<String, Object> e : myProgress.entrySet() ) {
+            if ( text.length() > 0 ) {
+                text.append(" | ");
+            }
+            text.append(e.getKey()).append(": ").append(e.getValue());
+        }
+        myProgressBar.setString(text.toString());
+        if ( ! myProgressBar.isVisible() ) {
+            myProgressBar.setIndeterminate(true);
+            myProgressBar.setVisible(true);
+            revalidate();
+        }
+    }
+
+    /**
+     * Show only the lines of that level or above.
+     */
+    private void setFilter(Level level)
+    {
+        int old = myShown.size();
+        myShown = myRings[level.ordinal()];
+        myModel.removed(old);
+        myModel.added(myShown.size(), 0);
+        scrollToEnd();
+    }
+
+    /**
+     * Remove all the lines.
+     */
+    private void clear()
+    {
+        int old = myShown.size();
+        for ( Ring r : myRings ) {
+            r.clear();
+        }
+        myModel.removed(old);
+    }
+
+    /**
+     * Add the pending lines to the rings, and notify the list once.
+     * 
+     * As the list does not compute the width of the lines (it would have
+     * to render all of them), the width of the cells is set from the
+     * longest line so far (in chars, as the font is monospaced).
+     */
+    private void flush()
+    {
+        if ( myPending.isEmpty() ) {
+            return;
+        }
+        boolean at_end = isAtEnd();
+        int before = myShown.size();
+        int added = 0;
+        boolean evicted = false;
+        int longest = myLongest;
+        Line line;
+        while ( (line = myPending.poll()) != null ) {
+            longest = Math.max(longest, Math.min(line.toString().length(), MAX_WIDTH));
+            for ( int i = 0; i <= line.level.ordinal(); ++i ) {
+                boolean full = myRings[i].add(line);
+                if ( myRings[i] == myShown ) {
+                    ++added;
+                    evicted |= full;
+                }
+            }
+        }
+        if ( longest > myLongest ) {
+            myLongest = longest;
+            myList.setFixedCellWidth((longest + 2) * myCharWidth);
+        }
+        if ( added == 0 ) {
+            return;
+        }
+        if ( evicted ) {
+            // the first lines have been dropped, everything moved
+            myModel.removed(before);
+            myModel.added(myShown.size(), 0);
+        }
+        else {
+            myModel.added(added, before);
+        }
+        if ( at_end ) {
+            scrollToEnd();
+        }
+    }
+
+    private boolean isAtEnd()
+    {
+        JScrollBar bar = myScroll.getVerticalScrollBar();
+        return bar.getValue() + bar.getVisibleAmount() >= bar.getMaximum() - myList.getFixedCellHeight();
+    }
+
+    private void scrollToEnd()
+    {
+        int size = myShown.size();
+        if ( size > 0 ) {
+            myList.ensureIndexIsVisible(size - 1);
+        }
+    }
+
+    /**
+     * A line, with its level.
+     */
+    private static class Line
+    {
+        public Line(Level level, String text) {
+            this.level = level;
+            this.text = text;
+        }
+
+        @Override
+        public String toString() {
+            return level + ": " + text;
+        }
+
+        public final Level level;
+        public final String text;
+    }
+
+    /**
+     * A ring buffer of lines, dropping the oldest ones when full.
+     */
+    private static class Ring
+    {
+        public Ring(int max) {
+            myLines = new Line[Math.max(1, max)];
+        }
+
+        /**
+         * Add a line, return true if the oldest one has been dropped.
+         */
+        public boolean add(Line line) {
+            if ( mySize < myLines.length ) {
+                myLines[(myStart + mySize) % myLines.length] = line;
+                ++mySize;
+                return false;
+            }
+            myLines[myStart] = line;
+            myStart = (myStart + 1) % myLines.length;
+            return true;
+        }
+
+        public Line get(int i) {
+            return myLines[(myStart + i) % myLines.length];
+        }
+
+        public int size() {
+            return mySize;
+        }
+
+        public void clear() {
+            Arrays.fill(myLines, null);
+            myStart = 0;
+            mySize = 0;
+        }
+
+        private final Line[] myLines;
+        private int myStart;
+        private int mySize;
+    }
+
+    /**
+     * The list model, on the ring of the current filter.
+     */
+    private class Model
+            extends AbstractListModel
+    {
+        public int getSize() {
+            return myShown.size();
+        }
+
+        public Object getElementAt(int index) {
+            return myShown.get(index);
+        }
+
+        public void removed(int count) {
+            if ( count > 0 ) {
+                fireIntervalRemoved(this, 0, count - 1);
+            }
+        }
+
+        public void added(int count, int from) {
+            if ( count > 0 ) {
+                fireIntervalAdded(this, from, from + count - 1);
+            }
+        }
+    }
+
+    /**
+     * Render the lines, errors in red.
+     */
+    private static class Renderer
+            extends DefaultListCellRenderer
+    {
+        @Override
+        public Component getListCellRendererComponent(JList list, Object value, int index, boolean selected, boolean focus) {
+            super.getListCellRendererComponent(list, value, index, selected, focus);
+            if ( ! selected && ((Line) value).level == Level.ERROR ) {
+                setForeground(Color.RED);
+            }
+            return this;
+        }
+    }
+
+    /** The max width of the cells, in chars. */
+    private static final int MAX_WIDTH = 1000;
+
+    /** The lines added, not in the list yet. */
+    private final ConcurrentLinkedQueue<Line> myPending;
+    /** The rings, one per level (the lines of that level or above). */
+    private final Ring[] myRings;
+    /** The ring shown (depending on the filter). */
+    private Ring myShown;
+    /** The list model. */
+    private final Model myModel;
+    /** The list. */
+    private final JList myList;
+    /** The scroll pane of the list. */
+    private final JScrollPane myScroll;
+    /** The width of a char in the list font. */
+    private final int myCharWidth;
+    /** The length of the longest line so far, in chars. */
+    private int myLongest;
+    /** The progress of the running actions, by name. */
+    private final Map<String, Object> myProgress = new ConcurrentHashMap<String, Object>();
+    /** The progress bar. */
+    private final JProgressBar myProgressBar;
+
+    /** The logger for this class. */
+    private static final Logger LOG = Logger.getLogger(LogView.class);
+}
+
+
+/* ------------------------------------------------------------------------ */
+/*  DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS COMMENT.               */
+/*                                                                          */
+/*  The contents of this file are subject to the Mozilla Public License     */
+/*  Version 1.0 (the "License"); you may not use this file except in        */
+/*  compliance with the License. You may obtain a copy of the License at    */
+/*  http://www.mozilla.org/MPL/.                                            */
+/*                                                                          */
+/*  Software distributed under the License is distributed on an "AS IS"     */
+/*  basis, WITHOUT WARRANTY OF ANY KIND, either express or implied.  See    */
+/*  the License for the specific language governing rights and limitations  */
+/*  under the License.                                                      */
+/*                                                                          */
+/*  The Original Code is: all this file.                                    */
+/*                                                                          */
+/*  The Initial Developer of the Original Code is Florent Georges.          */
+/*                                                                          */
+/*  Contributor(s): none.                                                   */
+/* ------------------------------------------------------------------------ */
@@ -0,0 +1,166 @@
+/****************************************************************************/
+/*  File:       LruCache.java                                               */
+/*  Author:     F. Georges - H2O Consulting                                 */
+/*  Date:       2026-10-18                                                  */
+/*  Tags:                                                                   */
+/*      Copyright (c) 2026 Florent Georges (see end of file.)               */
+/* ------------------------------------------------------------------------ */
+
+
+package org.expath.xproject.oxygen;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * A bounded cache, evicting the least recently used entries.
+ * 
+ * Each entry is stored with a stamp, a string representing the state of its
+ * sources when the value was computed (typically modification times and
+ * sizes, or versions).  Looking an entry up with a different stamp is a
+ * miss, and the stale entry is removed.  The cache counts hits, misses and
+ * evictions, for reporting.  Each value leaving the cache (evicted, stale,
+ * replaced, removed or cleared) is passed to dropped(), to release what it
+ * holds, if anything.
+ *
+ * @author Florent Georges
+ * @date   2026-10-18
+ */
+public class LruCache<K, V>
+{
+    public LruCache(int max)
+    {
+        if ( max < 1 ) {
+            throw new IllegalArgumentException("The max size of a cache must be positive: " + max);
+        }
+        myMax = max;
+        myEntries = new LinkedHashMap<K, Stamped<V>>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<K, Stamped<V>> eldest) {
+                if ( size() > myMax ) {
+                    ++myEvictions;
+                    dropped(eldest.getValue().value);
+                    return true;
+                }
+                return false;
+            }
+        };
+    }
+
+    /**
+     * Return the value for the key, or null if not cached or if stale.
+     */
+    public synchronized V get(K key, String stamp)
+    {
+        Stamped<V> entry = myEntries.get(key);
+        if ( entry != null && entry.stamp.equals(stamp) ) {
+            ++myHits;
+            return entry.value;
+        }
+        if ( entry != null ) {
+            myEntries.remove(key);
+            dropped(entry.value);
+        }
+        ++myMisses;
+        return null;
+    }
+
+    public synchronized void put(K key, String stamp, V value)
+    {
+        Stamped<V> old = myEntries.put(key, new Stamped<V>(stamp, value));
+        if ( old != null && old.value != value ) {
+            dropped(old.value);
+        }
+    }
+
+    public synchronized void remove(K key)
+    {
+        Stamped<V> old = myEntries.remove(key);
+        if ( old != null ) {
+            dropped(old.value);
+        }
+    }
+
+    public synchronized void clear()
+    {
+        for ( Stamped<V> entry : myEntries.values() ) {
+            dropped(entry.value);
+        }
+        myEntries.clear();
+    }
+
+    /**
+     * Called when a value leaves the cache, does nothing by default.
+     */
+    protected void dropped(V value)
+    {
+        // nothing
+    }
+
+    public synchronized int size()
+    {
+        return myEntries.size();
+    }
+
+    public synchronized long getHits()
+    {
+        return myHits;
+    }
+
+    public synchronized long getMisses()
+    {
+        return myMisses;
+    }
+
+    public synchronized long getEvictions()
+    {
+        return myEvictions;
+    }
+
+    /**
+     * A human-readable summary of the counters.
+     */
+    public synchronized String getStats()
+    {
+        return "hits: " + myHits + ", misses: " + myMisses + ", evictions: " + myEvictions
+                + ", size: " + myEntries.size() + "/" + myMax;
+    }
+
+    private static class Stamped<V>
+    {
+        public Stamped(String stamp, V value) {
+            this.stamp = stamp;
+            this.value = value;
+        }
+
+        public final String stamp;
+        public final V value;
+    }
+
+    private final int myMax;
+    private final LinkedHashMap<K, Stamped<V>> myEntries;
+    private long myHits = 0;
+    private long myMisses = 0;
+    private long myEvictions = 0;
+}
+
+
+/* ------------------------------------------------------------------------ */
+/*  DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS COMMENT.               */
+/*                                                                          */
+/*  The contents of this file are subject to the Mozilla Public License     */
+/*  Version 1.0 (the "License"); you may not use this file except in        */
+/*  compliance with the License. You may obtain a copy of the License at    */
+/*  http://www.mozilla.org/MPL/.                                            */
+/*                                                                          */
+/*  Software distributed under the License is distributed on an "AS IS"     */
+/*  basis, WITHOUT WARRANTY OF ANY KIND, either express or implied.  See    */
+/*  the License for the specific language governing rights and limitations  */
+/*  under the License.                                                      */
+/*                                                                          */
+/*  The Original Code is: all this file.                                    */
+/*                                                                          */
+/*  The Initial Developer of the Original Code is Florent Georges.          */
+/*                                                                          */
+/*  Contributor(s): none.                                                   */
+/* ------------------------------------------------------------------------ */
@@ -0,0 +1,224 @@
+/****************************************************************************/
+/*  File:       Metrics.java                                                */
+/*  Author:     F. Georges - H2O Consulting                                 */
+/*  Date:       2026-10-18                                                  */
+/*  Tags:                                                                   */
+/*      Copyright (c) 2026 Florent Georges (see end of file.)               */
+/* ------------------------------------------------------------------------ */
+
+
+package org.expath.xproject.oxygen;
+
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+
+/**
+ * The metrics of the plugin: counters and timing histograms, in memory.
+ *
+ * The timings are recorded for each stage of the actions (e.g. computing
+ * the build manifest, scanning the class path, spawning a process, the run
+ * of the process itself, or handling its output), in ms.  The names are
+ * dot-separated, e.g. "process.spawn" or "run.builder".  The metrics can be
+ * exported as JSON from the XProject view.
+ *
+ * @author Florent Georges
+ * @date   2026-10-18
+ */
+public class Metrics
+{
+    /**
+     * Increment a counter.
+     */
+    public static void increment(String name)
+    {
+        add(name, 1);
+    }
+
+    /**
+     * Add to a counter.
+     */
+    public static void add(String name, long value)
+    {
+        AtomicLong counter = COUNTERS.get(name);
+        if ( counter == null ) {
+            AtomicLong c = new AtomicLong();
+            counter = COUNTERS.putIfAbsent(name, c);
+            if ( counter == null ) {
+                counter = c;
+            }
+        }
+        counter.addAndGet(value);
+    }
+
+    /**
+     * Record a timing, in ms.
+     */
+    public static void record(String name, long time)
+    {
+        Histogram histo = HISTOGRAMS.get(name);
+        if ( histo == null ) {
+            Histogram h = new Histogram();
+            histo = HISTOGRAMS.putIfAbsent(name, h);
+            if ( histo == null ) {
+                histo = h;
+            }
+        }
+        histo.record(time);
+    }
+
+    /**
+     * Record the time elapsed since start (as given by currentTimeMillis()), and return it.
+     */
+    public static long since(String name, long start)
+    {
+        long time = System.currentTimeMillis() - start;
+        record(name, time);
+        return time;
+    }
+
+    /**
+     * Reset all the metrics.
+     */
+    public static void reset()
+    {
+        COUNTERS.clear();
+        HISTOGRAMS.clear();
+    }
+
+    /**
+     * Return the metrics as a JSON object, with "counters" and "timings".
+     *
+     * Each timing has its count, sum, min, max, and estimated percentiles
+     * (the upper bound of the bucket they fall in).
+     */
+    public static String toJson()
+    {
+        StringBuilder json = new StringBuilder();
+        json.append("{\n  \"counters\": {");
+        String sep = "\n";
+        for ( Map.Entry<String, AtomicLong> c : new TreeMap<String, AtomicLong>(COUNTERS).entrySet() ) {
+            json.append(sep).append("    ").append(quote(c.getKey())).append(": ").append(c.getValue().get());
+            sep = ",\n";
+        }
+        json.append("\n  },\n  \"timings\": {");
+        sep = "\n";
+        for ( Map.Entry<String, Histogram> h : new TreeMap<String, Histogram>(HISTOGRAMS).entrySet() ) {
+            json.append(sep).append("    ").append(quote(h.getKey())).append(": ");
+            h.getValue().toJson(json);
+            sep = ",\n";
+        }
+        json.append("\n  }\n}\n");
+        return json.toString();
+    }
+
+    private static String quote(String value)
+    {
+        StringBuilder res = new StringBuilder("\"");
+        for ( char c : value.toCharArray() ) {
+            if ( c == '"' || c == '\\' ) {
+                res.append('\\').append(c);
+            }
+            else if ( c < ' ' ) {
+                res.append(String.format("\\u%04x", (int) c));
+            }
+            else {
+                res.append(c);
+            }
+        }
+        return res.append('"').toString();
+    }
+
+    /**
+     * The distribution of a timing, in buckets 1, 2, 5, 10, 20, 50... ms.
+     */
+    private static class Histogram
+    {
+        public synchronized void record(long time) {
+            if ( myCount == 0 || time < myMin ) {
+                myMin = time;
+            }
+            if ( myCount == 0 || time > myMax ) {
+                myMax = time;
+            }
+            ++myCount;
+            mySum += time;
+            int i = 0;
+            while ( i < BOUNDS.length && time > BOUNDS[i] ) {
+                ++i;
+            }
+            ++myBuckets[i];
+        }
+
+        public synchronized void toJson(StringBuilder json) {
+            json.append("{ \"count\": ").append(myCount);
+            json.append(", \"sum\": ").append(mySum);
+            json.append(", \"min\": ").append(myMin);
+            json.append(", \"max\": ").append(myMax);
+            json.append(", \"p50\": ").append(getPercentile(50));
+            json.append(", \"p90\": ").append(getPercentile(90));
+            json.append(", \"p99\": ").append(getPercentile(99));
+            json.append(" }");
+        }
+
+        private long getPercentile(int percent) {
+            long rank = (myCount * percent + 99) / 100;
+            long seen = 0;
+            for ( int i = 0; i < myBuckets.length; ++i ) {
+                seen += myBuckets[i];
+                if ( seen >= rank && seen > 0 ) {
+                    return i < BOUNDS.length ? Math.min(BOUNDS[i], myMax) : myMax;
+                }
+            }
+            return myMax;
+        }
+
+        private long myCount;
+        private long mySum;
+        private long myMin;
+        private long myMax;
+        private final long[] myBuckets = new long[BOUNDS.length + 1];
+    }
+
+    /** The upper bounds of the histogram buckets, in ms (the last bucket is unbounded). */
+    private static final long[] BOUNDS;
+    static {
+        BOUNDS = new long[18];
+        long base = 1;
+        for ( int i = 0; i < BOUNDS.length; i += 3 ) {
+            BOUNDS[i] = base;
+            BOUNDS[i + 1] = base * 2;
+            BOUNDS[i + 2] = base * 5;
+            base *= 10;
+        }
+    }
+
+    /** The counters, by name. */
+    private static final ConcurrentMap<String, AtomicLong> COUNTERS = new ConcurrentHashMap<String, AtomicLong>();
+    /** The timings, by name. */
+    private static final ConcurrentMap<String, Histogram> HISTOGRAMS = new ConcurrentHashMap<String, Histogram>();
+}
+
+
+/* ------------------------------------------------------------------------ */
+/*  DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS COMMENT.               */
+/*                                                                          */
+/*  The contents of this file are subject to the Mozilla Public License     */
+/*  Version 1.0 (the "License"); you may not use this file except in        */
+/*  compliance with the License. You may obtain a copy of the License at    */
+/*  http://www.mozilla.org/MPL/.                                            */
+/*                                                                          */
+/*  Software distributed under the License is distributed on an "AS IS"     */
+/*  basis, WITHOUT WARRANTY OF ANY KIND, either express or implied.  See    */
+/*  the License for the specific language governing rights and limitations  */
+/*  under the License.                                                      */
+/*                                                                          */
+/*  The Original Code is: all this file.                                    */
+/*                                                                          */
+/*  The Initial Developer of the Original Code is Florent Georges.          */
+/*                                                                          */
+/*  Contributor(s): none.                                                   */
+/* ------------------------------------------------------------------------ */
@@ -10,8 +10,18 @@
 package org.expath.xproject.oxygen;
 
 import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.lang.management.ManagementFactory;
+import java.lang.management.OperatingSystemMXBean;
+import java.lang.reflect.Method;
 import java.net.URI;
+import java.net.URISyntaxException;
+import java.security.CodeSource;
+import org.apache.log4j.Logger;
 
 
 /**
@@ -37,6 +47,155 @@ public class MiscUtils
             return file.getAbsolutePath();
         }
     }
+
+    /**
+     * Return a stamp for the file, changing when the file is modified.
+     * 
+     * The stamp is made of the last modification time and the size of the
+     * file.  It is "none" if the file does not exist.
+     */
+    public static String getStamp(File file)
+    {
+        if ( ! file.exists() ) {
+            return "none";
+        }
+        return file.lastModified() + ":" + file.length();
+    }
+
+    /**
+     * Return the location of the plugin classes (the plugin JAR, or a classes dir).
+     */
+    public static File getPluginLocation()
+            throws XProjectException
+    {
+        CodeSource plugin = MiscUtils.class.getProtectionDomain().getCodeSource();
+        if ( plugin == null || plugin.getLocation() == null ) {
+            throw new XProjectException("Impossible to find the location of the plugin classes");
+        }
+        try {
+            return new File(plugin.getLocation().toURI());
+        }
+        catch ( URISyntaxException ex ) {
+            throw new XProjectException("Invalid location of the plugin classes: " + plugin.getLocation(), ex);
+        }
+        catch ( IllegalArgumentException ex ) {
+            throw new XProjectException("The plugin classes are not in a file: " + plugin.getLocation(), ex);
+        }
+    }
+
+    /**
+     * Copy a resource of the plugin (relative to this package) to a file.
+     */
+    public static void copyResource(String name, File dest)
+            throws XProjectException
+    {
+        InputStream in = MiscUtils.class.getResourceAsStream(name);
+        if ( in == null ) {
+            throw new XProjectException("The resource is not in the plugin: " + name);
+        }
+        try {
+            copy(in, dest);
+        }
+        catch ( IOException ex ) {
+            throw new XProjectException("Error writing the resource " + name + " to " + dest, ex);
+        }
+    }
+
+    /**
+     * Copy a file, creating the parent dirs of the destination if needed.
+     */
+    public static void copyFile(File src, File dest)
+            throws IOException
+    {
+        File parent = dest.getParentFile();
+        if ( parent != null && ! parent.isDirectory() && ! parent.mkdirs() ) {
+            throw new IOException("Impossible to create the dir: " + parent);
+        }
+        copy(new FileInputStream(src), dest);
+    }
+
+    /**
+     * Copy a stream to a file, and close the stream.
+     */
+    private static void copy(InputStream in, File dest)
+            throws IOException
+    {
+        try {
+            OutputStream out = new FileOutputStream(dest);
+            try {
+                byte[] buf = new byte[8192];
+                int read;
+                while ( (read = in.read(buf)) > 0 ) {
+                    out.write(buf, 0, read);
+                }
+            }
+            finally {
+                out.close();
+            }
+        }
+        finally {
+            try {
+                in.close();
+            }
+            catch ( IOException ex ) {
+                // ignore, nothing we can do
+            }
+        }
+    }
+
+    /**
+     * The major version of the running Java (e.g. 6 for "1.6", 17 for "17").
+     */
+    public static int getJavaVersion()
+    {
+        String spec = System.getProperty("java.specification.version");
+        if ( spec.startsWith("1.") ) {
+            spec = spec.substring(2);
+        }
+        try {
+            return Integer.parseInt(spec);
+        }
+        catch ( NumberFormatException ex ) {
+            LOG.warn("Unknown Java version: " + spec);
+            return 0;
+        }
+    }
+
+    /**
+     * The free physical memory, or -1 if not known.
+     */
+    public static long getFreePhysicalMemory()
+    {
+        return getMemory("getFreePhysicalMemorySize");
+    }
+
+    /**
+     * The total physical memory, or -1 if not known.
+     */
+    public static long getTotalPhysicalMemory()
+    {
+        return getMemory("getTotalPhysicalMemorySize");
+    }
+
+    /**
+     * Only the HotSpot MXBean provides the physical memory, so it is accessed by reflection.
+     */
+    private static long getMemory(String method)
+    {
+        OperatingSystemMXBean os = ManagementFactory.getOperatingSystemMXBean();
+        try {
+            Method m = os.getClass().getMethod(method);
+            m.setAccessible(true);
+            return (Long) m.invoke(os);
+        }
+        catch ( Exception ex ) {
+            LOG.debug("Physical memory not available: " + ex);
+            return -1;
+        }
+    }
+
+    /** The logger for this class. */
+    private static final Logger LOG = Logger.getLogger(MiscUtils.class);
 }
 
 
@@ -0,0 +1,241 @@
+/****************************************************************************/
+/*  File:       OutputCapture.java                                          */
+/*  Author:     F. Georges - H2O Consulting                                 */
+/*  Date:       2026-10-18                                                  */
+/*  Tags:                                                                   */
+/*      Copyright (c) 2026 Florent Georges (see end of file.)               */
+/* ------------------------------------------------------------------------ */
+
+
+package org.expath.xproject.oxygen;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.LinkedList;
+import org.apache.log4j.Logger;
+
+
+/**
+ * Bounded capture of the output of a process.
+ *
+ * The last lines are kept in memory, within a budget of lines and of
+ * characters (the oldest lines are dropped first).  All the lines are also
+ * written to a log file (the spill file), created with the first line in
+ * the temp dir "xproject-output", so the full output is still available.
+ * The spill file of a successful run is deleted when it ended (see
+ * discard()), and only the last "output.spill.keep" ones (default 20) are
+ * kept in the dir: the older ones are deleted when a new one is created.
+ *
+ * The budget is set by the options "output.max-lines" (default 1000) and
+ * "output.max-chars" (default 1000000), the spill file is disabled by
+ * setting "output.spill" to false.
+ *
+ * @author Florent Georges
+ * @date   2026-10-18
+ */
+public class OutputCapture
+{
+    public OutputCapture(String name)
+    {
+        myName = name;
+        myLines = new LinkedList<String>();
+        myMaxLines = XProjectOptions.getInt("output.max-lines", 1000);
+        myMaxChars = XProjectOptions.getLong("output.max-chars", 1000000);
+        mySpill = XProjectOptions.getBoolean("output.spill", true);
+    }
+
+    /**
+     * Add a line, from stdout or stderr.
+     */
+    public synchronized void add(String line, boolean error)
+    {
+        String captured = error ? "[err] " + line : line;
+        ++myTotalLines;
+        myTotalChars += line.length();
+        myLines.addLast(captured);
+        myChars += captured.length();
+        while ( myLines.size() > myMaxLines || (myChars > myMaxChars && myLines.size() > 1) ) {
+            myChars -= myLines.removeFirst().length();
+        }
+        spill(captured);
+    }
+
+    /**
+     * The lines kept in memory, at most the last n ones, as one string.
+     */
+    public synchronized String getTail(int n)
+    {
+        StringBuilder tail = new StringBuilder();
+        int skip = myLines.size() - n;
+        for ( String line : myLines ) {
+            if ( skip-- <= 0 ) {
+                tail.append(line).append('\n');
+            }
+        }
+        return tail.toString();
+    }
+
+    /**
+     * The number of lines added.
+     */
+    public synchronized long getTotalLines()
+    {
+        return myTotalLines;
+    }
+
+    /**
+     * The spill file, or null if there is none (no line yet, or disabled).
+     */
+    public synchronized File getSpillFile()
+    {
+        return myFile;
+    }
+
+    /**
+     * Close the spill file, to be called when the process ended.
+     */
+    public synchronized void close()
+    {
+        if ( myWriter != null ) {
+            try {
+                myWriter.close();
+            }
+            catch ( IOException ex ) {
+                LOG.warn("Error closing the output log file: " + myFile, ex);
+            }
+            myWriter = null;
+        }
+    }
+
+    /**
+     * Close and delete the spill file, to be called when the process succeeded.
+     */
+    public synchronized void discard()
+    {
+        close();
+        mySpill = false;
+        if ( myFile != null ) {
+            if ( ! myFile.delete() ) {
+                LOG.debug("Error deleting the output log file: " + myFile);
+            }
+            myFile = null;
+        }
+    }
+
+    /**
+     * A summary, like "1234 lines (56789 chars), 234 kept in memory, full output in [file]".
+     */
+    public synchronized String getSummary()
+    {
+        String summary = myTotalLines + " lines (" + myTotalChars + " chars), " + myLines.size() + " kept in memory";
+        if ( myFile != null ) {
+            summary += ", full output in " + myFile;
+        }
+        return summary;
+    }
+
+    private void spill(String line)
+    {
+        if ( ! mySpill ) {
+            return;
+        }
+        try {
+            if ( myWriter == null ) {
+                if ( myFile != null ) {
+                    // already closed, or failed before
+                    return;
+                }
+                myFile = createSpillFile(myName);
+                myWriter = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(myFile), "UTF-8"));
+            }
+            myWriter.write(line);
+            myWriter.write('\n');
+        }
+        catch ( IOException ex ) {
+            LOG.warn("Error writing the output log file, stop writing it: " + myFile, ex);
+            mySpill = false;
+            close();
+        }
+    }
+
+    /**
+     * Create a new spill file, after deleting the oldest ones beyond the ones to keep.
+     */
+    private static synchronized File createSpillFile(String name)
+            throws IOException
+    {
+        if ( ! SPILL_DIR.isDirectory() && ! SPILL_DIR.mkdirs() ) {
+            throw new IOException("Impossible to create the output log dir: " + SPILL_DIR);
+        }
+        File[] files = SPILL_DIR.listFiles();
+        int keep = XProjectOptions.getInt("output.spill.keep", 20);
+        // the new one will be kept as well
+        if ( files != null && files.length >= keep ) {
+            Arrays.sort(files, new Comparator<File>() {
+                public int compare(File f1, File f2) {
+                    long m1 = f1.lastModified();
+                    long m2 = f2.lastModified();
+                    return m1 < m2 ? -1 : (m1 == m2 ? 0 : 1);
+                }
+            });
+            for ( int i = 0; i <= files.length - Math.max(keep, 1); ++i ) {
+                files[i].delete();
+            }
+        }
+        return File.createTempFile("xproject-" + name.replace(' ', '-') + "-", ".log", SPILL_DIR);
+    }
+
+    /** The dir of the spill files. */
+    private static final File SPILL_DIR = new File(System.getProperty("java.io.tmpdir"), "xproject-output");
+
+    /** The name of the process, for the spill file name. */
+    private final String myName;
+    /** The last lines. */
+    private final LinkedList<String> myLines;
+    /** The max number of lines in memory. */
+    private final int myMaxLines;
+    /** The max number of chars in memory. */
+    private final long myMaxChars;
+    /** Whether to write all the lines to the spill file. */
+    private boolean mySpill;
+    /** The number of chars in memory. */
+    private long myChars;
+    /** The number of lines added. */
+    private long myTotalLines;
+    /** The number of chars added. */
+    private long myTotalChars;
+    /** The spill file. */
+    private File myFile;
+    /** The writer to the spill file. */
+    private Writer myWriter;
+
+    /** The logger for this class. */
+    private static final Logger LOG = Logger.getLogger(OutputCapture.class);
+}
+
+
+/* ------------------------------------------------------------------------ */
+/*  DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS COMMENT.               */
+/*                                                                          */
+/*  The contents of this file are subject to the Mozilla Public License     */
+/*  Version 1.0 (the "License"); you may not use this file except in        */
+/*  compliance with the License. You may obtain a copy of the License at    */
+/*  http://www.mozilla.org/MPL/.                                            */
+/*                                                                          */
+/*  Software distributed under the License is distributed on an "AS IS"     */
+/*  basis, WITHOUT WARRANTY OF ANY KIND, either express or implied.  See    */
+/*  the License for the specific language governing rights and limitations  */
+/*  under the License.                                                      */
+/*                                                                          */
+/*  The Original Code is: all this file.                                    */
+/*                                                                          */
+/*  The Initial Developer of the Original Code is Florent Georges.          */
+/*                                                                          */
+/*  Contributor(s): none.                                                   */
+/* ------------------------------------------------------------------------ */
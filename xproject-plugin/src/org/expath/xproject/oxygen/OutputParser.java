@@ -0,0 +1,314 @@
+/****************************************************************************/
+/*  File:       OutputParser.java                                           */
+/*  Author:     F. Georges - H2O Consulting                                 */
+/*  Date:       2026-10-18                                                  */
+/*  Tags:                                                                   */
+/*      Copyright (c) 2026 Florent Georges (see end of file.)               */
+/* ------------------------------------------------------------------------ */
+
+
+package org.expath.xproject.oxygen;
+
+
+/**
+ * Parse the output of Calabash incrementally, into typed events.
+ *
+ * Each line of the output (stdout or stderr) is passed to parse(), as it
+ * comes.  The lines recognized are notified to the listener, with their
+ * type and their text (without the log level prefix, nor the location
+ * "[uri]:[line]:[col]:" Calabash adds to its messages):
+ * - STEP_STARTED: "Running [type] [name]", logged by Calabash when it runs
+ *   a step (there is no line when a step finishes, a step finishes when
+ *   the next one starts, or when the process ends)
+ * - ERROR: a "SEVERE:" log line, or a Saxon error ("Error at...", "Error
+ *   on line...", "Static error...", an error code like "err:XD0011:...")
+ * - FAILURE: "Pipeline failed: ...", Calabash gave up (its exit code is 0
+ *   nevertheless), or "Processing terminated by xsl:message..."
+ * - TESTS_STARTED: "Testing with [processor]", the XSpec harness started
+ * - SCENARIO: the label of an XSpec scenario, when it starts
+ * - SCENARIO_PENDING: the label of a pending XSpec scenario
+ * - SCENARIO_FAILED: an XSpec test failed (the text is the label of the
+ *   current scenario)
+ * - TEST_TOTALS: "passed: N / pending: N / failed: N / total: N", the
+ *   XSpec totals, at the end of a test suite
+ * - MESSAGE: any other line on stderr, which is neither a log header nor a
+ *   stacktrace (that is, the output of xsl:message and p:message)
+ *
+ * The other lines of stdout are not notified.  The prefixes are matched in
+ * place, without regex, and the text of a line is only extracted (that is,
+ * allocated) when the line is recognized.  The methods are synchronized,
+ * as stdout and stderr are read by different threads.
+ *
+ * @author Florent Georges
+ * @date   2026-10-18
+ */
+public class OutputParser
+{
+    /**
+     * The type of an event.
+     */
+    public static enum Type
+    {
+        STEP_STARTED,
+        ERROR,
+        FAILURE,
+        TESTS_STARTED,
+        SCENARIO,
+        SCENARIO_PENDING,
+        SCENARIO_FAILED,
+        TEST_TOTALS,
+        MESSAGE
+    }
+
+    /**
+     * Receive the events.
+     *
+     * Called on the thread reading the output, must be quick.
+     */
+    public static interface Listener
+    {
+        public void event(Type type, String text);
+    }
+
+    public OutputParser(Listener listener)
+    {
+        myListener = listener;
+    }
+
+    /**
+     * Parse one line of output, notify the listener if it is recognized.
+     */
+    public synchronized void parse(String line, boolean error)
+    {
+        int len = line.length();
+        if ( len == 0 ) {
+            return;
+        }
+        // java.util.logging prefix
+        int start = 0;
+        boolean severe = false;
+        if ( line.startsWith(SEVERE) ) {
+            start = SEVERE.length();
+            severe = true;
+        }
+        else {
+            start = skipLevel(line);
+        }
+        start = skipLocation(line, start);
+        if ( line.startsWith(RUNNING, start) ) {
+            int type = start + RUNNING.length();
+            int space = line.indexOf(' ', type);
+            int colon = line.indexOf(':', type);
+            // a step type is a QName, to exclude e.g. "Running on Saxon version"
+            if ( colon > type && (space < 0 || colon < space) ) {
+                notify(Type.STEP_STARTED, line, type);
+                return;
+            }
+        }
+        if ( line.startsWith(PIPELINE_FAILED, start) || line.startsWith(TERMINATED, start) ) {
+            notify(Type.FAILURE, line, start);
+            return;
+        }
+        if ( severe || isError(line, start) ) {
+            notify(Type.ERROR, line, start);
+            return;
+        }
+        if ( ! error ) {
+            return;
+        }
+        if ( line.startsWith(TESTING_WITH, start) ) {
+            myInTests = true;
+            notify(Type.TESTS_STARTED, line, start + TESTING_WITH.length());
+            return;
+        }
+        if ( myInTests ) {
+            parseTest(line, start);
+            return;
+        }
+        if ( start == 0 && (isLogHeader(line) || isStacktrace(line)) ) {
+            return;
+        }
+        notify(Type.MESSAGE, line, start);
+    }
+
+    /**
+     * Within an XSpec test suite, the messages are the scenario labels and results.
+     */
+    private void parseTest(String line, int start)
+    {
+        int first = skipSpaces(line, start);
+        if ( line.startsWith(FAILED, first) && first + FAILED.length() == line.length() ) {
+            myListener.event(Type.SCENARIO_FAILED, myScenario);
+        }
+        else if ( line.startsWith(PENDING, first) ) {
+            int label = first + PENDING.length();
+            // the reason, if any: "PENDING: (reason) label"
+            if ( line.startsWith("(", label) ) {
+                int close = line.indexOf(") ", label);
+                label = close < 0 ? label : close + 2;
+            }
+            myScenario = label(line, label);
+            myListener.event(Type.SCENARIO_PENDING, myScenario);
+        }
+        else if ( line.startsWith(PASSED, first) ) {
+            myInTests = false;
+            myScenario = null;
+            notify(Type.TEST_TOTALS, line, first);
+        }
+        else if ( start == 0 && (isLogHeader(line) || isStacktrace(line)) ) {
+            // ignore
+        }
+        else {
+            myScenario = label(line, first);
+            myListener.event(Type.SCENARIO, myScenario);
+        }
+    }
+
+    private void notify(Type type, String line, int start)
+    {
+        myListener.event(type, start == 0 ? line : line.substring(start));
+    }
+
+    /**
+     * The label of a scenario, without the ".." prefix of the nested ones.
+     */
+    private static String label(String line, int start)
+    {
+        while ( line.startsWith("..", start) ) {
+            start += 2;
+        }
+        return start == 0 ? line : line.substring(start);
+    }
+
+    /**
+     * Skip a java.util.logging level prefix, e.g. "INFO: " (return the index after it).
+     */
+    private static int skipLevel(String line)
+    {
+        for ( String level : LEVELS ) {
+            if ( line.startsWith(level) ) {
+                return level.length();
+            }
+        }
+        return 0;
+    }
+
+    /**
+     * Skip the location of a Calabash message, e.g. "file:/dir/build.xproc:42:13:".
+     */
+    private static int skipLocation(String line, int start)
+    {
+        if ( ! line.startsWith("file:", start) && ! line.startsWith("http", start) && ! line.startsWith("jar:", start) ) {
+            return start;
+        }
+        // the first ":[digits]:[digits]:" (the message itself can contain anything)
+        int colon = line.indexOf(':', start);
+        while ( colon >= 0 ) {
+            int end = skipNumber(line, colon + 1);
+            if ( end > colon + 1 && end < line.length() && line.charAt(end) == ':' ) {
+                int end2 = skipNumber(line, end + 1);
+                if ( end2 > end + 1 && end2 < line.length() && line.charAt(end2) == ':' ) {
+                    return skipSpaces(line, end2 + 1);
+                }
+            }
+            colon = line.indexOf(':', colon + 1);
+        }
+        return start;
+    }
+
+    private static int skipNumber(String line, int start)
+    {
+        while ( start < line.length() && Character.isDigit(line.charAt(start)) ) {
+            ++start;
+        }
+        return start;
+    }
+
+    private static int skipSpaces(String line, int start)
+    {
+        while ( start < line.length() && line.charAt(start) == ' ' ) {
+            ++start;
+        }
+        return start;
+    }
+
+    /**
+     * Saxon and XProc error messages.
+     */
+    private static boolean isError(String line, int start)
+    {
+        if ( line.startsWith("Error ", start) || line.startsWith("Static error", start)
+                || line.startsWith("Fatal error", start) || line.startsWith("Type error", start) ) {
+            return true;
+        }
+        // an error code, like "err:XC0030:" or "XTDE0640:"
+        if ( line.startsWith("err:", start) ) {
+            return true;
+        }
+        int i = start;
+        while ( i < line.length() && i < start + 4 && Character.isUpperCase(line.charAt(i)) ) {
+            ++i;
+        }
+        if ( i - start != 4 ) {
+            return false;
+        }
+        int end = skipNumber(line, i);
+        return end - i == 4 && end < line.length() && line.charAt(end) == ':';
+    }
+
+    /**
+     * The first line of a java.util.logging record, e.g. "Oct 18, 2026 10:42:13 AM com.xmlcalabash.X method".
+     */
+    private static boolean isLogHeader(String line)
+    {
+        return line.indexOf(" com.xmlcalabash.") > 0 || line.indexOf(" net.sf.saxon.") > 0;
+    }
+
+    private static boolean isStacktrace(String line)
+    {
+        char c = line.charAt(0);
+        if ( c == '\t' || c == ' ' ) {
+            int i = skipSpaces(line, line.charAt(0) == '\t' ? 1 : 0);
+            return line.startsWith("at ", i) || line.startsWith("...", i);
+        }
+        return line.startsWith("Caused by: ");
+    }
+
+    private static final String   SEVERE          = "SEVERE: ";
+    private static final String[]  LEVELS          = { "INFO: ", "WARNING: ", "CONFIG: ", "FINE: ", "FINER: ", "FINEST: " };
+    private static final String    RUNNING         = "Running ";
+    private static final String    PIPELINE_FAILED = "Pipeline failed:";
+    private static final String    TERMINATED      = "Processing terminated by xsl:message";
+    private static final String    TESTING_WITH    = "Testing with ";
+    private static final String    FAILED          = "FAILED";
+    private static final String    PENDING         = "PENDING: ";
+    private static final String    PASSED          = "passed: ";
+
+    /** The listener to notify. */
+    private final Listener myListener;
+    /** Whether within an XSpec test suite. */
+    private boolean myInTests;
+    /** The label of the current XSpec scenario, if any. */
+    private String myScenario;
+}
+
+
+/* ------------------------------------------------------------------------ */
+/*  DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS COMMENT.               */
+/*                                                                          */
+/*  The contents of this file are subject to the Mozilla Public License     */
+/*  Version 1.0 (the "License"); you may not use this file except in        */
+/*  compliance with the License. You may obtain a copy of the License at    */
+/*  http://www.mozilla.org/MPL/.                                            */
+/*                                                                          */
+/*  Software distributed under the License is distributed on an "AS IS"     */
+/*  basis, WITHOUT WARRANTY OF ANY KIND, either express or implied.  See    */
+/*  the License for the specific language governing rights and limitations  */
+/*  under the License.                                                      */
+/*                                                                          */
+/*  The Original Code is: all this file.                                    */
+/*                                                                          */
+/*  The Initial Developer of the Original Code is Florent Georges.          */
+/*                                                                          */
+/*  Contributor(s): none.                                                   */
+/* ------------------------------------------------------------------------ */
@@ -0,0 +1,632 @@
+/****************************************************************************/
+/*  File:       PackageRepository.java                                      */
+/*  Author:     F. Georges - H2O Consulting                                 */
+/*  Date:       2026-10-18                                                  */
+/*  Tags:                                                                   */
+/*      Copyright (c) 2026 Florent Georges (see end of file.)               */
+/* ------------------------------------------------------------------------ */
+
+
+package org.expath.xproject.oxygen;
+
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import javax.xml.parsers.DocumentBuilder;
+import javax.xml.parsers.DocumentBuilderFactory;
+import org.apache.log4j.Logger;
+import org.w3c.dom.Element;
+import org.w3c.dom.Node;
+
+
+/**
+ * The index of an EXPath package repository, shared by all the projects.
+ *
+ * The index is loaded once for each repository dir, and maps the public
+ * URIs of the XSLT, XQuery and XProc components (and the public and system
+ * IDs of the DTDs) to their files.  It only uses the JDK (no pkg-repo), so
+ * it can be used from the plugin itself, by all the execution modes, and in
+ * the child processes (see engine/IndexInitializer and IndexConfigurer).
+ * The Saxon descriptors (saxon.xml) are in the index as well: the extension
+ * functions (their classes and jars) and the wrappers to import them, so
+ * they can be registered without pkg-repo.
+ *
+ * The index is saved in a binary file in ~/.xproject/repo/ (named after a
+ * hash of the repository path), read with a single memory-mapped read the
+ * next time, instead of parsing all the package descriptors again.  Each
+ * package is still checked against the stamp of its descriptor, and the
+ * file is written again only when a package changed.
+ *
+ * The repository is checked for changes when the index is used, at most
+ * once every "repo.check-interval" ms: only the packages the descriptor of
+ * which changed (or which have been added or removed) are loaded again.
+ * Each package has its own stamp, so a cache can invalidate only what comes
+ * from a changed package.  The generation is incremented each time the set
+ * of packages changes (a package added, removed or with a new version).
+ *
+ * @author Florent Georges
+ * @date   2026-10-18
+ */
+public class PackageRepository
+{
+    /**
+     * Return the shared index for the repository dir, load it if necessary.
+     */
+    public static synchronized PackageRepository getInstance(File dir)
+    {
+        String key = MiscUtils.getPath(dir);
+        PackageRepository repo = ourRepos.get(key);
+        if ( repo == null ) {
+            repo = new PackageRepository(dir);
+            ourRepos.put(key, repo);
+        }
+        return repo;
+    }
+
+    private PackageRepository(File dir)
+    {
+        myDir = dir;
+        myPackages = new HashMap<String, Pkg>();
+        myInterval = XProjectOptions.getLong("repo.check-interval", 2000);
+        myChecked = 0;
+        myGeneration = 0;
+    }
+
+    /**
+     * Return the file a component resolves to, or null if not in the repository.
+     */
+    public synchronized File resolve(String uri)
+    {
+        check();
+        for ( Pkg p : myPackages.values() ) {
+            File f = p.components.get(uri);
+            if ( f != null ) {
+                return f;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Return the stamp of the package providing a component.
+     *
+     * The stamp changes when the descriptor of the package changes.  It is
+     * "none" if the component is not in the repository.
+     */
+    public synchronized String getPackageStamp(String uri)
+    {
+        check();
+        for ( Pkg p : myPackages.values() ) {
+            if ( p.components.containsKey(uri) ) {
+                return p.name + "@" + p.version + ":" + p.stamp;
+            }
+        }
+        return "none";
+    }
+
+    /**
+     * Whether a package has a Calabash descriptor (calabash.xml).
+     *
+     * It declares extension steps, which are not in the index: they need the
+     * full pkg-repo configuration.
+     */
+    public synchronized boolean hasCalabashExtensions()
+    {
+        check();
+        for ( Pkg p : myPackages.values() ) {
+            if ( p.calabash ) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Return the extension functions declared in the Saxon descriptors (saxon.xml).
+     */
+    public synchronized List<SaxonExtension> getSaxonExtensions()
+    {
+        check();
+        List<SaxonExtension> result = new ArrayList<SaxonExtension>();
+        for ( Pkg p : myPackages.values() ) {
+            if ( ! p.functions.isEmpty() ) {
+                result.add(new SaxonExtension(p.jars, p.functions));
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Return the kind of the Saxon wrapper with that URI ("xslt" or "xquery"), or null.
+     *
+     * A wrapper is the stylesheet or module to import to use the extension
+     * functions of a package.  As they are registered directly, it resolves
+     * to an empty stylesheet or module (as with pkg-saxon).
+     */
+    public synchronized String getSaxonWrapper(String uri)
+    {
+        check();
+        for ( Pkg p : myPackages.values() ) {
+            String kind = p.wrappers.get(uri);
+            if ( kind != null ) {
+                return kind;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Return the generation of the index, incremented when the set of packages changes.
+     */
+    public synchronized int getGeneration()
+    {
+        check();
+        return myGeneration;
+    }
+
+    /**
+     * Return the names and versions of the packages ("name@version").
+     */
+    public synchronized List<String> getPackages()
+    {
+        check();
+        List<String> result = new ArrayList<String>();
+        for ( Pkg p : myPackages.values() ) {
+            result.add(p.name + "@" + p.version);
+        }
+        return result;
+    }
+
+    /**
+     * Force a check of the repository at the next use of the index.
+     */
+    public synchronized void invalidate()
+    {
+        myChecked = 0;
+    }
+
+    /**
+     * Reload the packages which changed, if the interval since the last check elapsed.
+     */
+    private void check()
+    {
+        long now = System.currentTimeMillis();
+        if ( now - myChecked < myInterval ) {
+            return;
+        }
+        myChecked = now;
+        if ( ! myIndexRead ) {
+            myIndexRead = true;
+            readIndex();
+        }
+        File[] dirs = myDir.listFiles();
+        if ( dirs == null ) {
+            LOG.warn("The repository dir cannot be read: " + myDir);
+            dirs = new File[0];
+        }
+        Map<String, Pkg> packages = new HashMap<String, Pkg>();
+        boolean changed = false;
+        boolean reloaded = false;
+        for ( File d : dirs ) {
+            File desc = new File(d, "expath-pkg.xml");
+            if ( d.getName().startsWith(".") || ! desc.isFile() ) {
+                continue;
+            }
+            String stamp = MiscUtils.getStamp(desc);
+            Pkg p = myPackages.get(d.getName());
+            if ( p == null || ! p.stamp.equals(stamp) ) {
+                Pkg loaded = load(d, desc, stamp);
+                if ( loaded == null ) {
+                    continue;
+                }
+                if ( p == null || ! p.name.equals(loaded.name) || ! p.version.equals(loaded.version) ) {
+                    changed = true;
+                }
+                reloaded = true;
+                LOG.debug("Package " + (p == null ? "loaded" : "reloaded") + ": " + loaded.name + "@" + loaded.version);
+                p = loaded;
+            }
+            packages.put(d.getName(), p);
+        }
+        if ( ! packages.keySet().equals(myPackages.keySet()) ) {
+            changed = true;
+        }
+        myPackages = packages;
+        if ( changed ) {
+            ++myGeneration;
+            LOG.debug("Repository index changed (generation " + myGeneration + "): " + myDir);
+        }
+        if ( changed || reloaded ) {
+            writeIndex();
+        }
+    }
+
+    /**
+     * The file the binary index is saved to.
+     */
+    private File getIndexFile()
+    {
+        File dir = new File(System.getProperty("user.home"), ".xproject/repo/");
+        String hash = BuildManifest.hash(MiscUtils.getPath(myDir));
+        return new File(dir, hash + ".idx");
+    }
+
+    /**
+     * Load the packages from the binary index, if any (the stamps are checked later).
+     *
+     * The format is a magic number, the format version, the repository path,
+     * then for each package: its dir name, name, version, descriptor stamp,
+     * whether it has extension steps, its components (URI, then file path),
+     * the jars and the classes of its extension functions, and its wrappers
+     * (URI, then kind).  The strings are written as their length, then their
+     * UTF-8 bytes.
+     */
+    private void readIndex()
+    {
+        File file = getIndexFile();
+        if ( ! file.isFile() ) {
+            return;
+        }
+        long start = System.currentTimeMillis();
+        try {
+            FileInputStream in = new FileInputStream(file);
+            try {
+                FileChannel channel = in.getChannel();
+                ByteBuffer buf = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+                if ( buf.getInt() != INDEX_MAGIC || buf.getInt() != INDEX_VERSION ) {
+                    LOG.debug("Repository index in an unknown format, ignored: " + file);
+                    return;
+                }
+                if ( ! MiscUtils.getPath(myDir).equals(readString(buf)) ) {
+                    LOG.debug("Repository index for another dir, ignored: " + file);
+                    return;
+                }
+                Map<String, Pkg> packages = new HashMap<String, Pkg>();
+                int count = buf.getInt();
+                for ( int i = 0; i < count; ++i ) {
+                    String dir = readString(buf);
+                    Pkg p = new Pkg();
+                    p.name = readString(buf);
+                    p.version = readString(buf);
+                    p.stamp = readString(buf);
+                    p.calabash = buf.get() != 0;
+                    p.components = new HashMap<String, File>();
+                    int components = buf.getInt();
+                    for ( int j = 0; j < components; ++j ) {
+                        String uri = readString(buf);
+                        p.components.put(uri, new File(readString(buf)));
+                    }
+                    p.jars = new ArrayList<File>();
+                    int jars = buf.getInt();
+                    for ( int j = 0; j < jars; ++j ) {
+                        p.jars.add(new File(readString(buf)));
+                    }
+                    p.functions = new ArrayList<String>();
+                    int functions = buf.getInt();
+                    for ( int j = 0; j < functions; ++j ) {
+                        p.functions.add(readString(buf));
+                    }
+                    p.wrappers = new HashMap<String, String>();
+                    int wrappers = buf.getInt();
+                    for ( int j = 0; j < wrappers; ++j ) {
+                        String uri = readString(buf);
+                        p.wrappers.put(uri, readString(buf));
+                    }
+                    packages.put(dir, p);
+                }
+                myPackages = packages;
+                ++myGeneration;
+            }
+            finally {
+                in.close();
+            }
+            Metrics.since("repo.index.read", start);
+            LOG.debug("Repository index read: " + file + " (" + myPackages.size() + " packages)");
+        }
+        catch ( IOException ex ) {
+            LOG.debug("Error reading the repository index: " + file, ex);
+        }
+        catch ( RuntimeException ex ) {
+            // e.g. a truncated file (BufferUnderflowException)
+            LOG.debug("Invalid repository index: " + file, ex);
+        }
+    }
+
+    /**
+     * Save the packages in the binary index (to a temp file, then renamed).
+     */
+    private void writeIndex()
+    {
+        File file = getIndexFile();
+        long start = System.currentTimeMillis();
+        try {
+            file.getParentFile().mkdirs();
+            File tmp = File.createTempFile("index-", ".tmp", file.getParentFile());
+            DataOutputStream out = new DataOutputStream(new FileOutputStream(tmp));
+            try {
+                out.writeInt(INDEX_MAGIC);
+                out.writeInt(INDEX_VERSION);
+                writeString(out, MiscUtils.getPath(myDir));
+                out.writeInt(myPackages.size());
+                for ( Map.Entry<String, Pkg> e : myPackages.entrySet() ) {
+                    Pkg p = e.getValue();
+                    writeString(out, e.getKey());
+                    writeString(out, p.name);
+                    writeString(out, p.version);
+                    writeString(out, p.stamp);
+                    out.writeBoolean(p.calabash);
+                    out.writeInt(p.components.size());
+                    for ( Map.Entry<String, File> c : p.components.entrySet() ) {
+                        writeString(out, c.getKey());
+                        writeString(out, c.getValue().getPath());
+                    }
+                    out.writeInt(p.jars.size());
+                    for ( File j : p.jars ) {
+                        writeString(out, j.getPath());
+                    }
+                    out.writeInt(p.functions.size());
+                    for ( String f : p.functions ) {
+                        writeString(out, f);
+                    }
+                    out.writeInt(p.wrappers.size());
+                    for ( Map.Entry<String, String> w : p.wrappers.entrySet() ) {
+                        writeString(out, w.getKey());
+                        writeString(out, w.getValue());
+                    }
+                }
+            }
+            finally {
+                out.close();
+            }
+            // the old file can still be mapped on some platforms, then keep it (stamps are checked anyway)
+            file.delete();
+            if ( ! tmp.renameTo(file) ) {
+                tmp.delete();
+                LOG.debug("Impossible to replace the repository index: " + file);
+                return;
+            }
+            Metrics.since("repo.index.write", start);
+        }
+        catch ( IOException ex ) {
+            LOG.debug("Error writing the repository index: " + file, ex);
+        }
+    }
+
+    private static String readString(ByteBuffer buf)
+            throws IOException
+    {
+        byte[] bytes = new byte[buf.getInt()];
+        buf.get(bytes);
+        return new String(bytes, "UTF-8");
+    }
+
+    private static void writeString(DataOutputStream out, String str)
+            throws IOException
+    {
+        byte[] bytes = str.getBytes("UTF-8");
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    /**
+     * Parse a package descriptor, return null (and log it) if it is invalid.
+     */
+    private Pkg load(File dir, File desc, String stamp)
+    {
+        try {
+            DocumentBuilderFactory factory = DocumentBuilderFactory.newInstance();
+            factory.setNamespaceAware(true);
+            DocumentBuilder builder = factory.newDocumentBuilder();
+            Element root = builder.parse(desc).getDocumentElement();
+            if ( ! PKG_NS.equals(root.getNamespaceURI()) || ! "package".equals(root.getLocalName()) ) {
+                LOG.warn("Not a package descriptor: " + desc);
+                return null;
+            }
+            Pkg p = new Pkg();
+            p.name = root.getAttribute("name");
+            p.version = root.getAttribute("version");
+            p.stamp = stamp;
+            p.calabash = new File(dir, "calabash.xml").isFile();
+            p.components = new HashMap<String, File>();
+            p.jars = new ArrayList<File>();
+            p.functions = new ArrayList<String>();
+            p.wrappers = new HashMap<String, String>();
+            // the content dir is "content/" since the spec 1.0, the abbrev before
+            File content = new File(dir, "content");
+            if ( ! content.isDirectory() ) {
+                content = new File(dir, root.getAttribute("abbrev"));
+            }
+            for ( Node n = root.getFirstChild(); n != null; n = n.getNextSibling() ) {
+                if ( n instanceof Element && PKG_NS.equals(n.getNamespaceURI()) ) {
+                    String kind = n.getLocalName();
+                    if ( "dtd".equals(kind) ) {
+                        // the catalog entries
+                        String file = getChild((Element) n, "file");
+                        String pub = getChild((Element) n, "public-id");
+                        String sys = getChild((Element) n, "system-id");
+                        if ( file != null && pub != null ) {
+                            p.components.put(pub, new File(content, file));
+                        }
+                        if ( file != null && sys != null ) {
+                            p.components.put(sys, new File(content, file));
+                        }
+                    }
+                    else if ( "xslt".equals(kind) || "xquery".equals(kind) || "xproc".equals(kind) ) {
+                        String uri = getChild((Element) n, "import-uri");
+                        if ( uri == null ) {
+                            uri = getChild((Element) n, "namespace");
+                        }
+                        String file = getChild((Element) n, "file");
+                        if ( uri != null && file != null ) {
+                            p.components.put(uri, new File(content, file));
+                        }
+                    }
+                }
+            }
+            File saxon = new File(dir, "saxon.xml");
+            if ( saxon.isFile() ) {
+                loadSaxon(builder.parse(saxon).getDocumentElement(), content, p);
+            }
+            return p;
+        }
+        catch ( Exception ex ) {
+            LOG.warn("Error loading the package descriptor: " + desc, ex);
+            return null;
+        }
+    }
+
+    /**
+     * Add the content of a Saxon descriptor to a package.
+     *
+     * The jars and the function classes, the wrappers (to import the
+     * functions), and the Saxon-specific stylesheets and modules.
+     */
+    private void loadSaxon(Element root, File content, Pkg p)
+    {
+        for ( Node n = root.getFirstChild(); n != null; n = n.getNextSibling() ) {
+            if ( n instanceof Element && SAXON_NS.equals(n.getNamespaceURI()) ) {
+                String kind = n.getLocalName();
+                if ( "jar".equals(kind) ) {
+                    p.jars.add(new File(content, n.getTextContent().trim()));
+                }
+                else if ( "function".equals(kind) ) {
+                    p.functions.add(n.getTextContent().trim());
+                }
+                else if ( "xslt-wrapper".equals(kind) ) {
+                    String uri = getChild((Element) n, "import-uri");
+                    if ( uri != null ) {
+                        p.wrappers.put(uri, "xslt");
+                    }
+                }
+                else if ( "xquery-wrapper".equals(kind) ) {
+                    String uri = getChild((Element) n, "namespace");
+                    if ( uri != null ) {
+                        p.wrappers.put(uri, "xquery");
+                    }
+                }
+                else if ( "xslt".equals(kind) || "xquery".equals(kind) ) {
+                    String uri = getChild((Element) n, "xslt".equals(kind) ? "import-uri" : "namespace");
+                    String file = getChild((Element) n, "file");
+                    if ( uri != null && file != null ) {
+                        p.components.put(uri, new File(content, file));
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * The trimmed text of the first child element with that local name, or null.
+     */
+    private String getChild(Element parent, String local)
+    {
+        for ( Node n = parent.getFirstChild(); n != null; n = n.getNextSibling() ) {
+            if ( n instanceof Element && local.equals(n.getLocalName()) ) {
+                return n.getTextContent().trim();
+            }
+        }
+        return null;
+    }
+
+    /**
+     * The extension functions of a package, from its Saxon descriptor.
+     */
+    public static class SaxonExtension
+    {
+        public SaxonExtension(List<File> jars, List<String> functions) {
+            myJars = jars;
+            myFunctions = functions;
+        }
+
+        /**
+         * The jars the functions are loaded from (not on the classpath).
+         */
+        public List<File> getJars() {
+            return myJars;
+        }
+
+        /**
+         * The class names of the functions.
+         */
+        public List<String> getFunctions() {
+            return myFunctions;
+        }
+
+        /** The jars. */
+        private final List<File> myJars;
+        /** The function class names. */
+        private final List<String> myFunctions;
+    }
+
+    /**
+     * A package in the index.
+     */
+    private static class Pkg
+    {
+        public String name;
+        public String version;
+        public String stamp;
+        public boolean calabash;
+        public Map<String, File> components;
+        public List<File> jars;
+        public List<String> functions;
+        public Map<String, String> wrappers;
+    }
+
+    /** The package descriptor namespace. */
+    private static final String PKG_NS = "http://expath.org/ns/pkg";
+    /** The Saxon descriptor namespace. */
+    private static final String SAXON_NS = "http://saxon.sf.net/ns/expath-pkg";
+    /** The magic number of the binary index, "XPRI". */
+    private static final int INDEX_MAGIC = 0x58505249;
+    /** The format version of the binary index. */
+    private static final int INDEX_VERSION = 3;
+
+    /** The repository dir. */
+    private final File myDir;
+    /** The packages, keyed by their dir name in the repository. */
+    private Map<String, Pkg> myPackages;
+    /** The min interval between two checks of the repository dir, in ms. */
+    private final long myInterval;
+    /** The time of the last check. */
+    private long myChecked;
+    /** The generation, incremented when the set of packages changes. */
+    private int myGeneration;
+    /** Whether the binary index has been read (the first time the repository is checked). */
+    private boolean myIndexRead;
+
+    /** The shared indexes, keyed by their repository dir. */
+    private static final Map<String, PackageRepository> ourRepos = new HashMap<String, PackageRepository>();
+
+    /** The logger for this class. */
+    private static final Logger LOG = Logger.getLogger(PackageRepository.class);
+}
+
+
+/* ------------------------------------------------------------------------ */
+/*  DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS COMMENT.               */
+/*                                                                          */
+/*  The contents of this file are subject to the Mozilla Public License     */
+/*  Version 1.0 (the "License"); you may not use this file except in        */
+/*  compliance with the License. You may obtain a copy of the License at    */
+/*  http://www.mozilla.org/MPL/.                                            */
+/*                                                                          */
+/*  Software distributed under the License is distributed on an "AS IS"     */
+/*  basis, WITHOUT WARRANTY OF ANY KIND, either express or implied.  See    */
+/*  the License for the specific language governing rights and limitations  */
+/*  under the License.                                                      */
+/*                                                                          */
+/*  The Original Code is: all this file.                                    */
+/*                                                                          */
+/*  The Initial Developer of the Original Code is Florent Georges.          */
+/*                                                                          */
+/*  Contributor(s): none.                                                   */
+/* ------------------------------------------------------------------------ */
@@ -0,0 +1,282 @@
+/****************************************************************************/
+/*  File:       PhaseScheduler.java                                         */
+/*  Author:     F. Georges - H2O Consulting                                 */
+/*  Date:       2026-10-18                                                  */
+/*  Tags:                                                                   */
+/*      Copyright (c) 2026 Florent Georges (see end of file.)               */
+/* ------------------------------------------------------------------------ */
+
+
+package org.expath.xproject.oxygen;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.EnumMap;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import org.apache.log4j.Logger;
+import org.expath.xproject.oxygen.XProjectConstants.ProjectPhase;
+
+
+/**
+ * Run several phases on a project, each one as soon as its dependencies succeeded.
+ *
+ * The dependencies between phases are:
+ * - TEST needs BUILD
+ * - DOC needs BUILD
+ * - DEPLOY needs BUILD and TEST
+ * - RELEASE needs BUILD and DOC
+ *
+ * So with the target phases TEST, DOC and RELEASE (see ALL), BUILD is run
+ * first, then TEST and DOC in parallel, then RELEASE when DOC ended.  If a
+ * phase fails, the phases depending on it are skipped.  When all phases
+ * ended, a summary is shown, with the time each phase took.
+ *
+ * Each phase is queued on the project when it is ready (see ProjectQueue),
+ * so it does not run at the same time as the same phase started from
+ * another action (and it is prepared on the background thread of the
+ * queue).  It never supersedes a running phase (see ProjectQueue.enqueue()):
+ * if it is coalesced with a phase already queued, the scheduler continues
+ * when that execution ended.
+ *
+ * @author Florent Georges
+ * @date   2026-10-18
+ */
+public class PhaseScheduler
+{
+    /** The target phases of the "all" action (DEPLOY is not implemented yet). */
+    public static final List<ProjectPhase> ALL =
+            Arrays.asList(ProjectPhase.TEST, ProjectPhase.DOC, ProjectPhase.RELEASE);
+
+    public PhaseScheduler(File project, UserMessages messages, JavaProcessFactory factory, File plugin_dir)
+    {
+        myProject = project;
+        myMsg = messages;
+        myFactory = factory;
+        myPluginDir = plugin_dir;
+        myPending = EnumSet.noneOf(ProjectPhase.class);
+        myRunning = new EnumMap<ProjectPhase, Long>(ProjectPhase.class);
+        myResults = new EnumMap<ProjectPhase, String>(ProjectPhase.class);
+    }
+
+    /**
+     * Return the phases a phase directly depends on.
+     */
+    public static Set<ProjectPhase> getDependencies(ProjectPhase phase)
+    {
+        switch ( phase ) {
+            case TEST:
+            case DOC:
+                return EnumSet.of(ProjectPhase.BUILD);
+            case DEPLOY:
+                return EnumSet.of(ProjectPhase.BUILD, ProjectPhase.TEST);
+            case RELEASE:
+                return EnumSet.of(ProjectPhase.BUILD, ProjectPhase.DOC);
+            default:
+                return EnumSet.noneOf(ProjectPhase.class);
+        }
+    }
+
+    /**
+     * Run the target phases, and all the phases they depend on.
+     *
+     * Return right after the first phases have been queued, so it can be
+     * called on the EDT.
+     */
+    public void run(Collection<ProjectPhase> targets)
+    {
+        synchronized ( this ) {
+            for ( ProjectPhase p : targets ) {
+                addWithDependencies(p);
+            }
+            myStart = System.currentTimeMillis();
+            myMsg.debug("Running the phases " + myPending + " on " + myProject);
+        }
+        startReady();
+    }
+
+    private void addWithDependencies(ProjectPhase phase)
+    {
+        if ( myPending.add(phase) ) {
+            for ( ProjectPhase d : getDependencies(phase) ) {
+                addWithDependencies(d);
+            }
+        }
+    }
+
+    /**
+     * Start all the pending phases the dependencies of which succeeded.
+     *
+     * The phases to start are computed under the lock (the phases with a
+     * failed or skipped dependency are skipped), then queued outside of it
+     * (a phase listener can be called right away, e.g. if the phase could
+     * not be queued).  The summary is reported once nothing is pending nor
+     * running anymore.
+     */
+    private void startReady()
+    {
+        List<ProjectPhase> ready;
+        boolean finished;
+        synchronized ( this ) {
+            ready = takeReady();
+            finished = ! myReported && myPending.isEmpty() && myRunning.isEmpty();
+            myReported |= finished;
+        }
+        for ( ProjectPhase p : ready ) {
+            start(p);
+        }
+        if ( finished ) {
+            report();
+        }
+    }
+
+    /**
+     * Remove the ready phases from the pending ones, and mark them running.
+     *
+     * Must be called with the lock.
+     */
+    private List<ProjectPhase> takeReady()
+    {
+        List<ProjectPhase> ready = new ArrayList<ProjectPhase>();
+        boolean again = true;
+        while ( again ) {
+            again = false;
+            for ( ProjectPhase p : new ArrayList<ProjectPhase>(myPending) ) {
+                Set<ProjectPhase> deps = getDependencies(p);
+                boolean deps_ended = true;
+                boolean failed = false;
+                for ( ProjectPhase d : deps ) {
+                    String result = myResults.get(d);
+                    if ( result == null ) {
+                        deps_ended = false;
+                    }
+                    else if ( ! result.startsWith(SUCCESS) ) {
+                        failed = true;
+                    }
+                }
+                if ( failed ) {
+                    myPending.remove(p);
+                    myResults.put(p, "skipped");
+                    // the phases depending on it can be skipped as well
+                    again = true;
+                }
+                else if ( deps_ended ) {
+                    myPending.remove(p);
+                    myRunning.put(p, System.currentTimeMillis());
+                    ready.add(p);
+                }
+            }
+        }
+        return ready;
+    }
+
+    /**
+     * Queue a phase on the project, on its own XProject object.
+     */
+    private void start(final ProjectPhase phase)
+    {
+        try {
+            XProject prj = createProject();
+            ProjectQueue.getInstance(myProject).enqueue(prj, phase, myMsg, new PhaseListener() {
+                public void phaseEnded(boolean success) {
+                    ended(phase, success);
+                }
+            });
+        }
+        catch ( RuntimeException ex ) {
+            myMsg.error("Error running the phase " + phase + ": " + ex, ex);
+            ended(phase, false);
+        }
+    }
+
+    /**
+     * Create the XProject object to run a phase on (overridden by the tests).
+     */
+    XProject createProject()
+    {
+        return new XProject(myProject, myMsg, myFactory, myPluginDir);
+    }
+
+    private void ended(ProjectPhase phase, boolean success)
+    {
+        synchronized ( this ) {
+            Long start = myRunning.remove(phase);
+            if ( start == null ) {
+                LOG.warn("Phase ended but not running: " + phase);
+                return;
+            }
+            long time = System.currentTimeMillis() - start;
+            myResults.put(phase, (success ? SUCCESS : "failed") + " in " + time + " ms");
+            myMsg.debug("Phase " + phase + " " + myResults.get(phase));
+        }
+        startReady();
+    }
+
+    private void report()
+    {
+        long time = System.currentTimeMillis() - myStart;
+        StringBuilder summary = new StringBuilder();
+        boolean success = true;
+        for ( Map.Entry<ProjectPhase, String> r : myResults.entrySet() ) {
+            summary.append("\n").append(r.getKey()).append(": ").append(r.getValue());
+            success &= r.getValue().startsWith(SUCCESS);
+        }
+        String msg = "Phases " + (success ? "succesful" : "failed") + ", in " + time + " ms:" + summary;
+        if ( success ) {
+            myMsg.info(msg);
+        }
+        else {
+            myMsg.error(msg);
+        }
+    }
+
+    /** The prefix of the result of a phase which succeeded. */
+    private static final String SUCCESS = "succeeded";
+
+    /** The project dir. */
+    private final File myProject;
+    /** The messages object. */
+    private final UserMessages myMsg;
+    /** The java process factory. */
+    private final JavaProcessFactory myFactory;
+    /** The plugin dir. */
+    private final File myPluginDir;
+    /** The phases not started yet. */
+    private final Set<ProjectPhase> myPending;
+    /** The phases running, with their start time. */
+    private final Map<ProjectPhase, Long> myRunning;
+    /** The phases which ended or have been skipped, with their result. */
+    private final Map<ProjectPhase, String> myResults;
+    /** When the first phases have been started. */
+    private long myStart;
+    /** Whether the summary has been reported. */
+    private boolean myReported;
+
+    /** The logger for this class. */
+    private static final Logger LOG = Logger.getLogger(PhaseScheduler.class);
+}
+
+
+/* ------------------------------------------------------------------------ */
+/*  DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS COMMENT.               */
+/*                                                                          */
+/*  The contents of this file are subject to the Mozilla Public License     */
+/*  Version 1.0 (the "License"); you may not use this file except in        */
+/*  compliance with the License. You may obtain a copy of the License at    */
+/*  http://www.mozilla.org/MPL/.                                            */
+/*                                                                          */
+/*  Software distributed under the License is distributed on an "AS IS"     */
+/*  basis, WITHOUT WARRANTY OF ANY KIND, either express or implied.  See    */
+/*  the License for the specific language governing rights and limitations  */
+/*  under the License.                                                      */
+/*                                                                          */
+/*  The Original Code is: all this file.                                    */
+/*                                                                          */
+/*  The Initial Developer of the Original Code is Florent Georges.          */
+/*                                                                          */
+/*  Contributor(s): none.                                                   */
+/* ------------------------------------------------------------------------ */
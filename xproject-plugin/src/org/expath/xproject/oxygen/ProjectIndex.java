@@ -0,0 +1,161 @@
+/****************************************************************************/
+/*  File:       ProjectIndex.java                                           */
+/*  Author:     F. Georges - H2O Consulting                                 */
+/*  Date:       2026-10-18                                                  */
+/*  Tags:                                                                   */
+/*      Copyright (c) 2026 Florent Georges (see end of file.)               */
+/* ------------------------------------------------------------------------ */
+
+
+package org.expath.xproject.oxygen;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import org.apache.log4j.Logger;
+
+
+/**
+ * Memoize the project root dir of directories.
+ *
+ * Finding the project a file belongs to means walking up the directories,
+ * looking for an xproject/ subdir.  The result for a dir is cached, with
+ * the modification time of each dir walked through (creating or deleting
+ * an xproject/ subdir changes the modification time of its parent), and
+ * the one of the xproject/ subdir found, if any (adding or removing
+ * project.xml changes it).
+ *
+ * Within "index.check-interval" ms after it has been checked, a cached
+ * result is returned as is.  After, the modification times are checked
+ * again (which is cheaper than listing the dirs), and the walk is done
+ * again if one of them changed.
+ *
+ * @author Florent Georges
+ * @date   2026-10-18
+ */
+public class ProjectIndex
+{
+    public ProjectIndex()
+    {
+        myEntries = new HashMap<String, Entry>();
+        myInterval = XProjectOptions.getLong("index.check-interval", 2000);
+    }
+
+    /**
+     * Return the project root dir of a dir, or null if it is not in a project.
+     *
+     * The dir itself is a project root dir if it contains an xproject/ subdir.
+     */
+    public synchronized File getProjectDir(File dir)
+    {
+        String key = dir.getAbsolutePath();
+        long now = System.currentTimeMillis();
+        Entry entry = myEntries.get(key);
+        if ( entry != null ) {
+            if ( now - entry.checked < myInterval ) {
+                return entry.root;
+            }
+            if ( entry.isValid() ) {
+                entry.checked = now;
+                return entry.root;
+            }
+            LOG.debug("Project index entry out of date: " + dir);
+        }
+        if ( myEntries.size() >= MAX_ENTRIES ) {
+            myEntries.clear();
+        }
+        entry = walk(dir);
+        entry.checked = now;
+        myEntries.put(key, entry);
+        return entry.root;
+    }
+
+    /**
+     * Forget everything.
+     */
+    public synchronized void clear()
+    {
+        myEntries.clear();
+    }
+
+    /**
+     * Walk up from the dir, looking for a project root dir.
+     */
+    private Entry walk(File dir)
+    {
+        List<File> dirs = new ArrayList<File>();
+        File root = null;
+        for ( File d = dir; d != null && root == null; d = d.getParentFile() ) {
+            dirs.add(d);
+            File priv = new File(d, XProjectConstants.PRIVATE_DIR);
+            if ( priv.isDirectory() ) {
+                dirs.add(priv);
+                root = d;
+            }
+        }
+        return new Entry(root, dirs);
+    }
+
+    /**
+     * The root dir of a dir, with the modification times of the dirs walked through.
+     */
+    private static class Entry
+    {
+        public Entry(File root, List<File> dirs) {
+            this.root = root;
+            this.dirs = dirs.toArray(new File[dirs.size()]);
+            this.mtimes = new long[this.dirs.length];
+            for ( int i = 0; i < this.dirs.length; ++i ) {
+                this.mtimes[i] = this.dirs[i].lastModified();
+            }
+        }
+
+        public boolean isValid() {
+            for ( int i = 0; i < dirs.length; ++i ) {
+                if ( dirs[i].lastModified() != mtimes[i] ) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        public final File root;
+        public final File[] dirs;
+        public final long[] mtimes;
+        public long checked;
+    }
+
+    /** The max number of entries, the index is cleared when reached. */
+    private static final int MAX_ENTRIES = 1000;
+
+    /** The entries, keyed by the absolute path of the dir. */
+    private final Map<String, Entry> myEntries;
+    /** The time during which an entry is not checked, in ms. */
+    private final long myInterval;
+
+    /** The logger for this class. */
+    private static final Logger LOG = Logger.getLogger(ProjectIndex.class);
+}
+
+
+/* ------------------------------------------------------------------------ */
+/*  DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS COMMENT.               */
+/*                                                                          */
+/*  The contents of this file are subject to the Mozilla Public License     */
+/*  Version 1.0 (the "License"); you may not use this file except in        */
+/*  compliance with the License. You may obtain a copy of the License at    */
+/*  http://www.mozilla.org/MPL/.                                            */
+/*                                                                          */
+/*  Software distributed under the License is distributed on an "AS IS"     */
+/*  basis, WITHOUT WARRANTY OF ANY KIND, either express or implied.  See    */
+/*  the License for the specific language governing rights and limitations  */
+/*  under the License.                                                      */
+/*                                                                          */
+/*  The Original Code is: all this file.                                    */
+/*                                                                          */
+/*  The Initial Developer of the Original Code is Florent Georges.          */
+/*                                                                          */
+/*  Contributor(s): none.                                                   */
+/* ------------------------------------------------------------------------ */
@@ -0,0 +1,319 @@
+/****************************************************************************/
+/*  File:       ProjectQueue.java                                           */
+/*  Author:     F. Georges - H2O Consulting                                 */
+/*  Date:       2026-10-18                                                  */
+/*  Tags:                                                                   */
+/*      Copyright (c) 2026 Florent Georges (see end of file.)               */
+/* ------------------------------------------------------------------------ */
+
+
+package org.expath.xproject.oxygen;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.EnumSet;
+import java.util.HashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import org.apache.log4j.Logger;
+import org.expath.xproject.oxygen.XProjectConstants.ProjectPhase;
+
+
+/**
+ * The queue of the phases to run on a project.
+ *
+ * So two clicks on "build" do not run two builds fighting over dist/:
+ * - a phase already pending in the queue is not queued again (coalesced)
+ * - if the same phase is running, it is cancelled, and superseded by the
+ *   new request, which takes its place at the head of the queue (so the
+ *   phases queued after the cancelled one still run after it)
+ * - other phases are queued, and run in order
+ *
+ * Superseding is for the interactive requests (the toolbar buttons and the
+ * watch mode), where the latest request is the one which matters.  The
+ * automated callers (the "all" action, see PhaseScheduler, and the batches,
+ * see BatchRunner) use enqueue() instead, which never cancels a running
+ * phase: the request is coalesced with a pending one, or queued behind the
+ * running one.
+ *
+ * The phases run one at a time, except TEST and DOC, which only read the
+ * build results and write their own dirs, and so can run at the same time
+ * (when they are next to each other in the queue).  All the phases run on
+ * a project go through its queue: the toolbar buttons, the "all" action
+ * (see PhaseScheduler), the batches (see BatchRunner) and the watch mode.
+ *
+ * The queue only enqueues on the caller thread (typically the EDT): the
+ * phases are prepared on a background thread (see Execution.launch()),
+ * which can take time (e.g. computing the build manifest, or waiting for
+ * the bundled packages to be installed).  The callers who need to know
+ * when a phase ended pass a phase listener, which is always notified once
+ * (with false if the phase failed, has been cancelled or timed out).  If
+ * the request is coalesced or supersedes a running phase, the listener is
+ * notified when the execution which replaces it ended.
+ *
+ * There is one queue for each project dir.  See Execution for the
+ * cancellation and the timeouts.
+ *
+ * @author Florent Georges
+ * @date   2026-10-18
+ */
+public class ProjectQueue
+{
+    /**
+     * Return the queue of a project dir (created the first time).
+     */
+    public static synchronized ProjectQueue getInstance(File project)
+    {
+        String path = MiscUtils.getPath(project);
+        ProjectQueue queue = ourQueues.get(path);
+        if ( queue == null ) {
+            queue = new ProjectQueue(path);
+            ourQueues.put(path, queue);
+        }
+        return queue;
+    }
+
+    private ProjectQueue(String path)
+    {
+        myPath = path;
+        myPending = new LinkedList<Execution>();
+        myRunning = new ArrayList<Execution>();
+    }
+
+    /**
+     * Queue a phase on the project.
+     */
+    public void submit(XProject project, ProjectPhase phase, UserMessages messages)
+    {
+        submit(project, phase, messages, null);
+    }
+
+    /**
+     * Queue a phase on the project, the listener (if any) is notified when it ended.
+     *
+     * If the same phase is running, it is cancelled and superseded.
+     */
+    public void submit(XProject project, ProjectPhase phase, UserMessages messages, PhaseListener done)
+    {
+        submit(project, phase, messages, done, true);
+    }
+
+    /**
+     * Queue a phase on the project, without superseding the same phase if running.
+     *
+     * The request is coalesced with the same phase if pending, or else
+     * queued (behind the running phases, if any).  The listener (if any) is
+     * notified when it ended.
+     */
+    public void enqueue(XProject project, ProjectPhase phase, UserMessages messages, PhaseListener done)
+    {
+        submit(project, phase, messages, done, false);
+    }
+
+    private void submit(XProject project, ProjectPhase phase, UserMessages messages, PhaseListener done, boolean supersede)
+    {
+        synchronized ( this ) {
+            for ( Execution e : myPending ) {
+                if ( e.getPhase() == phase ) {
+                    messages.debug("The " + phase.name().toLowerCase() + " is already queued, request ignored");
+                    Metrics.increment("queue.coalesced");
+                    e.addListener(done);
+                    return;
+                }
+            }
+            Execution exec = new Execution(phase, project, messages, new Ended());
+            exec.addListener(done);
+            Execution superseded = supersede ? getRunning(phase) : null;
+            if ( superseded != null ) {
+                Metrics.increment("queue.superseded");
+                superseded.cancel("superseded by a new request");
+                // the new one takes its place, and its listeners
+                exec.addListeners(superseded.takeListeners());
+                myPending.addFirst(exec);
+            }
+            else {
+                if ( ! myRunning.isEmpty() ) {
+                    messages.debug("The " + myRunning.get(0).getPhase().name().toLowerCase() + " is running, "
+                            + phase.name().toLowerCase() + " queued");
+                }
+                myPending.add(exec);
+            }
+        }
+        next();
+    }
+
+    /**
+     * Cancel the running phases and the pending ones.
+     */
+    public void cancelAll()
+    {
+        List<Execution> pending;
+        List<Execution> running;
+        synchronized ( this ) {
+            pending = new ArrayList<Execution>(myPending);
+            myPending.clear();
+            running = new ArrayList<Execution>(myRunning);
+        }
+        for ( Execution e : pending ) {
+            e.discard();
+        }
+        for ( Execution e : running ) {
+            e.cancel("stopped by the user");
+        }
+    }
+
+    /**
+     * Return the phases running or pending, in order (the running ones first).
+     */
+    public synchronized List<ProjectPhase> getPhases()
+    {
+        List<ProjectPhase> phases = new ArrayList<ProjectPhase>();
+        for ( Execution e : myRunning ) {
+            phases.add(e.getPhase());
+        }
+        for ( Execution e : myPending ) {
+            phases.add(e.getPhase());
+        }
+        return phases;
+    }
+
+    /**
+     * Start the next executions which can start, on the background threads.
+     */
+    private void next()
+    {
+        List<Execution> started = new ArrayList<Execution>();
+        synchronized ( this ) {
+            while ( ! myPending.isEmpty() && canStart(myPending.getFirst().getPhase()) ) {
+                Execution next = myPending.removeFirst();
+                myRunning.add(next);
+                started.add(next);
+            }
+        }
+        for ( final Execution e : started ) {
+            LOG.debug("Start the " + e.getPhase() + " on " + myPath);
+            EXECUTOR.execute(new Runnable() {
+                public void run() {
+                    e.launch();
+                }
+            });
+        }
+    }
+
+    /**
+     * Whether a phase can start now, given the running ones.
+     *
+     * Must be called with the lock.
+     */
+    private boolean canStart(ProjectPhase phase)
+    {
+        if ( myRunning.isEmpty() ) {
+            return true;
+        }
+        if ( ! CONCURRENT.contains(phase) ) {
+            return false;
+        }
+        for ( Execution e : myRunning ) {
+            if ( e.getPhase() == phase || ! CONCURRENT.contains(e.getPhase()) ) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Return the running execution of a phase, if any (must be called with the lock).
+     */
+    private Execution getRunning(ProjectPhase phase)
+    {
+        for ( Execution e : myRunning ) {
+            if ( e.getPhase() == phase ) {
+                return e;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Schedule a task on the watchdog thread (used for the timeouts).
+     */
+    static ScheduledFuture<?> schedule(Runnable task, long seconds)
+    {
+        return WATCHDOG.schedule(task, seconds, TimeUnit.SECONDS);
+    }
+
+    /**
+     * When an execution ended, start the next one(s).
+     */
+    private class Ended
+            implements Execution.EndListener
+    {
+        public void ended(Execution exec) {
+            synchronized ( ProjectQueue.this ) {
+                myRunning.remove(exec);
+            }
+            next();
+        }
+    }
+
+    /** The phases which can run at the same time. */
+    private static final Set<ProjectPhase> CONCURRENT = EnumSet.of(ProjectPhase.TEST, ProjectPhase.DOC);
+    /** The queues, by project path. */
+    private static final Map<String, ProjectQueue> ourQueues = new HashMap<String, ProjectQueue>();
+    /** The threads preparing the phases (at most one or two per project at a time). */
+    private static final ExecutorService EXECUTOR = Executors.newCachedThreadPool(new ThreadFactory() {
+        public Thread newThread(Runnable r) {
+            Thread t = new Thread(r, "xproject-queue");
+            t.setDaemon(true);
+            return t;
+        }
+    });
+    /** The thread for the timeouts. */
+    private static final ScheduledExecutorService WATCHDOG = Executors.newSingleThreadScheduledExecutor(
+            new ThreadFactory() {
+                public Thread newThread(Runnable r) {
+                    Thread t = new Thread(r, "xproject-watchdog");
+                    t.setDaemon(true);
+                    return t;
+                }
+            });
+
+    /** The project path. */
+    private final String myPath;
+    /** The executions waiting. */
+    private final LinkedList<Execution> myPending;
+    /** The executions running (more than one only for concurrent phases). */
+    private final List<Execution> myRunning;
+
+    /** The logger for this class. */
+    private static final Logger LOG = Logger.getLogger(ProjectQueue.class);
+}
+
+
+/* ------------------------------------------------------------------------ */
+/*  DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS COMMENT.               */
+/*                                                                          */
+/*  The contents of this file are subject to the Mozilla Public License     */
+/*  Version 1.0 (the "License"); you may not use this file except in        */
+/*  compliance with the License. You may obtain a copy of the License at    */
+/*  http://www.mozilla.org/MPL/.                                            */
+/*                                                                          */
+/*  Software distributed under the License is distributed on an "AS IS"     */
+/*  basis, WITHOUT WARRANTY OF ANY KIND, either express or implied.  See    */
+/*  the License for the specific language governing rights and limitations  */
+/*  under the License.                                                      */
+/*                                                                          */
+/*  The Original Code is: all this file.                                    */
+/*                                                                          */
+/*  The Initial Developer of the Original Code is Florent Georges.          */
+/*                                                                          */
+/*  Contributor(s): none.                                                   */
+/* ------------------------------------------------------------------------ */
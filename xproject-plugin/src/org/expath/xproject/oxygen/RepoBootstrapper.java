@@ -0,0 +1,577 @@
+/****************************************************************************/
+/*  File:       RepoBootstrapper.java                                       */
+/*  Author:     F. Georges - H2O Consulting                                 */
+/*  Date:       2026-10-18                                                  */
+/*  Tags:                                                                   */
+/*      Copyright (c) 2026 Florent Georges (see end of file.)               */
+/* ------------------------------------------------------------------------ */
+
+
+package org.expath.xproject.oxygen;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.Enumeration;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+import javax.xml.parsers.DocumentBuilderFactory;
+import org.apache.log4j.Logger;
+import org.w3c.dom.Element;
+import org.w3c.dom.NodeList;
+
+
+/**
+ * Install the packages bundled with the plugin into its repository.
+ *
+ * The XAR files in the plugin subdir packages/ are installed in the plugin
+ * subdir repo/, on a background thread, when oXygen starts (the option
+ * "repo.bootstrap", true by default).  Each XAR file is:
+ * - skipped if it did not change since it has been installed (its stamp is
+ *   recorded in repo/.xproject-bundled, so a no-op check only stats files)
+ * - verified against its SHA-1 in packages/checksums.txt, and not installed
+ *   if it does not match
+ * - skipped if the same version of the package is already installed
+ * - otherwise unzipped, in parallel with the other ones, in a temp dir then
+ *   renamed to [abbrev]-[version]
+ *
+ * The layout is the one of pkg-repo: the package lists in .expath-pkg/ are
+ * updated, and for the Saxon extensions (saxon.xml), the class path of the
+ * package is written in .saxon/classpath.txt.
+ *
+ * The phases wait for the installation to end before they start, see
+ * await().
+ *
+ * @author Florent Georges
+ * @date   2026-10-18
+ */
+public class RepoBootstrapper
+        implements Runnable
+{
+    public RepoBootstrapper(File plugin_dir, UserMessages messages)
+    {
+        myPackages = new File(plugin_dir, "packages/");
+        myRepo = new File(plugin_dir, "repo/");
+        myMsg = messages;
+    }
+
+    /**
+     * Start the installation on a background thread (if enabled).
+     */
+    public void start()
+    {
+        if ( ! XProjectOptions.getBoolean("repo.bootstrap", true) ) {
+            return;
+        }
+        synchronized ( RepoBootstrapper.class ) {
+            ourDone = new CountDownLatch(1);
+        }
+        Thread t = new Thread(this, "xproject-bootstrap");
+        t.setDaemon(true);
+        t.start();
+    }
+
+    /**
+     * Wait for the installation started at startup to end, if any.
+     */
+    public static void await()
+    {
+        CountDownLatch done;
+        synchronized ( RepoBootstrapper.class ) {
+            done = ourDone;
+        }
+        if ( done == null ) {
+            return;
+        }
+        try {
+            if ( ! done.await(AWAIT_TIMEOUT, TimeUnit.SECONDS) ) {
+                LOG.warn("The installation of the bundled packages is not done yet, do not wait for it");
+            }
+        }
+        catch ( InterruptedException ex ) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    @Override
+    public void run()
+    {
+        long start = System.currentTimeMillis();
+        try {
+            bootstrap();
+        }
+        catch ( IOException ex ) {
+            myMsg.error("Error installing the bundled packages in " + myRepo + ": " + ex.getMessage(), ex);
+        }
+        catch ( RuntimeException ex ) {
+            myMsg.error("Unexpected error installing the bundled packages: " + ex, ex);
+        }
+        finally {
+            long time = Metrics.since("repo.bootstrap", start);
+            LOG.debug("Bundled packages checked in " + time + " ms");
+            ourDone.countDown();
+        }
+    }
+
+    private void bootstrap()
+            throws IOException
+    {
+        File[] xars = myPackages.listFiles();
+        if ( xars == null ) {
+            LOG.debug("No bundled packages dir: " + myPackages);
+            return;
+        }
+        if ( ! myRepo.isDirectory() && ! myRepo.mkdirs() ) {
+            throw new IOException("Impossible to create the repository dir");
+        }
+        File record = new File(myRepo, RECORD);
+        Map<String, String> installed = readRecord(record);
+        // the XAR files which changed since the last time
+        List<File> todo = new ArrayList<File>();
+        for ( File xar : xars ) {
+            if ( ! xar.getName().endsWith(".xar") ) {
+                continue;
+            }
+            String[] rec = split(installed.get(xar.getName()));
+            if ( rec != null && rec[0].equals(MiscUtils.getStamp(xar)) && new File(myRepo, rec[1]).isDirectory() ) {
+                Metrics.increment("repo.bootstrap.skipped");
+                continue;
+            }
+            todo.add(xar);
+        }
+        if ( todo.isEmpty() ) {
+            return;
+        }
+        Map<String, String> checksums = readChecksums(new File(myPackages, "checksums.txt"));
+        Map<String, Entry> entries = readPackageList();
+        int threads = Math.min(todo.size(), Runtime.getRuntime().availableProcessors());
+        ExecutorService executor = Executors.newFixedThreadPool(threads, new ThreadFactory() {
+            public Thread newThread(Runnable r) {
+                Thread t = new Thread(r, "xproject-bootstrap-unzip");
+                t.setDaemon(true);
+                return t;
+            }
+        });
+        try {
+            Map<File, Future<Entry>> futures = new LinkedHashMap<File, Future<Entry>>();
+            for ( File xar : todo ) {
+                futures.put(xar, executor.submit(new Install(xar, checksums.get(xar.getName()), entries)));
+            }
+            boolean changed = false;
+            for ( Map.Entry<File, Future<Entry>> f : futures.entrySet() ) {
+                File xar = f.getKey();
+                Entry e;
+                try {
+                    e = f.getValue().get();
+                }
+                catch ( Exception ex ) {
+                    Throwable cause = ex.getCause() == null ? ex : ex.getCause();
+                    Metrics.increment("repo.bootstrap.failed");
+                    myMsg.error("Error installing the bundled package " + xar.getName() + ": " + cause.getMessage(), cause);
+                    continue;
+                }
+                installed.put(xar.getName(), MiscUtils.getStamp(xar) + "\t" + e.dir);
+                if ( ! entries.containsKey(e.dir) ) {
+                    entries.put(e.dir, e);
+                    changed = true;
+                }
+            }
+            if ( changed ) {
+                writePackageLists(entries);
+                PackageRepository.getInstance(myRepo).invalidate();
+            }
+            writeRecord(record, installed);
+        }
+        finally {
+            executor.shutdown();
+        }
+    }
+
+    /**
+     * Install one XAR file, return its entry in the package lists.
+     */
+    private class Install
+            implements java.util.concurrent.Callable<Entry>
+    {
+        public Install(File xar, String checksum, Map<String, Entry> entries) {
+            myXar = xar;
+            myChecksum = checksum;
+            myEntries = entries;
+        }
+
+        public Entry call() throws Exception {
+            String sha1 = BuildManifest.hash(myXar);
+            if ( myChecksum == null ) {
+                LOG.warn("No checksum for the bundled package " + myXar.getName() + ", not verified");
+            }
+            else if ( ! myChecksum.equals(sha1) ) {
+                throw new IOException("Checksum mismatch (corrupted file?), expected " + myChecksum + ", got " + sha1);
+            }
+            ZipFile zip = new ZipFile(myXar);
+            try {
+                Entry e = readDescriptor(zip);
+                for ( Entry existing : myEntries.values() ) {
+                    if ( existing.name.equals(e.name) && existing.version.equals(e.version)
+                            && new File(myRepo, existing.dir).isDirectory() ) {
+                        LOG.debug("Bundled package already installed: " + e.name + "@" + e.version);
+                        Metrics.increment("repo.bootstrap.skipped");
+                        return existing;
+                    }
+                }
+                unzip(zip, e);
+                Metrics.increment("repo.bootstrap.installed");
+                myMsg.debug("Bundled package installed: " + e.name + "@" + e.version + " in " + e.dir);
+                return e;
+            }
+            finally {
+                zip.close();
+            }
+        }
+
+        private final File myXar;
+        private final String myChecksum;
+        private final Map<String, Entry> myEntries;
+    }
+
+    /**
+     * Parse the package descriptor in the XAR file.
+     */
+    private Entry readDescriptor(ZipFile zip)
+            throws Exception
+    {
+        ZipEntry desc = zip.getEntry("expath-pkg.xml");
+        if ( desc == null ) {
+            throw new IOException("No package descriptor in " + zip.getName());
+        }
+        DocumentBuilderFactory factory = DocumentBuilderFactory.newInstance();
+        factory.setNamespaceAware(true);
+        InputStream in = zip.getInputStream(desc);
+        Element root;
+        try {
+            root = factory.newDocumentBuilder().parse(in).getDocumentElement();
+        }
+        finally {
+            in.close();
+        }
+        Entry e = new Entry();
+        e.name = root.getAttribute("name");
+        e.version = root.getAttribute("version");
+        e.abbrev = root.getAttribute("abbrev");
+        if ( e.name.length() == 0 || e.abbrev.length() == 0 || e.version.length() == 0 ) {
+            throw new IOException("Invalid package descriptor in " + zip.getName());
+        }
+        e.dir = e.abbrev + "-" + e.version;
+        return e;
+    }
+
+    /**
+     * Unzip the XAR file to a temp dir, then rename it to the package dir.
+     */
+    private void unzip(ZipFile zip, Entry e)
+            throws Exception
+    {
+        File tmp = new File(myRepo, ".tmp-" + e.dir + "-" + Thread.currentThread().getId());
+        deleteRecursively(tmp);
+        Enumeration<? extends ZipEntry> it = zip.entries();
+        while ( it.hasMoreElements() ) {
+            ZipEntry entry = it.nextElement();
+            File dest = new File(tmp, entry.getName());
+            if ( ! MiscUtils.getPath(dest).startsWith(MiscUtils.getPath(tmp) + File.separator) ) {
+                throw new IOException("Invalid entry in " + zip.getName() + ": " + entry.getName());
+            }
+            if ( entry.isDirectory() ) {
+                dest.mkdirs();
+                continue;
+            }
+            dest.getParentFile().mkdirs();
+            ReadableByteChannel in = Channels.newChannel(zip.getInputStream(entry));
+            FileOutputStream out = new FileOutputStream(dest);
+            try {
+                FileChannel channel = out.getChannel();
+                long pos = 0;
+                long n;
+                while ( (n = channel.transferFrom(in, pos, BUFFER_SIZE)) > 0 ) {
+                    pos += n;
+                }
+            }
+            finally {
+                out.close();
+                in.close();
+            }
+        }
+        writeSaxonClasspath(tmp, e);
+        File dir = new File(myRepo, e.dir);
+        deleteRecursively(dir);
+        if ( ! tmp.renameTo(dir) ) {
+            deleteRecursively(tmp);
+            throw new IOException("Impossible to rename the package dir to " + dir);
+        }
+    }
+
+    /**
+     * Write .saxon/classpath.txt if the package has a Saxon descriptor with JARs.
+     *
+     * The JAR paths are relative to the content dir, written as canonical
+     * paths, one per line (the paths in the final dir, not the temp one).
+     */
+    private void writeSaxonClasspath(File tmp, Entry e)
+            throws Exception
+    {
+        File saxon = new File(tmp, "saxon.xml");
+        if ( ! saxon.isFile() ) {
+            return;
+        }
+        DocumentBuilderFactory factory = DocumentBuilderFactory.newInstance();
+        factory.setNamespaceAware(true);
+        NodeList jars = factory.newDocumentBuilder().parse(saxon).getElementsByTagNameNS(SAXON_NS, "jar");
+        if ( jars.getLength() == 0 ) {
+            return;
+        }
+        File dir = new File(myRepo, e.dir);
+        File content = new File(dir, "content");
+        if ( ! new File(tmp, "content").isDirectory() ) {
+            content = new File(dir, e.abbrev);
+        }
+        File classpath = new File(tmp, ".saxon/classpath.txt");
+        classpath.getParentFile().mkdirs();
+        Writer out = new OutputStreamWriter(new FileOutputStream(classpath), "UTF-8");
+        try {
+            for ( int i = 0; i < jars.getLength(); ++i ) {
+                String jar = jars.item(i).getTextContent().trim();
+                out.write(MiscUtils.getPath(new File(content, jar)));
+                out.write("\n");
+            }
+        }
+        finally {
+            out.close();
+        }
+    }
+
+    /**
+     * Read .expath-pkg/packages.txt ("[dir] [name] [version]" on each line), keyed by dir.
+     */
+    private Map<String, Entry> readPackageList()
+            throws IOException
+    {
+        Map<String, Entry> entries = new LinkedHashMap<String, Entry>();
+        File txt = new File(myRepo, ".expath-pkg/packages.txt");
+        if ( ! txt.isFile() ) {
+            return entries;
+        }
+        BufferedReader in = new BufferedReader(new InputStreamReader(new FileInputStream(txt), "UTF-8"));
+        try {
+            String line;
+            while ( (line = in.readLine()) != null ) {
+                String[] fields = line.trim().split(" ");
+                if ( fields.length == 3 ) {
+                    Entry e = new Entry();
+                    e.dir = fields[0];
+                    e.name = fields[1];
+                    e.version = fields[2];
+                    entries.put(e.dir, e);
+                }
+            }
+        }
+        finally {
+            in.close();
+        }
+        return entries;
+    }
+
+    /**
+     * Write .expath-pkg/packages.xml and packages.txt (the same format as pkg-repo).
+     */
+    private void writePackageLists(Map<String, Entry> entries)
+            throws IOException
+    {
+        File priv = new File(myRepo, ".expath-pkg");
+        if ( ! priv.isDirectory() && ! priv.mkdirs() ) {
+            throw new IOException("Impossible to create directory: " + priv);
+        }
+        Writer xml = new OutputStreamWriter(new FileOutputStream(new File(priv, "packages.xml")), "UTF-8");
+        try {
+            xml.write("<packages xmlns=\"http://expath.org/ns/repo/packages\">\n");
+            for ( Entry e : entries.values() ) {
+                xml.write("   <package name=\"" + e.name + "\"\n");
+                xml.write("            dir=\"" + e.dir + "\"\n");
+                xml.write("            version=\"" + e.version + "\"/>\n");
+            }
+            xml.write("</packages>\n");
+        }
+        finally {
+            xml.close();
+        }
+        Writer txt = new OutputStreamWriter(new FileOutputStream(new File(priv, "packages.txt")), "UTF-8");
+        try {
+            for ( Entry e : entries.values() ) {
+                txt.write(e.dir + " " + e.name + " " + e.version + "\n");
+            }
+        }
+        finally {
+            txt.close();
+        }
+    }
+
+    /**
+     * Read the checksums file ("[sha1]  [file name]" on each line, like sha1sum).
+     */
+    private static Map<String, String> readChecksums(File file)
+            throws IOException
+    {
+        Map<String, String> checksums = new HashMap<String, String>();
+        if ( ! file.isFile() ) {
+            return checksums;
+        }
+        BufferedReader in = new BufferedReader(new InputStreamReader(new FileInputStream(file), "UTF-8"));
+        try {
+            String line;
+            while ( (line = in.readLine()) != null ) {
+                String[] fields = line.trim().split("\\s+\\*?", 2);
+                if ( fields.length == 2 ) {
+                    checksums.put(fields[1], fields[0].toLowerCase());
+                }
+            }
+        }
+        finally {
+            in.close();
+        }
+        return checksums;
+    }
+
+    /**
+     * Read the record of the installed XAR files ("[file name] TAB [stamp] TAB [dir]").
+     */
+    private static Map<String, String> readRecord(File file)
+            throws IOException
+    {
+        Map<String, String> record = new HashMap<String, String>();
+        if ( ! file.isFile() ) {
+            return record;
+        }
+        BufferedReader in = new BufferedReader(new InputStreamReader(new FileInputStream(file), "UTF-8"));
+        try {
+            String line;
+            while ( (line = in.readLine()) != null ) {
+                int tab = line.indexOf('\t');
+                if ( tab > 0 ) {
+                    record.put(line.substring(0, tab), line.substring(tab + 1));
+                }
+            }
+        }
+        finally {
+            in.close();
+        }
+        return record;
+    }
+
+    private static void writeRecord(File file, Map<String, String> record)
+            throws IOException
+    {
+        Writer out = new OutputStreamWriter(new FileOutputStream(file), "UTF-8");
+        try {
+            for ( Map.Entry<String, String> e : record.entrySet() ) {
+                out.write(e.getKey() + "\t" + e.getValue() + "\n");
+            }
+        }
+        finally {
+            out.close();
+        }
+    }
+
+    /**
+     * Split "[stamp] TAB [dir]", or return null.
+     */
+    private static String[] split(String rec)
+    {
+        if ( rec == null ) {
+            return null;
+        }
+        String[] fields = rec.split("\t");
+        return fields.length == 2 ? fields : null;
+    }
+
+    private static void deleteRecursively(File file)
+    {
+        File[] children = file.listFiles();
+        if ( children != null ) {
+            for ( File c : children ) {
+                deleteRecursively(c);
+            }
+        }
+        file.delete();
+    }
+
+    /**
+     * A package in the repository.
+     */
+    private static class Entry
+    {
+        public String name;
+        public String version;
+        public String abbrev;
+        public String dir;
+    }
+
+    /** The record of the installed XAR files, in the repository. */
+    private static final String RECORD = ".xproject-bundled";
+    /** The namespace of the Saxon package descriptors. */
+    private static final String SAXON_NS = "http://saxon.sf.net/ns/expath-pkg";
+    /** The max number of bytes transferred at once. */
+    private static final long BUFFER_SIZE = 1024 * 1024;
+    /** The max time to wait for the installation, in seconds. */
+    private static final long AWAIT_TIMEOUT = 10;
+    /** Signaled when the installation ended, if one has been started. */
+    private static CountDownLatch ourDone;
+
+    /** The dir of the bundled XAR files. */
+    private final File myPackages;
+    /** The repository dir. */
+    private final File myRepo;
+    /** The messages. */
+    private final UserMessages myMsg;
+
+    /** The logger for this class. */
+    private static final Logger LOG = Logger.getLogger(RepoBootstrapper.class);
+}
+
+
+/* ------------------------------------------------------------------------ */
+/*  DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS COMMENT.               */
+/*                                                                          */
+/*  The contents of this file are subject to the Mozilla Public License     */
+/*  Version 1.0 (the "License"); you may not use this file except in        */
+/*  compliance with the License. You may obtain a copy of the License at    */
+/*  http://www.mozilla.org/MPL/.                                            */
+/*                                                                          */
+/*  Software distributed under the License is distributed on an "AS IS"     */
+/*  basis, WITHOUT WARRANTY OF ANY KIND, either express or implied.  See    */
+/*  the License for the specific language governing rights and limitations  */
+/*  under the License.                                                      */
+/*                                                                          */
+/*  The Original Code is: all this file.                                    */
+/*                                                                          */
+/*  The Initial Developer of the Original Code is Florent Georges.          */
+/*                                                                          */
+/*  Contributor(s): none.                                                   */
+/* ------------------------------------------------------------------------ */
@@ -0,0 +1,443 @@
+/****************************************************************************/
+/*  File:       RevisionProvider.java                                       */
+/*  Author:     F. Georges - H2O Consulting                                 */
+/*  Date:       2026-10-18                                                  */
+/*  Tags:                                                                   */
+/*      Copyright (c) 2026 Florent Georges (see end of file.)               */
+/* ------------------------------------------------------------------------ */
+
+
+package org.expath.xproject.oxygen;
+
+import java.io.BufferedReader;
+import java.io.DataInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import org.apache.log4j.Logger;
+
+
+/**
+ * The revision of a project, read from its working copy metadata.
+ *
+ * The metadata is read directly (no git or svn process is started):
+ * - for Git, HEAD is resolved to a commit (through the loose refs, then
+ *   packed-refs), and the project is dirty if one of its files in the
+ *   index has not the same modification time or size as on disk (like
+ *   the fast path of "git status", only for the tracked files)
+ * - for Subversion, the revision is read from .svn/entries, in the format
+ *   of the working copies before 1.7 (the later ones keep it in a SQLite
+ *   database, which is not read)
+ *
+ * The revision is the first 7 digits of the commit ID for Git (with the
+ * suffix "-dirty" if the project is dirty), the revision number for
+ * Subversion, or "unknown".
+ *
+ * The result is cached for each project, and the metadata is read again
+ * only when the files it comes from changed (HEAD, the ref, packed-refs,
+ * the index, .svn/entries).  The dirty check (stat-ing the tracked files)
+ * is done each time.
+ *
+ * @author Florent Georges
+ * @date   2026-10-18
+ */
+public class RevisionProvider
+{
+    /**
+     * Return the revision of the project dir.
+     */
+    public static String getRevision(File project)
+    {
+        RevisionProvider provider;
+        synchronized ( RevisionProvider.class ) {
+            String key = MiscUtils.getPath(project);
+            provider = ourProviders.get(key);
+            if ( provider == null ) {
+                provider = new RevisionProvider(new File(key));
+                ourProviders.put(key, provider);
+            }
+        }
+        return provider.getRevision();
+    }
+
+    private RevisionProvider(File project)
+    {
+        myProject = project;
+        myStamps = new LinkedHashMap<File, String>();
+    }
+
+    /**
+     * Return the revision, reading the metadata again if it changed.
+     */
+    public synchronized String getRevision()
+    {
+        if ( ! isUpToDate() ) {
+            myStamps.clear();
+            myIndex = null;
+            myCommit = null;
+            mySvnRevision = null;
+            try {
+                load();
+            }
+            catch ( IOException ex ) {
+                LOG.debug("Error reading the VCS metadata of " + myProject, ex);
+            }
+        }
+        if ( myCommit != null ) {
+            String rev = myCommit.substring(0, Math.min(7, myCommit.length()));
+            return isDirty() ? rev + "-dirty" : rev;
+        }
+        if ( mySvnRevision != null ) {
+            return mySvnRevision;
+        }
+        return UNKNOWN;
+    }
+
+    /**
+     * Whether the files the revision has been read from did not change.
+     */
+    private boolean isUpToDate()
+    {
+        if ( myStamps.isEmpty() ) {
+            // not loaded yet, or no VCS (look again, the project could be imported)
+            return false;
+        }
+        for ( Map.Entry<File, String> e : myStamps.entrySet() ) {
+            if ( ! MiscUtils.getStamp(e.getKey()).equals(e.getValue()) ) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Look for the metadata in the project dir, then in its ancestors.
+     */
+    private void load()
+            throws IOException
+    {
+        for ( File dir = myProject; dir != null; dir = dir.getParentFile() ) {
+            File git = new File(dir, ".git");
+            if ( git.exists() ) {
+                loadGit(dir, git);
+                return;
+            }
+            File svn = new File(dir, ".svn");
+            if ( svn.isDirectory() ) {
+                loadSvn(svn);
+                return;
+            }
+        }
+    }
+
+    /**
+     * Resolve HEAD, and read the index.
+     */
+    private void loadGit(File worktree, File git)
+            throws IOException
+    {
+        File gitdir = git;
+        if ( git.isFile() ) {
+            // a linked worktree or a submodule: "gitdir: [path]"
+            watch(git);
+            String line = readFirstLine(git);
+            if ( line == null || ! line.startsWith("gitdir:") ) {
+                return;
+            }
+            gitdir = resolve(worktree, line.substring("gitdir:".length()).trim());
+        }
+        // the refs of a linked worktree are in the main repository
+        File common = gitdir;
+        File commondir = new File(gitdir, "commondir");
+        if ( commondir.isFile() ) {
+            common = resolve(gitdir, readFirstLine(commondir).trim());
+        }
+        File head = new File(gitdir, "HEAD");
+        watch(head);
+        String ref = readFirstLine(head);
+        for ( int i = 0; ref != null && ref.startsWith("ref:") && i < MAX_SYMREFS; ++i ) {
+            String name = ref.substring("ref:".length()).trim();
+            ref = resolveRef(name, gitdir, common);
+        }
+        if ( ref == null || ref.startsWith("ref:") ) {
+            // an unborn branch
+            return;
+        }
+        myCommit = ref.trim();
+        File index = new File(gitdir, "index");
+        watch(index);
+        if ( index.isFile() ) {
+            String prefix = getRelativePath(worktree, myProject);
+            myIndex = readIndex(index, worktree, prefix);
+        }
+    }
+
+    /**
+     * Resolve a ref to its content (a commit ID, or another "ref: ..."), or null.
+     */
+    private String resolveRef(String name, File gitdir, File common)
+            throws IOException
+    {
+        // per-worktree refs (like HEAD) are in the gitdir, others in the common dir
+        File loose = new File(name.startsWith("refs/") ? common : gitdir, name);
+        watch(loose);
+        if ( loose.isFile() ) {
+            return readFirstLine(loose);
+        }
+        File packed = new File(common, "packed-refs");
+        watch(packed);
+        if ( ! packed.isFile() ) {
+            return null;
+        }
+        BufferedReader in = new BufferedReader(new InputStreamReader(new FileInputStream(packed), "UTF-8"));
+        try {
+            String line;
+            while ( (line = in.readLine()) != null ) {
+                // comments, and the peeled tags "^[id]"
+                if ( line.startsWith("#") || line.startsWith("^") ) {
+                    continue;
+                }
+                int space = line.indexOf(' ');
+                if ( space > 0 && line.substring(space + 1).equals(name) ) {
+                    return line.substring(0, space);
+                }
+            }
+        }
+        finally {
+            in.close();
+        }
+        return null;
+    }
+
+    /**
+     * Read the entries of the index within the project dir (see the Git doc "index-format").
+     *
+     * Only the versions 2, 3 and 4 are supported (all the versions in use).
+     */
+    private static List<IndexEntry> readIndex(File index, File worktree, String prefix)
+            throws IOException
+    {
+        byte[] bytes = new byte[(int) index.length()];
+        DataInputStream in = new DataInputStream(new FileInputStream(index));
+        try {
+            in.readFully(bytes);
+        }
+        finally {
+            in.close();
+        }
+        if ( bytes.length < 12 || bytes[0] != 'D' || bytes[1] != 'I' || bytes[2] != 'R' || bytes[3] != 'C' ) {
+            throw new IOException("Not a Git index: " + index);
+        }
+        int version = readInt(bytes, 4);
+        if ( version < 2 || version > 4 ) {
+            throw new IOException("Unsupported Git index version: " + version);
+        }
+        int count = readInt(bytes, 8);
+        List<IndexEntry> entries = new ArrayList<IndexEntry>();
+        int pos = 12;
+        String previous = "";
+        for ( int i = 0; i < count; ++i ) {
+            int start = pos;
+            int mtime = readInt(bytes, pos + 8);
+            int mode  = readInt(bytes, pos + 24);
+            int size  = readInt(bytes, pos + 36);
+            int flags = ((bytes[pos + 60] & 0xFF) << 8) | (bytes[pos + 61] & 0xFF);
+            pos += 62;
+            if ( version >= 3 && (flags & 0x4000) != 0 ) {
+                // the extended flags
+                pos += 2;
+            }
+            String path;
+            if ( version == 4 ) {
+                // the path is prefix-compressed: the number of chars to remove from the previous one
+                int c = bytes[pos++] & 0xFF;
+                int strip = c & 0x7F;
+                while ( (c & 0x80) != 0 ) {
+                    c = bytes[pos++] & 0xFF;
+                    strip = ((strip + 1) << 7) | (c & 0x7F);
+                }
+                int end = pos;
+                while ( bytes[end] != 0 ) {
+                    ++end;
+                }
+                path = previous.substring(0, previous.length() - strip) + new String(bytes, pos, end - pos, "UTF-8");
+                pos = end + 1;
+            }
+            else {
+                int end = pos;
+                while ( bytes[end] != 0 ) {
+                    ++end;
+                }
+                path = new String(bytes, pos, end - pos, "UTF-8");
+                // padded with 1 to 8 NULs, to a multiple of 8
+                pos = start + ((end - start + 8) & ~7);
+            }
+            previous = path;
+            int type = mode & 0170000;
+            // skip the symlinks and the submodules
+            if ( type == 0100000 && path.startsWith(prefix) ) {
+                entries.add(new IndexEntry(new File(worktree, path), mtime, size));
+            }
+        }
+        return entries;
+    }
+
+    /**
+     * Whether a file in the index changed on disk (or has been removed).
+     */
+    private boolean isDirty()
+    {
+        if ( myIndex == null ) {
+            return false;
+        }
+        for ( IndexEntry e : myIndex ) {
+            long modified = e.file.lastModified();
+            if ( modified == 0 ) {
+                return true;
+            }
+            if ( (int) (modified / 1000) != e.mtime || (int) e.file.length() != e.size ) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Read the revision from .svn/entries (working copies before 1.7).
+     *
+     * The format is text: the format number, the entry name (empty for the
+     * dir itself), its kind ("dir"), then its revision.
+     */
+    private void loadSvn(File svn)
+            throws IOException
+    {
+        File entries = new File(svn, "entries");
+        File db = new File(svn, "wc.db");
+        watch(entries);
+        watch(db);
+        if ( db.exists() || ! entries.isFile() ) {
+            LOG.debug("Subversion working copy format not supported (1.7 or later?): " + svn);
+            return;
+        }
+        BufferedReader in = new BufferedReader(new InputStreamReader(new FileInputStream(entries), "UTF-8"));
+        try {
+            String format = in.readLine();
+            in.readLine();
+            String kind = in.readLine();
+            String revision = in.readLine();
+            if ( format != null && format.trim().matches("[0-9]+") && "dir".equals(kind) && revision != null ) {
+                mySvnRevision = revision.trim();
+            }
+        }
+        finally {
+            in.close();
+        }
+    }
+
+    private void watch(File file)
+    {
+        myStamps.put(file, MiscUtils.getStamp(file));
+    }
+
+    private static String readFirstLine(File file)
+            throws IOException
+    {
+        BufferedReader in = new BufferedReader(new InputStreamReader(new FileInputStream(file), "UTF-8"));
+        try {
+            return in.readLine();
+        }
+        finally {
+            in.close();
+        }
+    }
+
+    private static File resolve(File base, String path)
+    {
+        File file = new File(path);
+        return file.isAbsolute() ? file : new File(base, path);
+    }
+
+    /**
+     * The path of the dir relative to the worktree, with a trailing slash (or "" if the same).
+     */
+    private static String getRelativePath(File worktree, File dir)
+    {
+        String root = MiscUtils.getPath(worktree);
+        String path = MiscUtils.getPath(dir);
+        if ( path.equals(root) || ! path.startsWith(root + File.separator) ) {
+            return "";
+        }
+        return path.substring(root.length() + 1).replace(File.separatorChar, '/') + "/";
+    }
+
+    private static int readInt(byte[] bytes, int pos)
+    {
+        return ((bytes[pos] & 0xFF) << 24) | ((bytes[pos + 1] & 0xFF) << 16)
+                | ((bytes[pos + 2] & 0xFF) << 8) | (bytes[pos + 3] & 0xFF);
+    }
+
+    /**
+     * A file in the Git index.
+     */
+    private static class IndexEntry
+    {
+        public IndexEntry(File file, int mtime, int size) {
+            this.file = file;
+            this.mtime = mtime;
+            this.size = size;
+        }
+        public final File file;
+        /** The modification time, in seconds. */
+        public final int mtime;
+        /** The size, truncated to 32 bits. */
+        public final int size;
+    }
+
+    /** The revision when there is no (supported) VCS. */
+    private static final String UNKNOWN = "unknown";
+    /** The max number of symbolic refs followed. */
+    private static final int MAX_SYMREFS = 5;
+    /** The providers, by project path. */
+    private static final Map<String, RevisionProvider> ourProviders = new HashMap<String, RevisionProvider>();
+
+    /** The project dir. */
+    private final File myProject;
+    /** The stamps of the files the revision has been read from. */
+    private final Map<File, String> myStamps;
+    /** The commit ID, for Git. */
+    private String myCommit;
+    /** The files of the project in the Git index. */
+    private List<IndexEntry> myIndex;
+    /** The revision number, for Subversion. */
+    private String mySvnRevision;
+
+    /** The logger for this class. */
+    private static final Logger LOG = Logger.getLogger(RevisionProvider.class);
+}
+
+
+/* ------------------------------------------------------------------------ */
+/*  DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS COMMENT.               */
+/*                                                                          */
+/*  The contents of this file are subject to the Mozilla Public License     */
+/*  Version 1.0 (the "License"); you may not use this file except in        */
+/*  compliance with the License. You may obtain a copy of the License at    */
+/*  http://www.mozilla.org/MPL/.                                            */
+/*                                                                          */
+/*  Software distributed under the License is distributed on an "AS IS"     */
+/*  basis, WITHOUT WARRANTY OF ANY KIND, either express or implied.  See    */
+/*  the License for the specific language governing rights and limitations  */
+/*  under the License.                                                      */
+/*                                                                          */
+/*  The Original Code is: all this file.                                    */
+/*                                                                          */
+/*  The Initial Developer of the Original Code is Florent Georges.          */
+/*                                                                          */
+/*  Contributor(s): none.                                                   */
+/* ------------------------------------------------------------------------ */
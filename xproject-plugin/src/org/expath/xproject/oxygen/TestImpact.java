@@ -0,0 +1,545 @@
+/****************************************************************************/
+/*  File:       TestImpact.java                                             */
+/*  Author:     F. Georges - H2O Consulting                                 */
+/*  Date:       2026-10-18                                                  */
+/*  Tags:                                                                   */
+/*      Copyright (c) 2026 Florent Georges (see end of file.)               */
+/* ------------------------------------------------------------------------ */
+
+
+package org.expath.xproject.oxygen;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import javax.xml.parsers.DocumentBuilderFactory;
+import org.apache.log4j.Logger;
+import org.w3c.dom.Element;
+import org.w3c.dom.NodeList;
+
+
+/**
+ * The dependency graph of the modules and test suites of a project.
+ *
+ * The graph is made of the files in src/ and of the XSpec suites, plus the
+ * project files they depend on.  The dependencies are:
+ * - XQuery: import module (by location, or by namespace if there is no
+ *   location, using the module namespace declarations)
+ * - XSLT: xsl:import and xsl:include
+ * - XSpec: @stylesheet, @query-at (or @query, by namespace) and x:import
+ *
+ * The graph is saved in xproject/.test-graph, and only the files which
+ * changed (modification time or size) are scanned again.  When a test run
+ * succeeds, the stamps of the files are saved in xproject/.test-baseline,
+ * except the suites which failed, so they are affected until they pass.
+ * The suites affected by the changes since then are the suites depending,
+ * directly or not, on a changed file (or changed themselves).
+ *
+ * The graph is stale if there is no baseline, if project.xml changed, or
+ * if a dependency within the project cannot be resolved: then all the
+ * suites are run.
+ *
+ * @author Florent Georges
+ * @date   2026-10-18
+ */
+public class TestImpact
+{
+    public TestImpact(File project, File desc)
+    {
+        myProject = project;
+        myDesc = desc;
+        File priv = new File(project, XProjectConstants.PRIVATE_DIR);
+        myGraphFile = new File(priv, ".test-graph");
+        myBaselineFile = new File(priv, ".test-baseline");
+        myNodes = new HashMap<String, Node>();
+    }
+
+    /**
+     * Update the graph (scan the changed files), with the given suites.
+     */
+    public void update(Collection<File> suites)
+    {
+        mySuites = suites;
+        Map<String, Node> previous = loadGraph();
+        myNodes.clear();
+        LinkedList<File> queue = new LinkedList<File>();
+        addSources(new File(myProject, "src"), queue);
+        queue.addAll(suites);
+        int scanned = 0;
+        while ( ! queue.isEmpty() ) {
+            File f = queue.removeFirst();
+            String path = getPath(f);
+            if ( myNodes.containsKey(path) ) {
+                continue;
+            }
+            String stamp = MiscUtils.getStamp(f);
+            Node n = previous.get(path);
+            if ( n == null || ! n.stamp.equals(stamp) ) {
+                n = scan(f, path, stamp);
+                ++scanned;
+            }
+            myNodes.put(path, n);
+            // the referenced files, if in the project
+            for ( String ref : n.refs ) {
+                if ( ! ref.startsWith(NS_PREFIX) ) {
+                    File r = new File(myProject, ref);
+                    if ( r.isFile() ) {
+                        queue.add(r);
+                    }
+                }
+            }
+        }
+        resolve();
+        LOG.debug("Test graph updated: " + myNodes.size() + " files, " + scanned + " scanned");
+        saveGraph();
+    }
+
+    /**
+     * Return the URIs of the suites affected by the changes, or null if the graph is stale.
+     */
+    public Set<String> getAffectedSuites()
+    {
+        Map<String, String> baseline = load(myBaselineFile);
+        if ( baseline == null ) {
+            LOG.debug("No test baseline, run all the tests");
+            return null;
+        }
+        if ( ! MiscUtils.getStamp(myDesc).equals(baseline.get(DESC_KEY)) ) {
+            LOG.debug("Project descriptor changed, run all the tests");
+            return null;
+        }
+        // the changed files
+        Set<String> changed = new HashSet<String>();
+        for ( Node n : myNodes.values() ) {
+            if ( n.unresolved != null ) {
+                LOG.debug("Unresolved dependency in " + n.path + ": " + n.unresolved + ", run all the tests");
+                return null;
+            }
+            if ( ! n.stamp.equals(baseline.get(n.path)) ) {
+                changed.add(n.path);
+            }
+        }
+        LOG.debug("Files changed since the last test run: " + changed);
+        // the suites depending on them
+        Set<String> affected = new HashSet<String>();
+        for ( File s : mySuites ) {
+            if ( dependsOn(getPath(s), changed, new HashSet<String>()) ) {
+                affected.add(MiscUtils.getUri(s));
+            }
+        }
+        return affected;
+    }
+
+    /**
+     * Save the current stamps as the baseline, when all the suites passed.
+     */
+    public void commit()
+    {
+        commit(Collections.<String>emptySet());
+    }
+
+    /**
+     * Save the current stamps as the baseline, but for the failed suites (by URI).
+     */
+    public void commit(Set<String> failed)
+    {
+        Set<String> excluded = new HashSet<String>();
+        for ( File s : mySuites ) {
+            if ( failed.contains(MiscUtils.getUri(s)) ) {
+                excluded.add(getPath(s));
+            }
+        }
+        Map<String, String> stamps = new HashMap<String, String>();
+        for ( Node n : myNodes.values() ) {
+            if ( ! excluded.contains(n.path) ) {
+                stamps.put(n.path, n.stamp);
+            }
+        }
+        stamps.put(DESC_KEY, MiscUtils.getStamp(myDesc));
+        save(myBaselineFile, stamps);
+    }
+
+    /**
+     * The resolved dependencies of each file, keyed by path (after update()).
+     */
+    Map<String, List<String>> getDependencies()
+    {
+        Map<String, List<String>> deps = new HashMap<String, List<String>>();
+        for ( Node n : myNodes.values() ) {
+            deps.put(n.path, n.deps);
+        }
+        return deps;
+    }
+
+    private boolean dependsOn(String path, Set<String> changed, Set<String> visited)
+    {
+        if ( changed.contains(path) ) {
+            return true;
+        }
+        if ( ! visited.add(path) ) {
+            return false;
+        }
+        Node n = myNodes.get(path);
+        if ( n == null ) {
+            return false;
+        }
+        for ( String d : n.deps ) {
+            if ( dependsOn(d, changed, visited) ) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Resolve the references (by location or namespace) to the dependencies.
+     */
+    private void resolve()
+    {
+        Map<String, List<String>> modules = new HashMap<String, List<String>>();
+        for ( Node n : myNodes.values() ) {
+            if ( n.namespace != null ) {
+                List<String> files = modules.get(n.namespace);
+                if ( files == null ) {
+                    files = new ArrayList<String>();
+                    modules.put(n.namespace, files);
+                }
+                files.add(n.path);
+            }
+        }
+        for ( Node n : myNodes.values() ) {
+            n.deps = new ArrayList<String>();
+            n.unresolved = null;
+            for ( String ref : n.refs ) {
+                if ( ref.startsWith(NS_PREFIX) ) {
+                    // not in the project is fine (e.g. a module from a package)
+                    List<String> files = modules.get(ref.substring(NS_PREFIX.length()));
+                    if ( files != null ) {
+                        n.deps.addAll(files);
+                    }
+                }
+                else if ( myNodes.containsKey(ref) ) {
+                    n.deps.add(ref);
+                }
+                else {
+                    n.unresolved = ref;
+                }
+            }
+        }
+    }
+
+    /**
+     * Scan a file for its references.
+     */
+    private Node scan(File f, String path, String stamp)
+    {
+        Node n = new Node(path, stamp);
+        String name = f.getName();
+        try {
+            if ( name.endsWith(".xsl") || name.endsWith(".xslt") || name.endsWith(".xspec") ) {
+                scanXml(f, n);
+            }
+            else {
+                scanXQuery(f, n);
+            }
+        }
+        catch ( Exception ex ) {
+            LOG.debug("Error scanning " + f + ": " + ex);
+            n.refs.add("!error");
+        }
+        return n;
+    }
+
+    private void scanXml(File f, Node n)
+            throws Exception
+    {
+        DocumentBuilderFactory factory = DocumentBuilderFactory.newInstance();
+        factory.setNamespaceAware(true);
+        Element root = factory.newDocumentBuilder().parse(f).getDocumentElement();
+        if ( XSPEC_NS.equals(root.getNamespaceURI()) ) {
+            addLocation(f, n, root.getAttribute("stylesheet"));
+            addLocation(f, n, root.getAttribute("query-at"));
+            if ( root.getAttribute("query-at").length() == 0 && root.getAttribute("query").length() > 0 ) {
+                n.refs.add(NS_PREFIX + root.getAttribute("query"));
+            }
+            NodeList imports = root.getElementsByTagNameNS(XSPEC_NS, "import");
+            for ( int i = 0; i < imports.getLength(); ++i ) {
+                addLocation(f, n, ((Element) imports.item(i)).getAttribute("href"));
+            }
+        }
+        else {
+            for ( String local : new String[]{ "import", "include" } ) {
+                NodeList imports = root.getElementsByTagNameNS(XSLT_NS, local);
+                for ( int i = 0; i < imports.getLength(); ++i ) {
+                    addLocation(f, n, ((Element) imports.item(i)).getAttribute("href"));
+                }
+            }
+        }
+    }
+
+    private void scanXQuery(File f, Node n)
+            throws IOException
+    {
+        StringBuilder content = new StringBuilder();
+        BufferedReader in = new BufferedReader(new InputStreamReader(new FileInputStream(f), "UTF-8"));
+        try {
+            String line;
+            while ( (line = in.readLine()) != null ) {
+                content.append(line).append('\n');
+            }
+        }
+        finally {
+            in.close();
+        }
+        String text = COMMENT.matcher(content).replaceAll(" ");
+        Matcher module = MODULE.matcher(text);
+        if ( module.find() ) {
+            n.namespace = module.group(1);
+        }
+        Matcher imp = IMPORT.matcher(text);
+        while ( imp.find() ) {
+            String locations = imp.group(2);
+            if ( locations == null ) {
+                n.refs.add(NS_PREFIX + imp.group(1));
+            }
+            else {
+                Matcher loc = LITERAL.matcher(locations);
+                while ( loc.find() ) {
+                    addLocation(f, n, loc.group(1));
+                }
+            }
+        }
+    }
+
+    /**
+     * Add a reference by location, if it is a relative or file: URI.
+     */
+    private void addLocation(File f, Node n, String href)
+    {
+        if ( href.length() == 0 ) {
+            return;
+        }
+        try {
+            URI uri = f.toURI().resolve(href);
+            if ( ! "file".equals(uri.getScheme()) ) {
+                return;
+            }
+            n.refs.add(getPath(new File(uri)));
+        }
+        catch ( IllegalArgumentException ex ) {
+            n.refs.add(href);
+        }
+    }
+
+    private void addSources(File dir, List<File> files)
+    {
+        File[] children = dir.listFiles();
+        if ( children == null ) {
+            return;
+        }
+        for ( File c : children ) {
+            if ( c.getName().startsWith(".") ) {
+                continue;
+            }
+            if ( c.isDirectory() ) {
+                addSources(c, files);
+            }
+            else if ( SOURCES.matcher(c.getName()).matches() ) {
+                files.add(c);
+            }
+        }
+    }
+
+    /**
+     * The path of a file, relative to the project dir (or absolute if outside).
+     */
+    private String getPath(File f)
+    {
+        String project = MiscUtils.getPath(myProject) + File.separator;
+        String path = MiscUtils.getPath(f);
+        if ( path.startsWith(project) ) {
+            return path.substring(project.length()).replace(File.separatorChar, '/');
+        }
+        return path;
+    }
+
+    private Map<String, Node> loadGraph()
+    {
+        Map<String, Node> nodes = new HashMap<String, Node>();
+        Map<String, String> lines = load(myGraphFile);
+        if ( lines == null ) {
+            return nodes;
+        }
+        for ( Map.Entry<String, String> l : lines.entrySet() ) {
+            String[] fields = l.getValue().split("\t", -1);
+            Node n = new Node(l.getKey(), fields[0]);
+            n.namespace = fields[1].length() == 0 ? null : fields[1];
+            for ( int i = 2; i < fields.length; ++i ) {
+                n.refs.add(fields[i]);
+            }
+            nodes.put(n.path, n);
+        }
+        return nodes;
+    }
+
+    private void saveGraph()
+    {
+        Map<String, String> lines = new HashMap<String, String>();
+        for ( Node n : myNodes.values() ) {
+            StringBuilder value = new StringBuilder(n.stamp);
+            value.append('\t').append(n.namespace == null ? "" : n.namespace);
+            for ( String r : n.refs ) {
+                value.append('\t').append(r);
+            }
+            lines.put(n.path, value.toString());
+        }
+        save(myGraphFile, lines);
+    }
+
+    /**
+     * Load a file made of lines "key TAB value", return null if it does not exist.
+     */
+    private Map<String, String> load(File file)
+    {
+        if ( ! file.isFile() ) {
+            return null;
+        }
+        Map<String, String> map = new HashMap<String, String>();
+        try {
+            BufferedReader in = new BufferedReader(new InputStreamReader(new FileInputStream(file), "UTF-8"));
+            try {
+                String line;
+                while ( (line = in.readLine()) != null ) {
+                    int tab = line.indexOf('\t');
+                    if ( tab > 0 ) {
+                        map.put(line.substring(0, tab), line.substring(tab + 1));
+                    }
+                }
+            }
+            finally {
+                in.close();
+            }
+        }
+        catch ( IOException ex ) {
+            LOG.warn("Error reading " + file + ", ignore it", ex);
+            return null;
+        }
+        return map;
+    }
+
+    private void save(File file, Map<String, String> map)
+    {
+        try {
+            Writer out = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(file), "UTF-8"));
+            try {
+                for ( Map.Entry<String, String> e : map.entrySet() ) {
+                    out.write(e.getKey() + "\t" + e.getValue() + "\n");
+                }
+            }
+            finally {
+                out.close();
+            }
+        }
+        catch ( IOException ex ) {
+            LOG.warn("Error writing " + file, ex);
+        }
+    }
+
+    /**
+     * A file in the graph.
+     */
+    private static class Node
+    {
+        public Node(String path, String stamp) {
+            this.path = path;
+            this.stamp = stamp;
+            this.refs = new ArrayList<String>();
+        }
+
+        public final String path;
+        public final String stamp;
+        /** The module namespace, for an XQuery library module. */
+        public String namespace;
+        /** The references, as paths or namespaces (with NS_PREFIX). */
+        public final List<String> refs;
+        /** The resolved dependencies, as paths. */
+        public List<String> deps;
+        /** A reference which cannot be resolved, if any. */
+        public String unresolved;
+    }
+
+    /** The prefix of references by namespace. */
+    private static final String NS_PREFIX = "ns:";
+    /** The key of the project descriptor in the baseline. */
+    private static final String DESC_KEY = "#descriptor";
+    private static final String XSLT_NS = "http://www.w3.org/1999/XSL/Transform";
+    private static final String XSPEC_NS = "http://www.jenitennison.com/xslt/xspec";
+    /** The source files in src/. */
+    private static final Pattern SOURCES = Pattern.compile(".*\\.(xq|xql|xqm|xqy|xquery|xsl|xslt)");
+    /** XQuery comments (not nested). */
+    static final Pattern COMMENT = Pattern.compile("\\(:.*?:\\)", Pattern.DOTALL);
+    /** A module namespace declaration. */
+    static final Pattern MODULE = Pattern.compile(
+            "\\bmodule\\s+namespace\\s+[\\w.-]+\\s*=\\s*[\"']([^\"']*)[\"']\\s*;");
+    /** An import module, group 1 is the namespace, group 2 the location(s) if any. */
+    private static final Pattern IMPORT = Pattern.compile(
+            "\\bimport\\s+module\\s+(?:namespace\\s+[\\w.-]+\\s*=\\s*)?[\"']([^\"']*)[\"']"
+            + "(\\s+at\\s+[\"'][^\"']*[\"'](?:\\s*,\\s*[\"'][^\"']*[\"'])*)?");
+    /** A string literal. */
+    private static final Pattern LITERAL = Pattern.compile("[\"']([^\"']*)[\"']");
+
+    /** The project dir. */
+    private final File myProject;
+    /** The project descriptor. */
+    private final File myDesc;
+    /** The graph file. */
+    private final File myGraphFile;
+    /** The baseline file. */
+    private final File myBaselineFile;
+    /** The files, keyed by path. */
+    private final Map<String, Node> myNodes;
+    /** The suites, as passed to update(). */
+    private Collection<File> mySuites;
+
+    /** The logger for this class. */
+    private static final Logger LOG = Logger.getLogger(TestImpact.class);
+}
+
+
+/* ------------------------------------------------------------------------ */
+/*  DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS COMMENT.               */
+/*                                                                          */
+/*  The contents of this file are subject to the Mozilla Public License     */
+/*  Version 1.0 (the "License"); you may not use this file except in        */
+/*  compliance with the License. You may obtain a copy of the License at    */
+/*  http://www.mozilla.org/MPL/.                                            */
+/*                                                                          */
+/*  Software distributed under the License is distributed on an "AS IS"     */
+/*  basis, WITHOUT WARRANTY OF ANY KIND, either express or implied.  See    */
+/*  the License for the specific language governing rights and limitations  */
+/*  under the License.                                                      */
+/*                                                                          */
+/*  The Original Code is: all this file.                                    */
+/*                                                                          */
+/*  The Initial Developer of the Original Code is Florent Georges.          */
+/*                                                                          */
+/*  Contributor(s): none.                                                   */
+/* ------------------------------------------------------------------------ */
@@ -0,0 +1,634 @@
+/****************************************************************************/
+/*  File:       TestSharder.java                                            */
+/*  Author:     F. Georges - H2O Consulting                                 */
+/*  Date:       2026-10-18                                                  */
+/*  Tags:                                                                   */
+/*      Copyright (c) 2026 Florent Georges (see end of file.)               */
+/* ------------------------------------------------------------------------ */
+
+
+package org.expath.xproject.oxygen;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.StringReader;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import javax.xml.datatype.DatatypeConfigurationException;
+import javax.xml.datatype.DatatypeFactory;
+import javax.xml.parsers.DocumentBuilder;
+import javax.xml.parsers.DocumentBuilderFactory;
+import javax.xml.parsers.ParserConfigurationException;
+import javax.xml.transform.OutputKeys;
+import javax.xml.transform.Transformer;
+import javax.xml.transform.TransformerException;
+import javax.xml.transform.TransformerFactory;
+import javax.xml.transform.dom.DOMSource;
+import javax.xml.transform.stream.StreamResult;
+import org.apache.log4j.Logger;
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import org.w3c.dom.Node;
+import org.w3c.dom.NodeList;
+import org.xml.sax.EntityResolver;
+import org.xml.sax.InputSource;
+import org.xml.sax.SAXException;
+
+
+/**
+ * Split the XSpec suites of a project in shards, to run them in parallel.
+ *
+ * The suites are found the same way as the XProject test pipeline does:
+ * for each proj:tests in project.xml, the *.xspec files in its dir and its
+ * subdirs (ignoring the names starting with a dot), and for each of its
+ * proj:processor.  Each pair processor/suite is assigned to a shard, the
+ * longest first, each time to the shard with the lowest total duration so
+ * far.  The duration of a suite is the one of its last run, or the average
+ * of the known ones if it never ran.
+ *
+ * Each shard is run by the pipeline test-shard.xproc (written in the shard
+ * dir, xproject/.test-shards/).  When all the shards ended, their results
+ * are merged in one report, the same as the result of the test pipeline,
+ * and the durations are saved in xproject/.test-durations.  The suites
+ * which failed (a test failed, or an error) are known after the merge.
+ *
+ * @author Florent Georges
+ * @date   2026-10-18
+ */
+public class TestSharder
+{
+    public TestSharder(File project, File desc)
+    {
+        myProject = project;
+        myDesc = desc;
+        File priv = new File(project, XProjectConstants.PRIVATE_DIR);
+        myDir = new File(priv, ".test-shards");
+        myDurationsFile = new File(priv, ".test-durations");
+        myUnits = new ArrayList<Unit>();
+        mySuites = new ArrayList<File>();
+        myRuns = new LinkedHashMap<String, Run>();
+        myFailed = new HashSet<String>();
+    }
+
+    /**
+     * Find the suites, return their number (the number of processor/suite pairs).
+     */
+    public int discover()
+            throws XProjectException
+    {
+        Element root = parse(myDesc).getDocumentElement();
+        for ( Element tests : getChildren(root, "tests") ) {
+            File dir = new File(myProject, tests.getAttribute("dir"));
+            List<File> suites = new ArrayList<File>();
+            findSuites(dir, suites);
+            Collections.sort(suites);
+            mySuites.addAll(suites);
+            for ( Element proc : getChildren(tests, "processor") ) {
+                String name = proc.getAttribute("name");
+                String report = proc.getAttribute("report");
+                String key = name + "|" + report;
+                Run run = myRuns.get(key);
+                if ( run == null ) {
+                    run = new Run(name, report, getChildren(proc, "property"));
+                    myRuns.put(key, run);
+                }
+                for ( File s : suites ) {
+                    myUnits.add(new Unit(run, MiscUtils.getUri(s)));
+                }
+            }
+        }
+        return myUnits.size();
+    }
+
+    /**
+     * The suite files found by discover().
+     */
+    public List<File> getSuites()
+    {
+        return mySuites;
+    }
+
+    /**
+     * Only keep the given suites (by URI), return the number of units left.
+     */
+    public int retain(Set<String> suites)
+    {
+        Iterator<Unit> it = myUnits.iterator();
+        while ( it.hasNext() ) {
+            if ( ! suites.contains(it.next().suite) ) {
+                it.remove();
+            }
+        }
+        return myUnits.size();
+    }
+
+    /**
+     * Write the shard documents and the shard pipeline, return the shard documents.
+     */
+    public List<File> plan(int count)
+            throws XProjectException
+    {
+        if ( ! myDir.isDirectory() && ! myDir.mkdirs() ) {
+            throw new XProjectException("Impossible to create the test shard dir: " + myDir);
+        }
+        writePipeline();
+        // the durations, the longest first
+        Map<String, Long> durations = loadDurations();
+        long dflt = 1000;
+        if ( ! durations.isEmpty() ) {
+            long total = 0;
+            for ( long d : durations.values() ) {
+                total += d;
+            }
+            dflt = total / durations.size();
+        }
+        for ( Unit u : myUnits ) {
+            Long d = durations.get(u.getKey());
+            u.expected = d == null ? dflt : d;
+        }
+        List<Unit> sorted = new ArrayList<Unit>(myUnits);
+        Collections.sort(sorted, new Comparator<Unit>() {
+            public int compare(Unit u1, Unit u2) {
+                return u1.expected > u2.expected ? -1 : u1.expected < u2.expected ? 1 : 0;
+            }
+        });
+        // assign each one to the least loaded shard
+        List<List<Unit>> shards = new ArrayList<List<Unit>>();
+        long[] loads = new long[count];
+        for ( int i = 0; i < count; ++i ) {
+            shards.add(new ArrayList<Unit>());
+        }
+        for ( Unit u : sorted ) {
+            int min = 0;
+            for ( int i = 1; i < count; ++i ) {
+                if ( loads[i] < loads[min] ) {
+                    min = i;
+                }
+            }
+            shards.get(min).add(u);
+            loads[min] += u.expected;
+        }
+        // write the shard documents
+        List<File> files = new ArrayList<File>();
+        myResults = new ArrayList<File>();
+        for ( int i = 0; i < count; ++i ) {
+            File shard = new File(myDir, "shard-" + (i + 1) + ".xml");
+            File result = new File(myDir, "shard-" + (i + 1) + "-result.xml");
+            result.delete();
+            writeShard(shard, result, shards.get(i));
+            LOG.debug("Test shard " + (i + 1) + ": " + shards.get(i).size() + " suites, expected " + loads[i] + " ms");
+            files.add(shard);
+            myResults.add(result);
+        }
+        return files;
+    }
+
+    /**
+     * Return the shard pipeline, written in the shard dir by plan().
+     */
+    public String getPipeline()
+    {
+        return MiscUtils.getUri(new File(myDir, PIPELINE));
+    }
+
+    /**
+     * Merge the shard results in one report, and save the durations.
+     *
+     * Return the merged report file.  A shard without result (e.g. if it
+     * failed) is reported in the merged report as a c:errors element.  The
+     * errors caught by a shard for a suite (c:errors, with @suite) take the
+     * place of the suite, in their processor.  The suites which failed are
+     * then returned by getFailedSuites().
+     */
+    public File merge()
+            throws XProjectException
+    {
+        myFailed.clear();
+        Document merged = newDocument();
+        Element suites = merged.createElementNS(null, "suites");
+        merged.appendChild(suites);
+        // the results of each suite, keyed by processor then suite
+        Map<String, Element> results = new HashMap<String, Element>();
+        // the errors not related to any suite, keyed by processor
+        Map<String, List<Element>> caught = new HashMap<String, List<Element>>();
+        List<Element> errors = new ArrayList<Element>();
+        for ( File r : myResults ) {
+            if ( ! r.isFile() ) {
+                Element err = merged.createElementNS(C_NS, "c:errors");
+                err.setAttribute("shard", r.getName());
+                errors.add(err);
+                continue;
+            }
+            for ( Element proc : getChildren(parse(r).getDocumentElement(), "processor") ) {
+                String name = proc.getAttribute("name");
+                for ( Node n = proc.getFirstChild(); n != null; n = n.getNextSibling() ) {
+                    if ( ! (n instanceof Element) ) {
+                        continue;
+                    }
+                    Element e = (Element) merged.importNode(n, true);
+                    String suite = e.hasAttribute("uri") ? e.getAttribute("uri") : e.getAttribute("suite");
+                    if ( suite.length() > 0 ) {
+                        results.put(name + "|" + suite, e);
+                    }
+                    else {
+                        List<Element> list = caught.get(name);
+                        if ( list == null ) {
+                            list = new ArrayList<Element>();
+                            caught.put(name, list);
+                        }
+                        list.add(e);
+                    }
+                }
+            }
+        }
+        // in the order of the test pipeline: per processor, then per suite
+        Map<String, Long> durations = loadDurations();
+        for ( Run run : myRuns.values() ) {
+            Element proc = merged.createElementNS(null, "processor");
+            proc.setAttribute("name", run.processor);
+            suites.appendChild(proc);
+            for ( Unit u : myUnits ) {
+                if ( u.run != run ) {
+                    continue;
+                }
+                Element e = results.remove(run.processor + "|" + u.suite);
+                if ( e == null ) {
+                    // not run, e.g. its shard failed
+                    myFailed.add(u.suite);
+                    continue;
+                }
+                if ( isFailed(e) ) {
+                    myFailed.add(u.suite);
+                }
+                long time = getDuration(e);
+                if ( time >= 0 ) {
+                    durations.put(u.getKey(), time);
+                }
+                e.removeAttribute("start");
+                e.removeAttribute("end");
+                proc.appendChild(e);
+            }
+            List<Element> list = caught.remove(run.processor);
+            if ( list != null ) {
+                for ( Element e : list ) {
+                    proc.appendChild(e);
+                }
+            }
+        }
+        // anything left, which does not belong to any known processor/suite
+        errors.addAll(results.values());
+        for ( List<Element> list : caught.values() ) {
+            errors.addAll(list);
+        }
+        for ( Element e : errors ) {
+            suites.appendChild(e);
+        }
+        saveDurations(durations);
+        File report = new File(myDir, "report.xml");
+        serialize(merged, report);
+        return report;
+    }
+
+    /**
+     * The URIs of the suites which failed or were not run, in the last merge().
+     */
+    public Set<String> getFailedSuites()
+    {
+        return myFailed;
+    }
+
+    /**
+     * Whether the result of a suite is an error, or its report has a failed test.
+     *
+     * The report is the one formatted by XSpec, where the failed tests and
+     * scenarios have the class "failed".  A report which cannot be read is
+     * considered as failed.
+     */
+    private static boolean isFailed(Element result)
+            throws XProjectException
+    {
+        if ( C_NS.equals(result.getNamespaceURI()) ) {
+            return true;
+        }
+        String report = result.getAttribute("report");
+        if ( report.length() == 0 ) {
+            return true;
+        }
+        DocumentBuilder builder = newBuilder();
+        // do not fetch the DTD, if the report has a doctype
+        builder.setEntityResolver(new EntityResolver() {
+            public InputSource resolveEntity(String pub, String sys) {
+                return new InputSource(new StringReader(""));
+            }
+        });
+        NodeList elems;
+        try {
+            elems = builder.parse(report).getElementsByTagNameNS("*", "*");
+        }
+        catch ( SAXException ex ) {
+            LOG.debug("Error parsing the test report " + report + ": " + ex);
+            return true;
+        }
+        catch ( IOException ex ) {
+            LOG.debug("Error reading the test report " + report + ": " + ex);
+            return true;
+        }
+        for ( int i = 0; i < elems.getLength(); ++i ) {
+            if ( "failed".equals(((Element) elems.item(i)).getAttribute("class")) ) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * The duration of a suite run, from @start and @end, or -1.
+     */
+    private long getDuration(Element suite)
+    {
+        String start = suite.getAttribute("start");
+        String end = suite.getAttribute("end");
+        if ( start.length() == 0 || end.length() == 0 ) {
+            return -1;
+        }
+        try {
+            DatatypeFactory factory = DatatypeFactory.newInstance();
+            long s = factory.newXMLGregorianCalendar(start).toGregorianCalendar().getTimeInMillis();
+            long e = factory.newXMLGregorianCalendar(end).toGregorianCalendar().getTimeInMillis();
+            return e - s;
+        }
+        catch ( DatatypeConfigurationException ex ) {
+            LOG.warn("Error creating a datatype factory", ex);
+            return -1;
+        }
+        catch ( IllegalArgumentException ex ) {
+            LOG.warn("Invalid suite timestamps: " + start + ", " + end);
+            return -1;
+        }
+    }
+
+    private void findSuites(File dir, List<File> suites)
+    {
+        File[] children = dir.listFiles();
+        if ( children == null ) {
+            return;
+        }
+        for ( File c : children ) {
+            if ( c.getName().startsWith(".") ) {
+                continue;
+            }
+            if ( c.isDirectory() ) {
+                findSuites(c, suites);
+            }
+            else if ( c.getName().endsWith(".xspec") ) {
+                suites.add(c);
+            }
+        }
+    }
+
+    private void writePipeline()
+            throws XProjectException
+    {
+        MiscUtils.copyResource(PIPELINE, new File(myDir, PIPELINE));
+    }
+
+    private void writeShard(File shard, File result, List<Unit> units)
+            throws XProjectException
+    {
+        Document doc = newDocument();
+        Element root = doc.createElementNS(null, "shard");
+        root.setAttribute("project-dir", MiscUtils.getUri(myProject));
+        root.setAttribute("result", MiscUtils.getUri(result));
+        doc.appendChild(root);
+        for ( Run run : myRuns.values() ) {
+            Element r = doc.createElementNS(null, "run");
+            r.setAttribute("processor", run.processor);
+            r.setAttribute("report-re", run.report);
+            Element params = doc.createElementNS(C_NS, "c:param-set");
+            for ( Element prop : run.properties ) {
+                Element p = doc.createElementNS(C_NS, "c:param");
+                p.setAttribute("name", prop.getAttribute("name"));
+                p.setAttribute("value", prop.getAttribute("value"));
+                params.appendChild(p);
+            }
+            r.appendChild(params);
+            boolean empty = true;
+            for ( Unit u : units ) {
+                if ( u.run == run ) {
+                    Element s = doc.createElementNS(null, "suite");
+                    s.setAttribute("uri", u.suite);
+                    r.appendChild(s);
+                    empty = false;
+                }
+            }
+            if ( ! empty ) {
+                root.appendChild(r);
+            }
+        }
+        serialize(doc, shard);
+    }
+
+    private Map<String, Long> loadDurations()
+    {
+        Map<String, Long> durations = new HashMap<String, Long>();
+        if ( ! myDurationsFile.isFile() ) {
+            return durations;
+        }
+        try {
+            BufferedReader in = new BufferedReader(new InputStreamReader(new FileInputStream(myDurationsFile), "UTF-8"));
+            try {
+                String line;
+                while ( (line = in.readLine()) != null ) {
+                    String[] fields = line.split("\t", 2);
+                    if ( fields.length == 2 ) {
+                        durations.put(fields[1], Long.parseLong(fields[0]));
+                    }
+                }
+            }
+            finally {
+                in.close();
+            }
+        }
+        catch ( IOException ex ) {
+            LOG.warn("Error reading the test durations, ignore them: " + myDurationsFile, ex);
+        }
+        catch ( NumberFormatException ex ) {
+            LOG.warn("Invalid test durations, ignore them: " + myDurationsFile, ex);
+            durations.clear();
+        }
+        return durations;
+    }
+
+    private void saveDurations(Map<String, Long> durations)
+    {
+        try {
+            Writer out = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(myDurationsFile), "UTF-8"));
+            try {
+                for ( Map.Entry<String, Long> d : durations.entrySet() ) {
+                    out.write(d.getValue() + "\t" + d.getKey() + "\n");
+                }
+            }
+            finally {
+                out.close();
+            }
+        }
+        catch ( IOException ex ) {
+            LOG.warn("Error saving the test durations: " + myDurationsFile, ex);
+        }
+    }
+
+    private static List<Element> getChildren(Element parent, String local)
+    {
+        List<Element> children = new ArrayList<Element>();
+        for ( Node n = parent.getFirstChild(); n != null; n = n.getNextSibling() ) {
+            if ( n instanceof Element && local.equals(n.getLocalName()) ) {
+                children.add((Element) n);
+            }
+        }
+        return children;
+    }
+
+    private static Document parse(File file)
+            throws XProjectException
+    {
+        try {
+            return newBuilder().parse(file);
+        }
+        catch ( SAXException ex ) {
+            throw new XProjectException("Error parsing " + file, ex);
+        }
+        catch ( IOException ex ) {
+            throw new XProjectException("Error reading " + file, ex);
+        }
+    }
+
+    private static Document newDocument()
+            throws XProjectException
+    {
+        return newBuilder().newDocument();
+    }
+
+    private static DocumentBuilder newBuilder()
+            throws XProjectException
+    {
+        try {
+            DocumentBuilderFactory factory = DocumentBuilderFactory.newInstance();
+            factory.setNamespaceAware(true);
+            return factory.newDocumentBuilder();
+        }
+        catch ( ParserConfigurationException ex ) {
+            throw new XProjectException("Error creating a document builder", ex);
+        }
+    }
+
+    private static void serialize(Document doc, File file)
+            throws XProjectException
+    {
+        try {
+            Transformer t = TransformerFactory.newInstance().newTransformer();
+            t.setOutputProperty(OutputKeys.INDENT, "yes");
+            t.transform(new DOMSource(doc), new StreamResult(file));
+        }
+        catch ( TransformerException ex ) {
+            throw new XProjectException("Error writing " + file, ex);
+        }
+    }
+
+    /**
+     * A test processor, with its report regex and its properties.
+     */
+    private static class Run
+    {
+        public Run(String processor, String report, List<Element> properties) {
+            this.processor = processor;
+            this.report = report;
+            this.properties = properties;
+        }
+
+        public final String processor;
+        public final String report;
+        public final List<Element> properties;
+    }
+
+    /**
+     * A suite to run with a processor.
+     */
+    private static class Unit
+    {
+        public Unit(Run run, String suite) {
+            this.run = run;
+            this.suite = suite;
+        }
+
+        public String getKey() {
+            return run.processor + "\t" + suite;
+        }
+
+        public final Run run;
+        public final String suite;
+        public long expected;
+    }
+
+    /** The name of the shard pipeline, in the plugin classes and in the shard dir. */
+    private static final String PIPELINE = "test-shard.xproc";
+    /** The XProc step namespace. */
+    private static final String C_NS = "http://www.w3.org/ns/xproc-step";
+
+    /** The project dir. */
+    private final File myProject;
+    /** The project descriptor. */
+    private final File myDesc;
+    /** The shard dir. */
+    private final File myDir;
+    /** The durations of the last runs. */
+    private final File myDurationsFile;
+    /** The processor/suite pairs, in the order of the test pipeline. */
+    private final List<Unit> myUnits;
+    /** The suite files. */
+    private final List<File> mySuites;
+    /** The processors, keyed by name and report regex. */
+    private final Map<String, Run> myRuns;
+    /** The result files of the shards, set by plan(). */
+    private List<File> myResults;
+    /** The URIs of the suites which failed, set by merge(). */
+    private final Set<String> myFailed;
+
+    /** The logger for this class. */
+    private static final Logger LOG = Logger.getLogger(TestSharder.class);
+}
+
+
+/* ------------------------------------------------------------------------ */
+/*  DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS COMMENT.               */
+/*                                                                          */
+/*  The contents of this file are subject to the Mozilla Public License     */
+/*  Version 1.0 (the "License"); you may not use this file except in        */
+/*  compliance with the License. You may obtain a copy of the License at    */
+/*  http://www.mozilla.org/MPL/.                                            */
+/*                                                                          */
+/*  Software distributed under the License is distributed on an "AS IS"     */
+/*  basis, WITHOUT WARRANTY OF ANY KIND, either express or implied.  See    */
+/*  the License for the specific language governing rights and limitations  */
+/*  under the License.                                                      */
+/*                                                                          */
+/*  The Original Code is: all this file.                                    */
+/*                                                                          */
+/*  The Initial Developer of the Original Code is Florent Georges.          */
+/*                                                                          */
+/*  Contributor(s): none.                                                   */
+/* ------------------------------------------------------------------------ */
@@ -9,7 +9,6 @@
 
 package org.expath.xproject.oxygen;
 
-import javax.swing.JTextArea;
 import org.apache.log4j.Logger;
 import ro.sync.exml.workspace.api.Workspace;
 
@@ -28,6 +27,26 @@ public class UserMessages
     {
         myWorkspace = ws;
         myLog = log;
+        myDialogs = true;
+    }
+
+    private UserMessages(UserMessages parent)
+    {
+        myWorkspace = parent.myWorkspace;
+        myLog = parent.myLog;
+        // the view is set on the root messages only
+        myParent = parent.myParent == null ? parent : parent.myParent;
+        myDialogs = false;
+    }
+
+    /**
+     * Return messages writing to the same logs and view, but without dialog boxes.
+     * 
+     * Used for the runs reported by their caller, e.g. the batch runs.
+     */
+    public UserMessages quiet()
+    {
+        return new UserMessages(this);
     }
 
     /**
@@ -36,8 +55,10 @@ public class UserMessages
     public void error(String msg)
     {
         myLog.error(msg);
-        myView.append("ERROR: " + msg + "\n");
-        myWorkspace.showErrorMessage(msg);
+        view(LogView.Level.ERROR, msg);
+        if ( myDialogs ) {
+            myWorkspace.showErrorMessage(msg);
+        }
     }
 
     /**
@@ -46,9 +67,11 @@ public class UserMessages
     public void error(String msg, Throwable ex)
     {
         myLog.error(msg, ex);
-        myView.append("ERROR: " + msg + "\n");
+        view(LogView.Level.ERROR, msg);
         printStacktrace(ex);
-        myWorkspace.showErrorMessage(msg);
+        if ( myDialogs ) {
+            myWorkspace.showErrorMessage(msg);
+        }
     }
 
     /**
@@ -57,8 +80,10 @@ public class UserMessages
     public void info(String msg)
     {
         myLog.info(msg);
-        myView.append("INFO: " + msg + "\n");
-        myWorkspace.showInformationMessage(msg);
+        view(LogView.Level.INFO, msg);
+        if ( myDialogs ) {
+            myWorkspace.showInformationMessage(msg);
+        }
     }
 
     /**
@@ -67,19 +92,57 @@ public class UserMessages
     public void debug(String msg)
     {
         myLog.debug(msg);
-        myView.append("DEBUG: " + msg + "\n");
+        view(LogView.Level.DEBUG, msg);
+    }
+
+    /**
+     * Show the progress of an action in the view (see LogView.setProgress()).
+     */
+    public void progress(String name, Object progress)
+    {
+        LogView view = getView();
+        if ( view != null ) {
+            view.setProgress(name, progress);
+        }
+    }
+
+    /**
+     * Remove the progress of an action from the view.
+     */
+    public void progressEnded(String name)
+    {
+        LogView view = getView();
+        if ( view != null ) {
+            view.removeProgress(name);
+        }
     }
 
-    void setView(JTextArea view)
+    void setView(LogView view)
     {
         myView = view;
     }
 
+    /**
+     * Add a message to the view, if it has been created already.
+     */
+    private void view(LogView.Level level, String msg)
+    {
+        LogView view = getView();
+        if ( view != null ) {
+            view.add(level, msg);
+        }
+    }
+
+    private LogView getView()
+    {
+        return myParent == null ? myView : myParent.myView;
+    }
+
     private void printStacktrace(Throwable ex)
     {
-        myView.append(ex.getMessage() + "\n");
+        view(LogView.Level.ERROR, String.valueOf(ex.getMessage()));
         for ( StackTraceElement elem : ex.getStackTrace() ) {
-            myView.append("    " + elem + "\n");
+            view(LogView.Level.ERROR, "    " + elem);
         }
         if ( ex.getCause() != null ) {
             printStacktrace(ex.getCause());
@@ -89,9 +152,13 @@ public class UserMessages
     /** The workspace object, to create dialog boxes. */
     private Workspace myWorkspace;
     /** Where to write messages in the view. */
-    private JTextArea myView;
+    private LogView myView;
     /** The logger to use to log the messages. */
     private Logger myLog;
+    /** The messages this one is a quiet copy of, if any (for the view). */
+    private UserMessages myParent;
+    /** Whether to show dialog boxes. */
+    private boolean myDialogs;
 }
 
 
@@ -0,0 +1,318 @@
+/****************************************************************************/
+/*  File:       WatchMode.java                                              */
+/*  Author:     F. Georges - H2O Consulting                                 */
+/*  Date:       2026-10-18                                                  */
+/*  Tags:                                                                   */
+/*      Copyright (c) 2026 Florent Georges (see end of file.)               */
+/* ------------------------------------------------------------------------ */
+
+
+package org.expath.xproject.oxygen;
+
+import java.io.File;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import org.apache.log4j.Logger;
+import org.expath.xproject.oxygen.XProjectConstants.ProjectPhase;
+import ro.sync.exml.workspace.api.PluginWorkspace;
+import ro.sync.exml.workspace.api.editor.WSEditor;
+import ro.sync.exml.workspace.api.listeners.WSEditorChangeListener;
+import ro.sync.exml.workspace.api.listeners.WSEditorListener;
+import ro.sync.exml.workspace.api.standalone.StandalonePluginWorkspace;
+
+
+/**
+ * Run phases on a project each time one of its files is saved.
+ *
+ * When a file in the subdir src/ or xproject/ of a project is saved in an
+ * editor, the phases given by the option "watch.phases" (by default
+ * "build,test") are queued on the project (see ProjectQueue), after a
+ * delay of "watch.delay" ms during which no other file of the project is
+ * saved.  The tests then only run the suites affected by the changes (see
+ * TestImpact).
+ *
+ * The runs do not show dialog boxes, their result is in the XProject view,
+ * with the time from the save to the end of each phase (also recorded in
+ * the metrics, as "watch.latency").  When the mode is switched on, the
+ * engine is warmed up (see XProject.warmUp()), the modes "in-process" and
+ * "pool" keep it warm between the runs.
+ *
+ * @author Florent Georges
+ * @date   2026-10-18
+ */
+public class WatchMode
+        extends WSEditorChangeListener
+{
+    public WatchMode(StandalonePluginWorkspace ws, UserMessages messages, JavaProcessFactory factory, File plugin_dir, ProjectIndex projects)
+    {
+        myWorkspace = ws;
+        myMsg = messages;
+        myQuiet = messages.quiet();
+        myFactory = factory;
+        myPluginDir = plugin_dir;
+        myProjects = projects;
+        myDelay = XProjectOptions.getLong("watch.delay", 300);
+        myPhases = parsePhases(XProjectOptions.getString("watch.phases", "build,test"));
+    }
+
+    /**
+     * Start listening to the editors (the ones already opened and the new ones).
+     */
+    public synchronized void start()
+    {
+        if ( myStarted ) {
+            return;
+        }
+        myStarted = true;
+        myWorkspace.addEditorChangeListener(this, PluginWorkspace.MAIN_EDITING_AREA);
+        URL[] locations = myWorkspace.getAllEditorLocations(PluginWorkspace.MAIN_EDITING_AREA);
+        if ( locations != null ) {
+            for ( URL url : locations ) {
+                editorOpened(url);
+            }
+        }
+    }
+
+    /**
+     * Switch the mode on or off.
+     */
+    public synchronized void setEnabled(boolean enabled)
+    {
+        myEnabled = enabled;
+        if ( enabled ) {
+            start();
+            try {
+                XProject.warmUp(myFactory, myMsg, myPluginDir);
+            }
+            catch ( XProjectException ex ) {
+                myMsg.debug("Error warming up the engine: " + ex.getMessage());
+            }
+        }
+        else {
+            for ( ScheduledFuture<?> f : myPending.values() ) {
+                f.cancel(false);
+            }
+            myPending.clear();
+        }
+        myMsg.debug("Watch mode " + (enabled ? "on, phases: " + myPhases : "off"));
+    }
+
+    public synchronized boolean isEnabled()
+    {
+        return myEnabled;
+    }
+
+    @Override
+    public void editorOpened(URL url)
+    {
+        WSEditor editor = myWorkspace.getEditorAccess(url, PluginWorkspace.MAIN_EDITING_AREA);
+        if ( editor != null ) {
+            editor.addEditorListener(new SaveListener(editor));
+        }
+    }
+
+    /**
+     * A file has been saved, schedule the phases if it belongs to a project.
+     */
+    private void saved(URL location)
+    {
+        if ( ! isEnabled() || ! "file".equals(location.getProtocol()) ) {
+            return;
+        }
+        File file;
+        try {
+            file = new File(location.toURI());
+        }
+        catch ( URISyntaxException ex ) {
+            LOG.debug("Not well-formed URI: " + location, ex);
+            return;
+        }
+        File parent = file.getParentFile();
+        File project = parent == null ? null : myProjects.getProjectDir(parent);
+        if ( project == null || ! isWatched(project, file) ) {
+            return;
+        }
+        schedule(project, System.currentTimeMillis());
+    }
+
+    /**
+     * Whether the file is in the subdir src/ or xproject/ of the project.
+     */
+    private boolean isWatched(File project, File file)
+    {
+        String path = MiscUtils.getPath(file);
+        String src  = MiscUtils.getPath(new File(project, "src")) + File.separator;
+        String prj  = MiscUtils.getPath(new File(project, "xproject")) + File.separator;
+        return path.startsWith(src) || path.startsWith(prj);
+    }
+
+    /**
+     * (Re)schedule the phases on the project, after the delay.
+     */
+    private synchronized void schedule(final File project, final long saved)
+    {
+        String key = MiscUtils.getPath(project);
+        ScheduledFuture<?> previous = myPending.get(key);
+        if ( previous != null ) {
+            previous.cancel(false);
+            Metrics.increment("watch.debounced");
+        }
+        final String k = key;
+        ScheduledFuture<?> future = TIMER.schedule(new Runnable() {
+            public void run() {
+                synchronized ( WatchMode.this ) {
+                    myPending.remove(k);
+                    if ( ! myEnabled ) {
+                        return;
+                    }
+                }
+                submit(project, saved);
+            }
+        }, myDelay, TimeUnit.MILLISECONDS);
+        myPending.put(key, future);
+    }
+
+    /**
+     * Queue the phases on the project.
+     */
+    private void submit(File project, long saved)
+    {
+        ProjectQueue queue = ProjectQueue.getInstance(project);
+        for ( ProjectPhase phase : myPhases ) {
+            XProject prj = new XProject(project, myQuiet, myFactory, myPluginDir);
+            prj.setAffectedOnly(true);
+            queue.submit(prj, phase, myQuiet, new LatencyListener(phase, saved));
+        }
+    }
+
+    /**
+     * Parse the list of phases, e.g. "build,test".
+     */
+    private List<ProjectPhase> parsePhases(String phases)
+    {
+        List<ProjectPhase> result = new ArrayList<ProjectPhase>();
+        for ( String p : phases.split(",") ) {
+            String name = p.trim();
+            if ( name.length() == 0 ) {
+                continue;
+            }
+            try {
+                ProjectPhase phase = ProjectPhase.valueOf(name.toUpperCase());
+                if ( phase == ProjectPhase.CREATE ) {
+                    throw new IllegalArgumentException(name);
+                }
+                result.add(phase);
+            }
+            catch ( IllegalArgumentException ex ) {
+                myMsg.error("Invalid phase in the option watch.phases: " + name);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Listen to the saves of an editor.
+     */
+    private class SaveListener
+            extends WSEditorListener
+    {
+        public SaveListener(WSEditor editor) {
+            myEditor = editor;
+        }
+
+        @Override
+        public void editorSaved(int operation) {
+            URL location = myEditor.getEditorLocation();
+            if ( location != null ) {
+                saved(location);
+            }
+        }
+
+        private final WSEditor myEditor;
+    }
+
+    /**
+     * Report the time between the save and the end of a phase.
+     */
+    private class LatencyListener
+            implements PhaseListener
+    {
+        public LatencyListener(ProjectPhase phase, long saved) {
+            myPhase = phase;
+            mySaved = saved;
+        }
+
+        public void phaseEnded(boolean success) {
+            long time = Metrics.since("watch.latency", mySaved);
+            myQuiet.debug("Watch: the " + myPhase.name().toLowerCase() + (success ? " succeeded" : " failed")
+                    + ", " + time + " ms after the save");
+        }
+
+        private final ProjectPhase myPhase;
+        private final long mySaved;
+    }
+
+    /** The thread for the delays. */
+    private static final ScheduledExecutorService TIMER = Executors.newSingleThreadScheduledExecutor(
+            new ThreadFactory() {
+                public Thread newThread(Runnable r) {
+                    Thread t = new Thread(r, "xproject-watch");
+                    t.setDaemon(true);
+                    return t;
+                }
+            });
+
+    /** The oXygen workspace object. */
+    private final StandalonePluginWorkspace myWorkspace;
+    /** The messages, for the mode itself. */
+    private final UserMessages myMsg;
+    /** The messages for the runs, without dialog boxes. */
+    private final UserMessages myQuiet;
+    /** The factory for Java processes. */
+    private final JavaProcessFactory myFactory;
+    /** The install dir for the XProject plugin. */
+    private final File myPluginDir;
+    /** The index of the project dirs. */
+    private final ProjectIndex myProjects;
+    /** The delay, in ms, after the last save of a project. */
+    private final long myDelay;
+    /** The phases to run. */
+    private final List<ProjectPhase> myPhases;
+    /** The scheduled runs, by project path. */
+    private final Map<String, ScheduledFuture<?>> myPending = new HashMap<String, ScheduledFuture<?>>();
+    private boolean myStarted;
+    private boolean myEnabled;
+
+    /** The logger for this class. */
+    private static final Logger LOG = Logger.getLogger(WatchMode.class);
+}
+
+
+/* ------------------------------------------------------------------------ */
+/*  DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS COMMENT.               */
+/*                                                                          */
+/*  The contents of this file are subject to the Mozilla Public License     */
+/*  Version 1.0 (the "License"); you may not use this file except in        */
+/*  compliance with the License. You may obtain a copy of the License at    */
+/*  http://www.mozilla.org/MPL/.                                            */
+/*                                                                          */
+/*  Software distributed under the License is distributed on an "AS IS"     */
+/*  basis, WITHOUT WARRANTY OF ANY KIND, either express or implied.  See    */
+/*  the License for the specific language governing rights and limitations  */
+/*  under the License.                                                      */
+/*                                                                          */
+/*  The Original Code is: all this file.                                    */
+/*                                                                          */
+/*  The Initial Developer of the Original Code is Florent Georges.          */
+/*                                                                          */
+/*  Contributor(s): none.                                                   */
+/* ------------------------------------------------------------------------ */
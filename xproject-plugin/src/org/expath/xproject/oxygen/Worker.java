@@ -0,0 +1,298 @@
+/****************************************************************************/
+/*  File:       Worker.java                                                 */
+/*  Author:     F. Georges - H2O Consulting                                 */
+/*  Date:       2026-10-18                                                  */
+/*  Tags:                                                                   */
+/*      Copyright (c) 2026 Florent Georges (see end of file.)               */
+/* ------------------------------------------------------------------------ */
+
+
+package org.expath.xproject.oxygen;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import org.apache.log4j.Logger;
+import ro.sync.exml.workspace.api.process.ProcessListener;
+
+/**
+ * A long-lived worker JVM, running WorkerMain.
+ * 
+ * A worker runs one program at a time.  A thread reads the worker stdout and
+ * queues the response lines, so waiting for a response can time out (for
+ * health checks).  The worker stderr is only used for the worker's own
+ * errors, and is sent to the log.  If the worker dies after the JVM reported
+ * an OutOfMemoryError (outside of the protocol, or with the exit code of
+ * -XX:+ExitOnOutOfMemoryError), the listener gets an error line saying so.
+ *
+ * @author Florent Georges
+ * @date   2026-10-18
+ */
+public class Worker
+{
+    /**
+     * Package-visibility, intended to be used only by WorkerPool.
+     * 
+     * The command is the full command line, starting with the java executable
+     * and ending with the main class WorkerMain.
+     */
+    Worker(List<String> command, Map<String, String> env)
+            throws IOException
+    {
+        ProcessBuilder builder = new ProcessBuilder(command);
+        builder.environment().putAll(env);
+        myProcess = builder.start();
+        myRequests = new OutputStreamWriter(myProcess.getOutputStream(), "UTF-8");
+        final BufferedReader out = new BufferedReader(new InputStreamReader(myProcess.getInputStream(), "UTF-8"));
+        final BufferedReader err = new BufferedReader(new InputStreamReader(myProcess.getErrorStream()));
+        Thread out_reader = new Thread("xproject-worker-out") {
+            @Override
+            public void run() {
+                try {
+                    String line;
+                    while ( (line = out.readLine()) != null ) {
+                        myResponses.add(line);
+                    }
+                }
+                catch ( IOException ex ) {
+                    LOG.debug("Error reading the worker stdout", ex);
+                }
+                myResponses.add(EOF);
+            }
+        };
+        Thread err_reader = new Thread("xproject-worker-err") {
+            @Override
+            public void run() {
+                try {
+                    String line;
+                    while ( (line = err.readLine()) != null ) {
+                        LOG.debug("Worker stderr: " + line);
+                        checkMemory(line);
+                    }
+                }
+                catch ( IOException ex ) {
+                    LOG.debug("Error reading the worker stderr", ex);
+                }
+            }
+        };
+        out_reader.setDaemon(true);
+        err_reader.setDaemon(true);
+        out_reader.start();
+        err_reader.start();
+        myLastUsed = System.currentTimeMillis();
+    }
+
+    /**
+     * Run a main class in the worker, and return its exit code.
+     * 
+     * The program stdout and stderr lines are sent to the listener.  Throw
+     * an exception if the worker dies during the run (then it cannot be used
+     * anymore).
+     */
+    public int run(String main, List<String> args, ProcessListener listener)
+            throws IOException
+    {
+        ++myRuns;
+        StringBuilder request = new StringBuilder(WorkerMain.RUN);
+        request.append(WorkerMain.encode(main));
+        for ( String a : args ) {
+            request.append('\t').append(WorkerMain.encode(a));
+        }
+        send(request.toString());
+        try {
+            for ( ;; ) {
+                String line = myResponses.take();
+                if ( line == EOF ) {
+                    myDead = true;
+                    int code = getExitCode();
+                    if ( myOutOfMemory || code == OUT_OF_MEMORY_EXIT ) {
+                        // so the listener sees it, and the run is retried with a larger heap
+                        listener.newErrorLine("The worker ran out of memory: java.lang.OutOfMemoryError");
+                    }
+                    throw new IOException("The worker died during the run (exit code: " + code + ")");
+                }
+                else if ( line.startsWith(WorkerMain.OUTPUT) ) {
+                    listener.newOutputLine(line.substring(WorkerMain.OUTPUT.length()));
+                }
+                else if ( line.startsWith(WorkerMain.ERROR) ) {
+                    listener.newErrorLine(line.substring(WorkerMain.ERROR.length()));
+                }
+                else if ( line.startsWith(WorkerMain.EXIT) ) {
+                    return Integer.parseInt(line.substring(WorkerMain.EXIT.length()));
+                }
+                else if ( ! WorkerMain.PONG.equals(line) ) {
+                    // a PONG can be left over by a ping that timed out, and the
+                    // JVM itself writes on stdout (e.g. with ExitOnOutOfMemoryError)
+                    LOG.debug("Unexpected worker response: " + line);
+                    checkMemory(line);
+                }
+            }
+        }
+        catch ( InterruptedException ex ) {
+            // the run state is unknown, the worker cannot be reused
+            destroy();
+            throw new IOException("Interrupted while waiting for the worker");
+        }
+        finally {
+            myLastUsed = System.currentTimeMillis();
+        }
+    }
+
+    /**
+     * Health check: return true if the worker answers a ping within the timeout.
+     */
+    public boolean ping(long timeout)
+    {
+        if ( myDead ) {
+            return false;
+        }
+        try {
+            send(WorkerMain.PING);
+            long limit = System.currentTimeMillis() + timeout;
+            for ( ;; ) {
+                long left = limit - System.currentTimeMillis();
+                String line = myResponses.poll(left, TimeUnit.MILLISECONDS);
+                if ( line == null ) {
+                    return false;
+                }
+                else if ( line == EOF ) {
+                    myDead = true;
+                    return false;
+                }
+                else if ( WorkerMain.PONG.equals(line) ) {
+                    return true;
+                }
+                // else, a stale line from a previous ping that timed out
+            }
+        }
+        catch ( IOException ex ) {
+            LOG.debug("Error pinging the worker", ex);
+            return false;
+        }
+        catch ( InterruptedException ex ) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+
+    /**
+     * Kill the worker.
+     */
+    public void destroy()
+    {
+        myDead = true;
+        try {
+            myRequests.close();
+        }
+        catch ( IOException ex ) {
+            LOG.debug("Error closing the worker stdin", ex);
+        }
+        myProcess.destroy();
+    }
+
+    public boolean isDead()
+    {
+        return myDead;
+    }
+
+    /**
+     * The number of runs this worker has started.
+     */
+    public int getRuns()
+    {
+        return myRuns;
+    }
+
+    /**
+     * When the worker was used for the last time (as System.currentTimeMillis()).
+     */
+    public long getLastUsed()
+    {
+        return myLastUsed;
+    }
+
+    private void send(String request)
+            throws IOException
+    {
+        try {
+            myRequests.write(request);
+            myRequests.write('\n');
+            myRequests.flush();
+        }
+        catch ( IOException ex ) {
+            myDead = true;
+            throw ex;
+        }
+    }
+
+    /**
+     * Record whether the JVM reported running out of memory, outside of the protocol.
+     */
+    private void checkMemory(String line)
+    {
+        if ( line.indexOf("OutOfMemoryError") >= 0 ) {
+            myOutOfMemory = true;
+        }
+    }
+
+    private int getExitCode()
+    {
+        try {
+            return myProcess.waitFor();
+        }
+        catch ( InterruptedException ex ) {
+            Thread.currentThread().interrupt();
+            return -1;
+        }
+    }
+
+    /** The worker process. */
+    private final Process myProcess;
+    /** The worker stdin. */
+    private final Writer myRequests;
+    /** The lines read from the worker stdout. */
+    private final BlockingQueue<String> myResponses = new LinkedBlockingQueue<String>();
+    /** The number of runs. */
+    private int myRuns = 0;
+    /** When the worker has been used for the last time. */
+    private volatile long myLastUsed;
+    /** Whether the worker is known to be dead. */
+    private volatile boolean myDead = false;
+    /** Whether the JVM reported running out of memory (on stdout or stderr, not through the protocol). */
+    private volatile boolean myOutOfMemory = false;
+
+    /** Marker queued when the worker stdout is closed. */
+    private static final String EOF = new String("EOF");
+    /** The exit code of the JVM with -XX:+ExitOnOutOfMemoryError, when it runs out of memory. */
+    private static final int OUT_OF_MEMORY_EXIT = 3;
+    /** The logger for this class. */
+    private static final Logger LOG = Logger.getLogger(Worker.class);
+}
+
+
+/* ------------------------------------------------------------------------ */
+/*  DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS COMMENT.               */
+/*                                                                          */
+/*  The contents of this file are subject to the Mozilla Public License     */
+/*  Version 1.0 (the "License"); you may not use this file except in        */
+/*  compliance with the License. You may obtain a copy of the License at    */
+/*  http://www.mozilla.org/MPL/.                                            */
+/*                                                                          */
+/*  Software distributed under the License is distributed on an "AS IS"     */
+/*  basis, WITHOUT WARRANTY OF ANY KIND, either express or implied.  See    */
+/*  the License for the specific language governing rights and limitations  */
+/*  under the License.                                                      */
+/*                                                                          */
+/*  The Original Code is: all this file.                                    */
+/*                                                                          */
+/*  The Initial Developer of the Original Code is Florent Georges.          */
+/*                                                                          */
+/*  Contributor(s): none.                                                   */
+/* ------------------------------------------------------------------------ */
@@ -0,0 +1,362 @@
+/****************************************************************************/
+/*  File:       WorkerMain.java                                             */
+/*  Author:     F. Georges - H2O Consulting                                 */
+/*  Date:       2026-10-18                                                  */
+/*  Tags:                                                                   */
+/*      Copyright (c) 2026 Florent Georges (see end of file.)               */
+/* ------------------------------------------------------------------------ */
+
+
+package org.expath.xproject.oxygen;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.FileDescriptor;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.lang.reflect.Field;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.security.Permission;
+
+/**
+ * The main class of the pooled worker processes (see WorkerPool).
+ * 
+ * A worker reads requests on stdin, one per line, and writes the responses
+ * on stdout.  The protocol is line-based, in UTF-8:
+ * 
+ * - "PING" is answered by "PONG" (used for health checks)
+ * - "RUN [main]\t[arg]\t[arg]..." invokes the main method of the class, with
+ *   the arguments (escaped with encode()); each line the program writes on
+ *   stdout and stderr is sent as "O [line]" and "E [line]", and the run
+ *   ends with "X [code]", the exit code (or 0 if the main method returns)
+ * 
+ * Calls to System.exit() are trapped, so the worker survives them (this
+ * needs "-Djava.security.manager=allow" from Java 18, and is not possible
+ * anymore from Java 24).  Calabash and Saxon are run through entry points
+ * which do not exit, so they do not depend on the trap.  The worker stops
+ * when stdin is closed.  This class runs in the worker JVM, so
+ * it must not use anything but the JDK.
+ *
+ * @author Florent Georges
+ * @date   2026-10-18
+ */
+public class WorkerMain
+{
+    public static void main(String[] args)
+            throws IOException
+    {
+        PrintStream proto = new PrintStream(new FileOutputStream(FileDescriptor.out), true, "UTF-8");
+        BufferedReader requests = new BufferedReader(new InputStreamReader(new FileInputStream(FileDescriptor.in), "UTF-8"));
+        // the programs must neither read the requests nor write in the responses
+        System.setIn(new ByteArrayInputStream(new byte[]{}));
+        System.setOut(new PrintStream(new LineForwarder(OUTPUT, proto), true));
+        System.setErr(new PrintStream(new LineForwarder(ERROR, proto), true));
+        try {
+            System.setSecurityManager(new ExitTrap());
+        }
+        catch ( UnsupportedOperationException ex ) {
+            // the JVM does not allow it (anymore), a program exiting then
+            // kills the worker, and the pool replaces it
+        }
+        String line;
+        while ( (line = requests.readLine()) != null ) {
+            if ( PING.equals(line) ) {
+                respond(proto, PONG);
+            }
+            else if ( line.startsWith(RUN) ) {
+                String[] request = line.substring(RUN.length()).split("\t", -1);
+                String[] params = new String[request.length - 1];
+                for ( int i = 1; i < request.length; ++i ) {
+                    params[i - 1] = decode(request[i]);
+                }
+                int code = run(decode(request[0]), params);
+                System.out.flush();
+                System.err.flush();
+                respond(proto, EXIT + code);
+            }
+            else {
+                System.err.println("Invalid worker request: " + line);
+                System.err.flush();
+                respond(proto, EXIT + 2);
+            }
+        }
+        // programs can leave non-daemon threads behind them
+        ourExiting = true;
+        Runtime.getRuntime().halt(0);
+    }
+
+    /**
+     * Escape an argument, so it does not contain any tab or newline.
+     */
+    public static String encode(String arg)
+    {
+        StringBuilder buf = new StringBuilder();
+        for ( char c : arg.toCharArray() ) {
+            switch ( c ) {
+                case '\\': buf.append("\\\\"); break;
+                case '\t': buf.append("\\t");  break;
+                case '\n': buf.append("\\n");  break;
+                case '\r': buf.append("\\r");  break;
+                default:   buf.append(c);
+            }
+        }
+        return buf.toString();
+    }
+
+    /**
+     * Unescape an argument escaped with encode().
+     */
+    public static String decode(String arg)
+    {
+        StringBuilder buf = new StringBuilder();
+        for ( int i = 0; i < arg.length(); ++i ) {
+            char c = arg.charAt(i);
+            if ( c == '\\' && i + 1 < arg.length() ) {
+                char n = arg.charAt(++i);
+                switch ( n ) {
+                    case 't': buf.append('\t'); break;
+                    case 'n': buf.append('\n'); break;
+                    case 'r': buf.append('\r'); break;
+                    default:  buf.append(n);
+                }
+            }
+            else {
+                buf.append(c);
+            }
+        }
+        return buf.toString();
+    }
+
+    /**
+     * Invoke the main method of the class, and return its exit code.
+     */
+    private static int run(String main, String[] args)
+    {
+        try {
+            Class<?> clazz = Class.forName(main);
+            if ( CALABASH.equals(main) ) {
+                return runCalabash(clazz, args);
+            }
+            else if ( SAXON.equals(main) ) {
+                return runSaxon(clazz, args);
+            }
+            Method method = clazz.getMethod("main", String[].class);
+            method.invoke(null, (Object) args);
+            return 0;
+        }
+        catch ( InvocationTargetException ex ) {
+            Throwable cause = ex.getCause();
+            if ( cause instanceof ExitException ) {
+                return ((ExitException) cause).getCode();
+            }
+            cause.printStackTrace();
+            return 1;
+        }
+        catch ( InstantiationException ex ) {
+            System.err.println("Main class cannot be instantiated: " + main);
+            return 1;
+        }
+        catch ( ExitException ex ) {
+            return ex.getCode();
+        }
+        catch ( ClassNotFoundException ex ) {
+            System.err.println("Main class not found: " + main);
+            return 1;
+        }
+        catch ( NoSuchMethodException ex ) {
+            System.err.println("No main method in class: " + main);
+            return 1;
+        }
+        catch ( IllegalAccessException ex ) {
+            System.err.println("Main method not accessible in class: " + main);
+            return 1;
+        }
+    }
+
+    /**
+     * Run Calabash, and return its exit status.
+     * 
+     * Its main() always calls System.exit(), even on success, so run() is
+     * called instead, and the exit status is read from the static field it
+     * is kept in (reset before the run, the same class runs several times).
+     */
+    private static int runCalabash(Class<?> clazz, String[] args)
+            throws InvocationTargetException, NoSuchMethodException, IllegalAccessException, InstantiationException
+    {
+        Field status;
+        try {
+            status = clazz.getDeclaredField("exitStatus");
+        }
+        catch ( NoSuchFieldException ex ) {
+            // another version of Calabash, rely on the trap
+            clazz.getMethod("main", String[].class).invoke(null, (Object) args);
+            return 0;
+        }
+        status.setAccessible(true);
+        status.setInt(null, 0);
+        Object driver = clazz.newInstance();
+        clazz.getMethod("run", String[].class).invoke(driver, (Object) args);
+        return status.getInt(null);
+    }
+
+    /**
+     * Run Saxon, and return its exit code.
+     * 
+     * With the option "-quit:off", Saxon reports an error by throwing a
+     * RuntimeException (after writing the message on stderr), instead of
+     * calling System.exit(2).
+     */
+    private static int runSaxon(Class<?> clazz, String[] args)
+            throws InvocationTargetException, NoSuchMethodException, IllegalAccessException, InstantiationException
+    {
+        String[] params = new String[args.length + 1];
+        params[0] = "-quit:off";
+        System.arraycopy(args, 0, params, 1, args.length);
+        Object transform = clazz.newInstance();
+        Method method = clazz.getMethod("doTransform", String[].class, String.class);
+        try {
+            method.invoke(transform, params, "java " + SAXON);
+            return 0;
+        }
+        catch ( InvocationTargetException ex ) {
+            // exactly the class thrown by Transform.quit(), not a subclass
+            if ( ex.getCause() != null && ex.getCause().getClass() == RuntimeException.class ) {
+                return 2;
+            }
+            throw ex;
+        }
+    }
+
+    private static void respond(PrintStream proto, String line)
+    {
+        synchronized ( proto ) {
+            proto.println(line);
+            proto.flush();
+        }
+    }
+
+    /**
+     * Send each line written to the stream as a response line, with a prefix.
+     */
+    private static class LineForwarder
+            extends OutputStream
+    {
+        public LineForwarder(String prefix, PrintStream proto) {
+            myPrefix = prefix;
+            myProto = proto;
+        }
+
+        @Override
+        public synchronized void write(int b) {
+            if ( b == '\n' ) {
+                flushLine();
+            }
+            else if ( b != '\r' ) {
+                myLine.write(b);
+            }
+        }
+
+        @Override
+        public synchronized void flush() {
+            if ( myLine.size() > 0 ) {
+                flushLine();
+            }
+        }
+
+        private void flushLine() {
+            respond(myProto, myPrefix + myLine.toString());
+            myLine.reset();
+        }
+
+        private final String myPrefix;
+        private final PrintStream myProto;
+        private final ByteArrayOutputStream myLine = new ByteArrayOutputStream();
+    }
+
+    /**
+     * Prevent System.exit(), by throwing an ExitException instead.
+     */
+    private static class ExitTrap
+            extends SecurityManager
+    {
+        @Override
+        public void checkExit(int code) {
+            if ( ! ourExiting ) {
+                throw new ExitException(code);
+            }
+        }
+
+        @Override
+        public void checkPermission(Permission perm) {
+            // everything else is allowed
+        }
+
+        @Override
+        public void checkPermission(Permission perm, Object context) {
+            // everything else is allowed
+        }
+    }
+
+    private static class ExitException
+            extends SecurityException
+    {
+        public ExitException(int code) {
+            super("System.exit(" + code + ") trapped by the worker");
+            myCode = code;
+        }
+
+        public int getCode() {
+            return myCode;
+        }
+
+        private final int myCode;
+    }
+
+    /** The main class of Calabash. */
+    private static final String CALABASH = "com.xmlcalabash.drivers.Main";
+    /** The main class of Saxon, for XSLT. */
+    private static final String SAXON    = "net.sf.saxon.Transform";
+
+    /** Set when the worker itself exits, so it is not trapped. */
+    private static volatile boolean ourExiting = false;
+
+    /** Request: health check. */
+    public static final String PING   = "PING";
+    /** Response to PING. */
+    public static final String PONG   = "PONG";
+    /** Request: run a main class. */
+    public static final String RUN    = "RUN ";
+    /** Response: a line on the program stdout. */
+    public static final String OUTPUT = "O ";
+    /** Response: a line on the program stderr. */
+    public static final String ERROR  = "E ";
+    /** Response: the end of a run, with its exit code. */
+    public static final String EXIT   = "X ";
+}
+
+
+/* ------------------------------------------------------------------------ */
+/*  DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS COMMENT.               */
+/*                                                                          */
+/*  The contents of this file are subject to the Mozilla Public License     */
+/*  Version 1.0 (the "License"); you may not use this file except in        */
+/*  compliance with the License. You may obtain a copy of the License at    */
+/*  http://www.mozilla.org/MPL/.                                            */
+/*                                                                          */
+/*  Software distributed under the License is distributed on an "AS IS"     */
+/*  basis, WITHOUT WARRANTY OF ANY KIND, either express or implied.  See    */
+/*  the License for the specific language governing rights and limitations  */
+/*  under the License.                                                      */
+/*                                                                          */
+/*  The Original Code is: all this file.                                    */
+/*                                                                          */
+/*  The Initial Developer of the Original Code is Florent Georges.          */
+/*                                                                          */
+/*  Contributor(s): none.                                                   */
+/* ------------------------------------------------------------------------ */
@@ -0,0 +1,343 @@
+/****************************************************************************/
+/*  File:       WorkerPool.java                                             */
+/*  Author:     F. Georges - H2O Consulting                                 */
+/*  Date:       2026-10-18                                                  */
+/*  Tags:                                                                   */
+/*      Copyright (c) 2026 Florent Georges (see end of file.)               */
+/* ------------------------------------------------------------------------ */
+
+
+package org.expath.xproject.oxygen;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import org.apache.log4j.Logger;
+
+/**
+ * A pool of worker JVMs, all launched with the same command line.
+ * 
+ * Workers are started on demand, up to the max number of workers of the
+ * limit the pool shares with the other pools.  When the limit is reached,
+ * an idle worker of another pool (the least recently used one) is killed to
+ * make room, or the pool waits for a worker to be released.  Once a run is
+ * over, its worker goes back to the pool, unless it reached the max number
+ * of runs per worker (then it is recycled, i.e. killed, and a new one will
+ * be started when needed).  Idle workers are evicted after a timeout, and
+ * each worker is health-checked before being reused.
+ *
+ * @author Florent Georges
+ * @date   2026-10-18
+ */
+public class WorkerPool
+{
+    /**
+     * Package-visibility, intended to be used only by JavaProcessFactory.
+     */
+    WorkerPool(List<String> command, Map<String, String> env, Limit limit, int max_runs, long idle_timeout, long ping_timeout)
+    {
+        myCommand = command;
+        myEnv = env;
+        myLimit = limit;
+        myMaxRuns = max_runs;
+        myIdleTimeout = idle_timeout;
+        myPingTimeout = ping_timeout;
+    }
+
+    /**
+     * The command line of the workers.
+     */
+    public List<String> getCommand()
+    {
+        return myCommand;
+    }
+
+    /**
+     * Get a healthy worker, waiting for one to be released if the limit is reached.
+     */
+    public Worker acquire()
+            throws IOException, InterruptedException
+    {
+        for ( ;; ) {
+            Worker worker = null;
+            Worker victim = null;
+            synchronized ( myLimit ) {
+                myLimit.myPools.add(this);
+                ++myWaiting;
+                try {
+                    for ( ;; ) {
+                        if ( ! myIdle.isEmpty() ) {
+                            worker = myIdle.removeFirst();
+                            break;
+                        }
+                        // reserve the slot before starting the worker (outside the lock)
+                        if ( myLimit.myCount < myLimit.myMax ) {
+                            ++myLimit.myCount;
+                            ++myCount;
+                            break;
+                        }
+                        // or take the slot of an idle worker of another pool
+                        victim = myLimit.takeIdle(this);
+                        if ( victim != null ) {
+                            ++myCount;
+                            break;
+                        }
+                        myLimit.wait();
+                    }
+                }
+                finally {
+                    --myWaiting;
+                    forgetIfUnused();
+                }
+            }
+            if ( victim != null ) {
+                LOG.debug("Max number of workers reached, kill an idle worker of another pool");
+                victim.destroy();
+            }
+            if ( worker == null ) {
+                return start();
+            }
+            else if ( worker.ping(myPingTimeout) ) {
+                return worker;
+            }
+            else {
+                LOG.debug("Worker failed its health check, discard it");
+                discard(worker);
+            }
+        }
+    }
+
+    /**
+     * Give a worker back to the pool, after a run.
+     */
+    public void release(Worker worker)
+    {
+        if ( worker.isDead() ) {
+            discard(worker);
+        }
+        else if ( worker.getRuns() >= myMaxRuns ) {
+            LOG.debug("Worker reached " + myMaxRuns + " runs, recycle it");
+            discard(worker);
+        }
+        else {
+            synchronized ( myLimit ) {
+                myIdle.addFirst(worker);
+                myLimit.notifyAll();
+            }
+        }
+    }
+
+    /**
+     * Kill the workers idle for longer than the idle timeout.
+     */
+    public void evictIdle()
+    {
+        long limit = System.currentTimeMillis() - myIdleTimeout;
+        List<Worker> evicted = new ArrayList<Worker>();
+        synchronized ( myLimit ) {
+            Iterator<Worker> it = myIdle.iterator();
+            while ( it.hasNext() ) {
+                Worker w = it.next();
+                if ( w.getLastUsed() < limit ) {
+                    it.remove();
+                    evicted.add(w);
+                }
+            }
+        }
+        for ( Worker w : evicted ) {
+            LOG.debug("Worker idle for more than " + myIdleTimeout + " ms, evict it");
+            discard(w);
+        }
+    }
+
+    /**
+     * Kill all idle workers, the busy ones are killed when released.
+     */
+    public void shutdown()
+    {
+        List<Worker> idle;
+        synchronized ( myLimit ) {
+            myMaxRuns = 0;
+            idle = new ArrayList<Worker>(myIdle);
+            myIdle.clear();
+        }
+        for ( Worker w : idle ) {
+            discard(w);
+        }
+    }
+
+    /**
+     * Whether the pool has no worker (idle or busy), and no thread waiting for one.
+     */
+    public boolean isUnused()
+    {
+        synchronized ( myLimit ) {
+            return myCount == 0 && myWaiting == 0;
+        }
+    }
+
+    /**
+     * The number of workers of the pool, idle or busy.
+     */
+    public int getCount()
+    {
+        synchronized ( myLimit ) {
+            return myCount;
+        }
+    }
+
+    private Worker start()
+            throws IOException
+    {
+        boolean started = false;
+        try {
+            long begin = System.currentTimeMillis();
+            Worker worker = new Worker(myCommand, myEnv);
+            LOG.debug("Worker started in " + (System.currentTimeMillis() - begin) + " ms");
+            started = true;
+            return worker;
+        }
+        finally {
+            if ( ! started ) {
+                freeSlot();
+            }
+        }
+    }
+
+    private void discard(Worker worker)
+    {
+        worker.destroy();
+        freeSlot();
+    }
+
+    private void freeSlot()
+    {
+        synchronized ( myLimit ) {
+            --myCount;
+            --myLimit.myCount;
+            forgetIfUnused();
+            myLimit.notifyAll();
+        }
+    }
+
+    /**
+     * Remove the pool from the pools of the limit if it is not used anymore.
+     * 
+     * Must be called with the lock of the limit.
+     */
+    private void forgetIfUnused()
+    {
+        if ( myCount == 0 && myWaiting == 0 ) {
+            myLimit.myPools.remove(this);
+        }
+    }
+
+    /**
+     * The max number of workers, shared by several pools.
+     * 
+     * The pools sharing a limit all synchronize on it.  It also keeps the
+     * pools which have workers or threads waiting for one (for the idle
+     * eviction, see getPools()).
+     */
+    static class Limit
+    {
+        public Limit(int max) {
+            myMax = Math.max(1, max);
+        }
+
+        /**
+         * The pools which have workers, or threads waiting for one.
+         */
+        public synchronized List<WorkerPool> getPools() {
+            return new ArrayList<WorkerPool>(myPools);
+        }
+
+        /**
+         * The number of workers, in all the pools.
+         */
+        public synchronized int getCount() {
+            return myCount;
+        }
+
+        /**
+         * Remove the least recently used idle worker of another pool, or return null.
+         * 
+         * The slot of the worker is kept, for the pool asking for it.  Must
+         * be called with the lock.
+         */
+        private Worker takeIdle(WorkerPool except) {
+            WorkerPool owner = null;
+            Worker lru = null;
+            for ( WorkerPool p : myPools ) {
+                if ( p != except && ! p.myIdle.isEmpty() ) {
+                    Worker w = p.myIdle.getLast();
+                    if ( lru == null || w.getLastUsed() < lru.getLastUsed() ) {
+                        owner = p;
+                        lru = w;
+                    }
+                }
+            }
+            if ( lru != null ) {
+                owner.myIdle.removeLast();
+                --owner.myCount;
+                owner.forgetIfUnused();
+            }
+            return lru;
+        }
+
+        /** The max number of workers. */
+        private final int myMax;
+        /** The number of workers, in all the pools. */
+        private int myCount = 0;
+        /** The pools which have workers, or threads waiting for one. */
+        private final Set<WorkerPool> myPools = new LinkedHashSet<WorkerPool>();
+    }
+
+    /** The command line to launch a worker. */
+    private final List<String> myCommand;
+    /** The environment variables of the workers. */
+    private final Map<String, String> myEnv;
+    /** The max number of workers, shared with other pools (and their lock). */
+    private final Limit myLimit;
+    /** The max number of runs before recycling a worker. */
+    private int myMaxRuns;
+    /** The time after which an idle worker is evicted, in ms. */
+    private final long myIdleTimeout;
+    /** The time to wait for a worker answering a ping, in ms. */
+    private final long myPingTimeout;
+    /** The idle workers, the most recently used first. */
+    private final LinkedList<Worker> myIdle = new LinkedList<Worker>();
+    /** The number of workers, idle or busy. */
+    private int myCount = 0;
+    /** The number of threads waiting for a worker. */
+    private int myWaiting = 0;
+
+    /** The logger for this class. */
+    private static final Logger LOG = Logger.getLogger(WorkerPool.class);
+}
+
+
+/* ------------------------------------------------------------------------ */
+/*  DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS COMMENT.               */
+/*                                                                          */
+/*  The contents of this file are subject to the Mozilla Public License     */
+/*  Version 1.0 (the "License"); you may not use this file except in        */
+/*  compliance with the License. You may obtain a copy of the License at    */
+/*  http://www.mozilla.org/MPL/.                                            */
+/*                                                                          */
+/*  Software distributed under the License is distributed on an "AS IS"     */
+/*  basis, WITHOUT WARRANTY OF ANY KIND, either express or implied.  See    */
+/*  the License for the specific language governing rights and limitations  */
+/*  under the License.                                                      */
+/*                                                                          */
+/*  The Original Code is: all this file.                                    */
+/*                                                                          */
+/*  The Initial Developer of the Original Code is Florent Georges.          */
+/*                                                                          */
+/*  Contributor(s): none.                                                   */
+/* ------------------------------------------------------------------------ */
@@ -9,8 +9,18 @@
 
 package org.expath.xproject.oxygen;
 
+import java.io.BufferedReader;
 import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
 import java.net.URI;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 import org.apache.log4j.Logger;
 import ro.sync.exml.workspace.api.process.ProcessListener;
 
@@ -81,6 +91,8 @@ public class XProject
             throw new IllegalArgumentException("Plugin dir is not a directory: '" + plugin_dir + "'.");
         }
         myPluginDir = plugin_dir;
+
+        myAffectedOnly = XProjectOptions.getBoolean("test.affected-only", false);
     }
 
     /**
@@ -91,6 +103,77 @@ public class XProject
         return myDesc;
     }
 
+    /**
+     * Set the listener notified when each phase run ends.
+     * 
+     * When set, the listener is responsible to report the success to the
+     * user (failures are still reported by a dialog box).
+     */
+    public void setPhaseListener(PhaseListener listener)
+    {
+        myPhaseListener = listener;
+    }
+
+    /**
+     * Set whether to only run the suites affected by the changes (see test()).
+     * 
+     * By default, the option "test.affected-only".
+     */
+    public void setAffectedOnly(boolean affected)
+    {
+        myAffectedOnly = affected;
+    }
+
+    /**
+     * Set the number of projects run at the same time, and the max number of children of each.
+     *
+     * For a batch: the free memory is shared by the children of all the
+     * projects (see JvmProfile), and the test shards and the doc groups are
+     * at most "children" (if positive).  By default, 1 project, and the
+     * options "test.shards" and "doc.groups".
+     */
+    public void setConcurrency(int projects, int children)
+    {
+        myConcurrentProjects = Math.max(1, projects);
+        myMaxChildren = children;
+    }
+
+    /**
+     * Set the execution the processes of the next phase runs are registered on.
+     * 
+     * Package-visibility, intended to be used only by Execution.
+     */
+    void setExecution(Execution exec)
+    {
+        myExecution = exec;
+    }
+
+    /**
+     * Run a phase on the project (but CREATE, see setup()).
+     * 
+     * The time to prepare the phase, until its processes are started, is
+     * recorded in the metrics as "phase.[name].prepare".
+     */
+    public void run(XProjectConstants.ProjectPhase phase)
+            throws XProjectException
+    {
+        String name = phase.name().toLowerCase();
+        Metrics.increment("phase." + name);
+        long start = System.currentTimeMillis();
+        // the bundled packages must be installed before running anything
+        RepoBootstrapper.await();
+        switch ( phase ) {
+            case BUILD:   build();   break;
+            case TEST:    test();    break;
+            case DOC:     doc();     break;
+            case DEPLOY:  deploy();  break;
+            case RELEASE: release(); break;
+            default:
+                throw new XProjectException("Phase cannot be run on an existing project: " + phase);
+        }
+        Metrics.since("phase." + name + ".prepare", start);
+    }
+
     /**
      * Setup a new project (by calling the XProject "setup" pipeline with the dir as option).
      * 
@@ -102,13 +185,23 @@ public class XProject
         if ( dir.exists() ) {
             throw new XProjectException("Directory exists: " + dir);
         }
+        RepoBootstrapper.await();
         String pipe = XProjectConstants.SETUPER_STD;
         String path = MiscUtils.getUri(dir);
-        JavaProcess proc = initJavaProcess(factory, messages, plugin_dir);
-        proc.setMainClass("com.xmlcalabash.drivers.Main");
-        proc.addArgument(pipe);
-        proc.addArgument("path=" + path);
-        proc.createJavaProcess().start();
+        if ( isInProcess() ) {
+            EngineRun run = initEngineRun(messages, plugin_dir, "setup", null, null, null);
+            run.setPipeline(pipe);
+            run.addOption("path", path);
+            run.start();
+        }
+        else {
+            JavaProcess proc = initJavaProcess(factory, messages, plugin_dir, "setup", null, null, null);
+            proc.setProfile(JvmProfile.getProfile("setup", null, null));
+            proc.setMainClass("com.xmlcalabash.drivers.Main");
+            proc.addArgument(pipe);
+            proc.addArgument("path=" + path);
+            proc.start();
+        }
         return new XProject(dir, messages, factory, plugin_dir);
     }
 
@@ -120,38 +213,186 @@ public class XProject
     public void build()
             throws XProjectException
     {
-        applyPipeline(XProjectConstants.BUILDER_STD, XProjectConstants.BUILDER_OVERRIDE, "builder");
+        String pipe = getHref(XProjectConstants.BUILDER_STD, XProjectConstants.BUILDER_OVERRIDE, "builder");
+        if ( ! XProjectOptions.isIncrementalBuild() ) {
+            runPipeline(pipe, myDesc, "builder", null, myPhaseListener);
+            return;
+        }
+        // the builder stamp, so the project is built again if XProject is upgraded
+        File repo = getPluginSubdir("repo/", myPluginDir);
+        String stamp = PackageRepository.getInstance(repo).getPackageStamp(XProjectConstants.BUILDER_STD);
+        long start = System.currentTimeMillis();
+        final BuildManifest manifest = new BuildManifest(myProject, stamp);
+        long time = Metrics.since("build.manifest", start);
+        LOG.debug("Build manifest computed in " + time + " ms (" + manifest.getSize() + " files, " + manifest.getHashed() + " read)");
+        if ( manifest.isUpToDate() ) {
+            Metrics.increment("build.up-to-date");
+            if ( myPhaseListener == null ) {
+                myMsg.info("Build up to date (nothing changed since the last build)");
+            }
+            else {
+                myMsg.debug("Build up to date (nothing changed since the last build)");
+                myPhaseListener.phaseEnded(true);
+            }
+            return;
+        }
+        // the build cache
+        final File dist = new File(myProject, "dist/");
+        File cache_dir = new File(System.getProperty("user.home"), ".xproject/cache/");
+        final BuildCache cache = BuildCache.isEnabled() ? new BuildCache(cache_dir) : null;
+        final String key = cache == null
+                ? null
+                : BuildCache.getKey(manifest.getDigest(), pipe, PackageRepository.getInstance(repo).getPackages());
+        if ( cache != null ) {
+            ensureDistDir();
+            if ( cache.restore(key, dist) ) {
+                Metrics.increment("build.cache.hit");
+                saveManifest(manifest);
+                String msg = "Build restored from the cache (" + cache.getStats() + ")";
+                if ( myPhaseListener == null ) {
+                    myMsg.info(msg);
+                }
+                else {
+                    myMsg.debug(msg);
+                    myPhaseListener.phaseEnded(true);
+                }
+                return;
+            }
+            Metrics.increment("build.cache.miss");
+            myMsg.debug("Build not in the cache (" + cache.getStats() + ")");
+        }
+        final long since = System.currentTimeMillis();
+        runPipeline(pipe, myDesc, "builder", new Runnable() {
+            public void run() {
+                saveManifest(manifest);
+                if ( cache != null ) {
+                    cache.store(key, dist, since);
+                }
+            }
+        }, myPhaseListener);
+    }
+
+    private void saveManifest(BuildManifest manifest)
+    {
+        try {
+            manifest.save();
+        }
+        catch ( XProjectException ex ) {
+            LOG.warn("Error saving the build manifest, the next build will not be skipped", ex);
+        }
     }
 
     /**
      * Test the project (by applying the XProject "test" pipeline on project.xml).
      * 
      * calabash -i source=xproject/project.xml [pipeline]
+     * 
+     * If the project does not override the test pipeline, the XSpec suites
+     * are split in shards run in parallel instead, see TestSharder (at most
+     * "test.shards" shards, by default the number of processors).  With the
+     * option "test.affected-only", only the suites affected by the changes
+     * since the last test run are run, see TestImpact (then the suites are
+     * always run through TestSharder, to know which ones failed).
      */
    public void test()
             throws XProjectException
     {
-        applyPipeline(XProjectConstants.TESTER_STD, XProjectConstants.TESTER_OVERRIDE, "tester");
+        String pipe = getHref(XProjectConstants.TESTER_STD, XProjectConstants.TESTER_OVERRIDE, "tester");
+        if ( ! XProjectConstants.TESTER_STD.equals(pipe) ) {
+            runPipeline(pipe, myDesc, "tester", null, myPhaseListener);
+            return;
+        }
+        final TestSharder sharder = new TestSharder(myProject, myDesc);
+        int units = sharder.discover();
+        final TestImpact impact = new TestImpact(myProject, myDesc);
+        impact.update(sharder.getSuites());
+        boolean subset = false;
+        if ( myAffectedOnly ) {
+            Set<String> affected = impact.getAffectedSuites();
+            if ( affected == null ) {
+                myMsg.debug("The test graph is stale, run all the tests");
+            }
+            else {
+                myMsg.debug("Suites affected by the changes: " + affected.size() + " out of " + sharder.getSuites().size());
+                units = sharder.retain(affected);
+                subset = true;
+            }
+        }
+        Runnable success = new Runnable() {
+            public void run() {
+                // the failed suites stay affected, until they pass
+                impact.commit(sharder.getFailedSuites());
+            }
+        };
+        Metrics.add("test.units", units);
+        if ( subset && units == 0 ) {
+            if ( myPhaseListener == null ) {
+                myMsg.info("No test affected by the changes since the last test run");
+            }
+            else {
+                myMsg.debug("No test affected by the changes since the last test run");
+                myPhaseListener.phaseEnded(true);
+            }
+            return;
+        }
+        int max = getMaxChildren("test.shards");
+        int count = Math.max(1, Math.min(max, units));
+        if ( count < 2 && ! myAffectedOnly ) {
+            // no baseline, the failed suites are only known from the shard results
+            runPipeline(pipe, myDesc, "tester", null, myPhaseListener);
+            return;
+        }
+        List<File> shards = sharder.plan(count);
+        PhaseListener done = new ShardsListener(sharder, count, success);
+        for ( int i = 0; i < count; ++i ) {
+            String name = "tester (shard " + (i + 1) + "/" + count + ")";
+            runPipeline(sharder.getPipeline(), shards.get(i), name, null, done, count);
+        }
     }
 
     /**
      * Generate documentation for the project (by applying the XProject "doc" pipeline on project.xml).
      * 
      * calabash [pipeline] xquery=src/ output=dist/xqdoc/ currentdir=src/ format=html > dist/xqdoc/index.html
+     * 
+     * If the project does not override the doc pipeline, only the modules
+     * which changed are documented, in parallel groups, see DocBuilder (at
+     * most "doc.groups" groups, by default the number of processors).
      */
     public void doc()
             throws XProjectException
     {
         ensureDistDir();
         String pipe = getHref(XProjectConstants.DOCER_STD, XProjectConstants.DOCER_OVERRIDE, "doc maker");
-        File src    = new File(myProject, "src/");
-        File dist   = new File(myProject, "dist/xqdoc/");
-        JavaProcess proc = initJavaProcess();
-        proc.setMainClass("com.xmlcalabash.drivers.Main");
-        proc.addArgument("-i");
-        proc.addArgument("source=" + MiscUtils.getUri(myDesc));
-        proc.addArgument(pipe);
-        proc.createJavaProcess().start();
+        if ( ! XProjectConstants.DOCER_STD.equals(pipe) || ! XProjectOptions.getBoolean("doc.incremental", true) ) {
+            runPipeline(pipe, myDesc, "doc maker", null, myPhaseListener);
+            return;
+        }
+        DocBuilder docs = new DocBuilder(myProject, myDesc);
+        int max = getMaxChildren("doc.groups");
+        long start = System.currentTimeMillis();
+        List<File> groups = docs.plan(max);
+        Metrics.since("doc.plan", start);
+        if ( docs.isUpToDate() ) {
+            Metrics.increment("doc.up-to-date");
+            if ( myPhaseListener == null ) {
+                myMsg.info("Documentation up to date (no module changed since the last run)");
+            }
+            else {
+                myMsg.debug("Documentation up to date (no module changed since the last run)");
+                myPhaseListener.phaseEnded(true);
+            }
+            return;
+        }
+        PhaseListener done = new DocsListener(docs, Math.max(1, groups.size()));
+        if ( groups.isEmpty() ) {
+            // modules removed only, just update the index
+            done.phaseEnded(true);
+        }
+        for ( int i = 0; i < groups.size(); ++i ) {
+            String name = "doc maker (group " + (i + 1) + "/" + groups.size() + ")";
+            runPipeline(docs.getPipeline(), groups.get(i), name, null, done, groups.size());
+        }
     }
 
     /**
@@ -194,12 +435,51 @@ public class XProject
             throws XProjectException
     {
         String pipe = getHref(std, override, name);
-        JavaProcess proc = initJavaProcess();
-        proc.setMainClass("com.xmlcalabash.drivers.Main");
-        proc.addArgument("-i");
-        proc.addArgument("source=" + MiscUtils.getUri(myDesc));
-        proc.addArgument(pipe);
-        proc.createJavaProcess().start();
+        runPipeline(pipe, myDesc, name, null, myPhaseListener);
+    }
+
+    /**
+     * The max number of test shards or doc groups, from the option, within the max set for a batch.
+     */
+    private int getMaxChildren(String option)
+    {
+        int max = XProjectOptions.getInt(option, Runtime.getRuntime().availableProcessors());
+        if ( myMaxChildren > 0 ) {
+            max = Math.min(max, myMaxChildren);
+        }
+        return max;
+    }
+
+    /**
+     * Run a pipeline on a source (usually project.xml), then call the success callback if any.
+     */
+    private void runPipeline(String pipe, File source, String name, Runnable success, PhaseListener done)
+            throws XProjectException
+    {
+        runPipeline(pipe, source, name, success, done, 1);
+    }
+
+    /**
+     * Run a pipeline, as one of "siblings" runs started at the same time (e.g. the test shards).
+     */
+    private void runPipeline(String pipe, File source, String name, Runnable success, PhaseListener done, int siblings)
+            throws XProjectException
+    {
+        if ( isInProcess() ) {
+            EngineRun run = initEngineRun(myMsg, myPluginDir, name, success, done, myExecution);
+            run.setPipeline(pipe);
+            run.setSource(source);
+            run.start();
+        }
+        else {
+            JavaProcess proc = initJavaProcess(myFactory, myMsg, myPluginDir, name, success, done, myExecution);
+            proc.setProfile(JvmProfile.getProfile(name, myProject, myDesc, siblings * myConcurrentProjects));
+            proc.setMainClass("com.xmlcalabash.drivers.Main");
+            proc.addArgument("-i");
+            proc.addArgument("source=" + MiscUtils.getUri(source));
+            proc.addArgument(pipe);
+            proc.start();
+        }
     }
 
     /**
@@ -209,14 +489,92 @@ public class XProject
             throws XProjectException
     {
         String style = getHref(std, override, name);
-        JavaProcess proc = initJavaProcess();
-        proc.setMainClass("net.sf.saxon.Transform");
-        proc.addArgument("-init:org.expath.pkg.saxon.PkgInitializer");
-        proc.addArgument("-xsl:" + style);
-        proc.addArgument("-s:" + MiscUtils.getUri(myDesc));
-        // TODO: Retrieve the revision number!
-        proc.addArgument("{" + XProjectConstants.NS_URI + "}revision=yo");
-        proc.createJavaProcess().start();
+        long start = System.currentTimeMillis();
+        String revision = RevisionProvider.getRevision(myProject);
+        Metrics.since("release.revision", start);
+        String param = "{" + XProjectConstants.NS_URI + "}revision";
+        if ( isInProcess() ) {
+            EngineRun run = initEngineRun(myMsg, myPluginDir, name, null, myPhaseListener, myExecution);
+            run.setStylesheet(style);
+            run.setSource(myDesc);
+            run.addOption(param, revision);
+            run.start();
+        }
+        else {
+            JavaProcess proc = initJavaProcess(name);
+            proc.setProfile(JvmProfile.getProfile(name, myProject, myDesc, myConcurrentProjects));
+            proc.setMainClass("net.sf.saxon.Transform");
+            proc.addArgument("-init:org.expath.xproject.oxygen.engine.IndexInitializer");
+            proc.addArgument("-xsl:" + style);
+            proc.addArgument("-s:" + MiscUtils.getUri(myDesc));
+            proc.addArgument(param + "=" + revision);
+            proc.start();
+        }
+    }
+
+    /**
+     * Prepare the engine, so the next runs do not pay for its startup.
+     * 
+     * In the exec mode "in-process", the engine is loaded (on a background
+     * thread).  In the mode "pool", a worker JVM is started if none is idle.
+     * Nothing is done in the mode "fork".
+     */
+    public static void warmUp(JavaProcessFactory factory, UserMessages messages, File plugin_dir)
+            throws XProjectException
+    {
+        XProjectOptions.ExecMode mode = XProjectOptions.getExecMode();
+        if ( mode == XProjectOptions.ExecMode.IN_PROCESS ) {
+            final File lib  = getPluginSubdir("lib/", plugin_dir);
+            final File repo = getPluginSubdir("repo/", plugin_dir);
+            final UserMessages msg = messages;
+            Thread t = new Thread(new Runnable() {
+                public void run() {
+                    try {
+                        EngineLoader.getEngine(lib, repo);
+                    }
+                    catch ( XProjectException ex ) {
+                        msg.debug("Error warming up the engine: " + ex.getMessage());
+                    }
+                }
+            }, "xproject-warm-up");
+            t.setDaemon(true);
+            t.start();
+        }
+        else if ( mode == XProjectOptions.ExecMode.POOL ) {
+            JavaProcess proc = initJavaProcess(factory, messages, plugin_dir, "warm-up", null, null, null);
+            // the pool of the builds with the default settings
+            proc.setProfile(JvmProfile.getProfile("builder", null, null));
+            proc.warmUp();
+        }
+    }
+
+    /**
+     * Whether to use the in-process engine rather than forking new processes.
+     */
+    private static boolean isInProcess()
+    {
+        return XProjectOptions.getExecMode() == XProjectOptions.ExecMode.IN_PROCESS;
+    }
+
+    /**
+     * Initialize a run of the in-process engine.
+     * 
+     * The engine is configured with the same lib/ and repo/ subdirs as the
+     * Java processes (see initJavaProcess()), and the run reports to the
+     * same kind of process listener.  If the run is part of an execution
+     * (see ProjectQueue), it is registered on it.
+     */
+    private static EngineRun initEngineRun(UserMessages msg, File plugin_dir, String name, Runnable success, PhaseListener done, Execution exec)
+            throws XProjectException
+    {
+        File lib  = getPluginSubdir("lib/", plugin_dir);
+        File repo = getPluginSubdir("repo/", plugin_dir);
+        ProcessListener listener = new XProjectProcListener(msg, name, success, done, exec);
+        long start = System.currentTimeMillis();
+        EngineRun run = new EngineRun(lib, repo, listener);
+        run.setExecution(exec);
+        Metrics.since("process.classpath", start);
+        return run;
     }
 
     /**
@@ -224,27 +582,32 @@ public class XProject
      * 
      * The class path is setup to include Saxon, Calabash and the EXPath
      * Packaging.  Technically, the class path is initialized by scanning the
-     * content of the subdir lib/ in the plugin dir.  The local repository is
-     * also setup correctly for Saxon and Calabash.  And our custom process
+     * content of the subdir lib/ in the plugin dir, plus the plugin classes.
+     * The local repository is also setup correctly for Saxon and Calabash:
+     * they resolve its components from the index (see IndexInitializer and
+     * IndexConfigurer).  And our custom process
      * listener is set on the new Java process, ready to be started (as soon
      * as the caller set the main class and its parameters).
      */
-    private JavaProcess initJavaProcess()
+    private JavaProcess initJavaProcess(String name)
             throws XProjectException
     {
-        return initJavaProcess(myFactory, myMsg, myPluginDir);
+        return initJavaProcess(myFactory, myMsg, myPluginDir, name, null, myPhaseListener, myExecution);
     }
 
-    private static JavaProcess initJavaProcess(JavaProcessFactory factory, UserMessages msg, File plugin_dir)
+    private static JavaProcess initJavaProcess(JavaProcessFactory factory, UserMessages msg, File plugin_dir, String name, Runnable success, PhaseListener done, Execution exec)
             throws XProjectException
     {
         JavaProcess proc = factory.initNewProcess();
         // the classpath
+        long start = System.currentTimeMillis();
         File lib = getPluginSubdir("lib/", plugin_dir);
-        for ( File jar : lib.listFiles() ) {
-            String path = jar.getAbsolutePath();
+        for ( String path : getClasspath(lib) ) {
             proc.addClasspathItem(path);
         }
+        // the plugin classes, for the initializer and configurer resolving from the index
+        proc.addClasspathItem(MiscUtils.getPluginLocation().getAbsolutePath());
+        Metrics.since("process.classpath", start);
         // the repo dir
         File repo = getPluginSubdir("repo/", plugin_dir);
         // $EXPATH_REPO
@@ -252,10 +615,12 @@ public class XProject
         // the java args
         proc.addSystemProperty("org.expath.pkg.saxon.repo", repo.getAbsolutePath());
         proc.addSystemProperty("org.expath.pkg.calabash.repo", repo.getAbsolutePath());
-        proc.addSystemProperty("com.xmlcalabash.xproc-configurer", "org.expath.pkg.calabash.PkgConfigurer");
+        proc.addSystemProperty("com.xmlcalabash.xproc-configurer", "org.expath.xproject.oxygen.engine.IndexConfigurer");
         // the listener
-        ProcessListener listener = new XProjectProcListener(msg);
+        XProjectProcListener listener = new XProjectProcListener(msg, name, success, done, exec);
+        listener.setProcess(proc);
         proc.setProcessListener(listener);
+        proc.setExecution(exec);
         return proc;
     }
 
@@ -266,78 +631,465 @@ public class XProject
      * - log the command when the process is started
      * - show an error dialog if the process could not start
      * - show a dialog with either "success" or "failure" when process ends
-     * - redirect stdout and stderr to an output panel at bottom of the screen
+     * - forward stdout and stderr to the view, line by line, while it runs
+     * - capture stdout and stderr, within a budget (see OutputCapture)
+     * - log how long the run took, from its creation to its end
+     * - call the success callback, if any, when the process ends with 0
+     * - notify the phase listener, if any, when the process ends
+     * - notify the execution, if any, when the process ends
+     * - run the process again with a larger heap if it ran out of memory
+     *   (see JvmProfile), and log where its GC log is
+     * - parse the output while it runs (see OutputParser), to show the
+     *   progress in the view (the steps, the XSpec scenarios), and to report
+     *   the errors and the failed scenarios right away
+     * 
+     * As Calabash exits with 0 even when the pipeline failed, a run which
+     * printed "Pipeline failed:" is a failure, whatever its exit code.  The
+     * parser can be switched off with the option "output.parse".
      * 
-     * TODO: Redirecting stdout and stderr is not implemented yet (they are
-     * logged, but not redirected to an output panel).
+     * Only the first "output.max-lines" lines are forwarded to the view, the
+     * next ones are only logged and captured.  The last ones are then shown
+     * when the process ends.  When there is a phase listener, it reports
+     * the success itself, so the success dialog is not shown.  When the
+     * execution has been cancelled, the failure dialog is not shown either.
+     * 
+     * Package-visibility, for the benchmarks (see bench/).
      */
-    private static class XProjectProcListener
+    static class XProjectProcListener
             extends ProcessListener
     {
-        public XProjectProcListener(UserMessages messages) {
+        public XProjectProcListener(UserMessages messages, String name, Runnable success, PhaseListener done, Execution exec) {
             myMsg = messages;
-            myStdOut = new StringBuilder();
-            myStdErr = new StringBuilder();
-        }
-
-        public String getStdOut() {
-            return myStdOut.toString();
+            myName = name;
+            // e.g. "tester" for "tester (shard 1/4)"
+            myMetric = name.split(" \\(")[0];
+            mySuccess = success;
+            myDone = done;
+            myExecution = exec;
+            myMode = XProjectOptions.getExecMode();
+            myStart = System.currentTimeMillis();
+            myOutput = new OutputCapture(name);
+            myMaxForwarded = XProjectOptions.getInt("output.max-lines", 1000);
+            myQuiet = messages.quiet();
+            myProgress = new Progress();
+            myParser = XProjectOptions.getBoolean("output.parse", true) ? new OutputParser(myProgress) : null;
         }
 
-        public String getStdErr() {
-            return myStdErr.toString();
+        /**
+         * Set the Java process, to retry it if it runs out of memory.
+         */
+        public void setProcess(JavaProcess process) {
+            myProcess = process;
         }
 
         @Override
         public void newErrorLine(String line) {
-            LOG.debug("STDERR: " + line);
-            myStdErr.append(line);
-            myStdErr.append("\n");
+            long start = System.nanoTime();
+            checkMemory(line);
+            myOutput.add(line, true);
+            forward("STDERR: " + line);
+            if ( myParser != null ) {
+                myParser.parse(line, true);
+            }
+            myOutputTime.addAndGet(System.nanoTime() - start);
         }
 
         @Override
         public void newOutputLine(String line) {
-            LOG.debug("STDOUT: " + line);
-            myStdOut.append(line);
-            myStdOut.append("\n");
+            long start = System.nanoTime();
+            checkMemory(line);
+            myOutput.add(line, false);
+            forward("STDOUT: " + line);
+            if ( myParser != null ) {
+                myParser.parse(line, false);
+            }
+            myOutputTime.addAndGet(System.nanoTime() - start);
         }
 
         @Override
         public void processCouldNotStart(String msg) {
-            myMsg.error("Process could not start: " + msg);
+            myOutput.close();
+            myMsg.progressEnded(myName);
+            Metrics.increment("run." + myMetric + ".not-started");
+            if ( isCancelled() ) {
+                myMsg.debug("The " + myName + " has been cancelled");
+            }
+            else {
+                myMsg.error("Process could not start: " + msg);
+            }
+            if ( myDone != null ) {
+                myDone.phaseEnded(false);
+            }
+            if ( myExecution != null ) {
+                myExecution.processEnded();
+            }
         }
 
         @Override
         public void processEnded(int code) {
-            myMsg.debug("STDOUT -----------------------------------");
-            myMsg.debug(myStdOut.toString());
-            myMsg.debug("STDERR -----------------------------------");
-            myMsg.debug(myStdErr.toString());
-            myMsg.debug("end-of-outputs ---------------------------");
-            // check the result code
-            // TODO: It seems Calabash returns always 0?!?  Even with p:error...?!?
-            if ( code == 0 ) {
-                myMsg.info("Build succesful");
+            if ( code != 0 && myOutOfMemory && retry() ) {
+                return;
+            }
+            myOutput.close();
+            myMsg.progressEnded(myName);
+            long time = Metrics.since("run." + myMetric, myStart);
+            myMsg.debug("The " + myName + " took " + time + " ms (exec mode: " + myMode + ")");
+            long lines = myOutput.getTotalLines();
+            Metrics.record("process.output", myOutputTime.get() / 1000000);
+            Metrics.add("process.output.lines", lines);
+            // Calabash exits with 0 even when the pipeline failed
+            String failure = myProgress.failure;
+            boolean success = code == 0 && failure == null;
+            if ( success ) {
+                // the full output is only kept for the failures
+                myOutput.discard();
+            }
+            JvmProfile profile = myProcess == null ? null : myProcess.getProfile();
+            if ( profile != null ) {
+                profile.runEnded(success);
+                if ( profile.getGcLog() != null ) {
+                    myMsg.debug("GC log: " + profile.getGcLog());
+                }
+            }
+            Metrics.increment("run." + myMetric + (success ? ".success" : ".failure"));
+            if ( lines > myMaxForwarded ) {
+                myMsg.debug("Output truncated, last lines:");
+                myMsg.debug(myOutput.getTail(TAIL_LINES));
+            }
+            myMsg.debug("Output: " + myOutput.getSummary());
+            if ( myParser != null ) {
+                myMsg.debug("Progress: " + myProgress);
+            }
+            if ( success ) {
+                if ( mySuccess != null ) {
+                    mySuccess.run();
+                }
+                if ( myDone == null ) {
+                    myMsg.info("Build succesful");
+                }
+                else {
+                    myMsg.debug("The " + myName + " succeeded");
+                }
+            }
+            else if ( isCancelled() ) {
+                myMsg.debug("The " + myName + " has been cancelled (code: " + code + ")");
+            }
+            else if ( code == 0 ) {
+                myMsg.error("Build failure: " + failure + "\n(please see oXygen logs)\n\n" + myOutput.getTail(TAIL_LINES));
             }
             else {
-                myMsg.error("Build failure: " + code + "\n(please see oXygen logs)");
+                myMsg.error("Build failure: " + code + "\n(please see oXygen logs)\n\n" + myOutput.getTail(TAIL_LINES));
+            }
+            if ( myDone != null ) {
+                myDone.phaseEnded(success);
+            }
+            if ( myExecution != null ) {
+                myExecution.processEnded();
             }
         }
 
         @Override
         public void processStarted(String name, String command) {
+            Metrics.since("process.start", myStart);
             LOG.debug("Process started: " + name + "\n" + command);
+            if ( myParser != null ) {
+                myMsg.progress(myName, myProgress);
+            }
+        }
+
+        private boolean isCancelled() {
+            return myExecution != null && myExecution.isCancelled();
+        }
+
+        private void checkMemory(String line) {
+            if ( line.indexOf("OutOfMemoryError") >= 0 ) {
+                myOutOfMemory = true;
+            }
+        }
+
+        /**
+         * Run the process again with a larger heap, return false if it cannot.
+         */
+        private boolean retry() {
+            if ( myProcess == null || isCancelled() ) {
+                return false;
+            }
+            int heap = myProcess.getProfile() == null ? 0 : myProcess.getProfile().getHeap();
+            XProjectProcListener listener = new XProjectProcListener(myMsg, myName, mySuccess, myDone, myExecution);
+            listener.setProcess(myProcess);
+            try {
+                if ( ! myProcess.retry(listener) ) {
+                    return false;
+                }
+            }
+            catch ( XProjectException ex ) {
+                myMsg.debug("Error retrying the " + myName + ": " + ex.getMessage());
+                return false;
+            }
+            myOutput.close();
+            Metrics.increment("run." + myMetric + ".out-of-memory");
+            myMsg.debug("The " + myName + " ran out of memory with a heap of " + heap
+                    + " MB, run it again with " + myProcess.getProfile().getHeap() + " MB");
+            // the new run has been registered on the execution
+            if ( myExecution != null ) {
+                myExecution.processEnded();
+            }
+            return true;
         }
 
+        /**
+         * Forward a line to the view, or only log it if over the budget.
+         */
+        private void forward(String line) {
+            if ( myForwarded.incrementAndGet() <= myMaxForwarded ) {
+                myMsg.debug(line);
+            }
+            else {
+                LOG.debug(line);
+            }
+        }
+
+        /**
+         * The progress of the run, updated by the output parser.
+         *
+         * Its string value is rendered by the view, on its own timer.  The
+         * errors are reported right away, at the error level, but without
+         * dialog box (and only the first ones, for the errors which do not
+         * fail the run by themselves).
+         */
+        private class Progress
+                implements OutputParser.Listener
+        {
+            public void event(OutputParser.Type type, String text) {
+                switch ( type ) {
+                    case STEP_STARTED:
+                        mySteps.incrementAndGet();
+                        myStep = text;
+                        break;
+                    case ERROR:
+                        if ( myErrors.incrementAndGet() <= TAIL_LINES ) {
+                            myQuiet.error("The " + myName + " reported an error: " + text);
+                        }
+                        break;
+                    case FAILURE:
+                        if ( failure == null ) {
+                            failure = text;
+                        }
+                        myQuiet.error("The " + myName + " failed: " + text);
+                        break;
+                    case SCENARIO:
+                        myScenarios.incrementAndGet();
+                        break;
+                    case SCENARIO_PENDING:
+                        myScenarios.incrementAndGet();
+                        myPending.incrementAndGet();
+                        break;
+                    case SCENARIO_FAILED:
+                        myFailed.incrementAndGet();
+                        myQuiet.error("Scenario failed: " + text);
+                        break;
+                    default:
+                        // TESTS_STARTED, TEST_TOTALS and MESSAGE are only forwarded
+                }
+            }
+
+            @Override
+            public String toString() {
+                StringBuilder buf = new StringBuilder();
+                buf.append(mySteps).append(" steps");
+                if ( myStep != null ) {
+                    buf.append(" (").append(myStep).append(")");
+                }
+                if ( myScenarios.get() > 0 ) {
+                    buf.append(", ").append(myScenarios).append(" scenarios, ");
+                    buf.append(myFailed).append(" failed, ").append(myPending).append(" pending");
+                }
+                if ( myErrors.get() > 0 ) {
+                    buf.append(", ").append(myErrors).append(" errors");
+                }
+                return buf.toString();
+            }
+
+            /** The first failure reported, if any. */
+            public volatile String failure;
+            // written by the output threads (stdout and stderr), read by the view timer
+            private final AtomicInteger mySteps = new AtomicInteger();
+            private volatile String myStep;
+            private final AtomicInteger myErrors = new AtomicInteger();
+            private final AtomicInteger myScenarios = new AtomicInteger();
+            private final AtomicInteger myFailed = new AtomicInteger();
+            private final AtomicInteger myPending = new AtomicInteger();
+        }
+
+        /** The number of lines to show at the end, when truncated or failed. */
+        private static final int TAIL_LINES = 20;
+
         private final UserMessages  myMsg;
-        private final StringBuilder myStdOut;
-        private final StringBuilder myStdErr;
+        private final String        myName;
+        /** The name of the run in the metrics. */
+        private final String        myMetric;
+        private final Runnable      mySuccess;
+        private final PhaseListener myDone;
+        /** The execution the run is part of, if any. */
+        private final Execution     myExecution;
+        private final XProjectOptions.ExecMode myMode;
+        private final long          myStart;
+        private final OutputCapture myOutput;
+        private final int           myMaxForwarded;
+        private final AtomicInteger myForwarded = new AtomicInteger();
+        /** The time spent handling the output, in ns. */
+        private final AtomicLong    myOutputTime = new AtomicLong();
+        /** The Java process, if any, to retry it. */
+        private JavaProcess         myProcess;
+        /** Whether the process reported an OutOfMemoryError. */
+        private volatile boolean    myOutOfMemory;
+        /** The messages without dialog box, for the errors reported while running. */
+        private final UserMessages  myQuiet;
+        /** The progress, from the output. */
+        private final Progress      myProgress;
+        /** The output parser, if enabled. */
+        private final OutputParser  myParser;
+    }
+
+    /**
+     * Merge the shard reports when all the shards of a test run ended.
+     */
+    private class ShardsListener
+            implements PhaseListener
+    {
+        public ShardsListener(TestSharder sharder, int count, Runnable success) {
+            mySharder = sharder;
+            mySuccessAction = success;
+            myRemaining = count;
+            myStart = System.currentTimeMillis();
+        }
+
+        public synchronized void phaseEnded(boolean success) {
+            mySuccess &= success;
+            if ( --myRemaining > 0 ) {
+                return;
+            }
+            long time = Metrics.since("test.shards", myStart);
+            String where = "";
+            try {
+                File report = mySharder.merge();
+                forwardReport(report);
+                where = "\nReport: " + report;
+            }
+            catch ( XProjectException ex ) {
+                myMsg.error("Error merging the test shard reports: " + ex.getMessage(), ex);
+                mySuccess = false;
+            }
+            if ( mySuccess ) {
+                mySuccessAction.run();
+            }
+            if ( myPhaseListener != null ) {
+                myPhaseListener.phaseEnded(mySuccess);
+            }
+            else if ( mySuccess ) {
+                myMsg.info("Tests succesful, in " + time + " ms" + where);
+            }
+            else {
+                myMsg.error("Tests failure, in " + time + " ms" + where + "\n(please see oXygen logs)");
+            }
+        }
+
+        /**
+         * Forward the merged report to the view, as the output of the test pipeline was.
+         */
+        private void forwardReport(File report) {
+            int max = XProjectOptions.getInt("output.max-lines", 1000);
+            try {
+                BufferedReader in = new BufferedReader(new InputStreamReader(new FileInputStream(report), "UTF-8"));
+                try {
+                    String line;
+                    for ( int i = 0; (line = in.readLine()) != null; ++i ) {
+                        if ( i < max ) {
+                            myMsg.debug("STDOUT: " + line);
+                        }
+                        else {
+                            LOG.debug("STDOUT: " + line);
+                        }
+                    }
+                }
+                finally {
+                    in.close();
+                }
+            }
+            catch ( IOException ex ) {
+                LOG.warn("Error reading the merged test report: " + report, ex);
+            }
+        }
+
+        private final TestSharder mySharder;
+        private final Runnable mySuccessAction;
+        private final long myStart;
+        private int myRemaining;
+        private boolean mySuccess = true;
+    }
+
+    /**
+     * Merge the documentation of the groups when all the groups of a doc run ended.
+     */
+    private class DocsListener
+            implements PhaseListener
+    {
+        public DocsListener(DocBuilder docs, int count) {
+            myDocs = docs;
+            myRemaining = count;
+            myStart = System.currentTimeMillis();
+        }
+
+        public synchronized void phaseEnded(boolean success) {
+            mySuccess &= success;
+            if ( --myRemaining > 0 ) {
+                return;
+            }
+            long time = Metrics.since("doc.groups", myStart);
+            try {
+                mySuccess &= myDocs.merge();
+            }
+            catch ( XProjectException ex ) {
+                myMsg.error("Error merging the documentation: " + ex.getMessage(), ex);
+                mySuccess = false;
+            }
+            if ( myPhaseListener != null ) {
+                myPhaseListener.phaseEnded(mySuccess);
+            }
+            else if ( mySuccess ) {
+                myMsg.info("Documentation succesful, in " + time + " ms");
+            }
+            else {
+                myMsg.error("Documentation failure, in " + time + " ms\n(please see oXygen logs)");
+            }
+        }
+
+        private final DocBuilder myDocs;
+        private final long myStart;
+        private int myRemaining;
+        private boolean mySuccess = true;
+    }
+
+    /**
+     * The class path made of the JARs in lib/.
+     * 
+     * Sorted, so the class path is always the same (see CdsArchive).
+     */
+    static List<String> getClasspath(File lib)
+    {
+        File[] jars = lib.listFiles();
+        Arrays.sort(jars);
+        List<String> classpath = new ArrayList<String>(jars.length);
+        for ( File jar : jars ) {
+            classpath.add(jar.getAbsolutePath());
+        }
+        return classpath;
     }
 
     /**
      * TODO: Adapt javadoc from getSource()...
      */
-    private String getHref(String std, String override, String name)
+    String getHref(String std, String override, String name)
             throws XProjectException
     {
         // last bit of the msg, for logging
@@ -350,6 +1102,15 @@ public class XProject
         }
         else {
             LOG.debug("Project dir does not override '" + msg);
+            // the std component must be in the repository, whatever the exec mode
+            File repo = getPluginSubdir("repo/", myPluginDir);
+            File resolved = PackageRepository.getInstance(repo).resolve(std);
+            if ( resolved == null ) {
+                LOG.warn("The " + name + " is not in the package repository: '" + std + "', in '" + repo + "'");
+            }
+            else {
+                LOG.debug("The " + name + " resolves to '" + resolved + "'");
+            }
             return std;
         }
     }
@@ -379,6 +1140,16 @@ public class XProject
     private JavaProcessFactory myFactory;
     /** The java process factory. */
     private File myPluginDir;
+    /** The listener notified when each phase ends, if any. */
+    private PhaseListener myPhaseListener;
+    /** The execution the processes are registered on, if any. */
+    private Execution myExecution;
+    /** Whether to only run the test suites affected by the changes. */
+    private boolean myAffectedOnly;
+    /** The number of projects run at the same time (in a batch). */
+    private int myConcurrentProjects = 1;
+    /** The max number of test shards or doc groups, if positive. */
+    private int myMaxChildren;
 
     /** The logger for this class. */
     private static final Logger LOG = Logger.getLogger(XProjectExtension.class);
@@ -28,6 +28,7 @@ public class XProjectConstants
     }
 
     public static final String NS_URI            = "http://expath.org/ns/project";
+    public static final String NS_OXYGEN         = "http://expath.org/ns/project/oxygen";
     public static final String PRIVATE_DIR       = "xproject";
     public static final String DESCRIPTOR        = "project.xml";
     public static final String SETUPER_STD       = "http://expath.org/ns/project/setup.xproc";
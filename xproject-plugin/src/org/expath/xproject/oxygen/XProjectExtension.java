@@ -11,7 +11,6 @@ package org.expath.xproject.oxygen;
 
 import java.awt.event.ActionEvent;
 import java.io.File;
-import java.io.FilenameFilter;
 import java.net.MalformedURLException;
 import java.net.URI;
 import java.net.URISyntaxException;
@@ -24,8 +23,7 @@ import javax.swing.JButton;
 import javax.swing.JComponent;
 import javax.swing.JFileChooser;
 import javax.swing.JFrame;
-import javax.swing.JScrollPane;
-import javax.swing.JTextArea;
+import javax.swing.JOptionPane;
 import javax.swing.border.EmptyBorder;
 import org.apache.log4j.Logger;
 import org.expath.xproject.oxygen.XProjectConstants.ProjectPhase;
@@ -55,12 +53,21 @@ public class XProjectExtension
         myWorkspace = ws;
         // the way to give user some feedback
         myMsg = new UserMessages(ws, LOG);
+        // the java process factory (which owns the worker pools, if any)
+        myFactory = new JavaProcessFactory(ws, myMsg);
         // the install plugin dir and its icons/ subdir (TODO: check for errors?)
         String install_str = myWorkspace.getUtilAccess().expandEditorVariables(EditorVariables.OXYGEN_INSTALL_DIR, null);
         File install = new File(install_str);
         File plugins = new File(install, "plugins/");
         myPluginDir  = new File(plugins, "xproject/");
         myIconsDir   = new File(myPluginDir, "icons/");
+        // install the bundled packages in repo/, in the background
+        new RepoBootstrapper(myPluginDir, myMsg).start();
+        // the watch mode, to run phases when project files are saved
+        myWatch = new WatchMode(ws, myMsg, myFactory, myPluginDir, myProjects);
+        if ( XProjectOptions.getBoolean("watch", false) ) {
+            myWatch.setEnabled(true);
+        }
         // the toolbar customizer, to inject the XProject toolbar
         ToolbarComponentsCustomizer bar_cust = new MyToolbarCustomizer();
         ws.addToolbarComponentsCustomizer(bar_cust);
@@ -72,7 +79,8 @@ public class XProjectExtension
     @Override
     public boolean applicationClosing()
     {
-        // nothing
+        // kill the worker JVMs, if any
+        myFactory.shutdown();
         return true;
     }
 
@@ -98,7 +106,7 @@ public class XProjectExtension
         return new File(uri);
     }
 
-    private XProject getCurrentXProject()
+    private File getCurrentProjectDir()
             throws XProjectException
     {
         File file = getCurrentEditedFile();
@@ -106,10 +114,12 @@ public class XProjectExtension
         if ( project == null ) {
             throw new XProjectException("The edited file is not part of an EXPath project.");
         }
-        JavaProcessFactory factory = new JavaProcessFactory(myWorkspace, myMsg);
-        return new XProject(project, myMsg, factory, myPluginDir);
+        return project;
     }
 
+    /**
+     * Return the project dir the file belongs to, or null (see ProjectIndex).
+     */
     private File getProjectDir(File file)
     {
         if ( ! file.exists() ) {
@@ -121,37 +131,27 @@ public class XProjectExtension
             myMsg.debug("PARENT NULL");
             return null;
         }
-        else if ( isProjectDir(parent) ) {
-            myMsg.debug("PARENT is project! " + parent);
-            return parent;
-        }
-        else {
-            myMsg.debug("PARENT recurse on " + parent);
-            return getProjectDir(parent);
-        }
-    }
-
-    private boolean isProjectDir(File dir)
-    {
-        File[] children = dir.listFiles(new XProjectFilter());
-        if ( children == null ) {
-            // TODO: Should probably throw an exception instead.
-            myMsg.error("File is not a dir: " + dir);
-            return false;
-        }
-        return children.length > 0;
+        File project = myProjects.getProjectDir(parent);
+        myMsg.debug("Project dir of " + file + ": " + project);
+        return project;
     }
 
     /** The oXygen workspace object. */
     private StandalonePluginWorkspace myWorkspace;
     /** The way to display dialogs and to log messages. */
     private UserMessages myMsg;
+    /** The factory for Java processes, for all projects. */
+    private JavaProcessFactory myFactory;
+    /** The index of the project dirs, to find the project of the edited file. */
+    private final ProjectIndex myProjects = new ProjectIndex();
     /** The install dir for the XProject plugin (like [oxygen]/plugins/xproject/). */
     private File myPluginDir;
     /** The icons dir for the XProject plugin (like [myPluginDir]/icons/). */
     private File myIconsDir;
     /** Where to write messages in the view. */
-    private JTextArea myView;
+    private LogView myView;
+    /** The watch mode, to run phases when project files are saved. */
+    private WatchMode myWatch;
 
     /** The logger object. */
     private static final Logger LOG = Logger.getLogger(XProjectExtension.class);
@@ -193,8 +193,7 @@ public class XProjectExtension
             File dir = chooser.getSelectedFile();
             File desc = null;
             try {
-                JavaProcessFactory factory = new JavaProcessFactory(myWorkspace, myMsg);
-                XProject xproject = XProject.setup(dir, myMsg, factory, myPluginDir);
+                XProject xproject = XProject.setup(dir, myMsg, myFactory, myPluginDir);
                 desc = xproject.getDescriptor();
                 myWorkspace.open(desc.toURI().toURL());
             }
@@ -227,19 +226,15 @@ public class XProjectExtension
             }
         }
 
+        /**
+         * Queue the phase on the project, see ProjectQueue.
+         */
         protected void doAction(ActionEvent event)
         {
             try {
-                XProject prj = getCurrentXProject();
-                switch ( myPhase ) {
-                    case BUILD:   prj.build();   break;
-                    case TEST:    prj.test();    break;
-                    case DOC:     prj.doc();     break;
-                    case DEPLOY:  prj.deploy();  break;
-                    case RELEASE: prj.release(); break;
-                    default:
-                        throw new RuntimeException("Invalid state, cannot happen: " + myPhase);
-                }
+                File project = getCurrentProjectDir();
+                XProject prj = new XProject(project, myMsg, myFactory, myPluginDir);
+                ProjectQueue.getInstance(project).submit(prj, myPhase, myMsg);
             }
             catch ( XProjectException ex ) {
                 myMsg.error(ex.getMessage(), ex);
@@ -250,18 +245,132 @@ public class XProjectExtension
         private ProjectPhase myPhase;
     }
 
-    private static class XProjectFilter
-            implements FilenameFilter
+    /**
+     * Cancel the running and queued phases on the current project, see ProjectQueue.
+     */
+    private class StopAction
+            extends AbstractAction
+    {
+        public StopAction()
+        {
+            super("Stop");
+        }
+
+        @Override
+        public void actionPerformed(ActionEvent event)
+        {
+            try {
+                File project = getCurrentProjectDir();
+                ProjectQueue.getInstance(project).cancelAll();
+            }
+            catch ( XProjectException ex ) {
+                myMsg.error(ex.getMessage(), ex);
+            }
+            catch ( Throwable ex ) {
+                myMsg.error("Unexpected runtime error: " + ex, ex);
+                throw new RuntimeException(ex);
+            }
+        }
+    }
+
+    /**
+     * Switch the watch mode on and off, see WatchMode.
+     * 
+     * The name of the action (so the text of the button) shows the mode.
+     */
+    private class WatchAction
+            extends AbstractAction
+    {
+        public WatchAction()
+        {
+            super(myWatch.isEnabled() ? "Unwatch" : "Watch");
+        }
+
+        @Override
+        public void actionPerformed(ActionEvent event)
+        {
+            try {
+                boolean enabled = ! myWatch.isEnabled();
+                myWatch.setEnabled(enabled);
+                putValue(NAME, enabled ? "Unwatch" : "Watch");
+            }
+            catch ( Throwable ex ) {
+                myMsg.error("Unexpected runtime error: " + ex, ex);
+                throw new RuntimeException(ex);
+            }
+        }
+    }
+
+    /**
+     * Run all the phases on the current project, see PhaseScheduler.
+     */
+    private class AllPhasesAction
+            extends AbstractAction
     {
+        public AllPhasesAction()
+        {
+            super("All");
+        }
+
         @Override
-        public boolean accept(File dir, String name)
+        public void actionPerformed(ActionEvent event)
         {
-            if ( "xproject".equals(name) ) {
-                File proj = new File(dir, name);
-                // TODO: And probably see if it contains a file "project.xml".
-                return proj.exists() && proj.isDirectory();
+            try {
+                File file = getCurrentEditedFile();
+                File project = getProjectDir(file);
+                if ( project == null ) {
+                    throw new XProjectException("The edited file is not part of an EXPath project.");
+                }
+                PhaseScheduler scheduler = new PhaseScheduler(project, myMsg, myFactory, myPluginDir);
+                scheduler.run(PhaseScheduler.ALL);
+            }
+            catch ( XProjectException ex ) {
+                myMsg.error(ex.getMessage(), ex);
+            }
+            catch ( Throwable ex ) {
+                myMsg.error("Unexpected runtime error: " + ex, ex);
+                throw new RuntimeException(ex);
+            }
+        }
+    }
+
+    /**
+     * Run a phase on all the projects under a root dir, see BatchRunner.
+     */
+    private class BatchAction
+            extends AbstractAction
+    {
+        public BatchAction()
+        {
+            super("Batch");
+        }
+
+        @Override
+        public void actionPerformed(ActionEvent event)
+        {
+            try {
+                JFrame frame = (JFrame) myWorkspace.getParentFrame();
+                JFileChooser chooser = new JFileChooser();
+                chooser.setFileSelectionMode(JFileChooser.DIRECTORIES_ONLY);
+                if ( chooser.showDialog(frame, "Select root dir") != JFileChooser.APPROVE_OPTION ) {
+                    return;
+                }
+                ProjectPhase[] phases = {
+                    ProjectPhase.BUILD, ProjectPhase.TEST, ProjectPhase.DOC, ProjectPhase.RELEASE
+                };
+                Object phase = JOptionPane.showInputDialog(
+                        frame, "Phase to run on all projects:", "XProject batch",
+                        JOptionPane.QUESTION_MESSAGE, null, phases, ProjectPhase.BUILD);
+                if ( phase == null ) {
+                    return;
+                }
+                File root = chooser.getSelectedFile();
+                new BatchRunner(root, (ProjectPhase) phase, myMsg, myFactory, myPluginDir).start();
+            }
+            catch ( Throwable ex ) {
+                myMsg.error("Unexpected runtime error: " + ex, ex);
+                throw new RuntimeException(ex);
             }
-            return false;
         }
     }
 
@@ -279,6 +388,10 @@ public class XProjectExtension
                 Action test_action    = new ActionOnExistingProject(ProjectPhase.TEST);
                 Action doc_action     = new ActionOnExistingProject(ProjectPhase.DOC);
                 Action release_action = new ActionOnExistingProject(ProjectPhase.RELEASE);
+                Action all_action     = new AllPhasesAction();
+                Action batch_action   = new BatchAction();
+                Action stop_action    = new StopAction();
+                Action watch_action   = new WatchAction();
                 try {
                     // the buttons
                     JButton create  = configAction(create_action, "Create new project", "create-project.png");
@@ -286,23 +399,31 @@ public class XProjectExtension
                     JButton test    = configAction(test_action, "Test project", "test-project.png");
                     JButton doc     = configAction(doc_action, "Generate project doc", "doc-project.png");
                     JButton release = configAction(release_action, "Build release file for the project", "release-project.png");
+                    JButton all     = configAction(all_action, "Build, test, generate doc and build release file", null);
+                    JButton batch   = configAction(batch_action, "Run a phase on all projects under a dir", null);
+                    JButton stop    = configAction(stop_action, "Stop the running and queued phases on the project", null);
+                    JButton watch   = configAction(watch_action, "Run phases each time a project file is saved", null);
                     // add in toolbar
                     JComponent[] c = bar.getComponents();
                     if ( c == null ) {
-                        c = new JComponent[5];
+                        c = new JComponent[9];
                     }
                     else {
-                        JComponent[] tmp = new JComponent[c.length + 5];
+                        JComponent[] tmp = new JComponent[c.length + 9];
                         for ( int i = 0; i < c.length; ++i ) {
                             tmp[i] = c[i];
                         }
                         c = tmp;
                     }
-                    c[c.length - 5] = create;
-                    c[c.length - 4] = build;
-                    c[c.length - 3] = test;
-                    c[c.length - 2] = doc;
-                    c[c.length - 1] = release;
+                    c[c.length - 9] = create;
+                    c[c.length - 8] = build;
+                    c[c.length - 7] = test;
+                    c[c.length - 6] = doc;
+                    c[c.length - 5] = release;
+                    c[c.length - 4] = all;
+                    c[c.length - 3] = batch;
+                    c[c.length - 2] = stop;
+                    c[c.length - 1] = watch;
                     bar.setComponents(c);
                     // set title
                     bar.setTitle("XProject");
@@ -319,7 +440,8 @@ public class XProjectExtension
          * @param action The action to attach to the button, when clicked.
          * @param tip The text to use as a tooltip.
          * @param icon_file The icon to use for the button, as a filename
-         *      relative to myIconsDir.
+         *      relative to myIconsDir (if null, the button shows the
+         *      action name instead).
          */
         private JButton configAction(Action action, String tip, String icon_file)
                 throws XProjectException
@@ -330,6 +452,9 @@ public class XProjectExtension
             JButton button = new JButton(action);
             button.setToolTipText(tip);
             button.setBorder(new EmptyBorder(0, 5, 0, 5));
+            if ( icon_file == null ) {
+                return button;
+            }
             File img = new File(myIconsDir, icon_file);
             if ( ! img.exists() ) {
                 throw new XProjectException("Icon file does not exist: " + img);
@@ -348,8 +473,8 @@ public class XProjectExtension
         {
             String id = info.getViewID();
             if ( "xproject-view".equals(id) ) {
-                myView = new JTextArea("XProject log:");
-                info.setComponent(new JScrollPane(myView));
+                myView = new LogView();
+                info.setComponent(myView);
                 info.setTitle("XProject");
                 // TODO: Set an icon...
                 // info.setIcon(Icons.getIcon(...));
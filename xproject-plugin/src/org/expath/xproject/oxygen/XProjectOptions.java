@@ -0,0 +1,163 @@
+/****************************************************************************/
+/*  File:       XProjectOptions.java                                        */
+/*  Author:     F. Georges - H2O Consulting                                 */
+/*  Date:       2026-10-18                                                  */
+/*  Tags:                                                                   */
+/*      Copyright (c) 2026 Florent Georges (see end of file.)               */
+/* ------------------------------------------------------------------------ */
+
+
+package org.expath.xproject.oxygen;
+
+import org.apache.log4j.Logger;
+
+/**
+ * The options of the plugin.
+ * 
+ * The options are read from Java system properties, all prefixed with
+ * "org.expath.xproject.oxygen." (e.g. "org.expath.xproject.oxygen.exec").
+ * They can be set in the oXygen startup script, the same way as the EXPath
+ * repository is set for Saxon and Calabash.  Each option has a default value
+ * used when the property is not set (or when its value is not valid).
+ *
+ * @author Florent Georges
+ * @date   2026-10-18
+ */
+public class XProjectOptions
+{
+    /**
+     * The way Calabash and Saxon are executed.
+     */
+    public static enum ExecMode
+    {
+        /** A new Java process for each invocation (the default). */
+        FORK,
+        /** A warm engine, kept within oXygen in an isolated class loader. */
+        IN_PROCESS,
+        /** A pool of long-lived worker JVMs, see WorkerPool. */
+        POOL
+    }
+
+    /** The prefix of all the system properties. */
+    public static final String PREFIX = "org.expath.xproject.oxygen.";
+
+    /**
+     * The execution mode, property "exec", either "fork", "in-process" or "pool".
+     */
+    public static ExecMode getExecMode()
+    {
+        String mode = getString("exec", "fork");
+        if ( "fork".equals(mode) ) {
+            return ExecMode.FORK;
+        }
+        else if ( "in-process".equals(mode) ) {
+            return ExecMode.IN_PROCESS;
+        }
+        else if ( "pool".equals(mode) ) {
+            return ExecMode.POOL;
+        }
+        else {
+            LOG.warn("Invalid value for the option '" + PREFIX + "exec', using 'fork': " + mode);
+            return ExecMode.FORK;
+        }
+    }
+
+    /**
+     * The max number of compiled stylesheets kept by the in-process engine,
+     * property "cache.stylesheets" (default 16).
+     */
+    public static int getStylesheetCacheSize()
+    {
+        return getInt("cache.stylesheets", 16);
+    }
+
+    /**
+     * The max number of compiled pipelines kept by the in-process engine,
+     * property "cache.pipelines" (default 16).
+     */
+    public static int getPipelineCacheSize()
+    {
+        return getInt("cache.pipelines", 16);
+    }
+
+    /**
+     * Whether to skip the build when its inputs did not change since the last
+     * successful build, property "build.incremental" (default true).
+     */
+    public static boolean isIncrementalBuild()
+    {
+        return getBoolean("build.incremental", true);
+    }
+
+    static String getString(String name, String dflt)
+    {
+        String value = System.getProperty(PREFIX + name);
+        if ( value == null ) {
+            return dflt;
+        }
+        return value.trim();
+    }
+
+    static boolean getBoolean(String name, boolean dflt)
+    {
+        String value = getString(name, null);
+        if ( value == null ) {
+            return dflt;
+        }
+        return "true".equals(value) || "yes".equals(value);
+    }
+
+    static int getInt(String name, int dflt)
+    {
+        String value = getString(name, null);
+        if ( value == null ) {
+            return dflt;
+        }
+        try {
+            return Integer.parseInt(value);
+        }
+        catch ( NumberFormatException ex ) {
+            LOG.warn("Invalid value for the option '" + PREFIX + name + "', using " + dflt + ": " + value);
+            return dflt;
+        }
+    }
+
+    static long getLong(String name, long dflt)
+    {
+        String value = getString(name, null);
+        if ( value == null ) {
+            return dflt;
+        }
+        try {
+            return Long.parseLong(value);
+        }
+        catch ( NumberFormatException ex ) {
+            LOG.warn("Invalid value for the option '" + PREFIX + name + "', using " + dflt + ": " + value);
+            return dflt;
+        }
+    }
+
+    /** The logger for this class. */
+    private static final Logger LOG = Logger.getLogger(XProjectOptions.class);
+}
+
+
+/* ------------------------------------------------------------------------ */
+/*  DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS COMMENT.               */
+/*                                                                          */
+/*  The contents of this file are subject to the Mozilla Public License     */
+/*  Version 1.0 (the "License"); you may not use this file except in        */
+/*  compliance with the License. You may obtain a copy of the License at    */
+/*  http://www.mozilla.org/MPL/.                                            */
+/*                                                                          */
+/*  Software distributed under the License is distributed on an "AS IS"     */
+/*  basis, WITHOUT WARRANTY OF ANY KIND, either express or implied.  See    */
+/*  the License for the specific language governing rights and limitations  */
+/*  under the License.                                                      */
+/*                                                                          */
+/*  The Original Code is: all this file.                                    */
+/*                                                                          */
+/*  The Initial Developer of the Original Code is Florent Georges.          */
+/*                                                                          */
+/*  Contributor(s): none.                                                   */
+/* ------------------------------------------------------------------------ */
@@ -0,0 +1,527 @@
+/****************************************************************************/
+/*  File:       CalabashEngine.java                                         */
+/*  Author:     F. Georges - H2O Consulting                                 */
+/*  Date:       2026-10-18                                                  */
+/*  Tags:                                                                   */
+/*      Copyright (c) 2026 Florent Georges (see end of file.)               */
+/* ------------------------------------------------------------------------ */
+
+
+package org.expath.xproject.oxygen.engine;
+
+import com.xmlcalabash.core.XProcConfiguration;
+import com.xmlcalabash.core.XProcException;
+import com.xmlcalabash.core.XProcMessageListener;
+import com.xmlcalabash.core.XProcRunnable;
+import com.xmlcalabash.core.XProcRuntime;
+import com.xmlcalabash.io.ReadablePipe;
+import com.xmlcalabash.model.DeclareStep;
+import com.xmlcalabash.model.RuntimeValue;
+import com.xmlcalabash.runtime.XPipeline;
+import com.xmlcalabash.runtime.XRootStep;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URI;
+import java.util.Map;
+import javax.xml.transform.ErrorListener;
+import javax.xml.transform.Source;
+import javax.xml.transform.SourceLocator;
+import javax.xml.transform.TransformerException;
+import javax.xml.transform.stream.StreamSource;
+import net.sf.saxon.s9api.MessageListener;
+import net.sf.saxon.s9api.Processor;
+import net.sf.saxon.s9api.QName;
+import net.sf.saxon.s9api.SaxonApiException;
+import net.sf.saxon.s9api.XdmAtomicValue;
+import net.sf.saxon.s9api.XdmNode;
+import net.sf.saxon.s9api.XsltCompiler;
+import net.sf.saxon.s9api.XsltExecutable;
+import net.sf.saxon.s9api.XsltTransformer;
+import org.expath.pkg.calabash.PkgConfigurer;
+import org.expath.pkg.repo.FileSystemStorage;
+import org.expath.pkg.repo.PackageException;
+import org.expath.pkg.repo.Storage;
+import org.expath.pkg.repo.URISpace;
+import org.expath.pkg.saxon.ConfigHelper;
+import org.expath.pkg.saxon.SaxonRepository;
+import org.expath.xproject.oxygen.EmptyDestination;
+import org.expath.xproject.oxygen.Engine;
+import org.expath.xproject.oxygen.LruCache;
+import org.expath.xproject.oxygen.MiscUtils;
+import org.expath.xproject.oxygen.PackageRepository;
+import org.expath.xproject.oxygen.XProjectOptions;
+import org.xml.sax.InputSource;
+import ro.sync.exml.workspace.api.process.ProcessListener;
+
+/**
+ * The in-process engine, using Saxon and Calabash APIs directly.
+ * 
+ * This class must be loaded by the isolated class loader created by
+ * EngineLoader, never by the plugin class loader (it would then see oXygen's
+ * own version of Saxon).  The Saxon processor and the Calabash runtime are
+ * configured once with the EXPath repository, then reused for each run (each
+ * compiled pipeline has its own copy of the runtime, sharing its
+ * configuration).  Runs are serialized.
+ * 
+ * Compiled stylesheets and pipelines are cached, keyed by their href (so the
+ * standard XProject components are shared by all projects).  A cached
+ * component is compiled again if the file it has been resolved to changed
+ * (modification time or size), or if the descriptor of the package it comes
+ * from changed (see PackageRepository, shared with the plugin).  Only the
+ * main module is checked, not the modules it imports or includes.  For
+ * pipelines, the cache contains the compiled model (the p:declare-step)
+ * with the runtime which compiled it, as the model keeps a reference to it.
+ * Each run instantiates a fresh XPipeline from the model, on the same
+ * runtime.  The runtime is closed when the pipeline leaves the cache, and a
+ * pipeline which failed is dropped (its runtime is not reused).  As all the
+ * runtimes share the same Saxon processor, and each of them registers its
+ * own XProc extension functions on it (e.g. p:value-available(), bound to
+ * the runtime), the functions of the runtime are registered again before
+ * each run.
+ * 
+ * When the set of packages in the repository changes, the repository, the
+ * processor and the runtime are configured again, and the caches cleared.
+ *
+ * @author Florent Georges
+ * @date   2026-10-18
+ */
+public class CalabashEngine
+        implements Engine
+{
+    /**
+     * Called by reflection from EngineLoader.
+     */
+    public CalabashEngine(File repo)
+            throws PackageException
+    {
+        myDir = repo;
+        myIndex = PackageRepository.getInstance(repo);
+        // the caches of compiled stylesheets and pipelines
+        myStylesheets = new LruCache<String, XsltExecutable>(XProjectOptions.getStylesheetCacheSize());
+        myPipelines = new LruCache<String, CompiledPipeline>(XProjectOptions.getPipelineCacheSize()) {
+            @Override
+            protected void dropped(CompiledPipeline pipeline) {
+                pipeline.runtime.close();
+            }
+        };
+        configure();
+    }
+
+    /**
+     * Configure the repository, the processor and the runtime.
+     */
+    private void configure()
+            throws PackageException
+    {
+        myGeneration = myIndex.getGeneration();
+        Storage storage = new FileSystemStorage(myDir);
+        myRepo = new SaxonRepository(storage);
+        // the Saxon processor, for stylesheets
+        mySaxon = new Processor(false);
+        ConfigHelper helper = new ConfigHelper(myRepo);
+        helper.config(mySaxon.getUnderlyingConfiguration());
+        // the Calabash runtime, for pipelines
+        XProcConfiguration config = new XProcConfiguration(new Processor(false));
+        myCalabash = new XProcRuntime(config);
+        PkgConfigurer configurer = new PkgConfigurer(myCalabash, myRepo.getUnderlyingRepo());
+        myCalabash.setConfigurer(configurer);
+    }
+
+    /**
+     * Configure again if the set of packages changed since the last time.
+     * 
+     * The compiled components are dropped, as they belong to the previous
+     * processor or runtime.
+     */
+    private void refresh(ProcessListener listener)
+            throws PackageException
+    {
+        if ( myIndex.getGeneration() != myGeneration ) {
+            configure();
+            myStylesheets.clear();
+            myPipelines.clear();
+            listener.newOutputLine("Repository changed, engine configured again: " + myDir);
+        }
+    }
+
+    @Override
+    public synchronized int applyPipeline(String pipe, File source, Map<String, String> options, ProcessListener listener)
+    {
+        ClassLoader context = enter();
+        boolean success = false;
+        try {
+            refresh(listener);
+            CompiledPipeline compiled = getPipeline(pipe, listener);
+            XProcRuntime calabash = compiled.runtime;
+            // the last runtime created (or reset) owns the functions
+            calabash.resetExtensionFunctions();
+            calabash.setMessageListener(new CalabashMessages(listener));
+            XPipeline pipeline = new XPipeline(calabash, compiled.decl, new XRootStep(calabash));
+            pipeline.instantiate(compiled.decl);
+            if ( source != null ) {
+                XdmNode doc = calabash.parse(new InputSource(MiscUtils.getUri(source)));
+                pipeline.writeTo("source", doc);
+            }
+            for ( Map.Entry<String, String> o : options.entrySet() ) {
+                QName name = QName.fromClarkName(o.getKey());
+                pipeline.passOption(name, new RuntimeValue(o.getValue()));
+            }
+            pipeline.run();
+            // like Calabash on the command line, write the outputs to stdout
+            for ( String port : pipeline.getOutputs() ) {
+                ReadablePipe out = pipeline.readFrom(port);
+                while ( out.moreDocuments() ) {
+                    lines(out.read().toString(), listener, false);
+                }
+            }
+            success = true;
+            return 0;
+        }
+        catch ( PackageException ex ) {
+            error("Error resolving the pipeline " + pipe, ex, listener);
+            return 1;
+        }
+        catch ( SaxonApiException ex ) {
+            error("Error running the pipeline " + pipe, ex, listener);
+            return 1;
+        }
+        catch ( XProcException ex ) {
+            error("Error running the pipeline " + pipe, ex, listener);
+            return 1;
+        }
+        finally {
+            if ( ! success ) {
+                // do not reuse a runtime in an unknown state (it is closed)
+                myPipelines.remove(pipe);
+            }
+            leave(context);
+        }
+    }
+
+    @Override
+    public synchronized int applyStylesheet(String style, File source, Map<String, String> params, ProcessListener listener)
+    {
+        ClassLoader context = enter();
+        try {
+            refresh(listener);
+            ErrorListener errors = new SaxonErrors(listener);
+            XsltExecutable exec = getStylesheet(style, errors, listener);
+            XsltTransformer transformer = exec.load();
+            transformer.setErrorListener(errors);
+            transformer.setMessageListener(new SaxonMessages(listener));
+            transformer.setSource(new StreamSource(source));
+            transformer.setDestination(new EmptyDestination());
+            for ( Map.Entry<String, String> p : params.entrySet() ) {
+                QName name = QName.fromClarkName(p.getKey());
+                transformer.setParameter(name, new XdmAtomicValue(p.getValue()));
+            }
+            transformer.transform();
+            return 0;
+        }
+        catch ( PackageException ex ) {
+            error("Error resolving the stylesheet " + style, ex, listener);
+            return 1;
+        }
+        catch ( SaxonApiException ex ) {
+            error("Error applying the stylesheet " + style, ex, listener);
+            return 1;
+        }
+        finally {
+            leave(context);
+        }
+    }
+
+    /**
+     * Return the compiled pipeline, from the cache or compile it.
+     * 
+     * If the pipeline is not in the cache (or stale), it is compiled first,
+     * with a new copy of the runtime, which is then used for all its runs
+     * (the model keeps a reference to the runtime used to compile it).
+     */
+    private CompiledPipeline getPipeline(String pipe, ProcessListener listener)
+            throws PackageException, SaxonApiException
+    {
+        Source src = resolve(pipe, URISpace.XPROC);
+        close(src);
+        String stamp = getStamp(src.getSystemId()) + "|" + myIndex.getPackageStamp(pipe);
+        CompiledPipeline compiled = myPipelines.get(pipe, stamp);
+        if ( compiled == null ) {
+            XProcRuntime compiler = new XProcRuntime(myCalabash);
+            compiler.setMessageListener(new CalabashMessages(listener));
+            compiler.getConfigurer().getXMLCalabashConfigurer().configRuntime(compiler);
+            DeclareStep decl;
+            try {
+                decl = compiler.getParser().loadPipeline(pipe);
+                decl.getDeclaration().setup();
+                if ( compiler.getErrorCode() != null ) {
+                    throw new XProcException(compiler.getErrorCode(), compiler.getErrorMessage());
+                }
+            }
+            catch ( RuntimeException ex ) {
+                compiler.close();
+                throw ex;
+            }
+            catch ( SaxonApiException ex ) {
+                compiler.close();
+                throw ex;
+            }
+            compiled = new CompiledPipeline(compiler, decl);
+            myPipelines.put(pipe, stamp, compiled);
+            listener.newOutputLine("Pipeline compiled: " + pipe + " (cache " + myPipelines.getStats() + ")");
+        }
+        else {
+            listener.newOutputLine("Pipeline from cache: " + pipe + " (cache " + myPipelines.getStats() + ")");
+        }
+        return compiled;
+    }
+
+    /**
+     * Return the compiled stylesheet, from the cache or compile it.
+     */
+    private XsltExecutable getStylesheet(String style, ErrorListener errors, ProcessListener listener)
+            throws PackageException, SaxonApiException
+    {
+        Source src = resolve(style, URISpace.XSLT);
+        String stamp = getStamp(src.getSystemId()) + "|" + myIndex.getPackageStamp(style);
+        XsltExecutable exec = myStylesheets.get(style, stamp);
+        if ( exec == null ) {
+            XsltCompiler compiler = mySaxon.newXsltCompiler();
+            compiler.setErrorListener(errors);
+            exec = compiler.compile(src);
+            myStylesheets.put(style, stamp, exec);
+            listener.newOutputLine("Stylesheet compiled: " + style + " (cache " + myStylesheets.getStats() + ")");
+        }
+        else {
+            close(src);
+            listener.newOutputLine("Stylesheet from cache: " + style + " (cache " + myStylesheets.getStats() + ")");
+        }
+        return exec;
+    }
+
+    /**
+     * The stamp of a resolved component (see MiscUtils.getStamp()).
+     * 
+     * For a non-file URI, the URI itself is the stamp (it is then supposed
+     * to be stable).
+     */
+    private String getStamp(String sysid)
+    {
+        if ( sysid != null && sysid.startsWith("file:") ) {
+            return sysid + "@" + MiscUtils.getStamp(new File(URI.create(sysid)));
+        }
+        return String.valueOf(sysid);
+    }
+
+    /**
+     * Close the stream of a source, if it has been opened by the resolver.
+     */
+    private void close(Source src)
+    {
+        if ( src instanceof StreamSource ) {
+            InputStream in = ((StreamSource) src).getInputStream();
+            if ( in != null ) {
+                try {
+                    in.close();
+                }
+                catch ( IOException ex ) {
+                    // ignore, nothing we can do
+                }
+            }
+        }
+    }
+
+    /**
+     * Resolve an href within the repository, or use it as is if not in the repo.
+     */
+    private Source resolve(String href, URISpace space)
+            throws PackageException
+    {
+        Source src = myRepo.resolve(href, space);
+        if ( src == null ) {
+            src = new StreamSource(href);
+        }
+        return src;
+    }
+
+    /**
+     * Set the context class loader to this engine's loader, return the previous one.
+     */
+    private ClassLoader enter()
+    {
+        Thread current = Thread.currentThread();
+        ClassLoader context = current.getContextClassLoader();
+        current.setContextClassLoader(CalabashEngine.class.getClassLoader());
+        return context;
+    }
+
+    private void leave(ClassLoader context)
+    {
+        Thread.currentThread().setContextClassLoader(context);
+    }
+
+    private static void error(String msg, Throwable ex, ProcessListener listener)
+    {
+        listener.newErrorLine(msg);
+        for ( Throwable t = ex; t != null; t = t.getCause() ) {
+            lines(t.toString(), listener, true);
+        }
+    }
+
+    /**
+     * Send a (potentially) multi-line text to the listener, line by line.
+     */
+    private static void lines(String text, ProcessListener listener, boolean error)
+    {
+        for ( String line : text.split("\r?\n") ) {
+            if ( error ) {
+                listener.newErrorLine(line);
+            }
+            else {
+                listener.newOutputLine(line);
+            }
+        }
+    }
+
+    /**
+     * A compiled pipeline, with the runtime it has been compiled with (and is run with).
+     */
+    private static class CompiledPipeline
+    {
+        public CompiledPipeline(XProcRuntime runtime, DeclareStep decl) {
+            this.runtime = runtime;
+            this.decl = decl;
+        }
+
+        public final XProcRuntime runtime;
+        public final DeclareStep decl;
+    }
+
+    /**
+     * Send Calabash messages to the listener, like Calabash does on stderr.
+     */
+    private static class CalabashMessages
+            implements XProcMessageListener
+    {
+        public CalabashMessages(ProcessListener listener) {
+            myListener = listener;
+        }
+
+        public void error(XProcRunnable step, XdmNode node, String message, QName code) {
+            lines("error: " + (code == null ? "" : code.getClarkName() + ": ") + message, myListener, true);
+        }
+
+        public void error(Throwable ex) {
+            lines("error: " + ex, myListener, true);
+        }
+
+        public void warning(XProcRunnable step, XdmNode node, String message) {
+            lines("warning: " + message, myListener, true);
+        }
+
+        public void warning(Throwable ex) {
+            lines("warning: " + ex, myListener, true);
+        }
+
+        public void info(XProcRunnable step, XdmNode node, String message) {
+            lines(message, myListener, true);
+        }
+
+        public void fine(XProcRunnable step, XdmNode node, String message) {
+            // ignore
+        }
+
+        public void finer(XProcRunnable step, XdmNode node, String message) {
+            // ignore
+        }
+
+        public void finest(XProcRunnable step, XdmNode node, String message) {
+            // ignore
+        }
+
+        private final ProcessListener myListener;
+    }
+
+    /**
+     * Send xsl:message output to the listener, like Saxon does on stderr.
+     */
+    private static class SaxonMessages
+            implements MessageListener
+    {
+        public SaxonMessages(ProcessListener listener) {
+            myListener = listener;
+        }
+
+        public void message(XdmNode content, boolean terminate, SourceLocator locator) {
+            lines(content.getStringValue(), myListener, true);
+            if ( terminate ) {
+                myListener.newErrorLine("Processing terminated by xsl:message");
+            }
+        }
+
+        private final ProcessListener myListener;
+    }
+
+    /**
+     * Send Saxon compile-time and run-time errors to the listener.
+     */
+    private static class SaxonErrors
+            implements ErrorListener
+    {
+        public SaxonErrors(ProcessListener listener) {
+            myListener = listener;
+        }
+
+        public void warning(TransformerException ex) {
+            lines("Warning: " + ex.getMessageAndLocation(), myListener, true);
+        }
+
+        public void error(TransformerException ex) {
+            lines("Error: " + ex.getMessageAndLocation(), myListener, true);
+        }
+
+        public void fatalError(TransformerException ex) {
+            lines("Fatal error: " + ex.getMessageAndLocation(), myListener, true);
+        }
+
+        private final ProcessListener myListener;
+    }
+
+    /** The repository dir. */
+    private final File myDir;
+    /** The shared index of the repository. */
+    private final PackageRepository myIndex;
+    /** The generation of the index when the repository has been configured. */
+    private int myGeneration;
+    /** The EXPath repository. */
+    private SaxonRepository myRepo;
+    /** The Saxon processor, for stylesheets. */
+    private Processor mySaxon;
+    /** The Calabash runtime, copied for each compiled pipeline. */
+    private XProcRuntime myCalabash;
+    /** The compiled stylesheets, keyed by href. */
+    private final LruCache<String, XsltExecutable> myStylesheets;
+    /** The compiled pipelines, keyed by href. */
+    private final LruCache<String, CompiledPipeline> myPipelines;
+}
+
+
+/* ------------------------------------------------------------------------ */
+/*  DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS COMMENT.               */
+/*                                                                          */
+/*  The contents of this file are subject to the Mozilla Public License     */
+/*  Version 1.0 (the "License"); you may not use this file except in        */
+/*  compliance with the License. You may obtain a copy of the License at    */
+/*  http://www.mozilla.org/MPL/.                                            */
+/*                                                                          */
+/*  Software distributed under the License is distributed on an "AS IS"     */
+/*  basis, WITHOUT WARRANTY OF ANY KIND, either express or implied.  See    */
+/*  the License for the specific language governing rights and limitations  */
+/*  under the License.                                                      */
+/*                                                                          */
+/*  The Original Code is: all this file.                                    */
+/*                                                                          */
+/*  The Initial Developer of the Original Code is Florent Georges.          */
+/*                                                                          */
+/*  Contributor(s): none.                                                   */
+/* ------------------------------------------------------------------------ */
@@ -0,0 +1,215 @@
+/****************************************************************************/
+/*  File:       IndexConfigurer.java                                        */
+/*  Author:     F. Georges - H2O Consulting                                 */
+/*  Date:       2026-10-18                                                  */
+/*  Tags:                                                                   */
+/*      Copyright (c) 2026 Florent Georges (see end of file.)               */
+/* ------------------------------------------------------------------------ */
+
+
+package org.expath.xproject.oxygen.engine;
+
+import com.xmlcalabash.config.JaxpConfigurer;
+import com.xmlcalabash.config.JingConfigurer;
+import com.xmlcalabash.config.SaxonConfigurer;
+import com.xmlcalabash.config.XMLCalabashConfigurer;
+import com.xmlcalabash.config.XProcConfigurer;
+import com.xmlcalabash.core.XProcException;
+import com.xmlcalabash.core.XProcRuntime;
+import com.xmlcalabash.io.ReadablePipe;
+import com.xmlcalabash.library.Load;
+import com.xmlcalabash.model.DataBinding;
+import com.xmlcalabash.model.DocumentBinding;
+import com.xmlcalabash.util.DefaultXProcConfigurer;
+import java.io.File;
+import javax.xml.transform.URIResolver;
+import net.sf.saxon.Configuration;
+import net.sf.saxon.s9api.XdmNode;
+import net.sf.saxon.trans.XPathException;
+import org.expath.pkg.calabash.PkgConfigurer;
+import org.expath.pkg.repo.FileSystemStorage;
+import org.expath.pkg.repo.PackageException;
+import org.expath.pkg.repo.Repository;
+import org.expath.pkg.repo.URISpace;
+import org.expath.pkg.repo.resolver.PkgURIResolver;
+import org.expath.xproject.oxygen.PackageRepository;
+
+
+/**
+ * The Calabash configurer of the child processes, resolving from the index.
+ *
+ * Used instead of the pkg-calabash configurer, with the system property
+ * "com.xmlcalabash.xproc-configurer" (the repository is given by the system
+ * property "org.expath.pkg.calabash.repo").  The runtime, and the Saxon
+ * configurations for XSLT and XQuery, resolve the components from the index
+ * (see IndexResolver), so the package descriptors are not parsed at each
+ * run.  The extension functions are registered from the index as well.
+ * Only if a package has extension steps (a calabash.xml), the pkg-calabash
+ * configurer is used as well, to register them, and as the fallback.
+ *
+ * @author Florent Georges
+ * @date   2026-10-18
+ */
+public class IndexConfigurer
+        implements XProcConfigurer
+{
+    /**
+     * Called by reflection by Calabash.
+     */
+    public IndexConfigurer(XProcRuntime runtime)
+    {
+        IndexResolver.initLogging();
+        File dir;
+        try {
+            dir = IndexResolver.getRepoDir(REPO_PROPERTY);
+        }
+        catch ( IllegalStateException ex ) {
+            throw new XProcException(ex.getMessage(), ex);
+        }
+        myIndex = PackageRepository.getInstance(dir);
+        if ( myIndex.hasCalabashExtensions() ) {
+            try {
+                Repository repo = new Repository(new FileSystemStorage(dir));
+                myDelegate = new PkgConfigurer(runtime, repo);
+                myFallback = new PkgURIResolver(repo, URISpace.XPROC);
+            }
+            catch ( PackageException ex ) {
+                throw new XProcException("Error loading the repository: " + dir, ex);
+            }
+        }
+        else {
+            myDelegate = new DefaultXProcConfigurer(runtime);
+            myFallback = null;
+        }
+        myCalabash = new IndexCalabashConfigurer(myDelegate.getXMLCalabashConfigurer());
+        mySaxon = new IndexSaxonConfigurer(myDelegate.getSaxonConfigurer());
+    }
+
+    public XMLCalabashConfigurer getXMLCalabashConfigurer()
+    {
+        return myCalabash;
+    }
+
+    public SaxonConfigurer getSaxonConfigurer()
+    {
+        return mySaxon;
+    }
+
+    public JingConfigurer getJingConfigurer()
+    {
+        return myDelegate.getJingConfigurer();
+    }
+
+    public JaxpConfigurer getJaxpConfigurer()
+    {
+        return myDelegate.getJaxpConfigurer();
+    }
+
+    /**
+     * Set the index resolver on the runtime, after the delegate configured it.
+     */
+    private class IndexCalabashConfigurer
+            implements XMLCalabashConfigurer
+    {
+        public IndexCalabashConfigurer(XMLCalabashConfigurer delegate) {
+            myConfigurer = delegate;
+        }
+
+        public void configRuntime(XProcRuntime runtime) {
+            myConfigurer.configRuntime(runtime);
+            IndexResolver resolver = new IndexResolver(myIndex, myFallback, null);
+            runtime.setURIResolver(resolver);
+            runtime.setEntityResolver(resolver);
+        }
+
+        public XdmNode loadDocument(Load load) {
+            return myConfigurer.loadDocument(load);
+        }
+
+        public ReadablePipe makeReadableData(XProcRuntime runtime, DataBinding binding) {
+            return myConfigurer.makeReadableData(runtime, binding);
+        }
+
+        public ReadablePipe makeReadableDocument(XProcRuntime runtime, DocumentBinding binding) {
+            return myConfigurer.makeReadableDocument(runtime, binding);
+        }
+
+        private final XMLCalabashConfigurer myConfigurer;
+    }
+
+    /**
+     * Set the index resolvers on the Saxon configurations, after the delegate.
+     */
+    private class IndexSaxonConfigurer
+            implements SaxonConfigurer
+    {
+        public IndexSaxonConfigurer(SaxonConfigurer delegate) {
+            myConfigurer = delegate;
+        }
+
+        public void configXSLT(Configuration config) {
+            myConfigurer.configXSLT(config);
+            config(config);
+        }
+
+        public void configXQuery(Configuration config) {
+            myConfigurer.configXQuery(config);
+            config(config);
+        }
+
+        public void configXSD(Configuration config) {
+            myConfigurer.configXSD(config);
+        }
+
+        public void configSchematron(Configuration config) {
+            myConfigurer.configSchematron(config);
+            config(config);
+        }
+
+        private void config(Configuration config) {
+            try {
+                IndexResolver.config(config, myIndex);
+            }
+            catch ( XPathException ex ) {
+                throw new XProcException("Error registering the extension functions", ex);
+            }
+        }
+
+        private final SaxonConfigurer myConfigurer;
+    }
+
+    /** The system property with the repository dir (the same as pkg-calabash). */
+    private static final String REPO_PROPERTY = "org.expath.pkg.calabash.repo";
+
+    /** The repository index. */
+    private final PackageRepository myIndex;
+    /** The pkg-calabash configurer if a package has extension steps, else the default one. */
+    private final XProcConfigurer myDelegate;
+    /** The pkg-repo resolver if a package has extension steps, else null. */
+    private final URIResolver myFallback;
+    /** The configurer of the runtime. */
+    private final XMLCalabashConfigurer myCalabash;
+    /** The configurer of the Saxon configurations. */
+    private final SaxonConfigurer mySaxon;
+}
+
+
+/* ------------------------------------------------------------------------ */
+/*  DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS COMMENT.               */
+/*                                                                          */
+/*  The contents of this file are subject to the Mozilla Public License     */
+/*  Version 1.0 (the "License"); you may not use this file except in        */
+/*  compliance with the License. You may obtain a copy of the License at    */
+/*  http://www.mozilla.org/MPL/.                                            */
+/*                                                                          */
+/*  Software distributed under the License is distributed on an "AS IS"     */
+/*  basis, WITHOUT WARRANTY OF ANY KIND, either express or implied.  See    */
+/*  the License for the specific language governing rights and limitations  */
+/*  under the License.                                                      */
+/*                                                                          */
+/*  The Original Code is: all this file.                                    */
+/*                                                                          */
+/*  The Initial Developer of the Original Code is Florent Georges.          */
+/*                                                                          */
+/*  Contributor(s): none.                                                   */
+/* ------------------------------------------------------------------------ */
@@ -0,0 +1,71 @@
+/****************************************************************************/
+/*  File:       IndexInitializer.java                                       */
+/*  Author:     F. Georges - H2O Consulting                                 */
+/*  Date:       2026-10-18                                                  */
+/*  Tags:                                                                   */
+/*      Copyright (c) 2026 Florent Georges (see end of file.)               */
+/* ------------------------------------------------------------------------ */
+
+
+package org.expath.xproject.oxygen.engine;
+
+import javax.xml.transform.TransformerException;
+import net.sf.saxon.Configuration;
+import net.sf.saxon.lib.Initializer;
+import org.expath.xproject.oxygen.PackageRepository;
+
+
+/**
+ * The Saxon initializer of the child processes, resolving from the index.
+ *
+ * Used instead of the pkg-saxon initializer, with the Saxon command line
+ * option "-init:" (the repository is given by the system property
+ * "org.expath.pkg.saxon.repo").  The components are resolved from the index
+ * (see IndexResolver), so the package descriptors are not parsed at each
+ * run.  The extension functions are registered from the index as well, so
+ * pkg-repo is not loaded at all.
+ *
+ * @author Florent Georges
+ * @date   2026-10-18
+ */
+public class IndexInitializer
+        implements Initializer
+{
+    public void initialize(Configuration config)
+            throws TransformerException
+    {
+        IndexResolver.initLogging();
+        PackageRepository index;
+        try {
+            index = PackageRepository.getInstance(IndexResolver.getRepoDir(REPO_PROPERTY));
+        }
+        catch ( IllegalStateException ex ) {
+            throw new TransformerException(ex.getMessage(), ex);
+        }
+        IndexResolver.config(config, index);
+    }
+
+    /** The system property with the repository dir (the same as pkg-saxon). */
+    private static final String REPO_PROPERTY = "org.expath.pkg.saxon.repo";
+}
+
+
+/* ------------------------------------------------------------------------ */
+/*  DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS COMMENT.               */
+/*                                                                          */
+/*  The contents of this file are subject to the Mozilla Public License     */
+/*  Version 1.0 (the "License"); you may not use this file except in        */
+/*  compliance with the License. You may obtain a copy of the License at    */
+/*  http://www.mozilla.org/MPL/.                                            */
+/*                                                                          */
+/*  Software distributed under the License is distributed on an "AS IS"     */
+/*  basis, WITHOUT WARRANTY OF ANY KIND, either express or implied.  See    */
+/*  the License for the specific language governing rights and limitations  */
+/*  under the License.                                                      */
+/*                                                                          */
+/*  The Original Code is: all this file.                                    */
+/*                                                                          */
+/*  The Initial Developer of the Original Code is Florent Georges.          */
+/*                                                                          */
+/*  Contributor(s): none.                                                   */
+/* ------------------------------------------------------------------------ */
@@ -0,0 +1,276 @@
+/****************************************************************************/
+/*  File:       IndexResolver.java                                          */
+/*  Author:     F. Georges - H2O Consulting                                 */
+/*  Date:       2026-10-18                                                  */
+/*  Tags:                                                                   */
+/*      Copyright (c) 2026 Florent Georges (see end of file.)               */
+/* ------------------------------------------------------------------------ */
+
+
+package org.expath.xproject.oxygen.engine;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.StringReader;
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import javax.xml.transform.Source;
+import javax.xml.transform.TransformerException;
+import javax.xml.transform.URIResolver;
+import javax.xml.transform.stream.StreamSource;
+import net.sf.saxon.Configuration;
+import net.sf.saxon.lib.ExtensionFunctionDefinition;
+import net.sf.saxon.lib.ModuleURIResolver;
+import net.sf.saxon.trans.XPathException;
+import org.apache.log4j.ConsoleAppender;
+import org.apache.log4j.Level;
+import org.apache.log4j.Logger;
+import org.apache.log4j.PatternLayout;
+import org.expath.pkg.saxon.EXPathFunctionDefinition;
+import org.expath.xproject.oxygen.PackageRepository;
+import org.xml.sax.EntityResolver;
+import org.xml.sax.InputSource;
+import org.xml.sax.SAXException;
+
+
+/**
+ * Resolve the components of the repository from its index.
+ *
+ * The XSLT, XQuery and XProc public URIs, and the DTD public and system IDs
+ * are looked up in PackageRepository (which reads the memory-mapped binary
+ * index), instead of parsing all the package descriptors with pkg-repo.
+ * What is not in the index is passed to the fallback resolvers, if any (the
+ * pkg-repo ones when a package has extension steps, see
+ * hasCalabashExtensions()), or else left to the standard resolvers of Saxon
+ * and Calabash.
+ *
+ * The extension functions of the Saxon descriptors are registered from the
+ * index as well (see config()), and their wrappers resolved to an empty
+ * stylesheet or module, as pkg-saxon does.
+ *
+ * @author Florent Georges
+ * @date   2026-10-18
+ */
+public class IndexResolver
+        implements URIResolver, ModuleURIResolver, EntityResolver
+{
+    public IndexResolver(PackageRepository index, URIResolver uris, ModuleURIResolver modules)
+    {
+        myIndex = index;
+        myUris = uris;
+        myModules = modules;
+    }
+
+    /**
+     * Set the resolvers of a Saxon configuration, and register the extension functions.
+     *
+     * The previous resolvers are used as fallback.  Calabash configures the
+     * same configuration for each XSLT or XQuery step, so an index resolver
+     * already set is replaced, not wrapped.
+     */
+    public static void config(Configuration config, PackageRepository index)
+            throws XPathException
+    {
+        registerFunctions(config, index);
+        URIResolver uris = config.getURIResolver();
+        if ( uris instanceof IndexResolver ) {
+            uris = ((IndexResolver) uris).myUris;
+        }
+        ModuleURIResolver modules = config.getModuleURIResolver();
+        if ( modules instanceof IndexResolver ) {
+            modules = ((IndexResolver) modules).myModules;
+        }
+        IndexResolver resolver = new IndexResolver(index, uris, modules);
+        config.setURIResolver(resolver);
+        config.setModuleURIResolver(resolver);
+    }
+
+    /**
+     * Register the extension functions of the Saxon descriptors on a configuration.
+     *
+     * The functions are loaded from the jars of their package (by a class
+     * loader shared by all the configurations, on top of this one, which
+     * sees Saxon and pkg-saxon), or from the classpath if it has no jar.
+     */
+    private static void registerFunctions(Configuration config, PackageRepository index)
+            throws XPathException
+    {
+        for ( PackageRepository.SaxonExtension ext : index.getSaxonExtensions() ) {
+            ClassLoader loader = getLoader(ext.getJars());
+            for ( String name : ext.getFunctions() ) {
+                try {
+                    Object fun = Class.forName(name, true, loader).newInstance();
+                    if ( fun instanceof EXPathFunctionDefinition ) {
+                        ((EXPathFunctionDefinition) fun).setConfiguration(config);
+                    }
+                    config.registerExtensionFunction((ExtensionFunctionDefinition) fun);
+                }
+                catch ( ClassNotFoundException ex ) {
+                    throw new XPathException("Extension function class not found: " + name, ex);
+                }
+                catch ( InstantiationException ex ) {
+                    throw new XPathException("Error instantiating the extension function: " + name, ex);
+                }
+                catch ( IllegalAccessException ex ) {
+                    throw new XPathException("Error instantiating the extension function: " + name, ex);
+                }
+                catch ( ClassCastException ex ) {
+                    throw new XPathException("Not an extension function: " + name, ex);
+                }
+            }
+        }
+    }
+
+    /**
+     * Return the class loader for the jars of a package, create it if necessary.
+     */
+    private static synchronized ClassLoader getLoader(List<File> jars)
+            throws XPathException
+    {
+        ClassLoader parent = IndexResolver.class.getClassLoader();
+        if ( jars.isEmpty() ) {
+            return parent;
+        }
+        ClassLoader loader = ourLoaders.get(jars);
+        if ( loader == null ) {
+            URL[] urls = new URL[jars.size()];
+            for ( int i = 0; i < urls.length; ++i ) {
+                try {
+                    urls[i] = jars.get(i).toURI().toURL();
+                }
+                catch ( MalformedURLException ex ) {
+                    throw new XPathException("Invalid extension jar: " + jars.get(i), ex);
+                }
+            }
+            loader = new URLClassLoader(urls, parent);
+            ourLoaders.put(jars, loader);
+        }
+        return loader;
+    }
+
+    /**
+     * Return the repository dir, from a system property, or $EXPATH_REPO.
+     */
+    public static File getRepoDir(String property)
+    {
+        String dir = System.getProperty(property);
+        if ( dir == null ) {
+            dir = System.getenv("EXPATH_REPO");
+        }
+        if ( dir == null ) {
+            throw new IllegalStateException("The repository is not set, neither by the property " + property + " nor by $EXPATH_REPO");
+        }
+        return new File(dir);
+    }
+
+    /**
+     * Log the warnings to stderr, in a child process in which Log4J is not configured.
+     *
+     * Else Log4J prints a warning about missing appenders, to the output of
+     * the process.
+     */
+    public static void initLogging()
+    {
+        Logger root = Logger.getRootLogger();
+        if ( ! root.getAllAppenders().hasMoreElements() ) {
+            root.addAppender(new ConsoleAppender(new PatternLayout("%p %c{1}: %m%n"), ConsoleAppender.SYSTEM_ERR));
+            root.setLevel(Level.WARN);
+        }
+    }
+
+    /**
+     * Resolve xsl:import, xsl:include, p:import and doc().
+     */
+    public Source resolve(String href, String base)
+            throws TransformerException
+    {
+        if ( "xslt".equals(myIndex.getSaxonWrapper(href)) ) {
+            return new StreamSource(new StringReader(EMPTY_STYLESHEET), href);
+        }
+        File file = myIndex.resolve(href);
+        if ( file != null ) {
+            return new StreamSource(file);
+        }
+        if ( myUris != null ) {
+            return myUris.resolve(href, base);
+        }
+        return null;
+    }
+
+    /**
+     * Resolve the XQuery library modules, by namespace.
+     */
+    public StreamSource[] resolve(String uri, String base, String[] locations)
+            throws XPathException
+    {
+        if ( "xquery".equals(myIndex.getSaxonWrapper(uri)) ) {
+            String module = "module namespace tns = '" + uri.replace("'", "''") + "';";
+            return new StreamSource[]{ new StreamSource(new StringReader(module), uri) };
+        }
+        File file = myIndex.resolve(uri);
+        if ( file != null ) {
+            return new StreamSource[]{ new StreamSource(file) };
+        }
+        if ( myModules != null ) {
+            return myModules.resolve(uri, base, locations);
+        }
+        return null;
+    }
+
+    /**
+     * Resolve the DTDs, by public ID, then by system ID.
+     */
+    public InputSource resolveEntity(String pub, String sys)
+            throws SAXException, IOException
+    {
+        File file = pub == null ? null : myIndex.resolve(pub);
+        if ( file == null && sys != null ) {
+            file = myIndex.resolve(sys);
+        }
+        if ( file == null ) {
+            return null;
+        }
+        InputSource src = new InputSource(file.toURI().toString());
+        src.setPublicId(pub);
+        return src;
+    }
+
+    /** The stylesheet the XSLT wrappers resolve to. */
+    private static final String EMPTY_STYLESHEET =
+            "<xsl:stylesheet xmlns:xsl='http://www.w3.org/1999/XSL/Transform' version='2.0'/>";
+
+    /** The class loaders of the extension jars, keyed by the jars of the package. */
+    private static final Map<List<File>, ClassLoader> ourLoaders = new HashMap<List<File>, ClassLoader>();
+
+    /** The repository index. */
+    private final PackageRepository myIndex;
+    /** The fallback URI resolver, or null. */
+    private final URIResolver myUris;
+    /** The fallback module resolver, or null. */
+    private final ModuleURIResolver myModules;
+}
+
+
+/* ------------------------------------------------------------------------ */
+/*  DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS COMMENT.               */
+/*                                                                          */
+/*  The contents of this file are subject to the Mozilla Public License     */
+/*  Version 1.0 (the "License"); you may not use this file except in        */
+/*  compliance with the License. You may obtain a copy of the License at    */
+/*  http://www.mozilla.org/MPL/.                                            */
+/*                                                                          */
+/*  Software distributed under the License is distributed on an "AS IS"     */
+/*  basis, WITHOUT WARRANTY OF ANY KIND, either express or implied.  See    */
+/*  the License for the specific language governing rights and limitations  */
+/*  under the License.                                                      */
+/*                                                                          */
+/*  The Original Code is: all this file.                                    */
+/*                                                                          */
+/*  The Initial Developer of the Original Code is Florent Georges.          */
+/*                                                                          */
+/*  Contributor(s): none.                                                   */
+/* ------------------------------------------------------------------------ */
@@ -0,0 +1,182 @@
+/****************************************************************************/
+/*  File:       BuildCacheTest.java                                         */
+/*  Author:     F. Georges - H2O Consulting                                 */
+/*  Date:       2026-10-18                                                  */
+/*  Tags:                                                                   */
+/*      Copyright (c) 2026 Florent Georges (see end of file.)               */
+/* ------------------------------------------------------------------------ */
+
+
+package org.expath.xproject.oxygen;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+
+/**
+ * Test the hits and misses, the eviction and the concurrent stores of BuildCache.
+ *
+ * @author Florent Georges
+ * @date   2026-10-18
+ */
+public class BuildCacheTest
+{
+    @Before
+    public void setUp()
+            throws Exception
+    {
+        TestSupport.messages();
+        myDir = TestSupport.createTempDir("xproject-cache-");
+        myCacheDir = new File(myDir, "cache");
+    }
+
+    @After
+    public void tearDown()
+    {
+        System.clearProperty(MAX_SIZE);
+        TestSupport.delete(myDir);
+    }
+
+    @Test
+    public void storedEntryIsAHit()
+            throws Exception
+    {
+        BuildCache cache = new BuildCache(myCacheDir);
+        File dist = TestSupport.mkdirs(myDir, "dist");
+        File restored = TestSupport.mkdirs(myDir, "restored");
+        assertFalse(cache.restore("key", restored));
+        long since = System.currentTimeMillis();
+        TestSupport.write(dist, "lib.xar", "the XAR");
+        TestSupport.write(dist, "lib.txt", "not a XAR");
+        cache.store("key", dist, since);
+        assertTrue(cache.restore("key", restored));
+        assertEquals("the XAR", TestSupport.read(new File(restored, "lib.xar")));
+        assertFalse(new File(restored, "lib.txt").exists());
+        // another key is a miss
+        assertFalse(cache.restore("other", TestSupport.mkdirs(myDir, "other")));
+        assertEquals("hits: 1, misses: 2, hit rate: 33%", cache.getStats());
+    }
+
+    @Test
+    public void leastRecentlyUsedEntryIsEvicted()
+            throws Exception
+    {
+        System.setProperty(MAX_SIZE, "1");
+        BuildCache cache = new BuildCache(myCacheDir);
+        long now = System.currentTimeMillis();
+        store(cache, "a", 400);
+        new File(myCacheDir, "a").setLastModified(now - 3000);
+        store(cache, "b", 400);
+        new File(myCacheDir, "b").setLastModified(now - 2000);
+        // "a" is now the most recently used
+        assertTrue(cache.restore("a", TestSupport.mkdirs(myDir, "restored")));
+        // beyond 1 MB, "b" is evicted
+        store(cache, "c", 400);
+        assertEquals(Arrays.asList("a", "c"), getEntries());
+        assertFalse(cache.restore("b", TestSupport.mkdirs(myDir, "restored-b")));
+    }
+
+    @Test
+    public void concurrentStoresOfTheSameKey()
+            throws Exception
+    {
+        final BuildCache cache = new BuildCache(myCacheDir);
+        final long since = System.currentTimeMillis();
+        final int count = 4;
+        final CyclicBarrier barrier = new CyclicBarrier(count);
+        ExecutorService pool = Executors.newFixedThreadPool(count);
+        try {
+            List<Future<Void>> stores = new ArrayList<Future<Void>>();
+            for ( int i = 0; i < count; ++i ) {
+                final File dist = TestSupport.mkdirs(myDir, "dist-" + i);
+                TestSupport.write(dist, "lib.xar", "the XAR");
+                stores.add(pool.submit(new Callable<Void>() {
+                    public Void call() throws Exception {
+                        barrier.await();
+                        cache.store("key", dist, since);
+                        return null;
+                    }
+                }));
+            }
+            for ( Future<Void> f : stores ) {
+                f.get();
+            }
+        }
+        finally {
+            pool.shutdown();
+        }
+        // one entry, with one XAR, and no temp dir left
+        assertEquals(Arrays.asList("key"), getEntries());
+        assertEquals(Arrays.asList("lib.xar"), Arrays.asList(new File(myCacheDir, "key").list()));
+        File restored = TestSupport.mkdirs(myDir, "restored");
+        assertTrue(cache.restore("key", restored));
+        assertEquals("the XAR", TestSupport.read(new File(restored, "lib.xar")));
+    }
+
+    /**
+     * Store an entry with one XAR of that size, in KB.
+     */
+    private void store(BuildCache cache, String key, int kb)
+            throws Exception
+    {
+        File dist = TestSupport.mkdirs(myDir, "dist-" + key);
+        long since = System.currentTimeMillis();
+        TestSupport.write(dist, key + ".xar", new byte[kb * 1024]);
+        cache.store(key, dist, since);
+    }
+
+    /**
+     * The names of the files and dirs in the cache dir, but the stats, sorted.
+     */
+    private List<String> getEntries()
+    {
+        List<String> entries = new ArrayList<String>(Arrays.asList(myCacheDir.list()));
+        entries.remove("stats");
+        Collections.sort(entries);
+        return entries;
+    }
+
+    /** The option for the max size of the cache. */
+    private static final String MAX_SIZE = XProjectOptions.PREFIX + "cache.max-size";
+
+    /** The temporary dir. */
+    private File myDir;
+    /** The cache dir. */
+    private File myCacheDir;
+}
+
+
+/* ------------------------------------------------------------------------ */
+/*  DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS COMMENT.               */
+/*                                                                          */
+/*  The contents of this file are subject to the Mozilla Public License     */
+/*  Version 1.0 (the "License"); you may not use this file except in        */
+/*  compliance with the License. You may obtain a copy of the License at    */
+/*  http://www.mozilla.org/MPL/.                                            */
+/*                                                                          */
+/*  Software distributed under the License is distributed on an "AS IS"     */
+/*  basis, WITHOUT WARRANTY OF ANY KIND, either express or implied.  See    */
+/*  the License for the specific language governing rights and limitations  */
+/*  under the License.                                                      */
+/*                                                                          */
+/*  The Original Code is: all this file.                                    */
+/*                                                                          */
+/*  The Initial Developer of the Original Code is Florent Georges.          */
+/*                                                                          */
+/*  Contributor(s): none.                                                   */
+/* ------------------------------------------------------------------------ */
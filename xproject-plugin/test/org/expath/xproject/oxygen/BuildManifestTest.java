@@ -0,0 +1,138 @@
+/****************************************************************************/
+/*  File:       BuildManifestTest.java                                      */
+/*  Author:     F. Georges - H2O Consulting                                 */
+/*  Date:       2026-10-18                                                  */
+/*  Tags:                                                                   */
+/*      Copyright (c) 2026 Florent Georges (see end of file.)               */
+/* ------------------------------------------------------------------------ */
+
+
+package org.expath.xproject.oxygen;
+
+import java.io.File;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+
+/**
+ * Test the change detection of BuildManifest, and the reuse of the hashes.
+ *
+ * @author Florent Georges
+ * @date   2026-10-18
+ */
+public class BuildManifestTest
+{
+    @Before
+    public void setUp()
+            throws Exception
+    {
+        TestSupport.messages();
+        myDir = TestSupport.createTempDir("xproject-manifest-");
+        myProject = TestSupport.createProject(myDir, "project");
+        TestSupport.write(myProject, "src/a.xsl", "<a/>\n");
+        TestSupport.write(myProject, "src/sub/b.xqm", "module namespace b = \"b\";\n");
+        TestSupport.mkdirs(myProject, "dist");
+    }
+
+    @After
+    public void tearDown()
+    {
+        TestSupport.delete(myDir);
+    }
+
+    @Test
+    public void upToDateOnlyAfterASavedBuildWithAXar()
+            throws Exception
+    {
+        BuildManifest first = new BuildManifest(myProject, "stamp");
+        assertFalse(first.isUpToDate());
+        // the descriptor and the 2 sources
+        assertEquals(3, first.getSize());
+        assertEquals(3, first.getHashed());
+        first.save();
+        assertFalse(new BuildManifest(myProject, "stamp").isUpToDate());
+        TestSupport.write(myProject, "dist/project-1.0.0.xar", "PK");
+        BuildManifest second = new BuildManifest(myProject, "stamp");
+        assertTrue(second.isUpToDate());
+        // nothing has been read again
+        assertEquals(0, second.getHashed());
+        assertEquals(first.getDigest(), second.getDigest());
+    }
+
+    @Test
+    public void changedInputsAreDetected()
+            throws Exception
+    {
+        TestSupport.write(myProject, "dist/project-1.0.0.xar", "PK");
+        new BuildManifest(myProject, "stamp").save();
+        // another stamp (e.g. another builder)
+        assertFalse(new BuildManifest(myProject, "other").isUpToDate());
+        // a changed source, only this one is read again
+        TestSupport.write(myProject, "src/sub/b.xqm", "module namespace b = \"changed\";\n");
+        BuildManifest changed = new BuildManifest(myProject, "stamp");
+        assertFalse(changed.isUpToDate());
+        assertEquals(1, changed.getHashed());
+        changed.save();
+        assertTrue(new BuildManifest(myProject, "stamp").isUpToDate());
+        // a new source, and an override pipeline
+        TestSupport.write(myProject, "src/c.xsl", "<c/>\n");
+        assertFalse(new BuildManifest(myProject, "stamp").isUpToDate());
+        new BuildManifest(myProject, "stamp").save();
+        TestSupport.write(myProject, XProjectConstants.PRIVATE_DIR + "/" + XProjectConstants.BUILDER_OVERRIDE, "<p/>\n");
+        assertFalse(new BuildManifest(myProject, "stamp").isUpToDate());
+    }
+
+    @Test
+    public void digestDependsOnTheContentOnly()
+            throws Exception
+    {
+        String digest = new BuildManifest(myProject, "stamp").getDigest();
+        // same content, other modification time
+        File a = new File(myProject, "src/a.xsl");
+        assertTrue(a.setLastModified(a.lastModified() - 60000));
+        assertEquals(digest, new BuildManifest(myProject, "stamp").getDigest());
+        TestSupport.write(myProject, "src/a.xsl", "<A/>\n");
+        assertFalse(digest.equals(new BuildManifest(myProject, "stamp").getDigest()));
+        assertFalse(digest.equals(new BuildManifest(myProject, "other").getDigest()));
+    }
+
+    @Test
+    public void unreadableManifestIsIgnored()
+            throws Exception
+    {
+        TestSupport.write(myProject, "dist/project-1.0.0.xar", "PK");
+        TestSupport.write(myProject, XProjectConstants.PRIVATE_DIR + "/.build-manifest", "not\ta\tmanifest\n");
+        BuildManifest manifest = new BuildManifest(myProject, "stamp");
+        assertFalse(manifest.isUpToDate());
+        assertEquals(3, manifest.getHashed());
+    }
+
+    private File myDir;
+    private File myProject;
+}
+
+
+/* ------------------------------------------------------------------------ */
+/*  DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS COMMENT.               */
+/*                                                                          */
+/*  The contents of this file are subject to the Mozilla Public License     */
+/*  Version 1.0 (the "License"); you may not use this file except in        */
+/*  compliance with the License. You may obtain a copy of the License at    */
+/*  http://www.mozilla.org/MPL/.                                            */
+/*                                                                          */
+/*  Software distributed under the License is distributed on an "AS IS"     */
+/*  basis, WITHOUT WARRANTY OF ANY KIND, either express or implied.  See    */
+/*  the License for the specific language governing rights and limitations  */
+/*  under the License.                                                      */
+/*                                                                          */
+/*  The Original Code is: all this file.                                    */
+/*                                                                          */
+/*  The Initial Developer of the Original Code is Florent Georges.          */
+/*                                                                          */
+/*  Contributor(s): none.                                                   */
+/* ------------------------------------------------------------------------ */
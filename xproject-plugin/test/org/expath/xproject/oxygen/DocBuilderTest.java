@@ -0,0 +1,196 @@
+/****************************************************************************/
+/*  File:       DocBuilderTest.java                                         */
+/*  Author:     F. Georges - H2O Consulting                                 */
+/*  Date:       2026-10-18                                                  */
+/*  Tags:                                                                   */
+/*      Copyright (c) 2026 Florent Georges (see end of file.)               */
+/* ------------------------------------------------------------------------ */
+
+
+package org.expath.xproject.oxygen;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import javax.xml.parsers.DocumentBuilderFactory;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.w3c.dom.Element;
+import org.w3c.dom.NodeList;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+
+/**
+ * Test the incremental documentation: the files of each module, and the index patching.
+ *
+ * The doc pipeline is simulated: for each module of a group, a page with
+ * its relative path, and an index with a table row linking to each page.
+ *
+ * @author Florent Georges
+ * @date   2026-10-18
+ */
+public class DocBuilderTest
+{
+    @Before
+    public void setUp()
+            throws Exception
+    {
+        TestSupport.messages();
+        myDir = TestSupport.createTempDir("xproject-docs-");
+        myProject = TestSupport.createProject(myDir, "project");
+        myDesc = new File(myProject, "xproject/project.xml");
+        TestSupport.write(myProject, "src/a/util.xqm", "module namespace a = \"http://example.org/a\";\n");
+        TestSupport.write(myProject, "src/b/util.xqm", "module namespace b = \"http://example.org/b\";\n");
+        TestSupport.write(myProject, "src/main.xq", "1 + 1\n");
+    }
+
+    @After
+    public void tearDown()
+    {
+        TestSupport.delete(myDir);
+    }
+
+    @Test
+    public void modulesWithTheSameNameKeepTheirOwnFiles()
+            throws Exception
+    {
+        document(2, "v1");
+        File dist = new File(myProject, "dist/xqdoc");
+        assertEquals("src/a/util.xqm v1", TestSupport.read(new File(dist, "a/util.html")));
+        assertEquals("src/b/util.xqm v1", TestSupport.read(new File(dist, "b/util.html")));
+        // b/util.xqm changed, only its page is generated again
+        TestSupport.write(myProject, "src/b/util.xqm", "module namespace b = \"http://example.org/b2\";\n");
+        document(2, "v2");
+        assertEquals("src/a/util.xqm v1", TestSupport.read(new File(dist, "a/util.html")));
+        assertEquals("src/b/util.xqm v2", TestSupport.read(new File(dist, "b/util.html")));
+        // a/util.xqm is removed, only its page is deleted
+        new File(myProject, "src/a/util.xqm").delete();
+        DocBuilder docs = new DocBuilder(myProject, myDesc);
+        assertTrue(docs.plan(2).isEmpty());
+        assertFalse(docs.isUpToDate());
+        assertTrue(docs.merge());
+        assertFalse(new File(dist, "a/util.html").exists());
+        assertTrue(new File(dist, "b/util.html").exists());
+    }
+
+    @Test
+    public void indexIsPatchedInThePipelineFormat()
+            throws Exception
+    {
+        document(2, "v1");
+        File index = new File(myProject, "dist/xqdoc/index.html");
+        assertEquals("v1", getTitle(index));
+        assertEquals(rows("a/util.html v1", "b/util.html v1", "main.html v1"), getRows(index));
+        // the index of the group of b/util.xqm, with the entries of the others
+        TestSupport.write(myProject, "src/b/util.xqm", "module namespace b = \"http://example.org/b2\";\n");
+        document(2, "v2");
+        assertEquals("v2", getTitle(index));
+        assertEquals(rows("a/util.html v1", "b/util.html v2", "main.html v1"), getRows(index));
+        // the previous index, without the removed module
+        new File(myProject, "src/main.xq").delete();
+        document(2, "v3");
+        assertEquals("v2", getTitle(index));
+        assertEquals(rows("a/util.html v1", "b/util.html v2"), getRows(index));
+    }
+
+    /**
+     * Plan, simulate the pipeline on each group, and merge.
+     */
+    private void document(int max, String version)
+            throws Exception
+    {
+        DocBuilder docs = new DocBuilder(myProject, myDesc);
+        for ( File group : docs.plan(max) ) {
+            Element root = DocumentBuilderFactory.newInstance().newDocumentBuilder().parse(group).getDocumentElement();
+            File src = new File(root.getAttribute("src"));
+            File out = new File(root.getAttribute("output"));
+            List<String> modules = new ArrayList<String>();
+            listModules(src, "", modules);
+            StringBuilder index = new StringBuilder();
+            index.append("<html><head><title>" + version + "</title></head><body><h1>Modules</h1><table>");
+            for ( String m : modules ) {
+                String page = m.substring(0, m.lastIndexOf('.')) + ".html";
+                TestSupport.write(out, page, "src/" + m + " " + version);
+                index.append("<tr><td><a href=\"" + page + "\">" + m + "</a></td><td>" + page + " " + version + "</td></tr>");
+            }
+            index.append("</table><p>Generated by xquerydoc</p></body></html>");
+            TestSupport.write(out, "xquerydoc.css", "body { }");
+            TestSupport.write(out, "index.html", index.toString());
+        }
+        assertTrue(docs.merge());
+    }
+
+    private static void listModules(File dir, String prefix, List<String> modules)
+    {
+        for ( File c : dir.listFiles() ) {
+            if ( c.isDirectory() ) {
+                listModules(c, prefix + c.getName() + "/", modules);
+            }
+            else {
+                modules.add(prefix + c.getName());
+            }
+        }
+    }
+
+    private static String getTitle(File index)
+            throws Exception
+    {
+        return DocumentBuilderFactory.newInstance().newDocumentBuilder().parse(index)
+                .getElementsByTagName("title").item(0).getTextContent();
+    }
+
+    /**
+     * The second cell of each row of the index (the page and its version).
+     */
+    private static List<String> getRows(File index)
+            throws Exception
+    {
+        NodeList rows = DocumentBuilderFactory.newInstance().newDocumentBuilder().parse(index).getElementsByTagName("tr");
+        List<String> result = new ArrayList<String>();
+        for ( int i = 0; i < rows.getLength(); ++i ) {
+            result.add(((Element) rows.item(i)).getElementsByTagName("td").item(1).getTextContent());
+        }
+        return result;
+    }
+
+    private static List<String> rows(String... rows)
+    {
+        List<String> result = new ArrayList<String>();
+        for ( String r : rows ) {
+            result.add(r);
+        }
+        return result;
+    }
+
+    /** The temporary dir. */
+    private File myDir;
+    /** The project dir. */
+    private File myProject;
+    /** The project descriptor. */
+    private File myDesc;
+}
+
+
+/* ------------------------------------------------------------------------ */
+/*  DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS COMMENT.               */
+/*                                                                          */
+/*  The contents of this file are subject to the Mozilla Public License     */
+/*  Version 1.0 (the "License"); you may not use this file except in        */
+/*  compliance with the License. You may obtain a copy of the License at    */
+/*  http://www.mozilla.org/MPL/.                                            */
+/*                                                                          */
+/*  Software distributed under the License is distributed on an "AS IS"     */
+/*  basis, WITHOUT WARRANTY OF ANY KIND, either express or implied.  See    */
+/*  the License for the specific language governing rights and limitations  */
+/*  under the License.                                                      */
+/*                                                                          */
+/*  The Original Code is: all this file.                                    */
+/*                                                                          */
+/*  The Initial Developer of the Original Code is Florent Georges.          */
+/*                                                                          */
+/*  Contributor(s): none.                                                   */
+/* ------------------------------------------------------------------------ */
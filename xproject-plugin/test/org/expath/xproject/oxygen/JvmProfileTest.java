@@ -0,0 +1,200 @@
+/****************************************************************************/
+/*  File:       JvmProfileTest.java                                         */
+/*  Author:     F. Georges - H2O Consulting                                 */
+/*  Date:       2026-10-18                                                  */
+/*  Tags:                                                                   */
+/*      Copyright (c) 2026 Florent Georges (see end of file.)               */
+/* ------------------------------------------------------------------------ */
+
+
+package org.expath.xproject.oxygen;
+
+import java.io.File;
+import java.util.List;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assume.assumeTrue;
+
+
+/**
+ * Test the heap sizing, the precedence of the settings and the pool keys of JvmProfile.
+ *
+ * The default heap depends on the free memory, so the tests which rely on
+ * it are skipped if there is not enough (or if it is not known).
+ *
+ * @author Florent Georges
+ * @date   2026-10-18
+ */
+public class JvmProfileTest
+{
+    @Before
+    public void setUp()
+            throws Exception
+    {
+        TestSupport.messages();
+        myDir = TestSupport.createTempDir("xproject-jvm-");
+        myProject = TestSupport.createProject(myDir, "project");
+        System.setProperty(XProjectOptions.PREFIX + "jvm.gc-log", "false");
+    }
+
+    @After
+    public void tearDown()
+    {
+        for ( String name : OPTIONS ) {
+            System.clearProperty(XProjectOptions.PREFIX + name);
+        }
+        TestSupport.delete(myDir);
+    }
+
+    @Test
+    public void defaultHeapIsAPowerOf2()
+            throws Exception
+    {
+        assumeFreeMemory(2048);
+        System.setProperty(XProjectOptions.PREFIX + "jvm.max-heap", "8192");
+        // 256 MB for a build, plus 8 times the 3 MB of src/
+        TestSupport.write(myProject, "src/big.xsl", new byte[3 * 1024 * 1024]);
+        JvmProfile build = JvmProfile.getProfile("builder", myProject, null);
+        assertEquals("build", build.getPhase());
+        assertEquals(512, build.getHeap());
+        JvmProfile test = JvmProfile.getProfile("tester (shard 1/4)", myProject, null);
+        assertEquals("test", test.getPhase());
+        // 512 MB plus 32 times 3 MB
+        assertEquals(1024, test.getHeap());
+    }
+
+    @Test
+    public void maxHeapCapsTheDefaultAndTheRetries()
+            throws Exception
+    {
+        assumeFreeMemory(1024);
+        System.setProperty(XProjectOptions.PREFIX + "jvm.max-heap", "256");
+        JvmProfile test = JvmProfile.getProfile("tester", myProject, null);
+        assertEquals(256, test.getHeap());
+        assertNull(test.grow());
+        System.setProperty(XProjectOptions.PREFIX + "jvm.heap", "200");
+        JvmProfile small = JvmProfile.getProfile("tester", myProject, null);
+        assertEquals(200, small.getHeap());
+        JvmProfile larger = small.grow();
+        assertEquals(256, larger.getHeap());
+        // one retry by default
+        assertNull(larger.grow());
+    }
+
+    @Test
+    public void freeMemoryIsSharedByTheConcurrentChildren()
+    {
+        assumeTrue(MiscUtils.getFreePhysicalMemory() > 0);
+        System.setProperty(XProjectOptions.PREFIX + "jvm.max-heap", "8192");
+        long free = MiscUtils.getFreePhysicalMemory() / 1024 / 1024;
+        int concurrent = 4;
+        JvmProfile shard = JvmProfile.getProfile("tester", myProject, null, concurrent);
+        // the free memory can have changed since, allow for 10% more
+        assertTrue(shard.getHeap() <= Math.max(128, free * 3 / 4 / concurrent * 11 / 10));
+        // with too many children, the min heap
+        JvmProfile many = JvmProfile.getProfile("tester", myProject, null, 1000000);
+        assertEquals(128, many.getHeap());
+    }
+
+    @Test
+    public void phaseSettingsOverrideTheGeneralOnes()
+            throws Exception
+    {
+        System.setProperty(XProjectOptions.PREFIX + "jvm.heap", "300");
+        System.setProperty(XProjectOptions.PREFIX + "jvm.gc", "parallel");
+        System.setProperty(XProjectOptions.PREFIX + "jvm.test.heap", "400");
+        JvmProfile build = JvmProfile.getProfile("builder", myProject, null);
+        assertEquals(300, build.getHeap());
+        JvmProfile test = JvmProfile.getProfile("tester", myProject, null);
+        assertEquals(400, test.getHeap());
+        assertTrue(test.getJavaArguments(false).contains("-XX:+UseParallelGC"));
+        // the project descriptor overrides the options
+        File desc = TestSupport.write(myProject, "xproject/project.xml",
+                "<project xmlns=\"http://expath.org/ns/project\" xmlns:o=\"" + XProjectConstants.NS_OXYGEN + "\""
+                + " name=\"http://example.org/project\" abbrev=\"project\" version=\"1.0.0\">\n"
+                + "   <o:jvm phase=\"test\" heap=\"600\" gc=\"g1\"/>\n"
+                + "   <o:jvm heap=\"500\" args=\"-Dfoo=bar\"/>\n"
+                + "</project>\n");
+        build = JvmProfile.getProfile("builder", myProject, desc);
+        assertEquals(500, build.getHeap());
+        assertTrue(build.getJavaArguments(false).contains("-XX:+UseParallelGC"));
+        test = JvmProfile.getProfile("tester", myProject, desc);
+        assertEquals(600, test.getHeap());
+        List<String> args = test.getJavaArguments(false);
+        assertTrue(args.contains("-XX:+UseG1GC"));
+        assertTrue(args.contains("-Dfoo=bar"));
+        assertTrue(args.contains("-Xmx600m"));
+    }
+
+    @Test
+    public void poolWorkersUseTheHeapClass()
+    {
+        System.setProperty(XProjectOptions.PREFIX + "jvm.max-heap", "1024");
+        System.setProperty(XProjectOptions.PREFIX + "jvm.gc", "serial");
+        System.setProperty(XProjectOptions.PREFIX + "jvm.heap", "300");
+        JvmProfile p300 = JvmProfile.getProfile("builder", myProject, null);
+        System.setProperty(XProjectOptions.PREFIX + "jvm.heap", "400");
+        JvmProfile p400 = JvmProfile.getProfile("tester", myProject, null);
+        assertEquals(512, p300.getHeapClass());
+        assertEquals(512, p400.getHeapClass());
+        // the same pool, whatever the phase
+        assertEquals("heap=512m gc=serial args=[]", p300.getPoolKey());
+        assertEquals(p300.getPoolKey(), p400.getPoolKey());
+        assertTrue(p300.getJavaArguments(true).contains("-Xmx512m"));
+        assertTrue(p300.getJavaArguments(false).contains("-Xmx300m"));
+        // capped at the max heap, but an explicit heap beyond it is kept
+        System.setProperty(XProjectOptions.PREFIX + "jvm.heap", "900");
+        assertEquals(1024, JvmProfile.getProfile("tester", myProject, null).getHeapClass());
+        System.setProperty(XProjectOptions.PREFIX + "jvm.heap", "1500");
+        assertEquals(1500, JvmProfile.getProfile("tester", myProject, null).getHeapClass());
+        // another GC is another pool
+        System.setProperty(XProjectOptions.PREFIX + "jvm.heap", "300");
+        System.setProperty(XProjectOptions.PREFIX + "jvm.gc", "parallel");
+        assertFalse(p300.getPoolKey().equals(JvmProfile.getProfile("builder", myProject, null).getPoolKey()));
+    }
+
+    /**
+     * Skip the test if there is less free memory than needed by the default heaps, in MB.
+     */
+    private static void assumeFreeMemory(long mb)
+    {
+        assumeTrue(MiscUtils.getFreePhysicalMemory() * 3 / 4 / 1024 / 1024 >= mb);
+    }
+
+    /** The options set by the tests. */
+    private static final String[] OPTIONS = {
+        "jvm.gc-log", "jvm.max-heap", "jvm.heap", "jvm.gc", "jvm.test.heap"
+    };
+
+    /** The temporary dir. */
+    private File myDir;
+    /** The project dir. */
+    private File myProject;
+}
+
+
+/* ------------------------------------------------------------------------ */
+/*  DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS COMMENT.               */
+/*                                                                          */
+/*  The contents of this file are subject to the Mozilla Public License     */
+/*  Version 1.0 (the "License"); you may not use this file except in        */
+/*  compliance with the License. You may obtain a copy of the License at    */
+/*  http://www.mozilla.org/MPL/.                                            */
+/*                                                                          */
+/*  Software distributed under the License is distributed on an "AS IS"     */
+/*  basis, WITHOUT WARRANTY OF ANY KIND, either express or implied.  See    */
+/*  the License for the specific language governing rights and limitations  */
+/*  under the License.                                                      */
+/*                                                                          */
+/*  The Original Code is: all this file.                                    */
+/*                                                                          */
+/*  The Initial Developer of the Original Code is Florent Georges.          */
+/*                                                                          */
+/*  Contributor(s): none.                                                   */
+/* ------------------------------------------------------------------------ */
@@ -0,0 +1,149 @@
+/****************************************************************************/
+/*  File:       LruCacheTest.java                                           */
+/*  Author:     F. Georges - H2O Consulting                                 */
+/*  Date:       2026-10-18                                                  */
+/*  Tags:                                                                   */
+/*      Copyright (c) 2026 Florent Georges (see end of file.)               */
+/* ------------------------------------------------------------------------ */
+
+
+package org.expath.xproject.oxygen;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+
+/**
+ * Test the eviction, the stamps, the counters and the dropped() hook of LruCache.
+ *
+ * @author Florent Georges
+ * @date   2026-10-18
+ */
+public class LruCacheTest
+{
+    @Before
+    public void setUp()
+    {
+        myCache = new RecordingCache(2);
+    }
+
+    @Test
+    public void leastRecentlyUsedIsEvicted()
+    {
+        myCache.put("a", "1", "A");
+        myCache.put("b", "1", "B");
+        // "a" is now the most recently used
+        assertEquals("A", myCache.get("a", "1"));
+        myCache.put("c", "1", "C");
+        assertEquals(2, myCache.size());
+        assertEquals(1, myCache.getEvictions());
+        assertEquals(Arrays.asList("B"), myCache.dropped);
+        assertNull(myCache.get("b", "1"));
+        assertEquals("A", myCache.get("a", "1"));
+        assertEquals("C", myCache.get("c", "1"));
+    }
+
+    @Test
+    public void staleEntryIsAMissAndIsRemoved()
+    {
+        myCache.put("a", "1", "A");
+        assertNull(myCache.get("a", "2"));
+        assertEquals(0, myCache.size());
+        assertEquals(Arrays.asList("A"), myCache.dropped);
+        // it does not come back with the old stamp
+        assertNull(myCache.get("a", "1"));
+        assertEquals(0, myCache.getHits());
+        assertEquals(2, myCache.getMisses());
+    }
+
+    @Test
+    public void countersAreReported()
+    {
+        myCache.put("a", "1", "A");
+        myCache.get("a", "1");
+        myCache.get("a", "1");
+        myCache.get("b", "1");
+        assertEquals(2, myCache.getHits());
+        assertEquals(1, myCache.getMisses());
+        assertEquals("hits: 2, misses: 1, evictions: 0, size: 1/2", myCache.getStats());
+    }
+
+    @Test
+    public void replacedValueIsDroppedOnlyIfDifferent()
+    {
+        myCache.put("a", "1", "A");
+        myCache.put("a", "2", "A");
+        assertEquals(0, myCache.dropped.size());
+        assertEquals("A", myCache.get("a", "2"));
+        myCache.put("a", "3", "A'");
+        assertEquals(Arrays.asList("A"), myCache.dropped);
+        assertEquals(1, myCache.size());
+    }
+
+    @Test
+    public void removedAndClearedValuesAreDropped()
+    {
+        myCache.put("a", "1", "A");
+        myCache.put("b", "1", "B");
+        myCache.remove("a");
+        myCache.remove("unknown");
+        assertEquals(Arrays.asList("A"), myCache.dropped);
+        myCache.put("c", "1", "C");
+        myCache.clear();
+        assertEquals(0, myCache.size());
+        assertEquals(Arrays.asList("A", "B", "C"), myCache.dropped);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void maxSizeMustBePositive()
+    {
+        new LruCache<String, String>(0);
+    }
+
+    /**
+     * A cache recording the values passed to dropped().
+     */
+    private static class RecordingCache
+            extends LruCache<String, String>
+    {
+        public RecordingCache(int max) {
+            super(max);
+        }
+
+        @Override
+        protected void dropped(String value) {
+            dropped.add(value);
+        }
+
+        public final List<String> dropped = new ArrayList<String>();
+    }
+
+    private RecordingCache myCache;
+}
+
+
+/* ------------------------------------------------------------------------ */
+/*  DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS COMMENT.               */
+/*                                                                          */
+/*  The contents of this file are subject to the Mozilla Public License     */
+/*  Version 1.0 (the "License"); you may not use this file except in        */
+/*  compliance with the License. You may obtain a copy of the License at    */
+/*  http://www.mozilla.org/MPL/.                                            */
+/*                                                                          */
+/*  Software distributed under the License is distributed on an "AS IS"     */
+/*  basis, WITHOUT WARRANTY OF ANY KIND, either express or implied.  See    */
+/*  the License for the specific language governing rights and limitations  */
+/*  under the License.                                                      */
+/*                                                                          */
+/*  The Original Code is: all this file.                                    */
+/*                                                                          */
+/*  The Initial Developer of the Original Code is Florent Georges.          */
+/*                                                                          */
+/*  Contributor(s): none.                                                   */
+/* ------------------------------------------------------------------------ */
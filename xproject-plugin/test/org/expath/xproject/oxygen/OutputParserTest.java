@@ -0,0 +1,157 @@
+/****************************************************************************/
+/*  File:       OutputParserTest.java                                       */
+/*  Author:     F. Georges - H2O Consulting                                 */
+/*  Date:       2026-10-18                                                  */
+/*  Tags:                                                                   */
+/*      Copyright (c) 2026 Florent Georges (see end of file.)               */
+/* ------------------------------------------------------------------------ */
+
+
+package org.expath.xproject.oxygen;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+
+
+/**
+ * Test the events OutputParser recognizes in the output of Calabash and of the XSpec harness.
+ *
+ * @author Florent Georges
+ * @date   2026-10-18
+ */
+public class OutputParserTest
+{
+    @Before
+    public void setUp()
+    {
+        myEvents = new ArrayList<String>();
+        myParser = new OutputParser(new OutputParser.Listener() {
+            public void event(OutputParser.Type type, String text) {
+                myEvents.add(type + "|" + text);
+            }
+        });
+    }
+
+    @Test
+    public void stepsAreRecognizedByTheirType()
+    {
+        err("INFO: Running p:xslt compile");
+        err("INFO: file:/dir/build.xproc:42:13:Running cx:zip zip");
+        // not a step, the word after "Running" is not a QName
+        err("INFO: Running on Saxon version 9.5");
+        assertEquals(Arrays.asList(
+                "STEP_STARTED|p:xslt compile",
+                "STEP_STARTED|cx:zip zip",
+                "MESSAGE|Running on Saxon version 9.5"), myEvents);
+    }
+
+    @Test
+    public void errorsOnBothStreams()
+    {
+        err("SEVERE: file:/dir/build.xproc:12:3:It does not work");
+        out("Error at xsl:template on line 3 of style.xsl:");
+        err("Static error in XPath expression");
+        err("err:XD0011: Resource not found");
+        err("XTDE0640: Recursive definition");
+        // not an error code: lowercase, or too short
+        err("Xtde0640: nope");
+        err("XTD0640: nope");
+        assertEquals(Arrays.asList(
+                "ERROR|It does not work",
+                "ERROR|Error at xsl:template on line 3 of style.xsl:",
+                "ERROR|Static error in XPath expression",
+                "ERROR|err:XD0011: Resource not found",
+                "ERROR|XTDE0640: Recursive definition",
+                "MESSAGE|Xtde0640: nope",
+                "MESSAGE|XTD0640: nope"), myEvents);
+    }
+
+    @Test
+    public void failures()
+    {
+        out("Pipeline failed: err:XC0030: no way");
+        err("Processing terminated by xsl:message at line 12");
+        assertEquals(Arrays.asList(
+                "FAILURE|Pipeline failed: err:XC0030: no way",
+                "FAILURE|Processing terminated by xsl:message at line 12"), myEvents);
+    }
+
+    @Test
+    public void logHeadersStacktracesAndStdoutAreIgnored()
+    {
+        err("Oct 18, 2026 10:42:13 AM com.xmlcalabash.drivers.Main run");
+        err("java.lang.RuntimeException: boom");
+        err("\tat com.xmlcalabash.Foo.bar(Foo.java:12)");
+        err("    ... 12 more");
+        err("Caused by: java.io.IOException: bang");
+        err("");
+        out("<result/>");
+        err("Hello from xsl:message");
+        assertEquals(Arrays.asList(
+                "MESSAGE|java.lang.RuntimeException: boom",
+                "MESSAGE|Hello from xsl:message"), myEvents);
+    }
+
+    @Test
+    public void xspecScenariosAndTotals()
+    {
+        err("Testing with Saxon-HE 9.5.1.8");
+        err("adding numbers");
+        err("..with zero");
+        err("FAILED");
+        err("PENDING: (not done yet) with negatives");
+        err("PENDING: with infinity");
+        err("Oct 18, 2026 10:42:13 AM net.sf.saxon.Foo bar");
+        err("passed: 1 / pending: 2 / failed: 1 / total: 4");
+        // after the totals, back to plain messages
+        err("Done");
+        assertEquals(Arrays.asList(
+                "TESTS_STARTED|Saxon-HE 9.5.1.8",
+                "SCENARIO|adding numbers",
+                "SCENARIO|with zero",
+                "SCENARIO_FAILED|with zero",
+                "SCENARIO_PENDING|with negatives",
+                "SCENARIO_PENDING|with infinity",
+                "TEST_TOTALS|passed: 1 / pending: 2 / failed: 1 / total: 4",
+                "MESSAGE|Done"), myEvents);
+    }
+
+    private void out(String line)
+    {
+        myParser.parse(line, false);
+    }
+
+    private void err(String line)
+    {
+        myParser.parse(line, true);
+    }
+
+    private OutputParser myParser;
+    private List<String> myEvents;
+}
+
+
+/* ------------------------------------------------------------------------ */
+/*  DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS COMMENT.               */
+/*                                                                          */
+/*  The contents of this file are subject to the Mozilla Public License     */
+/*  Version 1.0 (the "License"); you may not use this file except in        */
+/*  compliance with the License. You may obtain a copy of the License at    */
+/*  http://www.mozilla.org/MPL/.                                            */
+/*                                                                          */
+/*  Software distributed under the License is distributed on an "AS IS"     */
+/*  basis, WITHOUT WARRANTY OF ANY KIND, either express or implied.  See    */
+/*  the License for the specific language governing rights and limitations  */
+/*  under the License.                                                      */
+/*                                                                          */
+/*  The Original Code is: all this file.                                    */
+/*                                                                          */
+/*  The Initial Developer of the Original Code is Florent Georges.          */
+/*                                                                          */
+/*  Contributor(s): none.                                                   */
+/* ------------------------------------------------------------------------ */
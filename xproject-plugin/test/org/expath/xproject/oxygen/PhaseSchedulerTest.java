@@ -0,0 +1,265 @@
+/****************************************************************************/
+/*  File:       PhaseSchedulerTest.java                                     */
+/*  Author:     F. Georges - H2O Consulting                                 */
+/*  Date:       2026-10-18                                                  */
+/*  Tags:                                                                   */
+/*      Copyright (c) 2026 Florent Georges (see end of file.)               */
+/* ------------------------------------------------------------------------ */
+
+
+package org.expath.xproject.oxygen;
+
+import java.io.File;
+import java.util.EnumSet;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import org.apache.log4j.AppenderSkeleton;
+import org.apache.log4j.Level;
+import org.apache.log4j.Logger;
+import org.apache.log4j.spi.LoggingEvent;
+import org.expath.xproject.oxygen.XProjectConstants.ProjectPhase;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+
+/**
+ * Test the order in which PhaseScheduler runs the phases, and the skipping of the failed ones.
+ *
+ * The projects are fakes: running a phase only registers a process on the
+ * execution, which ends when the test says so.  The summary is captured
+ * from the logger of the messages.
+ *
+ * @author Florent Georges
+ * @date   2026-10-18
+ */
+public class PhaseSchedulerTest
+{
+    @Before
+    public void setUp()
+            throws Exception
+    {
+        TestSupport.messages();
+        myDir = TestSupport.createTempDir("xproject-scheduler-");
+        myProject = TestSupport.createProject(myDir, "project");
+        myPlugin = TestSupport.mkdirs(myDir, "plugin");
+        mySummaries = new LinkedBlockingQueue<LoggingEvent>();
+        Logger log = Logger.getLogger("xproject-scheduler-test");
+        log.removeAllAppenders();
+        log.setAdditivity(false);
+        log.setLevel(Level.INFO);
+        log.addAppender(new AppenderSkeleton() {
+            @Override
+            protected void append(LoggingEvent event) {
+                if ( event.getRenderedMessage().startsWith("Phases ") ) {
+                    mySummaries.add(event);
+                }
+            }
+            public void close() {
+            }
+            public boolean requiresLayout() {
+                return false;
+            }
+        });
+        myMsg = new UserMessages(null, log).quiet();
+        myFactory = new JavaProcessFactory(null, myMsg);
+        myStarted = new LinkedBlockingQueue<FakeProject>();
+        myScheduler = new PhaseScheduler(myProject, myMsg, myFactory, myPlugin) {
+            @Override
+            XProject createProject() {
+                return new FakeProject();
+            }
+        };
+    }
+
+    @After
+    public void tearDown()
+    {
+        ProjectQueue.getInstance(myProject).cancelAll();
+        TestSupport.delete(myDir);
+    }
+
+    @Test
+    public void dependencies()
+    {
+        assertEquals(EnumSet.noneOf(ProjectPhase.class), PhaseScheduler.getDependencies(ProjectPhase.BUILD));
+        assertEquals(EnumSet.of(ProjectPhase.BUILD), PhaseScheduler.getDependencies(ProjectPhase.TEST));
+        assertEquals(EnumSet.of(ProjectPhase.BUILD), PhaseScheduler.getDependencies(ProjectPhase.DOC));
+        assertEquals(EnumSet.of(ProjectPhase.BUILD, ProjectPhase.TEST),
+                PhaseScheduler.getDependencies(ProjectPhase.DEPLOY));
+        assertEquals(EnumSet.of(ProjectPhase.BUILD, ProjectPhase.DOC),
+                PhaseScheduler.getDependencies(ProjectPhase.RELEASE));
+    }
+
+    @Test
+    public void allPhasesRunInTheirDependencyOrder()
+            throws Exception
+    {
+        myScheduler.run(PhaseScheduler.ALL);
+        FakeProject build = started();
+        assertEquals(ProjectPhase.BUILD, build.phase);
+        assertNull(myStarted.poll(200, TimeUnit.MILLISECONDS));
+        build.end(true);
+        FakeProject one = started();
+        FakeProject two = started();
+        assertEquals(EnumSet.of(ProjectPhase.TEST, ProjectPhase.DOC), EnumSet.of(one.phase, two.phase));
+        one.end(true);
+        two.end(true);
+        FakeProject release = started();
+        assertEquals(ProjectPhase.RELEASE, release.phase);
+        assertNull(mySummaries.poll(200, TimeUnit.MILLISECONDS));
+        release.end(true);
+        LoggingEvent summary = summary();
+        assertEquals(Level.INFO, summary.getLevel());
+        String msg = summary.getRenderedMessage();
+        assertTrue(msg, msg.startsWith("Phases succesful"));
+        for ( ProjectPhase p : EnumSet.of(ProjectPhase.BUILD, ProjectPhase.TEST, ProjectPhase.DOC, ProjectPhase.RELEASE) ) {
+            assertTrue(msg, msg.contains("\n" + p + ": succeeded in "));
+        }
+    }
+
+    @Test
+    public void failedBuildSkipsAllTheOtherPhases()
+            throws Exception
+    {
+        myScheduler.run(PhaseScheduler.ALL);
+        started().end(false);
+        LoggingEvent summary = summary();
+        assertEquals(Level.ERROR, summary.getLevel());
+        String msg = summary.getRenderedMessage();
+        assertTrue(msg, msg.contains("\nBUILD: failed in "));
+        assertTrue(msg, msg.contains("\nTEST: skipped"));
+        assertTrue(msg, msg.contains("\nDOC: skipped"));
+        assertTrue(msg, msg.contains("\nRELEASE: skipped"));
+        assertNull(myStarted.poll(200, TimeUnit.MILLISECONDS));
+    }
+
+    @Test
+    public void failedDocSkipsTheReleaseOnly()
+            throws Exception
+    {
+        myScheduler.run(PhaseScheduler.ALL);
+        started().end(true);
+        FakeProject one = started();
+        FakeProject two = started();
+        FakeProject doc = one.phase == ProjectPhase.DOC ? one : two;
+        FakeProject test = one.phase == ProjectPhase.DOC ? two : one;
+        doc.end(false);
+        test.end(true);
+        String msg = summary().getRenderedMessage();
+        assertTrue(msg, msg.contains("\nTEST: succeeded in "));
+        assertTrue(msg, msg.contains("\nDOC: failed in "));
+        assertTrue(msg, msg.contains("\nRELEASE: skipped"));
+        assertNull(myStarted.poll(200, TimeUnit.MILLISECONDS));
+    }
+
+    @Test
+    public void onlyTheDependenciesOfTheTargetsRun()
+            throws Exception
+    {
+        myScheduler.run(EnumSet.of(ProjectPhase.TEST));
+        FakeProject build = started();
+        assertEquals(ProjectPhase.BUILD, build.phase);
+        build.end(true);
+        FakeProject test = started();
+        assertEquals(ProjectPhase.TEST, test.phase);
+        test.end(true);
+        String msg = summary().getRenderedMessage();
+        assertTrue(msg, msg.startsWith("Phases succesful"));
+        assertTrue(msg, ! msg.contains("DOC"));
+        assertNull(myStarted.poll(200, TimeUnit.MILLISECONDS));
+    }
+
+    private FakeProject started()
+            throws InterruptedException
+    {
+        FakeProject prj = myStarted.poll(5, TimeUnit.SECONDS);
+        assertNotNull("No phase started", prj);
+        return prj;
+    }
+
+    private LoggingEvent summary()
+            throws InterruptedException
+    {
+        LoggingEvent event = mySummaries.poll(5, TimeUnit.SECONDS);
+        assertNotNull("No summary reported", event);
+        return event;
+    }
+
+    /**
+     * A project the phase of which runs until end() is called.
+     */
+    private class FakeProject
+            extends XProject
+    {
+        public FakeProject() {
+            super(myProject, myMsg, myFactory, myPlugin);
+        }
+
+        @Override
+        public void setPhaseListener(PhaseListener listener) {
+            myListener = listener;
+        }
+
+        @Override
+        void setExecution(Execution exec) {
+            myExec = exec;
+        }
+
+        @Override
+        public void run(ProjectPhase phase)
+                throws XProjectException {
+            this.phase = phase;
+            myExec.processStarting();
+            myStarted.add(this);
+        }
+
+        /**
+         * Like a process listener when the process ended.
+         */
+        public void end(boolean success) {
+            myListener.phaseEnded(success);
+            myExec.processEnded();
+        }
+
+        public volatile ProjectPhase phase;
+        private volatile PhaseListener myListener;
+        private volatile Execution myExec;
+    }
+
+    private UserMessages myMsg;
+    private File myDir;
+    private File myProject;
+    private File myPlugin;
+    private JavaProcessFactory myFactory;
+    private PhaseScheduler myScheduler;
+    private BlockingQueue<FakeProject> myStarted;
+    private BlockingQueue<LoggingEvent> mySummaries;
+}
+
+
+/* ------------------------------------------------------------------------ */
+/*  DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS COMMENT.               */
+/*                                                                          */
+/*  The contents of this file are subject to the Mozilla Public License     */
+/*  Version 1.0 (the "License"); you may not use this file except in        */
+/*  compliance with the License. You may obtain a copy of the License at    */
+/*  http://www.mozilla.org/MPL/.                                            */
+/*                                                                          */
+/*  Software distributed under the License is distributed on an "AS IS"     */
+/*  basis, WITHOUT WARRANTY OF ANY KIND, either express or implied.  See    */
+/*  the License for the specific language governing rights and limitations  */
+/*  under the License.                                                      */
+/*                                                                          */
+/*  The Original Code is: all this file.                                    */
+/*                                                                          */
+/*  The Initial Developer of the Original Code is Florent Georges.          */
+/*                                                                          */
+/*  Contributor(s): none.                                                   */
+/* ------------------------------------------------------------------------ */
@@ -0,0 +1,318 @@
+/****************************************************************************/
+/*  File:       ProjectQueueTest.java                                       */
+/*  Author:     F. Georges - H2O Consulting                                 */
+/*  Date:       2026-10-18                                                  */
+/*  Tags:                                                                   */
+/*      Copyright (c) 2026 Florent Georges (see end of file.)               */
+/* ------------------------------------------------------------------------ */
+
+
+package org.expath.xproject.oxygen;
+
+import java.io.File;
+import java.util.Arrays;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import org.expath.xproject.oxygen.XProjectConstants.ProjectPhase;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+
+/**
+ * Test the coalescing, superseding and ordering of the phases in ProjectQueue.
+ *
+ * The projects are fakes: running a phase only registers a process on the
+ * execution, which ends when the test says so.
+ *
+ * @author Florent Georges
+ * @date   2026-10-18
+ */
+public class ProjectQueueTest
+{
+    @Before
+    public void setUp()
+            throws Exception
+    {
+        myMsg = TestSupport.messages();
+        myDir = TestSupport.createTempDir("xproject-queue-");
+        myProject = TestSupport.createProject(myDir, "project");
+        myPlugin = TestSupport.mkdirs(myDir, "plugin");
+        myFactory = new JavaProcessFactory(null, myMsg);
+        myQueue = ProjectQueue.getInstance(myProject);
+        myStarted = new LinkedBlockingQueue<FakeProject>();
+    }
+
+    @After
+    public void tearDown()
+    {
+        myQueue.cancelAll();
+        TestSupport.delete(myDir);
+    }
+
+    @Test
+    public void pendingPhaseIsCoalesced()
+            throws Exception
+    {
+        Result first = new Result();
+        Result second = new Result();
+        submit(ProjectPhase.BUILD, null);
+        FakeProject build = started();
+        submit(ProjectPhase.RELEASE, first);
+        submit(ProjectPhase.RELEASE, second);
+        assertEquals(Arrays.asList(ProjectPhase.BUILD, ProjectPhase.RELEASE), myQueue.getPhases());
+        build.end(true);
+        FakeProject release = started();
+        assertEquals(ProjectPhase.RELEASE, release.phase);
+        release.end(true);
+        // both requests are notified, by the same execution
+        assertEquals(Boolean.TRUE, first.get());
+        assertEquals(Boolean.TRUE, second.get());
+        assertNull(myStarted.poll(200, TimeUnit.MILLISECONDS));
+    }
+
+    @Test
+    public void supersedingPhaseKeepsItsPlace()
+            throws Exception
+    {
+        Result old_build = new Result();
+        Result new_build = new Result();
+        submit(ProjectPhase.BUILD, old_build);
+        FakeProject build = started();
+        submit(ProjectPhase.TEST, null);
+        submit(ProjectPhase.BUILD, new_build);
+        assertTrue(build.exec.isCancelled());
+        // the new build is before the test queued before it
+        assertEquals(Arrays.asList(ProjectPhase.BUILD, ProjectPhase.BUILD, ProjectPhase.TEST), myQueue.getPhases());
+        build.end(false);
+        FakeProject rebuild = started();
+        assertEquals(ProjectPhase.BUILD, rebuild.phase);
+        assertFalse(rebuild.exec.isCancelled());
+        // the listener of the cancelled build waits for the new one
+        assertNull(old_build.poll());
+        rebuild.end(true);
+        assertEquals(Boolean.TRUE, old_build.get());
+        assertEquals(Boolean.TRUE, new_build.get());
+        assertEquals(ProjectPhase.TEST, started().phase);
+    }
+
+    @Test
+    public void enqueuedPhaseWaitsForTheRunningOne()
+            throws Exception
+    {
+        Result first = new Result();
+        Result second = new Result();
+        submit(ProjectPhase.BUILD, first);
+        FakeProject build = started();
+        myQueue.enqueue(new FakeProject(ProjectPhase.BUILD), ProjectPhase.BUILD, myMsg, second);
+        assertFalse(build.exec.isCancelled());
+        assertEquals(Arrays.asList(ProjectPhase.BUILD, ProjectPhase.BUILD), myQueue.getPhases());
+        assertNull(myStarted.poll(200, TimeUnit.MILLISECONDS));
+        build.end(true);
+        assertEquals(Boolean.TRUE, first.get());
+        FakeProject rebuild = started();
+        assertEquals(ProjectPhase.BUILD, rebuild.phase);
+        assertNull(second.poll());
+        rebuild.end(false);
+        assertEquals(Boolean.FALSE, second.get());
+    }
+
+    @Test
+    public void testAndDocRunConcurrently()
+            throws Exception
+    {
+        submit(ProjectPhase.BUILD, null);
+        FakeProject build = started();
+        submit(ProjectPhase.TEST, null);
+        submit(ProjectPhase.DOC, null);
+        submit(ProjectPhase.RELEASE, null);
+        // nothing runs with a build
+        assertNull(myStarted.poll(200, TimeUnit.MILLISECONDS));
+        build.end(true);
+        FakeProject one = started();
+        FakeProject two = started();
+        assertTrue(one.phase != two.phase);
+        assertTrue(one.phase == ProjectPhase.TEST || one.phase == ProjectPhase.DOC);
+        assertTrue(two.phase == ProjectPhase.TEST || two.phase == ProjectPhase.DOC);
+        // the release waits for both
+        one.end(true);
+        assertNull(myStarted.poll(200, TimeUnit.MILLISECONDS));
+        two.end(true);
+        assertEquals(ProjectPhase.RELEASE, started().phase);
+    }
+
+    @Test
+    public void phasesArePreparedOffTheCallerThread()
+            throws Exception
+    {
+        submit(ProjectPhase.BUILD, null);
+        FakeProject build = started();
+        assertNotNull(build.thread);
+        assertTrue(build.thread != Thread.currentThread());
+        build.end(true);
+    }
+
+    @Test
+    public void cancelAllNotifiesThePendingRequests()
+            throws Exception
+    {
+        Result build_result = new Result();
+        Result test_result = new Result();
+        submit(ProjectPhase.BUILD, build_result);
+        FakeProject build = started();
+        submit(ProjectPhase.TEST, test_result);
+        myQueue.cancelAll();
+        assertEquals(Boolean.FALSE, test_result.get());
+        assertTrue(build.exec.isCancelled());
+        build.end(false);
+        assertEquals(Boolean.FALSE, build_result.get());
+        // the build may end on the thread which prepared it, after the test ended its process
+        awaitEmptyQueue();
+    }
+
+    @Test
+    public void failureToPrepareEndsTheExecution()
+            throws Exception
+    {
+        Result result = new Result();
+        FakeProject prj = new FakeProject(ProjectPhase.BUILD);
+        prj.fail = true;
+        myQueue.submit(prj, ProjectPhase.BUILD, myMsg, result);
+        assertEquals(Boolean.FALSE, result.get());
+        submit(ProjectPhase.TEST, null);
+        started().end(true);
+    }
+
+    private void submit(ProjectPhase phase, PhaseListener listener)
+    {
+        myQueue.submit(new FakeProject(phase), phase, myMsg, listener);
+    }
+
+    private void awaitEmptyQueue()
+            throws InterruptedException
+    {
+        long limit = System.currentTimeMillis() + 5000;
+        while ( ! myQueue.getPhases().isEmpty() && System.currentTimeMillis() < limit ) {
+            Thread.sleep(10);
+        }
+        assertEquals(Arrays.asList(), myQueue.getPhases());
+    }
+
+    private FakeProject started()
+            throws InterruptedException
+    {
+        FakeProject prj = myStarted.poll(5, TimeUnit.SECONDS);
+        assertNotNull("No phase started", prj);
+        return prj;
+    }
+
+    /**
+     * A project the phases of which run until end() is called.
+     */
+    private class FakeProject
+            extends XProject
+    {
+        public FakeProject(ProjectPhase phase) {
+            super(myProject, myMsg, myFactory, myPlugin);
+            this.phase = phase;
+        }
+
+        @Override
+        public void setPhaseListener(PhaseListener listener) {
+            myListener = listener;
+        }
+
+        @Override
+        void setExecution(Execution exec) {
+            this.exec = exec;
+        }
+
+        @Override
+        public void run(ProjectPhase phase)
+                throws XProjectException {
+            if ( fail ) {
+                throw new XProjectException("Failure for the test");
+            }
+            thread = Thread.currentThread();
+            exec.processStarting();
+            myStarted.add(this);
+        }
+
+        /**
+         * Like a process listener when the process ended.
+         */
+        public void end(boolean success) {
+            if ( myListener != null ) {
+                myListener.phaseEnded(success);
+            }
+            exec.processEnded();
+        }
+
+        public final ProjectPhase phase;
+        public volatile Execution exec;
+        public volatile Thread thread;
+        public boolean fail;
+        private volatile PhaseListener myListener;
+    }
+
+    /**
+     * A phase listener, keeping the result.
+     */
+    private static class Result
+            implements PhaseListener
+    {
+        public void phaseEnded(boolean success) {
+            myResult.add(success);
+        }
+
+        public Boolean get()
+                throws InterruptedException {
+            Boolean result = myResult.poll(5, TimeUnit.SECONDS);
+            assertNotNull("The listener has not been notified", result);
+            return result;
+        }
+
+        public Boolean poll()
+                throws InterruptedException {
+            return myResult.poll(200, TimeUnit.MILLISECONDS);
+        }
+
+        private final BlockingQueue<Boolean> myResult = new LinkedBlockingQueue<Boolean>();
+    }
+
+    private UserMessages myMsg;
+    private File myDir;
+    private File myProject;
+    private File myPlugin;
+    private JavaProcessFactory myFactory;
+    private ProjectQueue myQueue;
+    private BlockingQueue<FakeProject> myStarted;
+}
+
+
+/* ------------------------------------------------------------------------ */
+/*  DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS COMMENT.               */
+/*                                                                          */
+/*  The contents of this file are subject to the Mozilla Public License     */
+/*  Version 1.0 (the "License"); you may not use this file except in        */
+/*  compliance with the License. You may obtain a copy of the License at    */
+/*  http://www.mozilla.org/MPL/.                                            */
+/*                                                                          */
+/*  Software distributed under the License is distributed on an "AS IS"     */
+/*  basis, WITHOUT WARRANTY OF ANY KIND, either express or implied.  See    */
+/*  the License for the specific language governing rights and limitations  */
+/*  under the License.                                                      */
+/*                                                                          */
+/*  The Original Code is: all this file.                                    */
+/*                                                                          */
+/*  The Initial Developer of the Original Code is Florent Georges.          */
+/*                                                                          */
+/*  Contributor(s): none.                                                   */
+/* ------------------------------------------------------------------------ */
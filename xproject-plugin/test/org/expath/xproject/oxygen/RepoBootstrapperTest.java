@@ -0,0 +1,194 @@
+/****************************************************************************/
+/*  File:       RepoBootstrapperTest.java                                   */
+/*  Author:     F. Georges - H2O Consulting                                 */
+/*  Date:       2026-10-18                                                  */
+/*  Tags:                                                                   */
+/*      Copyright (c) 2026 Florent Georges (see end of file.)               */
+/* ------------------------------------------------------------------------ */
+
+
+package org.expath.xproject.oxygen;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+
+/**
+ * Test the installation of the bundled packages by RepoBootstrapper.
+ *
+ * The bundled XAR files (in rsrc/packages/, with their checksums) are
+ * copied to the packages/ dir of a temporary plugin dir, and installed in
+ * its repo/ dir.
+ *
+ * @author Florent Georges
+ * @date   2026-10-18
+ */
+public class RepoBootstrapperTest
+{
+    @Before
+    public void setUp()
+            throws Exception
+    {
+        myMsg = TestSupport.messages();
+        myDir = TestSupport.createTempDir("xproject-bootstrap-");
+        myPlugin = TestSupport.mkdirs(myDir, "plugin");
+        myPackages = TestSupport.mkdirs(myPlugin, "packages");
+        myRepo = new File(myPlugin, "repo");
+        File[] bundled = new File("rsrc/packages").listFiles();
+        assertTrue(bundled != null && bundled.length > 0);
+        for ( File f : bundled ) {
+            MiscUtils.copyFile(f, new File(myPackages, f.getName()));
+        }
+    }
+
+    @After
+    public void tearDown()
+    {
+        TestSupport.delete(myDir);
+    }
+
+    @Test
+    public void bundledPackagesAreInstalled()
+            throws Exception
+    {
+        bootstrap();
+        for ( String dir : PACKAGES ) {
+            assertTrue(dir, new File(myRepo, dir + "/expath-pkg.xml").isFile());
+        }
+        String list = TestSupport.read(new File(myRepo, ".expath-pkg/packages.txt"));
+        assertTrue(list.contains("file-saxon-0.4.0 http://expath.org/lib/files 0.4.0\n"));
+        assertEquals(PACKAGES.length, list.split("\n").length);
+        String classpath = TestSupport.read(new File(myRepo, "file-saxon-0.4.0/.saxon/classpath.txt"));
+        assertTrue(classpath.trim().endsWith("file-saxon.jar"));
+    }
+
+    @Test
+    public void checksumMismatchIsRejected()
+            throws Exception
+    {
+        TestSupport.write(myPackages, "checksums.txt",
+                "0000000000000000000000000000000000000000  file-saxon-0.4.0.xar\n"
+                + TestSupport.read(new File(myPackages, "checksums.txt")).replaceAll("[0-9a-f]+  file-saxon-0.4.0.xar\n", ""));
+        bootstrap();
+        assertFalse(new File(myRepo, "file-saxon-0.4.0").exists());
+        assertFalse(TestSupport.read(new File(myRepo, ".expath-pkg/packages.txt")).contains("file-saxon"));
+        assertFalse(getRecord().contains("file-saxon-0.4.0.xar"));
+        // the other ones are installed
+        assertTrue(new File(myRepo, "xproject-0.5.0/expath-pkg.xml").isFile());
+    }
+
+    @Test
+    public void unchangedFileIsSkipped()
+            throws Exception
+    {
+        bootstrap();
+        File marker = TestSupport.write(myRepo, "file-saxon-0.4.0/marker.txt", "not reinstalled");
+        File list = new File(myRepo, ".expath-pkg/packages.txt");
+        assertTrue(list.delete());
+        // even a wrong checksum is not checked, the files are not opened
+        TestSupport.write(myPackages, "checksums.txt", "");
+        bootstrap();
+        assertTrue(marker.isFile());
+        assertFalse(list.exists());
+    }
+
+    @Test
+    public void installedVersionIsSkipped()
+            throws Exception
+    {
+        bootstrap();
+        File marker = TestSupport.write(myRepo, "file-saxon-0.4.0/marker.txt", "not reinstalled");
+        String before = getRecord();
+        // a new stamp, but the same version
+        File xar = new File(myPackages, "file-saxon-0.4.0.xar");
+        assertTrue(xar.setLastModified(xar.lastModified() - 60000));
+        bootstrap();
+        assertTrue(marker.isFile());
+        String after = getRecord();
+        assertFalse(before.equals(after));
+        assertTrue(after.contains("file-saxon-0.4.0.xar\t" + MiscUtils.getStamp(xar) + "\tfile-saxon-0.4.0"));
+    }
+
+    @Test
+    public void entryOutOfThePackageIsRejected()
+            throws Exception
+    {
+        ZipOutputStream zip = new ZipOutputStream(new FileOutputStream(new File(myPackages, "evil-1.0.xar")));
+        try {
+            zip.putNextEntry(new ZipEntry("expath-pkg.xml"));
+            zip.write(("<package xmlns=\"http://expath.org/ns/pkg\" name=\"http://example.org/evil\""
+                    + " abbrev=\"evil\" version=\"1.0\" spec=\"1.0\"/>\n").getBytes("UTF-8"));
+            zip.closeEntry();
+            zip.putNextEntry(new ZipEntry("../../evil.txt"));
+            zip.write("out of the repo".getBytes("UTF-8"));
+            zip.closeEntry();
+        }
+        finally {
+            zip.close();
+        }
+        bootstrap();
+        assertFalse(new File(myPlugin, "evil.txt").exists());
+        assertFalse(new File(myRepo, "evil.txt").exists());
+        assertFalse(new File(myRepo, "evil-1.0").exists());
+        assertFalse(getRecord().contains("evil-1.0.xar"));
+        // the bundled ones are installed
+        assertTrue(new File(myRepo, "file-saxon-0.4.0/expath-pkg.xml").isFile());
+    }
+
+    private void bootstrap()
+    {
+        new RepoBootstrapper(myPlugin, myMsg).start();
+        RepoBootstrapper.await();
+    }
+
+    private String getRecord()
+            throws Exception
+    {
+        return TestSupport.read(new File(myRepo, ".xproject-bundled"));
+    }
+
+    /** The dirs of the bundled packages, once installed. */
+    private static final String[] PACKAGES = {
+        "expath-zip-saxon-0.6.0", "file-saxon-0.4.0", "xproject-0.5.0", "xqdoc-0.1", "xspec-0.4.0rc1"
+    };
+
+    private UserMessages myMsg;
+    /** The temporary dir. */
+    private File myDir;
+    /** The plugin dir. */
+    private File myPlugin;
+    /** The bundled packages dir. */
+    private File myPackages;
+    /** The repository dir. */
+    private File myRepo;
+}
+
+
+/* ------------------------------------------------------------------------ */
+/*  DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS COMMENT.               */
+/*                                                                          */
+/*  The contents of this file are subject to the Mozilla Public License     */
+/*  Version 1.0 (the "License"); you may not use this file except in        */
+/*  compliance with the License. You may obtain a copy of the License at    */
+/*  http://www.mozilla.org/MPL/.                                            */
+/*                                                                          */
+/*  Software distributed under the License is distributed on an "AS IS"     */
+/*  basis, WITHOUT WARRANTY OF ANY KIND, either express or implied.  See    */
+/*  the License for the specific language governing rights and limitations  */
+/*  under the License.                                                      */
+/*                                                                          */
+/*  The Original Code is: all this file.                                    */
+/*                                                                          */
+/*  The Initial Developer of the Original Code is Florent Georges.          */
+/*                                                                          */
+/*  Contributor(s): none.                                                   */
+/* ------------------------------------------------------------------------ */
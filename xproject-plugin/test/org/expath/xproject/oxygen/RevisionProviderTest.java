@@ -0,0 +1,180 @@
+/****************************************************************************/
+/*  File:       RevisionProviderTest.java                                   */
+/*  Author:     F. Georges - H2O Consulting                                 */
+/*  Date:       2026-10-18                                                  */
+/*  Tags:                                                                   */
+/*      Copyright (c) 2026 Florent Georges (see end of file.)               */
+/* ------------------------------------------------------------------------ */
+
+
+package org.expath.xproject.oxygen;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.InputStreamReader;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import org.junit.After;
+import org.junit.Assume;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+
+
+/**
+ * Test the revision RevisionProvider reads from the Git and Subversion metadata.
+ *
+ * The Git repositories are created by the git command (the tests are
+ * skipped if it is not available), the Subversion ones are fakes.
+ *
+ * @author Florent Georges
+ * @date   2026-10-18
+ */
+public class RevisionProviderTest
+{
+    @Before
+    public void setUp()
+            throws Exception
+    {
+        TestSupport.messages();
+        myDir = TestSupport.createTempDir("xproject-revision-");
+    }
+
+    @After
+    public void tearDown()
+    {
+        TestSupport.delete(myDir);
+    }
+
+    @Test
+    public void noVcsIsUnknown()
+            throws Exception
+    {
+        File project = TestSupport.createProject(myDir, "project");
+        assertEquals("unknown", RevisionProvider.getRevision(project));
+    }
+
+    @Test
+    public void gitCommitAndDirtyState()
+            throws Exception
+    {
+        File repo = gitRepo();
+        File project = TestSupport.createProject(repo, "project");
+        git(repo, "add", ".");
+        git(repo, "commit", "-q", "-m", "First");
+        String first = git(repo, "rev-parse", "HEAD").substring(0, 7);
+        assertEquals(first, RevisionProvider.getRevision(project));
+        // a tracked file changed (its size, its modification time could be the same second)
+        TestSupport.write(project, "xproject/project.xml", "<changed/>\n");
+        assertEquals(first + "-dirty", RevisionProvider.getRevision(project));
+        // a new commit is seen, through the ref
+        git(repo, "commit", "-q", "-a", "-m", "Second");
+        String second = git(repo, "rev-parse", "HEAD").substring(0, 7);
+        assertEquals(second, RevisionProvider.getRevision(project));
+    }
+
+    @Test
+    public void gitPackedRefsAndSubdir()
+            throws Exception
+    {
+        File repo = gitRepo();
+        TestSupport.write(repo, "README", "Outside of the project.\n");
+        File project = TestSupport.createProject(repo, "sub/project");
+        git(repo, "add", ".");
+        git(repo, "commit", "-q", "-m", "First");
+        git(repo, "pack-refs", "--all");
+        String commit = git(repo, "rev-parse", "HEAD").substring(0, 7);
+        // a change outside of the project does not make it dirty
+        TestSupport.write(repo, "README", "Outside of the project, changed.\n");
+        assertEquals(commit, RevisionProvider.getRevision(project));
+    }
+
+    @Test
+    public void svnEntries()
+            throws Exception
+    {
+        File wc = TestSupport.mkdirs(myDir, "wc");
+        TestSupport.write(wc, ".svn/entries", "10\n\ndir\n1234\nhttp://svn.example.org/repo/trunk\n");
+        File project = TestSupport.createProject(wc, "project");
+        assertEquals("1234", RevisionProvider.getRevision(project));
+    }
+
+    @Test
+    public void svnDatabaseIsNotSupported()
+            throws Exception
+    {
+        File wc = TestSupport.mkdirs(myDir, "wc");
+        TestSupport.write(wc, ".svn/wc.db", "SQLite format 3\n");
+        File project = TestSupport.createProject(wc, "project");
+        assertEquals("unknown", RevisionProvider.getRevision(project));
+    }
+
+    /**
+     * Create an empty Git repository, skip the test if git is not available.
+     */
+    private File gitRepo()
+            throws Exception
+    {
+        File repo = TestSupport.mkdirs(myDir, "repo");
+        try {
+            git(repo, "init", "-q");
+        }
+        catch ( Exception ex ) {
+            Assume.assumeNoException(ex);
+        }
+        git(repo, "config", "user.name", "Test");
+        git(repo, "config", "user.email", "test@example.org");
+        return repo;
+    }
+
+    /**
+     * Run git in a dir, return the first line of its output.
+     */
+    private static String git(File dir, String... args)
+            throws Exception
+    {
+        List<String> cmd = new ArrayList<String>();
+        cmd.add("git");
+        cmd.addAll(Arrays.asList(args));
+        ProcessBuilder builder = new ProcessBuilder(cmd);
+        builder.directory(dir);
+        builder.redirectErrorStream(true);
+        Process proc = builder.start();
+        BufferedReader in = new BufferedReader(new InputStreamReader(proc.getInputStream(), "UTF-8"));
+        String first = in.readLine();
+        while ( in.readLine() != null ) {
+            // drain
+        }
+        in.close();
+        int code = proc.waitFor();
+        if ( code != 0 ) {
+            throw new Exception("git " + cmd + " failed (" + code + "): " + first);
+        }
+        return first;
+    }
+
+    private File myDir;
+}
+
+
+/* ------------------------------------------------------------------------ */
+/*  DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS COMMENT.               */
+/*                                                                          */
+/*  The contents of this file are subject to the Mozilla Public License     */
+/*  Version 1.0 (the "License"); you may not use this file except in        */
+/*  compliance with the License. You may obtain a copy of the License at    */
+/*  http://www.mozilla.org/MPL/.                                            */
+/*                                                                          */
+/*  Software distributed under the License is distributed on an "AS IS"     */
+/*  basis, WITHOUT WARRANTY OF ANY KIND, either express or implied.  See    */
+/*  the License for the specific language governing rights and limitations  */
+/*  under the License.                                                      */
+/*                                                                          */
+/*  The Original Code is: all this file.                                    */
+/*                                                                          */
+/*  The Initial Developer of the Original Code is Florent Georges.          */
+/*                                                                          */
+/*  Contributor(s): none.                                                   */
+/* ------------------------------------------------------------------------ */
@@ -0,0 +1,211 @@
+/****************************************************************************/
+/*  File:       TestImpactTest.java                                         */
+/*  Author:     F. Georges - H2O Consulting                                 */
+/*  Date:       2026-10-18                                                  */
+/*  Tags:                                                                   */
+/*      Copyright (c) 2026 Florent Georges (see end of file.)               */
+/* ------------------------------------------------------------------------ */
+
+
+package org.expath.xproject.oxygen;
+
+import java.io.File;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+
+/**
+ * Test the dependency graph of TestImpact, and the suites affected by a change.
+ *
+ * @author Florent Georges
+ * @date   2026-10-18
+ */
+public class TestImpactTest
+{
+    @Before
+    public void setUp()
+            throws Exception
+    {
+        TestSupport.messages();
+        myDir = TestSupport.createTempDir("xproject-impact-");
+        myProject = TestSupport.createProject(myDir, "project");
+        myDesc = new File(myProject, "xproject/project.xml");
+        TestSupport.write(myProject, "src/lib.xqm",
+                "(: import module namespace x = \"http://example.org/commented\"; :)\n"
+                + "module namespace lib = \"http://example.org/lib\";\n"
+                + "declare function lib:hello() { 'hello' };\n");
+        TestSupport.write(myProject, "src/main.xqm",
+                "module namespace main = \"http://example.org/main\";\n"
+                + "import module namespace lib = \"http://example.org/lib\";\n"
+                + "declare function main:hello() { lib:hello() };\n");
+        TestSupport.write(myProject, "src/style.xsl", stylesheet("<xsl:import href=\"common.xsl\"/>"));
+        TestSupport.write(myProject, "src/common.xsl", stylesheet(""));
+        TestSupport.write(myProject, "src/other.xsl", stylesheet(""));
+        myStyleSuite = TestSupport.write(myProject, "test/style.xspec", xspec("stylesheet=\"../src/style.xsl\""));
+        myMainSuite = TestSupport.write(myProject, "test/main.xspec",
+                xspec("query=\"http://example.org/main\" query-at=\"../src/main.xqm\""));
+        myOtherSuite = TestSupport.write(myProject, "test/other.xspec", xspec("stylesheet=\"../src/other.xsl\""));
+        mySuites = Arrays.asList(myStyleSuite, myMainSuite, myOtherSuite);
+    }
+
+    @After
+    public void tearDown()
+    {
+        TestSupport.delete(myDir);
+    }
+
+    @Test
+    public void dependenciesByLocationAndByNamespace()
+    {
+        TestImpact impact = update();
+        Map<String, List<String>> deps = impact.getDependencies();
+        assertEquals(Arrays.asList("src/common.xsl"), deps.get("src/style.xsl"));
+        assertEquals(Arrays.asList("src/lib.xqm"), deps.get("src/main.xqm"));
+        // the commented import is ignored
+        assertEquals(Collections.emptyList(), deps.get("src/lib.xqm"));
+        assertEquals(Arrays.asList("src/style.xsl"), deps.get("test/style.xspec"));
+        assertEquals(Arrays.asList("src/main.xqm"), deps.get("test/main.xspec"));
+    }
+
+    @Test
+    public void allSuitesRunWithoutBaseline()
+    {
+        assertNull(update().getAffectedSuites());
+    }
+
+    @Test
+    public void onlyTheSuitesDependingOnAChangeAreAffected()
+            throws Exception
+    {
+        update().commit();
+        assertEquals(suites(), update().getAffectedSuites());
+        // a transitive dependency through xsl:import
+        change("src/common.xsl", stylesheet("<xsl:variable name=\"v\" select=\"1\"/>"));
+        assertEquals(suites(myStyleSuite), update().getAffectedSuites());
+        // a transitive dependency through an import by namespace
+        change("src/lib.xqm", "module namespace lib = \"http://example.org/lib\";\n");
+        assertEquals(suites(myStyleSuite, myMainSuite), update().getAffectedSuites());
+        // once the tests pass, nothing is affected anymore
+        update().commit();
+        assertEquals(suites(), update().getAffectedSuites());
+        // a suite itself
+        change("test/other.xspec", xspec("stylesheet=\"../src/other.xsl\" xslt-version=\"2.0\""));
+        assertEquals(suites(myOtherSuite), update().getAffectedSuites());
+    }
+
+    @Test
+    public void failedSuitesStayAffectedUntilTheyPass()
+            throws Exception
+    {
+        update().commit(suites(myMainSuite));
+        // nothing changed, but the failed suite runs again
+        assertEquals(suites(myMainSuite), update().getAffectedSuites());
+        update().commit(suites(myMainSuite));
+        assertEquals(suites(myMainSuite), update().getAffectedSuites());
+        // with a change
+        change("src/other.xsl", stylesheet("<xsl:variable name=\"v\" select=\"1\"/>"));
+        assertEquals(suites(myMainSuite, myOtherSuite), update().getAffectedSuites());
+        // once it passes
+        update().commit(suites());
+        assertEquals(suites(), update().getAffectedSuites());
+    }
+
+    @Test
+    public void allSuitesRunWhenTheDescriptorChanged()
+            throws Exception
+    {
+        update().commit();
+        change("xproject/project.xml", TestSupport.read(myDesc) + "<!-- changed -->\n");
+        assertNull(update().getAffectedSuites());
+    }
+
+    @Test
+    public void allSuitesRunWithAnUnresolvedDependency()
+            throws Exception
+    {
+        update().commit();
+        change("src/other.xsl", stylesheet("<xsl:include href=\"missing.xsl\"/>"));
+        assertNull(update().getAffectedSuites());
+    }
+
+    /**
+     * A new TestImpact, updated (it reads the graph saved by the previous one).
+     */
+    private TestImpact update()
+    {
+        TestImpact impact = new TestImpact(myProject, myDesc);
+        impact.update(mySuites);
+        return impact;
+    }
+
+    /**
+     * Change a file (its size changes, so does its stamp, whatever its modification time).
+     */
+    private void change(String path, String content)
+            throws Exception
+    {
+        File file = new File(myProject, path);
+        if ( file.isFile() && file.length() == content.getBytes("UTF-8").length ) {
+            throw new IllegalArgumentException("Same size, the change could be unnoticed: " + path);
+        }
+        TestSupport.write(myProject, path, content);
+    }
+
+    private static HashSet<String> suites(File... suites)
+    {
+        HashSet<String> uris = new HashSet<String>();
+        for ( File s : suites ) {
+            uris.add(MiscUtils.getUri(s));
+        }
+        return uris;
+    }
+
+    private static String stylesheet(String content)
+    {
+        return "<xsl:stylesheet xmlns:xsl=\"http://www.w3.org/1999/XSL/Transform\" version=\"2.0\">"
+                + content + "</xsl:stylesheet>\n";
+    }
+
+    private static String xspec(String attributes)
+    {
+        return "<x:description xmlns:x=\"http://www.jenitennison.com/xslt/xspec\" " + attributes + "/>\n";
+    }
+
+    private File myDir;
+    private File myProject;
+    private File myDesc;
+    private File myStyleSuite;
+    private File myMainSuite;
+    private File myOtherSuite;
+    private List<File> mySuites;
+}
+
+
+/* ------------------------------------------------------------------------ */
+/*  DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS COMMENT.               */
+/*                                                                          */
+/*  The contents of this file are subject to the Mozilla Public License     */
+/*  Version 1.0 (the "License"); you may not use this file except in        */
+/*  compliance with the License. You may obtain a copy of the License at    */
+/*  http://www.mozilla.org/MPL/.                                            */
+/*                                                                          */
+/*  Software distributed under the License is distributed on an "AS IS"     */
+/*  basis, WITHOUT WARRANTY OF ANY KIND, either express or implied.  See    */
+/*  the License for the specific language governing rights and limitations  */
+/*  under the License.                                                      */
+/*                                                                          */
+/*  The Original Code is: all this file.                                    */
+/*                                                                          */
+/*  The Initial Developer of the Original Code is Florent Georges.          */
+/*                                                                          */
+/*  Contributor(s): none.                                                   */
+/* ------------------------------------------------------------------------ */
@@ -0,0 +1,240 @@
+/****************************************************************************/
+/*  File:       TestSharderTest.java                                        */
+/*  Author:     F. Georges - H2O Consulting                                 */
+/*  Date:       2026-10-18                                                  */
+/*  Tags:                                                                   */
+/*      Copyright (c) 2026 Florent Georges (see end of file.)               */
+/* ------------------------------------------------------------------------ */
+
+
+package org.expath.xproject.oxygen;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import javax.xml.parsers.DocumentBuilderFactory;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import org.w3c.dom.Node;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+
+/**
+ * Test the balancing of the suites over the shards, and the merge of their results.
+ *
+ * @author Florent Georges
+ * @date   2026-10-18
+ */
+public class TestSharderTest
+{
+    @Before
+    public void setUp()
+            throws Exception
+    {
+        TestSupport.messages();
+        myDir = TestSupport.createTempDir("xproject-sharder-");
+        myProject = TestSupport.createProject(myDir, "project");
+        myDesc = TestSupport.write(myProject, "xproject/project.xml",
+                "<project xmlns=\"http://expath.org/ns/project\" name=\"http://example.org/project\""
+                + " abbrev=\"project\" version=\"1.0.0\">\n"
+                + "   <title>Test project</title>\n"
+                + "   <tests dir=\"test\">\n"
+                + "      <processor name=\"" + PROC + "\" report=\"$2.html\"/>\n"
+                + "   </tests>\n"
+                + "</project>\n");
+        for ( String s : Arrays.asList("a", "b", "c", "d") ) {
+            TestSupport.write(myProject, "test/" + s + ".xspec", "<description/>\n");
+        }
+    }
+
+    @After
+    public void tearDown()
+    {
+        TestSupport.delete(myDir);
+    }
+
+    @Test
+    public void longestSuitesFirstOnTheLeastLoadedShard()
+            throws Exception
+    {
+        TestSupport.write(myProject, "xproject/.test-durations",
+                "400\t" + PROC + "\t" + suite("a") + "\n"
+                + "300\t" + PROC + "\t" + suite("b") + "\n"
+                + "200\t" + PROC + "\t" + suite("c") + "\n"
+                + "100\t" + PROC + "\t" + suite("d") + "\n");
+        TestSharder sharder = new TestSharder(myProject, myDesc);
+        assertEquals(4, sharder.discover());
+        List<File> shards = sharder.plan(2);
+        assertEquals(2, shards.size());
+        // a (400) then d (100), b (300) then c (200): 500 ms each
+        assertEquals(Arrays.asList(suite("a"), suite("d")), getSuites(shards.get(0)));
+        assertEquals(Arrays.asList(suite("b"), suite("c")), getSuites(shards.get(1)));
+    }
+
+    @Test
+    public void unknownSuitesTakeTheAverageDuration()
+            throws Exception
+    {
+        TestSupport.write(myProject, "xproject/.test-durations",
+                "900\t" + PROC + "\t" + suite("a") + "\n"
+                + "100\t" + PROC + "\t" + suite("b") + "\n");
+        TestSharder sharder = new TestSharder(myProject, myDesc);
+        sharder.discover();
+        List<File> shards = sharder.plan(2);
+        // c and d are expected to take 500 ms each (the average), so together they balance a
+        assertEquals(Arrays.asList(suite("a"), suite("b")), getSuites(shards.get(0)));
+        assertEquals(Arrays.asList(suite("c"), suite("d")), getSuites(shards.get(1)));
+    }
+
+    @Test
+    public void mergeKeepsEverySuiteError()
+            throws Exception
+    {
+        TestSharder sharder = new TestSharder(myProject, myDesc);
+        sharder.discover();
+        sharder.plan(2);
+        File shards = new File(myProject, "xproject/.test-shards");
+        // shard 1: a passed, b and c failed
+        TestSupport.write(shards, "shard-1-result.xml",
+                "<suites><processor name=\"" + PROC + "\">"
+                + "<suite uri=\"" + suite("a") + "\" report=\"a.html\""
+                + " start=\"2026-10-18T10:00:00Z\" end=\"2026-10-18T10:00:02.5Z\"/>"
+                + "<c:errors xmlns:c=\"" + C_NS + "\" suite=\"" + suite("b") + "\"><c:error>b</c:error></c:errors>"
+                + "<c:errors xmlns:c=\"" + C_NS + "\" suite=\"" + suite("c") + "\"><c:error>c</c:error></c:errors>"
+                + "</processor></suites>");
+        // shard 2 has no result
+        File report = sharder.merge();
+        Element root = parse(report).getDocumentElement();
+        assertEquals("suites", root.getLocalName());
+        List<Element> children = getChildren(root);
+        assertEquals(2, children.size());
+        // the suite and the two errors, in the order of the suites
+        Element proc = children.get(0);
+        assertEquals(PROC, proc.getAttribute("name"));
+        List<Element> results = getChildren(proc);
+        assertEquals(3, results.size());
+        assertEquals(suite("a"), results.get(0).getAttribute("uri"));
+        assertEquals("", results.get(0).getAttribute("start"));
+        assertEquals("errors", results.get(1).getLocalName());
+        assertEquals(suite("b"), results.get(1).getAttribute("suite"));
+        assertEquals("errors", results.get(2).getLocalName());
+        assertEquals(suite("c"), results.get(2).getAttribute("suite"));
+        // the shard without result
+        Element missing = children.get(1);
+        assertEquals("errors", missing.getLocalName());
+        assertEquals("shard-2-result.xml", missing.getAttribute("shard"));
+        // the duration of a is saved
+        String durations = TestSupport.read(new File(myProject, "xproject/.test-durations"));
+        assertTrue(durations, durations.contains("2500\t" + PROC + "\t" + suite("a") + "\n"));
+    }
+
+    @Test
+    public void failedSuitesAreKnownAfterTheMerge()
+            throws Exception
+    {
+        TestSharder sharder = new TestSharder(myProject, myDesc);
+        sharder.discover();
+        sharder.plan(1);
+        File reports = new File(myProject, "test");
+        // a passed, b has a failed test, c has an error, d did not run
+        TestSupport.write(reports, "a.html", report("successful"));
+        TestSupport.write(reports, "b.html", report("failed"));
+        TestSupport.write(new File(myProject, "xproject/.test-shards"), "shard-1-result.xml",
+                "<suites><processor name=\"" + PROC + "\">"
+                + "<suite uri=\"" + suite("a") + "\" report=\"" + MiscUtils.getUri(new File(reports, "a.html")) + "\"/>"
+                + "<suite uri=\"" + suite("b") + "\" report=\"" + MiscUtils.getUri(new File(reports, "b.html")) + "\"/>"
+                + "<c:errors xmlns:c=\"" + C_NS + "\" suite=\"" + suite("c") + "\"><c:error>c</c:error></c:errors>"
+                + "</processor></suites>");
+        sharder.merge();
+        assertEquals(new HashSet<String>(Arrays.asList(suite("b"), suite("c"), suite("d"))), sharder.getFailedSuites());
+    }
+
+    /**
+     * A report as formatted by XSpec, with one test, of the given class.
+     */
+    private static String report(String clazz)
+    {
+        return "<!DOCTYPE html PUBLIC \"-//W3C//DTD XHTML 1.0 Strict//EN\" \"http://example.org/none.dtd\">"
+                + "<html xmlns=\"http://www.w3.org/1999/xhtml\"><body><table>"
+                + "<tr class=\"" + clazz + "\"><td>the test</td></tr>"
+                + "</table></body></html>\n";
+    }
+
+    private String suite(String name)
+    {
+        return MiscUtils.getUri(new File(myProject, "test/" + name + ".xspec"));
+    }
+
+    private static List<String> getSuites(File shard)
+            throws Exception
+    {
+        List<String> suites = new ArrayList<String>();
+        for ( Element run : getChildren(parse(shard).getDocumentElement()) ) {
+            for ( Element s : getChildren(run) ) {
+                if ( "suite".equals(s.getLocalName()) ) {
+                    suites.add(s.getAttribute("uri"));
+                }
+            }
+        }
+        return suites;
+    }
+
+    private static List<Element> getChildren(Element parent)
+    {
+        List<Element> children = new ArrayList<Element>();
+        for ( Node n = parent.getFirstChild(); n != null; n = n.getNextSibling() ) {
+            if ( n instanceof Element ) {
+                children.add((Element) n);
+            }
+        }
+        return children;
+    }
+
+    private static Document parse(File file)
+            throws Exception
+    {
+        DocumentBuilderFactory factory = DocumentBuilderFactory.newInstance();
+        factory.setNamespaceAware(true);
+        return factory.newDocumentBuilder().parse(file);
+    }
+
+    /** The test processor. */
+    private static final String PROC = "http://expath.org/tmp/saxon/xslt";
+    /** The XProc step namespace. */
+    private static final String C_NS = "http://www.w3.org/ns/xproc-step";
+
+    /** The temporary dir. */
+    private File myDir;
+    /** The project dir. */
+    private File myProject;
+    /** The project descriptor. */
+    private File myDesc;
+}
+
+
+/* ------------------------------------------------------------------------ */
+/*  DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS COMMENT.               */
+/*                                                                          */
+/*  The contents of this file are subject to the Mozilla Public License     */
+/*  Version 1.0 (the "License"); you may not use this file except in        */
+/*  compliance with the License. You may obtain a copy of the License at    */
+/*  http://www.mozilla.org/MPL/.                                            */
+/*                                                                          */
+/*  Software distributed under the License is distributed on an "AS IS"     */
+/*  basis, WITHOUT WARRANTY OF ANY KIND, either express or implied.  See    */
+/*  the License for the specific language governing rights and limitations  */
+/*  under the License.                                                      */
+/*                                                                          */
+/*  The Original Code is: all this file.                                    */
+/*                                                                          */
+/*  The Initial Developer of the Original Code is Florent Georges.          */
+/*                                                                          */
+/*  Contributor(s): none.                                                   */
+/* ------------------------------------------------------------------------ */
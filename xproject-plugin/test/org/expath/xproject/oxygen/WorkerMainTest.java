@@ -0,0 +1,184 @@
+/****************************************************************************/
+/*  File:       WorkerMainTest.java                                         */
+/*  Author:     F. Georges - H2O Consulting                                 */
+/*  Date:       2026-10-18                                                  */
+/*  Tags:                                                                   */
+/*      Copyright (c) 2026 Florent Georges (see end of file.)               */
+/* ------------------------------------------------------------------------ */
+
+
+package org.expath.xproject.oxygen;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+
+/**
+ * Test the escaping of the arguments and the protocol of WorkerMain.
+ *
+ * @author Florent Georges
+ * @date   2026-10-18
+ */
+public class WorkerMainTest
+{
+    @Test
+    public void encodedArgumentsAreOnOneField()
+    {
+        String arg = "a\tb\nc\r\nd\\te";
+        String encoded = WorkerMain.encode(arg);
+        assertEquals("a\\tb\\nc\\r\\nd\\\\te", encoded);
+        assertTrue(encoded.indexOf('\t') < 0 && encoded.indexOf('\n') < 0 && encoded.indexOf('\r') < 0);
+        assertEquals(arg, WorkerMain.decode(encoded));
+    }
+
+    @Test
+    public void decodeRoundTrips()
+    {
+        for ( String arg : Arrays.asList("", "plain", "\\", "\\\\", "end\\", "\\t", "-Dx=C:\\dir\\new", "\u00e9\u2028\t") ) {
+            assertEquals(arg, WorkerMain.decode(WorkerMain.encode(arg)));
+        }
+        // a trailing backslash alone is kept as is
+        assertEquals("end\\", WorkerMain.decode("end\\"));
+    }
+
+    @Test
+    public void workerRunsMainClasses()
+            throws Exception
+    {
+        File java = new File(new File(System.getProperty("java.home"), "bin"), "java");
+        ProcessBuilder builder = new ProcessBuilder(java.getPath(), "-cp", System.getProperty("java.class.path"),
+                WorkerMain.class.getName());
+        // the responses are on stdout, the JVM can write warnings on stderr
+        Process proc = builder.start();
+        try {
+            Writer requests = new OutputStreamWriter(proc.getOutputStream(), "UTF-8");
+            BufferedReader responses = new BufferedReader(new InputStreamReader(proc.getInputStream(), "UTF-8"));
+            requests.write(WorkerMain.PING + "\n");
+            requests.flush();
+            assertEquals(WorkerMain.PONG, responses.readLine());
+            requests.write(WorkerMain.RUN + WorkerMain.encode(Echo.class.getName())
+                    + "\t" + WorkerMain.encode("one\ttwo") + "\t" + WorkerMain.encode("three") + "\n");
+            requests.flush();
+            assertEquals(Arrays.asList(
+                    WorkerMain.OUTPUT + "[one\ttwo]",
+                    WorkerMain.ERROR + "[three]",
+                    WorkerMain.EXIT + "0"), readRun(responses));
+            requests.write(WorkerMain.RUN + "org.example.NoSuchClass\n");
+            requests.flush();
+            assertEquals(Arrays.asList(
+                    WorkerMain.ERROR + "Main class not found: org.example.NoSuchClass",
+                    WorkerMain.EXIT + "1"), readRun(responses));
+            requests.close();
+            assertEquals(0, proc.waitFor());
+        }
+        finally {
+            proc.destroy();
+        }
+    }
+
+    @Test
+    public void calabashAndSaxonDoNotExitTheWorker()
+            throws Exception
+    {
+        File java = new File(new File(System.getProperty("java.home"), "bin"), "java");
+        // without security manager, as from Java 24, so nothing traps System.exit()
+        ProcessBuilder builder = new ProcessBuilder(java.getPath(), "-Djava.security.manager=disallow",
+                "-cp", System.getProperty("java.class.path"), WorkerMain.class.getName());
+        Process proc = builder.start();
+        try {
+            Writer requests = new OutputStreamWriter(proc.getOutputStream(), "UTF-8");
+            BufferedReader responses = new BufferedReader(new InputStreamReader(proc.getInputStream(), "UTF-8"));
+            File dir = TestSupport.createTempDir("worker-main");
+            File in = TestSupport.write(dir, "in.xml", "<in/>");
+            File style = TestSupport.write(dir, "style.xsl",
+                    "<xsl:stylesheet xmlns:xsl='http://www.w3.org/1999/XSL/Transform' version='2.0'>"
+                    + "<xsl:template match='/'><out/></xsl:template></xsl:stylesheet>");
+            File out = new File(dir, "out.xml");
+            // Saxon, successful then failing
+            requests.write(WorkerMain.RUN + "net.sf.saxon.Transform\t-s:" + in + "\t-xsl:" + style + "\t-o:" + out + "\n");
+            requests.flush();
+            List<String> lines = readRun(responses);
+            assertEquals(WorkerMain.EXIT + "0", lines.get(lines.size() - 1));
+            assertTrue(TestSupport.read(out).contains("<out/>"));
+            requests.write(WorkerMain.RUN + "net.sf.saxon.Transform\t-s:" + in + "\t-xsl:" + new File(dir, "none.xsl") + "\n");
+            requests.flush();
+            lines = readRun(responses);
+            assertEquals(WorkerMain.EXIT + "2", lines.get(lines.size() - 1));
+            // Calabash, failing (its main() exits even on success)
+            requests.write(WorkerMain.RUN + "com.xmlcalabash.drivers.Main\t" + new File(dir, "none.xpl") + "\n");
+            requests.flush();
+            lines = readRun(responses);
+            String exit = lines.get(lines.size() - 1);
+            assertTrue(exit.startsWith(WorkerMain.EXIT) && ! exit.equals(WorkerMain.EXIT + "0"));
+            // the worker is still alive
+            requests.write(WorkerMain.PING + "\n");
+            requests.flush();
+            assertEquals(WorkerMain.PONG, responses.readLine());
+            requests.close();
+            assertEquals(0, proc.waitFor());
+            TestSupport.delete(dir);
+        }
+        finally {
+            proc.destroy();
+        }
+    }
+
+    /**
+     * The response lines of a run, up to the exit code included.
+     */
+    private static List<String> readRun(BufferedReader responses)
+            throws Exception
+    {
+        List<String> lines = new ArrayList<String>();
+        String line;
+        while ( (line = responses.readLine()) != null ) {
+            lines.add(line);
+            if ( line.startsWith(WorkerMain.EXIT) ) {
+                break;
+            }
+        }
+        return lines;
+    }
+
+    /**
+     * A main class writing its first argument on stdout, the second one on stderr.
+     */
+    public static class Echo
+    {
+        public static void main(String[] args) {
+            System.out.println("[" + args[0] + "]");
+            System.err.println("[" + args[1] + "]");
+        }
+    }
+}
+
+
+/* ------------------------------------------------------------------------ */
+/*  DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS COMMENT.               */
+/*                                                                          */
+/*  The contents of this file are subject to the Mozilla Public License     */
+/*  Version 1.0 (the "License"); you may not use this file except in        */
+/*  compliance with the License. You may obtain a copy of the License at    */
+/*  http://www.mozilla.org/MPL/.                                            */
+/*                                                                          */
+/*  Software distributed under the License is distributed on an "AS IS"     */
+/*  basis, WITHOUT WARRANTY OF ANY KIND, either express or implied.  See    */
+/*  the License for the specific language governing rights and limitations  */
+/*  under the License.                                                      */
+/*                                                                          */
+/*  The Original Code is: all this file.                                    */
+/*                                                                          */
+/*  The Initial Developer of the Original Code is Florent Georges.          */
+/*                                                                          */
+/*  Contributor(s): none.                                                   */
+/* ------------------------------------------------------------------------ */
@@ -0,0 +1,148 @@
+/****************************************************************************/
+/*  File:       WorkerPoolTest.java                                         */
+/*  Author:     F. Georges - H2O Consulting                                 */
+/*  Date:       2026-10-18                                                  */
+/*  Tags:                                                                   */
+/*      Copyright (c) 2026 Florent Georges (see end of file.)               */
+/* ------------------------------------------------------------------------ */
+
+
+package org.expath.xproject.oxygen;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+
+/**
+ * Test the max number of workers shared by the pools, and the pool keys.
+ *
+ * @author Florent Georges
+ * @date   2026-10-18
+ */
+public class WorkerPoolTest
+{
+    @Test
+    public void poolsShareTheMaxNumberOfWorkers()
+            throws Exception
+    {
+        WorkerPool.Limit limit = new WorkerPool.Limit(1);
+        WorkerPool one = newPool(limit);
+        WorkerPool two = newPool(limit);
+        Worker w1 = one.acquire();
+        one.release(w1);
+        assertEquals(1, limit.getCount());
+        // the idle worker of the other pool is killed to make room
+        Worker w2 = two.acquire();
+        assertNotSame(w1, w2);
+        assertTrue(w1.isDead());
+        assertEquals(1, limit.getCount());
+        assertEquals(0, one.getCount());
+        assertTrue(one.isUnused());
+        assertEquals(Arrays.asList(two), limit.getPools());
+        two.release(w2);
+        two.shutdown();
+        assertEquals(0, limit.getCount());
+        assertTrue(two.isUnused());
+        assertTrue(limit.getPools().isEmpty());
+    }
+
+    @Test
+    public void poolWaitsForABusyWorker()
+            throws Exception
+    {
+        WorkerPool.Limit limit = new WorkerPool.Limit(1);
+        final WorkerPool one = newPool(limit);
+        WorkerPool two = newPool(limit);
+        final Worker busy = two.acquire();
+        final List<Worker> acquired = Collections.synchronizedList(new ArrayList<Worker>());
+        Thread waiter = new Thread() {
+            @Override
+            public void run() {
+                try {
+                    Worker w = one.acquire();
+                    acquired.add(w);
+                    one.release(w);
+                }
+                catch ( Exception ex ) {
+                    throw new RuntimeException(ex);
+                }
+            }
+        };
+        waiter.start();
+        Thread.sleep(200);
+        assertTrue(acquired.isEmpty());
+        assertFalse(one.isUnused());
+        // when released, the busy worker is idle in its pool, and killed for the waiting one
+        two.release(busy);
+        waiter.join(30000);
+        assertEquals(1, acquired.size());
+        assertTrue(busy.isDead());
+        assertEquals(1, limit.getCount());
+        one.shutdown();
+        assertEquals(0, limit.getCount());
+    }
+
+    @Test
+    public void factoryKeysPoolsOnTheStableConfig()
+            throws Exception
+    {
+        JavaProcessFactory factory = new JavaProcessFactory(null, TestSupport.messages());
+        try {
+            List<String> cp = Arrays.asList(System.getProperty("java.class.path"));
+            Map<String, String> env = Collections.emptyMap();
+            List<String> first = Arrays.asList("-Dx=y", "-Xlog:gc*:file=gc-1.log");
+            List<String> second = Arrays.asList("-Dx=y", "-Xlog:gc*:file=gc-2.log", "-XX:SharedArchiveFile=a.jsa");
+            WorkerPool pool = factory.getPool(first, "[-Dx=y] heap=256m gc=serial args=[]", cp, env);
+            assertSame(pool, factory.getPool(second, "[-Dx=y] heap=256m gc=serial args=[]", cp, env));
+            assertNotSame(pool, factory.getPool(first, "[-Dx=y] heap=512m gc=serial args=[]", cp, env));
+            assertEquals(2, factory.getPoolCount());
+            // the pools without worker are dropped
+            factory.evictIdle();
+            assertEquals(0, factory.getPoolCount());
+        }
+        finally {
+            factory.shutdown();
+        }
+    }
+
+    private static WorkerPool newPool(WorkerPool.Limit limit)
+    {
+        File java = new File(new File(System.getProperty("java.home"), "bin"), "java");
+        List<String> command = Arrays.asList(java.getPath(), "-cp", System.getProperty("java.class.path"),
+                WorkerMain.class.getName());
+        Map<String, String> env = Collections.emptyMap();
+        return new WorkerPool(command, env, limit, 50, 600000, 5000);
+    }
+}
+
+
+/* ------------------------------------------------------------------------ */
+/*  DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS COMMENT.               */
+/*                                                                          */
+/*  The contents of this file are subject to the Mozilla Public License     */
+/*  Version 1.0 (the "License"); you may not use this file except in        */
+/*  compliance with the License. You may obtain a copy of the License at    */
+/*  http://www.mozilla.org/MPL/.                                            */
+/*                                                                          */
+/*  Software distributed under the License is distributed on an "AS IS"     */
+/*  basis, WITHOUT WARRANTY OF ANY KIND, either express or implied.  See    */
+/*  the License for the specific language governing rights and limitations  */
+/*  under the License.                                                      */
+/*                                                                          */
+/*  The Original Code is: all this file.                                    */
+/*                                                                          */
+/*  The Initial Developer of the Original Code is Florent Georges.          */
+/*                                                                          */
+/*  Contributor(s): none.                                                   */
+/* ------------------------------------------------------------------------ */
@@ -0,0 +1,143 @@
+/****************************************************************************/
+/*  File:       WorkerTest.java                                             */
+/*  Author:     F. Georges - H2O Consulting                                 */
+/*  Date:       2026-10-18                                                  */
+/*  Tags:                                                                   */
+/*      Copyright (c) 2026 Florent Georges (see end of file.)               */
+/* ------------------------------------------------------------------------ */
+
+
+package org.expath.xproject.oxygen;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import org.junit.Test;
+import ro.sync.exml.workspace.api.process.ProcessListener;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+
+/**
+ * Test the runs in a worker, and the report of a worker running out of memory.
+ *
+ * @author Florent Georges
+ * @date   2026-10-18
+ */
+public class WorkerTest
+{
+    @Test
+    public void outputIsSentToTheListener()
+            throws Exception
+    {
+        Worker worker = new Worker(command(), ENV);
+        try {
+            Lines lines = new Lines();
+            int code = worker.run(WorkerMainTest.Echo.class.getName(), Arrays.asList("out", "err"), lines);
+            assertEquals(0, code);
+            assertEquals(Arrays.asList("[out]"), lines.output);
+            assertEquals(Arrays.asList("[err]"), lines.errors);
+            assertTrue(worker.ping(5000));
+        }
+        finally {
+            worker.destroy();
+        }
+    }
+
+    @Test
+    public void outOfMemoryIsReportedToTheListener()
+            throws Exception
+    {
+        // the JVM writes "Terminating due to java.lang.OutOfMemoryError" on stdout, and exits with 3
+        List<String> command = command("-Xmx32m", "-XX:+ExitOnOutOfMemoryError");
+        Worker worker = new Worker(command, ENV);
+        Lines lines = new Lines();
+        try {
+            worker.run(Hog.class.getName(), Collections.<String>emptyList(), lines);
+            fail("The worker must die");
+        }
+        catch ( IOException ex ) {
+            assertTrue(ex.getMessage(), ex.getMessage().contains("exit code: 3"));
+        }
+        assertTrue(worker.isDead());
+        boolean reported = false;
+        for ( String line : lines.errors ) {
+            reported |= line.contains("java.lang.OutOfMemoryError");
+        }
+        assertTrue(lines.errors.toString(), reported);
+    }
+
+    private static List<String> command(String... java_args)
+    {
+        File java = new File(new File(System.getProperty("java.home"), "bin"), "java");
+        List<String> command = new ArrayList<String>();
+        command.add(java.getPath());
+        command.addAll(Arrays.asList(java_args));
+        command.add("-cp");
+        command.add(System.getProperty("java.class.path"));
+        command.add(WorkerMain.class.getName());
+        return command;
+    }
+
+    /**
+     * A main class allocating memory until it runs out of it.
+     */
+    public static class Hog
+    {
+        public static void main(String[] args) {
+            List<long[]> hog = new ArrayList<long[]>();
+            for ( ;; ) {
+                hog.add(new long[1024 * 1024]);
+            }
+        }
+    }
+
+    /**
+     * Collect the lines sent to the listener.
+     */
+    private static class Lines
+            extends ProcessListener
+    {
+        @Override
+        public void newOutputLine(String line) {
+            output.add(line);
+        }
+
+        @Override
+        public void newErrorLine(String line) {
+            errors.add(line);
+        }
+
+        public final List<String> output = new ArrayList<String>();
+        public final List<String> errors = new ArrayList<String>();
+    }
+
+    private static final Map<String, String> ENV = Collections.emptyMap();
+}
+
+
+/* ------------------------------------------------------------------------ */
+/*  DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS COMMENT.               */
+/*                                                                          */
+/*  The contents of this file are subject to the Mozilla Public License     */
+/*  Version 1.0 (the "License"); you may not use this file except in        */
+/*  compliance with the License. You may obtain a copy of the License at    */
+/*  http://www.mozilla.org/MPL/.                                            */
+/*                                                                          */
+/*  Software distributed under the License is distributed on an "AS IS"     */
+/*  basis, WITHOUT WARRANTY OF ANY KIND, either express or implied.  See    */
+/*  the License for the specific language governing rights and limitations  */
+/*  under the License.                                                      */
+/*                                                                          */
+/*  The Original Code is: all this file.                                    */
+/*                                                                          */
+/*  The Initial Developer of the Original Code is Florent Georges.          */
+/*                                                                          */
+/*  Contributor(s): none.                                                   */
+/* ------------------------------------------------------------------------ */
@@ -0,0 +1,191 @@
+/****************************************************************************/
+/*  File:       CalabashEngineTest.java                                     */
+/*  Author:     F. Georges - H2O Consulting                                 */
+/*  Date:       2026-10-18                                                  */
+/*  Tags:                                                                   */
+/*      Copyright (c) 2026 Florent Georges (see end of file.)               */
+/* ------------------------------------------------------------------------ */
+
+
+package org.expath.xproject.oxygen.engine;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import org.expath.xproject.oxygen.MiscUtils;
+import org.expath.xproject.oxygen.TestSupport;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import ro.sync.exml.workspace.api.process.ProcessListener;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+
+/**
+ * Test the in-process engine, with the same cached pipeline run several times.
+ *
+ * The engine is created directly (the test class path has the same Saxon
+ * as the plugin lib/), with an empty repository.
+ *
+ * @author Florent Georges
+ * @date   2026-10-18
+ */
+public class CalabashEngineTest
+{
+    @Before
+    public void setUp()
+            throws Exception
+    {
+        TestSupport.messages();
+        myDir = TestSupport.createTempDir("xproject-engine-");
+        File repo = TestSupport.mkdirs(myDir, "repo");
+        TestSupport.write(repo, ".expath-pkg/packages.xml", "<packages xmlns=\"http://expath.org/ns/repo/packages\"/>\n");
+        myEngine = new CalabashEngine(repo);
+        myPipeline = MiscUtils.getUri(TestSupport.write(myDir, "pipeline.xproc",
+                "<p:declare-step xmlns:p=\"http://www.w3.org/ns/xproc\" version=\"1.0\">\n"
+                + "   <p:input port=\"source\"/>\n"
+                + "   <p:output port=\"result\"/>\n"
+                + "   <p:option name=\"value\" required=\"true\"/>\n"
+                + "   <p:add-attribute match=\"/*\" attribute-name=\"value\">\n"
+                + "      <p:with-option name=\"attribute-value\" select=\"$value\"/>\n"
+                + "   </p:add-attribute>\n"
+                + "</p:declare-step>\n"));
+        mySource = TestSupport.write(myDir, "source.xml", "<doc/>\n");
+    }
+
+    @After
+    public void tearDown()
+    {
+        TestSupport.delete(myDir);
+    }
+
+    @Test
+    public void cachedPipelineRunsTwice()
+            throws Exception
+    {
+        Output first = run("one");
+        assertEquals(first.errors.toString(), 0, first.code);
+        assertTrue(first.lines.toString(), first.lines.contains("<doc value=\"one\"/>"));
+        assertTrue(first.lines.get(0), first.lines.get(0).startsWith("Pipeline compiled: "));
+        Output second = run("two");
+        assertEquals(second.errors.toString(), 0, second.code);
+        assertTrue(second.lines.toString(), second.lines.contains("<doc value=\"two\"/>"));
+        assertTrue(second.lines.get(0), second.lines.get(0).startsWith("Pipeline from cache: "));
+    }
+
+    @Test
+    public void cachedPipelineRunsAfterAFailure()
+            throws Exception
+    {
+        Output ok = run("one");
+        assertEquals(ok.errors.toString(), 0, ok.code);
+        // the required option is missing
+        Output failed = run(null);
+        assertEquals(1, failed.code);
+        // compiled again, the runtime of the failed run is not reused
+        Output again = run("three");
+        assertEquals(again.errors.toString(), 0, again.code);
+        assertTrue(again.lines.get(0), again.lines.get(0).startsWith("Pipeline compiled: "));
+        assertTrue(again.lines.toString(), again.lines.contains("<doc value=\"three\"/>"));
+    }
+
+    @Test
+    public void cachedPipelineRunsWithItsOwnFunctions()
+            throws Exception
+    {
+        String available = MiscUtils.getUri(TestSupport.write(myDir, "available.xproc",
+                "<p:declare-step xmlns:p=\"http://www.w3.org/ns/xproc\" version=\"1.0\">\n"
+                + "   <p:input port=\"source\"/>\n"
+                + "   <p:output port=\"result\"/>\n"
+                + "   <p:option name=\"value\"/>\n"
+                + "   <p:choose>\n"
+                + "      <p:when test=\"p:value-available('value')\">\n"
+                + "         <p:add-attribute match=\"/*\" attribute-name=\"value\">\n"
+                + "            <p:with-option name=\"attribute-value\" select=\"$value\"/>\n"
+                + "         </p:add-attribute>\n"
+                + "      </p:when>\n"
+                + "      <p:otherwise>\n"
+                + "         <p:identity/>\n"
+                + "      </p:otherwise>\n"
+                + "   </p:choose>\n"
+                + "</p:declare-step>\n"));
+        assertEquals(0, run(available, "one").code);
+        // compiling another pipeline registers the functions of another runtime
+        assertEquals(0, run("two").code);
+        Output cached = run(available, "three");
+        assertEquals(cached.errors.toString(), 0, cached.code);
+        assertTrue(cached.lines.get(0), cached.lines.get(0).startsWith("Pipeline from cache: "));
+        assertTrue(cached.lines.toString(), cached.lines.contains("<doc value=\"three\"/>"));
+    }
+
+    private Output run(String value)
+    {
+        return run(myPipeline, value);
+    }
+
+    private Output run(String pipeline, String value)
+    {
+        Map<String, String> options = new HashMap<String, String>();
+        if ( value != null ) {
+            options.put("value", value);
+        }
+        Output out = new Output();
+        out.code = myEngine.applyPipeline(pipeline, mySource, options, out);
+        return out;
+    }
+
+    /**
+     * Record the output and error lines.
+     */
+    private static class Output
+            extends ProcessListener
+    {
+        @Override
+        public void newOutputLine(String line) {
+            lines.add(line);
+        }
+
+        @Override
+        public void newErrorLine(String line) {
+            errors.add(line);
+        }
+
+        public final List<String> lines = new ArrayList<String>();
+        public final List<String> errors = new ArrayList<String>();
+        public int code;
+    }
+
+    /** The temporary dir. */
+    private File myDir;
+    /** The engine under test. */
+    private CalabashEngine myEngine;
+    /** The URI of the test pipeline. */
+    private String myPipeline;
+    /** The source document. */
+    private File mySource;
+}
+
+
+/* ------------------------------------------------------------------------ */
+/*  DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS COMMENT.               */
+/*                                                                          */
+/*  The contents of this file are subject to the Mozilla Public License     */
+/*  Version 1.0 (the "License"); you may not use this file except in        */
+/*  compliance with the License. You may obtain a copy of the License at    */
+/*  http://www.mozilla.org/MPL/.                                            */
+/*                                                                          */
+/*  Software distributed under the License is distributed on an "AS IS"     */
+/*  basis, WITHOUT WARRANTY OF ANY KIND, either express or implied.  See    */
+/*  the License for the specific language governing rights and limitations  */
+/*  under the License.                                                      */
+/*                                                                          */
+/*  The Original Code is: all this file.                                    */
+/*                                                                          */
+/*  The Initial Developer of the Original Code is Florent Georges.          */
+/*                                                                          */
+/*  Contributor(s): none.                                                   */
+/* ------------------------------------------------------------------------ */
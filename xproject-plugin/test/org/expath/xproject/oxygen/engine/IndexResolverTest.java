@@ -0,0 +1,255 @@
+/****************************************************************************/
+/*  File:       IndexResolverTest.java                                      */
+/*  Author:     F. Georges - H2O Consulting                                 */
+/*  Date:       2026-10-18                                                  */
+/*  Tags:                                                                   */
+/*      Copyright (c) 2026 Florent Georges (see end of file.)               */
+/* ------------------------------------------------------------------------ */
+
+
+package org.expath.xproject.oxygen.engine;
+
+import com.xmlcalabash.core.XProcConfiguration;
+import com.xmlcalabash.core.XProcRuntime;
+import com.xmlcalabash.runtime.XPipeline;
+import com.xmlcalabash.util.Input;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.StringWriter;
+import java.util.Enumeration;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+import javax.xml.transform.stream.StreamSource;
+import net.sf.saxon.s9api.Processor;
+import net.sf.saxon.s9api.Serializer;
+import net.sf.saxon.s9api.XdmNode;
+import net.sf.saxon.s9api.XsltTransformer;
+import org.expath.xproject.oxygen.MiscUtils;
+import org.expath.xproject.oxygen.PackageRepository;
+import org.expath.xproject.oxygen.TestSupport;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+
+/**
+ * Test the Saxon initializer and the Calabash configurer of the child processes.
+ *
+ * They are set up as in a child process (with the same system properties),
+ * on a repository with one package, providing a stylesheet and a pipeline
+ * library, and they must resolve both from the index.  With a package with
+ * extension functions (file-saxon, bundled with the plugin), they must
+ * register them from the index as well.
+ *
+ * @author Florent Georges
+ * @date   2026-10-18
+ */
+public class IndexResolverTest
+{
+    @Before
+    public void setUp()
+            throws Exception
+    {
+        TestSupport.messages();
+        myDir = TestSupport.createTempDir("xproject-index-");
+        myRepo = TestSupport.mkdirs(myDir, "repo");
+        TestSupport.write(myRepo, "lib-1.0/expath-pkg.xml",
+                "<package xmlns=\"http://expath.org/ns/pkg\" name=\"http://example.org/lib\" abbrev=\"lib\" version=\"1.0\" spec=\"1.0\">\n"
+                + "   <xslt>\n"
+                + "      <import-uri>http://example.org/lib.xsl</import-uri>\n"
+                + "      <file>lib.xsl</file>\n"
+                + "   </xslt>\n"
+                + "   <xproc>\n"
+                + "      <import-uri>http://example.org/lib.xproc</import-uri>\n"
+                + "      <file>lib.xproc</file>\n"
+                + "   </xproc>\n"
+                + "</package>\n");
+        TestSupport.write(myRepo, "lib-1.0/content/lib.xsl",
+                "<xsl:stylesheet xmlns:xsl=\"http://www.w3.org/1999/XSL/Transform\" version=\"2.0\">\n"
+                + "   <xsl:template match=\"/\">\n"
+                + "      <lib from=\"{ name(*) }\"/>\n"
+                + "   </xsl:template>\n"
+                + "</xsl:stylesheet>\n");
+        TestSupport.write(myRepo, "lib-1.0/content/lib.xproc",
+                "<p:library xmlns:p=\"http://www.w3.org/ns/xproc\" xmlns:ex=\"http://example.org/\" version=\"1.0\">\n"
+                + "   <p:declare-step type=\"ex:hello\">\n"
+                + "      <p:output port=\"result\"/>\n"
+                + "      <p:identity>\n"
+                + "         <p:input port=\"source\">\n"
+                + "            <p:inline><hello/></p:inline>\n"
+                + "         </p:input>\n"
+                + "      </p:identity>\n"
+                + "   </p:declare-step>\n"
+                + "</p:library>\n");
+        mySource = TestSupport.write(myDir, "source.xml", "<doc/>\n");
+        System.setProperty("org.expath.pkg.saxon.repo", myRepo.getAbsolutePath());
+        System.setProperty("org.expath.pkg.calabash.repo", myRepo.getAbsolutePath());
+        assertFalse(PackageRepository.getInstance(myRepo).hasCalabashExtensions());
+    }
+
+    @After
+    public void tearDown()
+    {
+        System.clearProperty("org.expath.pkg.saxon.repo");
+        System.clearProperty("org.expath.pkg.calabash.repo");
+        System.clearProperty("com.xmlcalabash.xproc-configurer");
+        TestSupport.delete(myDir);
+    }
+
+    @Test
+    public void initializerResolvesFromTheIndex()
+            throws Exception
+    {
+        Processor saxon = new Processor(false);
+        new IndexInitializer().initialize(saxon.getUnderlyingConfiguration());
+        File style = TestSupport.write(myDir, "style.xsl",
+                "<xsl:stylesheet xmlns:xsl=\"http://www.w3.org/1999/XSL/Transform\" version=\"2.0\">\n"
+                + "   <xsl:import href=\"http://example.org/lib.xsl\"/>\n"
+                + "</xsl:stylesheet>\n");
+        XsltTransformer trans = saxon.newXsltCompiler().compile(new StreamSource(style)).load();
+        trans.setSource(new StreamSource(mySource));
+        StringWriter out = new StringWriter();
+        Serializer serial = saxon.newSerializer(out);
+        serial.setOutputProperty(Serializer.Property.OMIT_XML_DECLARATION, "yes");
+        trans.setDestination(serial);
+        trans.transform();
+        assertEquals("<lib from=\"doc\"/>", out.toString().trim());
+    }
+
+    @Test
+    public void configurerResolvesFromTheIndex()
+            throws Exception
+    {
+        System.setProperty("com.xmlcalabash.xproc-configurer", IndexConfigurer.class.getName());
+        XProcRuntime runtime = new XProcRuntime(new XProcConfiguration(new Processor(false)));
+        try {
+            assertTrue(runtime.getConfigurer() instanceof IndexConfigurer);
+            File pipe = TestSupport.write(myDir, "pipeline.xproc",
+                    "<p:declare-step xmlns:p=\"http://www.w3.org/ns/xproc\" xmlns:ex=\"http://example.org/\" version=\"1.0\">\n"
+                    + "   <p:output port=\"result\"/>\n"
+                    + "   <p:import href=\"http://example.org/lib.xproc\"/>\n"
+                    + "   <ex:hello/>\n"
+                    + "   <p:xslt>\n"
+                    + "      <p:input port=\"stylesheet\">\n"
+                    + "         <p:inline>\n"
+                    + "            <xsl:stylesheet xmlns:xsl=\"http://www.w3.org/1999/XSL/Transform\" version=\"2.0\">\n"
+                    + "               <xsl:import href=\"http://example.org/lib.xsl\"/>\n"
+                    + "            </xsl:stylesheet>\n"
+                    + "         </p:inline>\n"
+                    + "      </p:input>\n"
+                    + "      <p:input port=\"parameters\">\n"
+                    + "         <p:empty/>\n"
+                    + "      </p:input>\n"
+                    + "   </p:xslt>\n"
+                    + "</p:declare-step>\n");
+            XPipeline pipeline = runtime.load(new Input(MiscUtils.getUri(pipe)));
+            pipeline.run();
+            XdmNode result = pipeline.readFrom("result").read();
+            assertEquals("<lib from=\"hello\"/>", result.toString().trim());
+        }
+        finally {
+            runtime.close();
+        }
+    }
+
+    @Test
+    public void extensionFunctionsAreRegisteredFromTheIndex()
+            throws Exception
+    {
+        // the functions are not called, the jar is compiled against an older Saxon
+        unzip(new File("rsrc/packages/file-saxon-0.4.0.xar"), new File(myRepo, "file-saxon-0.4.0"));
+        PackageRepository index = PackageRepository.getInstance(myRepo);
+        index.invalidate();
+        assertFalse(index.hasCalabashExtensions());
+        assertEquals(1, index.getSaxonExtensions().size());
+        assertEquals("xslt", index.getSaxonWrapper("http://expath.org/ns/file.xsl"));
+        Processor saxon = new Processor(false);
+        new IndexInitializer().initialize(saxon.getUnderlyingConfiguration());
+        File style = TestSupport.write(myDir, "style.xsl",
+                "<xsl:stylesheet xmlns:xsl=\"http://www.w3.org/1999/XSL/Transform\" xmlns:file=\"http://expath.org/ns/file\" exclude-result-prefixes=\"file\" version=\"2.0\">\n"
+                + "   <xsl:import href=\"http://expath.org/ns/file.xsl\"/>\n"
+                + "   <xsl:template match=\"/\">\n"
+                + "      <available><xsl:value-of select=\"function-available('file:exists', 1)\"/></available>\n"
+                + "   </xsl:template>\n"
+                + "</xsl:stylesheet>\n");
+        XsltTransformer trans = saxon.newXsltCompiler().compile(new StreamSource(style)).load();
+        trans.setSource(new StreamSource(mySource));
+        StringWriter out = new StringWriter();
+        Serializer serial = saxon.newSerializer(out);
+        serial.setOutputProperty(Serializer.Property.OMIT_XML_DECLARATION, "yes");
+        trans.setDestination(serial);
+        trans.transform();
+        assertEquals("<available>true</available>", out.toString().trim());
+    }
+
+    /**
+     * Install a XAR file in a package dir, as pkg-repo would.
+     */
+    private static void unzip(File xar, File dir)
+            throws Exception
+    {
+        ZipFile zip = new ZipFile(xar);
+        try {
+            Enumeration<? extends ZipEntry> entries = zip.entries();
+            while ( entries.hasMoreElements() ) {
+                ZipEntry e = entries.nextElement();
+                File f = new File(dir, e.getName());
+                if ( e.isDirectory() ) {
+                    f.mkdirs();
+                    continue;
+                }
+                f.getParentFile().mkdirs();
+                InputStream in = zip.getInputStream(e);
+                OutputStream out = new FileOutputStream(f);
+                try {
+                    byte[] buf = new byte[4096];
+                    int n;
+                    while ( (n = in.read(buf)) != -1 ) {
+                        out.write(buf, 0, n);
+                    }
+                }
+                finally {
+                    out.close();
+                    in.close();
+                }
+            }
+        }
+        finally {
+            zip.close();
+        }
+    }
+
+    /** The temporary dir. */
+    private File myDir;
+    /** The repository dir. */
+    private File myRepo;
+    /** The source document. */
+    private File mySource;
+}
+
+
+/* ------------------------------------------------------------------------ */
+/*  DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS COMMENT.               */
+/*                                                                          */
+/*  The contents of this file are subject to the Mozilla Public License     */
+/*  Version 1.0 (the "License"); you may not use this file except in        */
+/*  compliance with the License. You may obtain a copy of the License at    */
+/*  http://www.mozilla.org/MPL/.                                            */
+/*                                                                          */
+/*  Software distributed under the License is distributed on an "AS IS"     */
+/*  basis, WITHOUT WARRANTY OF ANY KIND, either express or implied.  See    */
+/*  the License for the specific language governing rights and limitations  */
+/*  under the License.                                                      */
+/*                                                                          */
+/*  The Original Code is: all this file.                                    */
+/*                                                                          */
+/*  The Initial Developer of the Original Code is Florent Georges.          */
+/*                                                                          */
+/*  Contributor(s): none.                                                   */
+/* ------------------------------------------------------------------------ */